@@ -0,0 +1,316 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.client.ConnectionExecutors;
+import net.client.SocketClient;
+import net.client.SocketClientProtocol;
+import net.server.ClientWriter;
+import net.server.SocketServer;
+import net.server.SocketServerProtocol;
+
+/*
+ * A load test of the thread-per-connection SocketServer & SocketClient, to
+ * compare platform threads with virtual threads (see ConnectionExecutors).
+ *
+ * A number of clients connect to a server in the same JVM, which echoes each
+ * message back to its sender. Once every client is connected, the memory used
+ * per connection (both ends, heap and resident) is measured; then each client
+ * sends a number of timestamped pings, all at once, to measure the round trip
+ * latency. Last, clients connect and disconnect again and again, and the
+ * server must have let go of every one of them (or it would soon refuse all
+ * clients).
+ *
+ * Each mode should be run in its own JVM. Plenty of file descriptors are
+ * needed; two per connection.
+ *
+ * Usage: ConnectionLoadTest [platform|virtual] [connections] [rounds] [cycles]
+ */
+public class ConnectionLoadTest {
+
+	/**
+	 * Echoes every message back to its sender.
+	 */
+	public static class EchoProtocol extends SocketServerProtocol {
+
+		// The protocol the server made; there is one server per JVM.
+		private static volatile EchoProtocol instance = null;
+
+		private HashMap<Socket, ClientWriter> writers = new HashMap<Socket, ClientWriter>();
+
+		public EchoProtocol() {
+			instance = this;
+		}
+
+		@Override
+		public synchronized void addSender(Socket sender, ClientWriter writer) {
+			writers.put(sender, writer);
+		}
+
+		@Override
+		public synchronized void removeSender(Socket sender) {
+			writers.remove(sender);
+		}
+
+		@Override
+		public int getMaxConnections() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public synchronized int getNumConnections() {
+			return writers.size();
+		}
+
+		@Override
+		public ArrayList<String> processInput(Socket sender, String input) {
+
+			ArrayList<String> messages = new ArrayList<String>();
+			messages.add(input);
+
+			return messages;
+		}
+	}
+
+	/**
+	 * Records the round trip time of each ping received back.
+	 */
+	private static class PingProtocol extends SocketClientProtocol {
+
+		private final long[] latencies;
+		private final AtomicInteger received;
+
+		PingProtocol(long[] latencies, AtomicInteger received) {
+			this.latencies = latencies;
+			this.received = received;
+		}
+
+		@Override
+		public ArrayList<String> processInput(Socket sender, String input) {
+
+			// PING;<nanoTime>
+			long sent = Long.parseLong(input.substring(input.indexOf(';') + 1));
+			int index = received.getAndIncrement();
+
+			if (index < latencies.length) {
+				latencies[index] = System.nanoTime() - sent;
+			}
+
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String mode = (args.length > 0) ? args[0]
+				: ConnectionExecutors.platformMode;
+		int connections = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+		int cycles = (args.length > 3) ? Integer.parseInt(args[3]) : 500;
+
+		if (mode.equals(ConnectionExecutors.virtualMode)
+				&& !ConnectionExecutors.isVirtualThreadSupported()) {
+			System.out.println("virtual: not supported by this JVM ("
+					+ System.getProperty("java.version") + "), skipped");
+			return;
+		}
+
+		int port = getFreePort();
+
+		new SocketServer(port, EchoProtocol.class,
+				ConnectionExecutors.forMode(mode, "SocketServerThread"))
+				.start();
+
+		long[] latencies = new long[connections * rounds];
+		AtomicInteger received = new AtomicInteger();
+		PingProtocol protocol = new PingProtocol(latencies, received);
+
+		long heapBefore = getUsedHeap();
+		long residentBefore = getResident();
+		int threadsBefore = Thread.activeCount();
+
+		ArrayList<SocketClient> clients = new ArrayList<SocketClient>();
+
+		for (int i = 0; i < connections; i++) {
+
+			SocketClient client = new SocketClient("localhost", port,
+					protocol, ConnectionExecutors.forMode(mode,
+							"SocketClientThread"));
+
+			// The server may not be listening yet.
+			while (client.bind() != 0) {
+				Thread.sleep(10);
+			}
+
+			clients.add(client);
+		}
+
+		// Make sure every connection is being served before measuring.
+		ping(clients, received, connections);
+
+		long heapPerConnection = (getUsedHeap() - heapBefore) / connections;
+		long residentPerConnection = (getResident() - residentBefore)
+				/ connections;
+		int platformThreads = Thread.activeCount() - threadsBefore;
+
+		received.set(0);
+
+		long start = System.nanoTime();
+
+		for (int round = 0; round < rounds; round++) {
+			ping(clients, received, (round + 1) * connections);
+		}
+
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+
+		System.out.printf("%s: %d connections, %d platform threads%n", mode,
+				connections, platformThreads);
+		System.out.printf("memory per connection: heap %d bytes, resident %s%n",
+				heapPerConnection, (residentBefore < 0) ? "unknown"
+						: residentPerConnection + " bytes");
+		System.out.printf("messages/sec: %.0f%n", latencies.length
+				/ (elapsed / 1e9));
+		System.out.printf("latency: p50 %d us, p99 %d us, max %d us%n",
+				percentile(latencies, 0.50) / 1000,
+				percentile(latencies, 0.99) / 1000,
+				latencies[latencies.length - 1] / 1000);
+
+		int held = churn(mode, port, cycles, connections);
+
+		System.out.printf("after %d connects & disconnects: %d connections "
+				+ "held, %d expected%n", cycles, held, connections);
+
+		System.exit((held == connections) ? 0 : 1);
+	}
+
+	/**
+	 * Connect clients one after another, each disconnecting straight away,
+	 * then wait for the server to remove them.
+	 * 
+	 * @return The number of connections the server holds afterwards.
+	 */
+	private static int churn(String mode, int port, int cycles,
+			int connections) throws IOException, InterruptedException {
+
+		SocketClientProtocol ignore = new SocketClientProtocol() {
+
+			@Override
+			public ArrayList<String> processInput(Socket sender, String input) {
+				return null;
+			}
+		};
+
+		for (int i = 0; i < cycles; i++) {
+
+			// Every other client hangs up without saying so.
+			if (i % 2 == 1) {
+				new Socket("localhost", port).close();
+				continue;
+			}
+
+			SocketClient client = new SocketClient("localhost", port, ignore,
+					ConnectionExecutors.forMode(mode, "SocketClientThread"));
+
+			if (client.bind() != 0) {
+				throw new IllegalStateException("The server refused client "
+						+ i + ".");
+			}
+
+			client.sendMessage(SocketClientProtocol.EXIT);
+		}
+
+		long deadline = System.currentTimeMillis() + 10000;
+
+		while (EchoProtocol.instance.getNumConnections() > connections
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		return EchoProtocol.instance.getNumConnections();
+	}
+
+	/**
+	 * Have every client send a ping, and wait for the total received to reach
+	 * a number.
+	 */
+	private static void ping(ArrayList<SocketClient> clients,
+			AtomicInteger received, int total) throws InterruptedException {
+
+		for (SocketClient client : clients) {
+			client.sendMessage("PING;" + System.nanoTime());
+		}
+
+		while (received.get() < total) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static long percentile(long[] sorted, double fraction) {
+		return sorted[(int) Math.min(sorted.length - 1, sorted.length
+				* fraction)];
+	}
+
+	private static int getFreePort() throws IOException {
+
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+
+		return port;
+	}
+
+	private static long getUsedHeap() {
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+				.getUsed();
+	}
+
+	/**
+	 * Get the resident memory of the process, which includes the thread
+	 * stacks.
+	 * 
+	 * @return The resident memory in bytes, or -1 if it isn't known (only
+	 *         Linux is supported).
+	 */
+	private static long getResident() {
+
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(
+					"/proc/self/status"));
+
+			try {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("VmRSS:")) {
+						// VmRSS:    123456 kB
+						String[] fields = line.trim().split("\\s+");
+						return Long.parseLong(fields[1]) * 1024;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+
+		} catch (IOException e) {
+			// Not Linux.
+		}
+
+		return -1;
+	}
+}
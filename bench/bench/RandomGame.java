@@ -0,0 +1,221 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import model.Board;
+import model.DrawPile;
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+
+/*
+ * A reproducible game of random (but legal) moves, for benchmarks.
+ *
+ * The tiles of a basic game are put in an order decided by the seed, and each
+ * turn places the next tile at a random legal placement, and sometimes a
+ * meeple on it. Each move is recorded as it is played, so that the same game
+ * can be replayed onto a Game (see replay(Game, int)).
+ */
+public class RandomGame {
+
+	private static final int meepleChance = 3;
+
+	private final Random random;
+	private final ArrayList<Tile> tiles;
+	private final Board board = new Board();
+	private final ArrayList<Player> players = new ArrayList<Player>();
+
+	// The moves played so far; the handle of the placed tile (which includes
+	// its orientation), its position, and the tile position of the meeple
+	// placed on it. Skipped turns are recorded with a handle of -1, and turns
+	// without a meeple with a tile position of -1.
+	private final ArrayList<int[]> moves = new ArrayList<int[]>();
+	private int turn = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed
+	 *            The seed which decides the game.
+	 * @param numPlayers
+	 *            The number of players taking turns.
+	 */
+	public RandomGame(long seed, int numPlayers) {
+
+		random = new Random(seed);
+		tiles = drawTiles(random);
+
+		for (int i = 0; i < numPlayers; i++) {
+			players.add(new Player());
+		}
+	}
+
+	/**
+	 * Draw a whole basic game's draw pile, seeded by the random number
+	 * generator.
+	 */
+	public static ArrayList<Tile> drawTiles(Random random) {
+
+		DrawPile drawPile = new DrawPile(random.nextLong());
+		Player player = new Player();
+		ArrayList<Tile> tiles = new ArrayList<Tile>();
+
+		while (drawPile.draw(player) == 0) {
+			tiles.add(player.getCurrentTile());
+		}
+
+		return tiles;
+	}
+
+	/**
+	 * Play turns (including scoring) until a number of turns have been
+	 * played, or the tiles run out.
+	 *
+	 * @param numTurns
+	 *            The number of turns to have been played.
+	 */
+	public void playTo(int numTurns) {
+		while (turn < numTurns && playTurn()) {
+			board.scoreCloisters(players, false);
+			board.scoreRoads(players, false);
+			board.scoreCities(players, false);
+		}
+	}
+
+	/**
+	 * Play the next turn; place the next tile and maybe a meeple. No scoring
+	 * is done.
+	 *
+	 * @return False if there are no tiles left, true otherwise.
+	 */
+	public boolean playTurn() {
+
+		if (turn == tiles.size()) {
+			return false;
+		}
+
+		Player player = getCurrentPlayer();
+		Tile tile = tiles.get(turn++);
+		int[] move = { -1, 0, 0, -1, -1 };
+
+		moves.add(move);
+		player.setCurrentTile(tile);
+
+		TilePlacement placement = getRandomPlacement(tile);
+
+		if (placement == null) {
+			return true;
+		}
+
+		while (tile.getOrientation() != placement.orientation) {
+			tile.rotateClockwise();
+		}
+
+		board.placeTile(player, placement.xBoard, placement.yBoard);
+
+		move[0] = tile.getHandle();
+		move[1] = placement.xBoard;
+		move[2] = placement.yBoard;
+
+		if (random.nextInt(meepleChance) == 0) {
+
+			int xTile = 1 + random.nextInt(Tile.tileSize - 2);
+			int yTile = 1 + random.nextInt(Tile.tileSize - 2);
+
+			if (board.placeMeeple(player, placement.xBoard,
+					placement.yBoard, xTile, yTile) == 0) {
+				move[3] = xTile;
+				move[4] = yTile;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Pick one of the legal placements of a tile at random.
+	 *
+	 * @return A placement, or null if the tile can't be placed.
+	 */
+	public TilePlacement getRandomPlacement(Tile tile) {
+
+		if (board.isEmpty()) {
+			return new TilePlacement(0, 0, tile.getOrientation());
+		}
+
+		ArrayList<TilePlacement> placements = board.getLegalPlacements(tile);
+
+		if (placements.isEmpty()) {
+			return null;
+		}
+
+		return placements.get(random.nextInt(placements.size()));
+	}
+
+	/**
+	 * Replay the turns played so far onto a game, scoring after each turn but
+	 * the last (which is left to the caller). The game must have the same
+	 * number of players.
+	 *
+	 * @param game
+	 *            A new game.
+	 * @param numTurns
+	 *            The number of turns to replay.
+	 */
+	public void replay(Game game, int numTurns) {
+
+		ArrayList<Player> gamePlayers = game.getPlayers();
+
+		for (int i = 0; i < numTurns && i < moves.size(); i++) {
+
+			int[] move = moves.get(i);
+			Player player = gamePlayers.get(i % gamePlayers.size());
+
+			if (i > 0) {
+				game.score(false);
+			}
+
+			if (move[0] < 0) {
+				continue;
+			}
+
+			player.setCurrentTile(new Tile((short) move[0]));
+			game.placeTile(player, move[1], move[2]);
+
+			if (move[3] >= 0) {
+				game.placeMeeple(player, move[1], move[2], move[3], move[4]);
+			}
+		}
+	}
+
+	public Board getBoard() {
+		return board;
+	}
+
+	public ArrayList<Player> getPlayers() {
+		return players;
+	}
+
+	public Player getCurrentPlayer() {
+		return players.get(turn % players.size());
+	}
+
+	/**
+	 * Get the tile which will be placed next turn.
+	 *
+	 * @return The tile, or null if there are no tiles left.
+	 */
+	public Tile getNextTile() {
+		return (turn < tiles.size()) ? tiles.get(turn) : null;
+	}
+
+	public int getTurn() {
+		return turn;
+	}
+
+	public Random getRandom() {
+		return random;
+	}
+}
@@ -0,0 +1,173 @@
+package bench;
+
+import java.util.ArrayList;
+
+import ai.MctsSearch;
+import model.Board;
+import model.Game;
+import model.Player;
+import model.Tile;
+import sim.GreedyPolicy;
+
+/*
+ * A regression benchmark of the cost of scoring.
+ *
+ * Plays a number of seeded games of random (but legal) moves (see
+ * RandomGame), and times the scoring passes which are run after each turn, as
+ * well as the end of game scoring. The games are the same on every run, so results can be compared
+ * between versions of the model.
+ *
+ * Then plays seeded games with every move chosen by an MctsSearch on one
+ * thread, and reports the rate of its playouts; each playout copies the
+ * position and plays the game out, so this is the cost the search pays for
+ * every sample.
+ *
+ * Usage: ScoringBenchmark [games] [warmup games] [players] [search games]
+ */
+public class ScoringBenchmark {
+
+	// The time each move of the searched games is searched for.
+	private static final long searchMillis = 20;
+
+	private long turns = 0;
+	private long turnNanos = 0;
+	private long endNanos = 0;
+	private long meeplesOnBoard = 0;
+	private long playouts = 0;
+	private long searchNanos = 0;
+
+	public static void main(String[] args) {
+
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		int warmup = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		int numPlayers = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		int searchGames = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+
+		// Let the JIT compile the model before measuring.
+		new ScoringBenchmark().run(warmup, numPlayers);
+
+		ScoringBenchmark benchmark = new ScoringBenchmark();
+		benchmark.run(games, numPlayers);
+		benchmark.report(games);
+
+		new ScoringBenchmark().search(1, numPlayers);
+
+		ScoringBenchmark searchBenchmark = new ScoringBenchmark();
+		searchBenchmark.search(searchGames, numPlayers);
+		searchBenchmark.reportSearch(searchGames);
+	}
+
+	private void run(int games, int numPlayers) {
+		for (int seed = 0; seed < games; seed++) {
+			playGame(seed, numPlayers);
+		}
+	}
+
+	private void playGame(long seed, int numPlayers) {
+
+		RandomGame game = new RandomGame(seed, numPlayers);
+		Board board = game.getBoard();
+		ArrayList<Player> players = game.getPlayers();
+
+		while (game.playTurn()) {
+
+			for (Player player : players) {
+				meeplesOnBoard += board.getNumMeeplesPlaced(player);
+			}
+
+			long start = System.nanoTime();
+
+			board.scoreCloisters(players, false);
+			board.scoreRoads(players, false);
+			board.scoreCities(players, false);
+
+			turnNanos += System.nanoTime() - start;
+			turns++;
+		}
+
+		long start = System.nanoTime();
+
+		board.scoreCloisters(players, true);
+		board.scoreRoads(players, true);
+		board.scoreCities(players, true);
+		board.scoreFields(players);
+
+		endNanos += System.nanoTime() - start;
+	}
+
+	private void search(int games, int numPlayers) {
+
+		for (int seed = 0; seed < games; seed++) {
+
+			MctsSearch search = new MctsSearch(1, new GreedyPolicy(),
+					searchMillis, seed);
+
+			try {
+				searchGame(search, seed, numPlayers);
+			} finally {
+				search.shutdown();
+			}
+		}
+	}
+
+	private void searchGame(MctsSearch search, long seed, int numPlayers) {
+
+		Game game = new Game(numPlayers, seed);
+		ArrayList<Player> players = game.getPlayers();
+
+		for (int turn = 0;; turn++) {
+
+			int seat = turn % players.size();
+			Player player = players.get(seat);
+
+			if (game.drawTile(player) != 0) {
+				break;
+			}
+
+			long start = System.nanoTime();
+			MctsSearch.Move move = search.chooseMove(game, seat);
+
+			searchNanos += System.nanoTime() - start;
+			playouts += search.getLastPlayouts();
+
+			if (move == null) {
+				player.setCurrentTile(null);
+				continue;
+			}
+
+			Tile tile = player.getCurrentTile();
+
+			while (tile.getOrientation() != move.placement.orientation) {
+				tile.rotateClockwise();
+			}
+
+			game.placeTile(player, move.placement.xBoard,
+					move.placement.yBoard);
+
+			if (move.meeple != null) {
+				game.placeMeeple(player, move.meeple.xBoard,
+						move.meeple.yBoard, move.meeple.xTile,
+						move.meeple.yTile);
+			}
+
+			game.score(false);
+		}
+	}
+
+	private void report(int games) {
+		System.out.printf("games: %d, turns: %d%n", games, turns);
+		System.out.printf("average meeples on board: %.2f%n",
+				(double) meeplesOnBoard / turns);
+		System.out.printf("scoring per turn: %.0f ns%n", (double) turnNanos
+				/ turns);
+		System.out.printf("end of game scoring: %.0f ns%n", (double) endNanos
+				/ games);
+	}
+
+	private void reportSearch(int games) {
+		System.out.printf("searched games: %d, %d ms a move, 1 thread%n",
+				games, searchMillis);
+		System.out.printf("playouts per second: %.0f%n", playouts * 1e9
+				/ searchNanos);
+	}
+}
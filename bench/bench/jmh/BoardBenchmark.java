@@ -0,0 +1,138 @@
+package bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Board;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.RandomGame;
+
+/*
+ * Benchmarks of tile & meeple placement, on seeded random boards with a
+ * number of tiles already placed.
+ *
+ * Placing a tile or meeple changes the board, so those benchmarks get a fresh
+ * board for every invocation; the board is built outside of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	/**
+	 * A board with the next tile ready to be placed.
+	 */
+	@State(Scope.Thread)
+	public static class BoardState {
+
+		@Param({ "42" })
+		public long seed;
+
+		@Param({ "1", "18", "36", "54", "70" })
+		public int filled;
+
+		public RandomGame game;
+		public Board board;
+		public Player player;
+		public Tile tile;
+		public TilePlacement placement;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			build();
+		}
+
+		void build() {
+
+			game = new RandomGame(seed, 5);
+			game.playTo(filled);
+			board = game.getBoard();
+
+			// Find a tile which can be placed, skipping any which can't.
+			while ((tile = game.getNextTile()) != null) {
+
+				placement = game.getRandomPlacement(tile);
+
+				if (placement != null) {
+					break;
+				}
+
+				game.playTurn();
+			}
+
+			while (tile.getOrientation() != placement.orientation) {
+				tile.rotateClockwise();
+			}
+
+			player = game.getCurrentPlayer();
+			player.setCurrentTile(tile);
+		}
+	}
+
+	/**
+	 * A new board for each invocation, with the next tile ready to be placed.
+	 */
+	@State(Scope.Thread)
+	public static class PlaceTileState extends BoardState {
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+			build();
+		}
+	}
+
+	/**
+	 * A new board for each invocation, with a tile just placed and a random
+	 * tile position picked to place a meeple on.
+	 */
+	@State(Scope.Thread)
+	public static class PlaceMeepleState extends BoardState {
+
+		public int xTile;
+		public int yTile;
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+
+			build();
+			board.placeTile(player, placement.xBoard, placement.yBoard);
+
+			xTile = 1 + game.getRandom().nextInt(Tile.tileSize - 2);
+			yTile = 1 + game.getRandom().nextInt(Tile.tileSize - 2);
+		}
+	}
+
+	@Benchmark
+	public int placeTile(PlaceTileState state) {
+		return state.board.placeTile(state.player, state.placement.xBoard,
+				state.placement.yBoard);
+	}
+
+	@Benchmark
+	public boolean canPlaceTile(BoardState state) {
+		return state.board.canPlaceTile(state.tile);
+	}
+
+	@Benchmark
+	public int placeMeeple(PlaceMeepleState state) {
+		return state.board.placeMeeple(state.player, state.placement.xBoard,
+				state.placement.yBoard, state.xTile, state.yTile);
+	}
+}
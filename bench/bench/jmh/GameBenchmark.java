@@ -0,0 +1,74 @@
+package bench.jmh;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import model.BoardPosition;
+import model.Game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.RandomGame;
+
+/*
+ * Benchmarks of scoring a game, on seeded random boards with a number of
+ * tiles already placed.
+ *
+ * Scoring removes meeples from the board, so each invocation gets a fresh game;
+ * the moves of the seeded game are replayed onto it outside of the
+ * measurement. Mid-game scoring is measured after the last turn's tile (and
+ * meeple) has been placed, but before it has been scored.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+	@State(Scope.Thread)
+	public static class GameState {
+
+		@Param({ "42" })
+		public long seed;
+
+		@Param({ "1", "18", "36", "54", "70" })
+		public int filled;
+
+		public RandomGame randomGame;
+		public Game game;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			randomGame = new RandomGame(seed, 5);
+			randomGame.playTo(filled);
+		}
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+			game = new Game(5);
+			randomGame.replay(game, filled);
+		}
+	}
+
+	@Benchmark
+	public ArrayList<BoardPosition> scoreDuringGame(GameState state) {
+		return state.game.score(false);
+	}
+
+	@Benchmark
+	public ArrayList<BoardPosition> scoreEndOfGame(GameState state) {
+		return state.game.score(true);
+	}
+}
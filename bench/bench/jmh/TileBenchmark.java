@@ -0,0 +1,72 @@
+package bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import model.DrawPile;
+import model.Player;
+import model.Tile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Benchmarks of drawing & rotating tiles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileBenchmark {
+
+	/**
+	 * A draw pile, which is replaced (outside of the measurement) once it has
+	 * been emptied.
+	 */
+	@State(Scope.Thread)
+	public static class DrawPileState {
+
+		public DrawPile drawPile;
+		public Player player = new Player();
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+			if (drawPile == null || drawPile.isEmpty()) {
+				drawPile = new DrawPile();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TileState {
+
+		public Tile tile;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			Player player = new Player();
+			new DrawPile().draw(player);
+			tile = player.getCurrentTile();
+		}
+	}
+
+	@Benchmark
+	public int draw(DrawPileState state) {
+		return state.drawPile.draw(state.player);
+	}
+
+	@Benchmark
+	public int rotateClockwise(TileState state) {
+		state.tile.rotateClockwise();
+		return state.tile.getOrientation();
+	}
+}
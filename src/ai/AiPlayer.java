@@ -0,0 +1,314 @@
+package ai;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import model.Game;
+import model.MeepleStruct;
+import model.Player;
+import model.PlayerStruct;
+import model.Tile;
+import net.client.ClientProtocol;
+import net.client.GameListener;
+import net.client.SocketClient;
+
+/*
+ * A computer player, which joins a lobby as any other client does, and plays
+ * its turns with an MctsSearch.
+ *
+ * It keeps its own copy of the game, changed only by the messages the server
+ * sends (so the moves of every player, its own included, are made once the
+ * server has accepted them). The server doesn't say which tiles it sets aside
+ * as unplaceable, so they stay in the copy's draw pile; the search only ever
+ * guesses at the order of the pile, so this does little harm.
+ *
+ * Usage: AiPlayer [host] [port] [players] [budgetMillis] [startAt] [room]
+ *
+ * which connects a number of computer players (1 by default) to the server,
+ * searching for budgetMillis (1000 by default) each move, on every core. If
+ * startAt is more than zero, the computer player in the first seat starts the
+ * game once that many players are in the lobby; otherwise a person starts it.
+ * On a room server (see RoomServerProtocol) the players join the named room.
+ */
+public class AiPlayer implements GameListener {
+
+	private final MctsSearch search;
+	private final int startAt;
+
+	private SocketClient client = null;
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private int seat = -1;
+	private int lobbySize = 0;
+	private boolean started = false;
+
+	private Game game = null;
+
+	// The player's score, as the server last told it.
+	private int score = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param search
+	 *            The search which chooses the player's moves; it can be shared
+	 *            with other players.
+	 * @param startAt
+	 *            Start the game once the lobby holds this many players, if
+	 *            this player has the first seat; zero to never start it.
+	 */
+	public AiPlayer(MctsSearch search, int startAt) {
+		this.search = search;
+		this.startAt = startAt;
+	}
+
+	/**
+	 * Connect to a server, and join its lobby.
+	 *
+	 * @param host
+	 *            The host name of the server.
+	 * @param port
+	 *            The port of the server.
+	 * @param room
+	 *            The room to join, or null for the server's default.
+	 *
+	 * @return a non-zero integer if the server can't be reached, otherwise
+	 *         zero.
+	 */
+	public int connect(String host, int port, String room) {
+
+		client = new SocketClient(host, port, new ClientProtocol(this));
+
+		if (client.bind() != 0) {
+			return 1;
+		}
+
+		client.sendMessage((room != null) ? "JOINLOBBY;room;" + room
+				: "JOINLOBBY");
+
+		return 0;
+	}
+
+	/**
+	 * Wait for the game to end, or the server to send the player away.
+	 */
+	public void awaitExit() throws InterruptedException {
+		done.await();
+	}
+
+	@Override
+	public void exit() {
+
+		if (game != null) {
+			System.out.println("Player " + seat + " finished with " + score
+					+ " points.");
+		}
+
+		done.countDown();
+	}
+
+	@Override
+	public void assignPlayer(int player) {
+		seat = player;
+	}
+
+	@Override
+	public void updateLobby(HashMap<Integer, PlayerStruct> players) {
+
+		lobbySize = players.size();
+
+		if (seat == 0 && startAt > 0 && lobbySize >= startAt && !started) {
+			started = true;
+			client.sendMessage("INIT;numPlayers;" + lobbySize);
+		}
+	}
+
+	@Override
+	public void init(int currentPlayer, int width, int height) {
+
+		game = new Game(lobbySize);
+
+		if (currentPlayer == seat) {
+			client.sendMessage("DRAWTILE;currentPlayer;" + seat);
+		}
+	}
+
+	@Override
+	public void drawTile(int currentPlayer, String identifier, int orientation) {
+
+		if (game == null) {
+			return;
+		}
+
+		Player player = game.getPlayers().get(currentPlayer);
+
+		if (game.drawTile(player, Collections.<String> emptyList(),
+				identifier) != 0) {
+			return;
+		}
+
+		Tile tile = player.getCurrentTile();
+
+		while (tile.getOrientation() != orientation) {
+			tile.rotateClockwise();
+		}
+
+		if (currentPlayer == seat) {
+			play(tile);
+		}
+	}
+
+	/**
+	 * Choose a move for the tile drawn, and send it to the server.
+	 */
+	private void play(Tile tile) {
+
+		MctsSearch.Move move = search.chooseMove(game, seat);
+
+		if (move == null) {
+			System.err.println("Player " + seat + " can't place its tile.");
+			return;
+		}
+
+		// Rotate the tile into place, then place it.
+		int rotations = (move.placement.orientation - tile.getOrientation() + 4) % 4;
+
+		for (int i = 0; i < rotations; i++) {
+			client.sendMessage("ROTATETILE;currentPlayer;" + seat
+					+ ";direction;clockwise");
+		}
+
+		client.sendMessage("PLACETILE;currentPlayer;" + seat + ";xBoard;"
+				+ move.placement.xBoard + ";yBoard;" + move.placement.yBoard);
+
+		if (move.meeple != null) {
+			client.sendMessage("PLACEMEEPLE;currentPlayer;" + seat
+					+ ";xBoard;" + move.meeple.xBoard + ";yBoard;"
+					+ move.meeple.yBoard + ";xTile;" + move.meeple.xTile
+					+ ";yTile;" + move.meeple.yTile);
+		}
+
+		client.sendMessage("ENDTURN;currentPlayer;" + seat);
+	}
+
+	@Override
+	public void rotateTile(int currentPlayer, String direction) {
+
+		if (game == null) {
+			return;
+		}
+
+		Tile tile = game.getPlayers().get(currentPlayer).getCurrentTile();
+
+		if (tile == null) {
+			return;
+		}
+
+		if (direction.equals("clockwise")) {
+			tile.rotateClockwise();
+		} else {
+			tile.rotateCounterClockwise();
+		}
+	}
+
+	@Override
+	public void placeTile(int currentPlayer, int xBoard, int yBoard, int error) {
+
+		if (game != null && error == 0) {
+			game.placeTile(game.getPlayers().get(currentPlayer), xBoard, yBoard);
+		}
+	}
+
+	@Override
+	public void placeMeeple(int currentPlayer, int xBoard, int yBoard,
+			int xTile, int yTile, int error) {
+
+		if (game != null && error == 0) {
+			game.placeMeeple(game.getPlayers().get(currentPlayer), xBoard,
+					yBoard, xTile, yTile);
+		}
+	}
+
+	@Override
+	public void score(Set<MeepleStruct> meeplePositions) {
+
+		// The server scores after every move; scoring the copy the same way
+		// takes the same meeples off the board.
+		if (game != null) {
+			game.score(false);
+		}
+	}
+
+	@Override
+	public void endTurn(int player) {
+
+		if (game == null) {
+			return;
+		}
+
+		if ((player + 1) % game.getNumPlayers() == seat) {
+			client.sendMessage("DRAWTILE;currentPlayer;" + seat);
+		}
+	}
+
+	@Override
+	public void playerInfo(int player, int currentPlayer, int playerScore,
+			int meeplesPlaced) {
+
+		if (player == seat) {
+			score = playerScore;
+		}
+	}
+
+	@Override
+	public void gameInfo(int currentPlayer, boolean drawPileEmpty,
+			int unplaceableTiles) {
+	}
+
+	@Override
+	public void leaveGame(int player, Set<MeepleStruct> meeplePositions) {
+
+		if (game == null || player >= game.getNumPlayers()) {
+			return;
+		}
+
+		game.exitGame(game.getPlayers().get(player));
+
+		// The players after the one leaving move up a seat.
+		if (player < seat) {
+			seat--;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+
+		String host = (args.length > 0) ? args[0] : "localhost";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : 4444;
+		int numPlayers = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+		long budgetMillis = (args.length > 3) ? Long.parseLong(args[3]) : 1000;
+		int startAt = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+		String room = (args.length > 5) ? args[5] : null;
+
+		MctsSearch search = new MctsSearch(budgetMillis);
+		AiPlayer[] players = new AiPlayer[numPlayers];
+
+		for (int i = 0; i < numPlayers; i++) {
+
+			players[i] = new AiPlayer(search, startAt);
+
+			if (players[i].connect(host, port, room) != 0) {
+				System.err.println("Can't connect to " + host + ":" + port
+						+ ".");
+				System.exit(1);
+			}
+		}
+
+		for (AiPlayer player : players) {
+			player.awaitExit();
+		}
+
+		search.shutdown();
+	}
+}
@@ -0,0 +1,409 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+import sim.GreedyPolicy;
+import sim.MovePolicy;
+
+/*
+ * Chooses a move by Monte Carlo tree search.
+ *
+ * Every move of the player's current tile (each legal placement, with or
+ * without a meeple on each unclaimed feature of it) is tried in many random
+ * playouts; the rest of the game is played from a copy of the position by a
+ * MovePolicy, with the draw pile shuffled anew each time, as the order of the
+ * tiles is unknown. The playouts are spread between the moves by UCB1, and the
+ * move played most often is chosen.
+ *
+ * As every later move follows a random draw, the tree is only searched at the
+ * root. Each thread searches its own root for the whole time budget, and the
+ * results are added up at the end (root parallelism); each thread has its own
+ * copy of the position (see Game.copy), which every playout copies again, so
+ * the threads never wait on each other.
+ *
+ * A search may be shared by several players, but searches one position at a
+ * time with all of its threads.
+ */
+public class MctsSearch {
+
+	// The weight of exploring the moves tried least, against playing the best.
+	private static final double exploration = 0.7;
+
+	// How many points ahead (or behind) a playout must end to count as nearly
+	// a certain win (or loss).
+	private static final double scoreScale = 10;
+
+	/**
+	 * A move; where to place the current tile, and where to place a meeple on
+	 * it, if anywhere.
+	 */
+	public static class Move {
+
+		public final TilePlacement placement;
+		public final BoardPosition meeple;
+
+		public Move(TilePlacement placement, BoardPosition meeple) {
+			this.placement = placement;
+			this.meeple = meeple;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + placement.xBoard + ", " + placement.yBoard + ") "
+					+ placement.orientation
+					+ ((meeple != null) ? " meeple (" + meeple.xTile + ", "
+							+ meeple.yTile + ")" : "");
+		}
+	}
+
+	private final ExecutorService pool;
+	private final int numThreads;
+	private final MovePolicy policy;
+	private final long budgetMillis;
+	private final Random random;
+
+	// The playouts run by the last search.
+	private volatile long lastPlayouts = 0;
+
+	/**
+	 * Constructor, with a thread for each core, and greedy playouts.
+	 *
+	 * @param budgetMillis
+	 *            The time to search each move for, in milliseconds.
+	 */
+	public MctsSearch(long budgetMillis) {
+		this(Runtime.getRuntime().availableProcessors(), new GreedyPolicy(),
+				budgetMillis, System.nanoTime());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param numThreads
+	 *            The number of threads to search with.
+	 * @param policy
+	 *            The policy which plays out the games.
+	 * @param budgetMillis
+	 *            The time to search each move for, in milliseconds.
+	 * @param seed
+	 *            The seed of the searches' random number generators.
+	 */
+	public MctsSearch(int numThreads, MovePolicy policy, long budgetMillis,
+			long seed) {
+
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed.");
+		}
+
+		this.numThreads = numThreads;
+		this.policy = policy;
+		this.budgetMillis = budgetMillis;
+		this.random = new Random(seed);
+
+		pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "MctsSearch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Choose a move for a player, who has drawn a tile and not yet placed it.
+	 *
+	 * @param game
+	 *            The game being played; it isn't changed.
+	 * @param seat
+	 *            The index of the player whose turn it is.
+	 *
+	 * @return The move, or null if the tile can't be placed.
+	 */
+	public synchronized Move chooseMove(Game game, int seat) {
+
+		Player player = game.getPlayers().get(seat);
+		Tile tile = player.getCurrentTile();
+
+		lastPlayouts = 0;
+
+		// The first tile goes in the center; there is no choice to make.
+		if (game.getBoard().isEmpty()) {
+			return new Move(new TilePlacement(game.getBoardWidth() / 2,
+					game.getBoardHeight() / 2, tile.getOrientation()), null);
+		}
+
+		ArrayList<Move> moves = getMoves(game, seat);
+
+		if (moves.size() <= 1) {
+			return moves.isEmpty() ? null : moves.get(0);
+		}
+
+		long deadline = System.nanoTime() + budgetMillis * 1000000;
+		ArrayList<Future<double[][]>> results = new ArrayList<Future<double[][]>>();
+
+		for (int i = 0; i < numThreads; i++) {
+			results.add(pool.submit(new RootSearch(game.copy(), seat, moves,
+					deadline, random.nextLong())));
+		}
+
+		double[] visits = new double[moves.size()];
+		double[] rewards = new double[moves.size()];
+
+		try {
+			for (Future<double[][]> result : results) {
+
+				double[][] threadResult = result.get();
+
+				for (int i = 0; i < visits.length; i++) {
+					visits[i] += threadResult[0][i];
+					rewards[i] += threadResult[1][i];
+					lastPlayouts += (long) threadResult[0][i];
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A playout failed.", e.getCause());
+		}
+
+		// The most played move; of those played as often (as when there was
+		// little time), the one with the best playouts.
+		int best = 0;
+
+		for (int i = 1; i < visits.length; i++) {
+			if (visits[i] > visits[best]
+					|| (visits[i] == visits[best] && rewards[i]
+							/ visits[i] > rewards[best] / visits[best])) {
+				best = i;
+			}
+		}
+
+		return moves.get(best);
+	}
+
+	/**
+	 * Get the number of playouts the last search ran, across its threads.
+	 */
+	public long getLastPlayouts() {
+		return lastPlayouts;
+	}
+
+	/**
+	 * Stop the search threads, once any search running has finished.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Find every move of a player's current tile.
+	 */
+	private static ArrayList<Move> getMoves(Game game, int seat) {
+
+		Player player = game.getPlayers().get(seat);
+		boolean hasMeeple = game.getNumMeeplesPlaced(player) < Player.NUM_MEEPLES;
+		ArrayList<Move> moves = new ArrayList<Move>();
+
+		for (TilePlacement placement : game.getLegalPlacements(player)) {
+
+			moves.add(new Move(placement, null));
+
+			if (!hasMeeple) {
+				continue;
+			}
+
+			// Where a meeple could go depends on the tile being placed.
+			Game placed = game.copy();
+
+			if (play(placed, seat, new Move(placement, null)) != 0) {
+				continue;
+			}
+
+			for (BoardPosition meeple : placed.getBoard().getMeeplePlacements(
+					placement.xBoard, placement.yBoard)) {
+				moves.add(new Move(placement, meeple));
+			}
+		}
+
+		return moves;
+	}
+
+	/**
+	 * Play a move of a player's current tile.
+	 *
+	 * @return a non-zero integer if the tile couldn't be placed, otherwise
+	 *         zero.
+	 */
+	private static int play(Game game, int seat, Move move) {
+
+		Player player = game.getPlayers().get(seat);
+		Tile tile = player.getCurrentTile();
+		TilePlacement placement = move.placement;
+
+		while (tile.getOrientation() != placement.orientation) {
+			tile.rotateClockwise();
+		}
+
+		int error = game.placeTile(player, placement.xBoard, placement.yBoard);
+
+		if (error == 0 && move.meeple != null) {
+			game.placeMeeple(player, move.meeple.xBoard, move.meeple.yBoard,
+					move.meeple.xTile, move.meeple.yTile);
+		}
+
+		return error;
+	}
+
+	/*
+	 * Searches the root on one thread until the deadline; returns the visits &
+	 * total rewards of each move.
+	 */
+	private class RootSearch implements Callable<double[][]> {
+
+		private final Game root;
+		private final int seat;
+		private final List<Move> moves;
+		private final long deadline;
+		private final Random random;
+
+		RootSearch(Game root, int seat, List<Move> moves, long deadline,
+				long seed) {
+			this.root = root;
+			this.seat = seat;
+			this.moves = moves;
+			this.deadline = deadline;
+			this.random = new Random(seed);
+		}
+
+		@Override
+		public double[][] call() {
+
+			int numMoves = moves.size();
+			double[] visits = new double[numMoves];
+			double[] rewards = new double[numMoves];
+			int total = 0;
+
+			// Every move is tried at least once, even if out of time.
+			while (total < numMoves || System.nanoTime() < deadline) {
+
+				int move = select(visits, rewards, total);
+
+				rewards[move] += playout(moves.get(move));
+				visits[move]++;
+				total++;
+			}
+
+			return new double[][] { visits, rewards };
+		}
+
+		// UCB1; the moves not yet tried first.
+		private int select(double[] visits, double[] rewards, int total) {
+
+			if (total < visits.length) {
+				return total;
+			}
+
+			double logTotal = Math.log(total);
+			int best = 0;
+			double bestValue = Double.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < visits.length; i++) {
+
+				double value = rewards[i] / visits[i] + exploration
+						* Math.sqrt(logTotal / visits[i]);
+
+				if (value > bestValue) {
+					best = i;
+					bestValue = value;
+				}
+			}
+
+			return best;
+		}
+
+		/**
+		 * Play the game out after a move, with the rest of the draw pile in a
+		 * random order.
+		 *
+		 * @return The reward of the player; from 0 (a certain loss) to 1.
+		 */
+		private double playout(Move move) {
+
+			Game game = root.copy();
+			game.shuffleDrawPile(random);
+
+			ArrayList<Player> players = game.getPlayers();
+
+			play(game, seat, move);
+			game.score(false);
+
+			for (int turn = seat + 1;; turn++) {
+
+				Player player = players.get(turn % players.size());
+
+				if (game.drawTile(player) != 0) {
+					break;
+				}
+
+				TilePlacement placement = policy.chooseTilePlacement(game,
+						player, game.getLegalPlacements(player), random);
+				Tile tile = player.getCurrentTile();
+
+				while (tile.getOrientation() != placement.orientation) {
+					tile.rotateClockwise();
+				}
+
+				game.placeTile(player, placement.xBoard, placement.yBoard);
+
+				if (game.getNumMeeplesPlaced(player) < Player.NUM_MEEPLES) {
+
+					BoardPosition position = policy.chooseMeeplePlacement(
+							game, player, placement.xBoard, placement.yBoard,
+							random);
+
+					if (position != null) {
+						game.placeMeeple(player, position.xBoard,
+								position.yBoard, position.xTile,
+								position.yTile);
+					}
+				}
+
+				game.score(false);
+			}
+
+			game.score(true);
+
+			// The margin over the best of the other players.
+			int score = players.get(seat).getScore();
+			int bestOther = Integer.MIN_VALUE;
+
+			for (int i = 0; i < players.size(); i++) {
+				if (i != seat) {
+					bestOther = Math.max(bestOther, players.get(i).getScore());
+				}
+			}
+
+			if (bestOther == Integer.MIN_VALUE) {
+				return 0.5 + 0.5 * Math.tanh(score / scoreScale);
+			}
+
+			return 0.5 + 0.5 * Math.tanh((score - bestOther) / scoreScale);
+		}
+	}
+}
@@ -1,39 +1,70 @@
 package model;
 
-import java.awt.Point;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 
 public class Board {
 
-	private Tile[][] gameBoard;
+	// Placed tiles are stored in the order they were placed. The position map
+	// gives the index of the tile at a position, and the same index is used
+	// for the tile in the feature graph & the flood fill.
+	private PositionMap tileIndices = new PositionMap(128);
+	private ArrayList<Tile> tiles = new ArrayList<Tile>();
+	private long[] tilePositions = new long[128];
 	private boolean isBoardEmpty = true;
 
+	// The frontier is the set of free positions next to placed tiles; the only
+	// positions where a tile may be placed. Each slot on the frontier holds the
+	// edge signature required on each side of a tile placed there (or -1 if
+	// there is no neighbor on that side). Slots are kept packed at the front
+	// of the arrays, and the position map gives the slot for a position.
+	private PositionMap frontier = new PositionMap(128);
+	private long[] slotPositions = new long[64];
+	private int[] slotEdges = new int[64 * 4];
+	private int numSlots = 0;
+
+	// The placeability index; for each kind of tile (by prototype id), the
+	// number of frontier slots it fits in some orientation. It's kept up to
+	// date as slots change, so whether a kind of tile can be placed anywhere
+	// is a lookup. Kinds are added to the index when first asked about.
+	private int[] fittingSlots = new int[0];
+	private TileShape[] indexedShapes = new TileShape[0];
+
+	// The extent of the placed tiles.
+	private int minX = 0;
+	private int maxX = 0;
+	private int minY = 0;
+	private int maxY = 0;
+
+	// Markers for cells which are not part of a completed city.
+	private static final int notSearched = -1;
+	private static final int incompleteCity = -2;
+
 	// The board will keep track of the relationship between meeples and their
 	// position on it.
 	private HashMap<Meeple, BoardPosition> meeplePlacement;
 
+	// The reverse of meeplePlacement; each claimed tile position (see
+	// meepleKey) maps to the index of its meeple in placedMeeples.
+	private PositionMap meepleIndices = new PositionMap();
+	private ArrayList<Meeple> placedMeeples = new ArrayList<Meeple>();
+
+	// Connected features are tracked as tiles are placed, so that scoring does
+	// not need to search the board.
+	private FeatureGraph features = new FeatureGraph();
+
+	// Searches of the tile positions on the board, for field scoring.
+	private FloodFill floodFill = new FloodFill();
+
 	/**
-	 * Initialize the game board. All tile positions are set to null to start.
+	 * Initialize the game board. The board starts empty, and grows in any
+	 * direction as tiles are placed.
 	 */
 	public Board() {
-
 		meeplePlacement = new HashMap<Meeple, BoardPosition>();
-
-		// We have 72 tiles to place, with the starting tile in the center
-		// of the board. This guarantees that the board can't extend outside
-		// of it's container. Use an odd number for an easier 'center' to
-		// place the beginning piece.
-		// The tile at 72, 72 is at the center of the board.
-
-		gameBoard = new Tile[145][145];
-
-        for (Tile[] row : gameBoard) {
-            Arrays.fill(row, null);
-        }
 	}
 
 	/**
@@ -55,18 +86,361 @@ public class Board {
 
 		if (tile != null && isTilePosValid(tile, xBoard, yBoard)) {
 
-			gameBoard[yBoard][xBoard] = tile;
+			addTile(tile, xBoard, yBoard);
 			player.setCurrentTile(null);
 			player.setLastTilePlacedPosition(xBoard, yBoard);
 
-			isBoardEmpty = false;
-
 			return 0;
 		}
 
 		return 1;
 	}
 
+	/**
+	 * Store a tile on the board, and update the board extent & features.
+	 * 
+	 * @param tile
+	 *            The tile which has been placed.
+	 * @param xBoard
+	 *            The x position of the tile on the board.
+	 * @param yBoard
+	 *            The y position of the tile on the board.
+	 */
+	private void addTile(Tile tile, int xBoard, int yBoard) {
+
+		long position = PositionMap.pack(xBoard, yBoard);
+
+		int tileIndex = tiles.size();
+
+		tileIndices.put(position, tileIndex);
+		tiles.add(tile);
+
+		if (tileIndex == tilePositions.length) {
+			tilePositions = Arrays.copyOf(tilePositions, tileIndex * 2);
+		}
+
+		tilePositions[tileIndex] = position;
+
+		if (isBoardEmpty) {
+			minX = maxX = xBoard;
+			minY = maxY = yBoard;
+			isBoardEmpty = false;
+		} else {
+			minX = Math.min(minX, xBoard);
+			maxX = Math.max(maxX, xBoard);
+			minY = Math.min(minY, yBoard);
+			maxY = Math.max(maxY, yBoard);
+		}
+
+		updateFrontier(tile, xBoard, yBoard);
+		addFeatures(xBoard, yBoard);
+	}
+
+	/**
+	 * Get the tile at a board position.
+	 * 
+	 * @return The tile, or null if no tile has been placed there.
+	 */
+	public Tile getTile(int xBoard, int yBoard) {
+
+		int tileIndex = tileIndices.get(xBoard, yBoard);
+
+		if (tileIndex < 0) {
+			return null;
+		}
+
+		return tiles.get(tileIndex);
+	}
+
+	/**
+	 * Add the features of a newly placed tile to the feature graph, joining
+	 * them with the features of any neighboring tiles. Every road & city which
+	 * the tile is part of is marked for scoring, as these are the only
+	 * features which the placement could have completed.
+	 * 
+	 * @param xBoard
+	 *            The x position of the placed tile on the board.
+	 * @param yBoard
+	 *            The y position of the placed tile on the board.
+	 */
+	private void addFeatures(int xBoard, int yBoard) {
+
+		Tile tile = getTile(xBoard, yBoard);
+		int tileIndex = features.addTile(tile);
+
+		int top = tileIndices.get(xBoard, yBoard - 1);
+		int bottom = tileIndices.get(xBoard, yBoard + 1);
+		int right = tileIndices.get(xBoard + 1, yBoard);
+		int left = tileIndices.get(xBoard - 1, yBoard);
+
+		floodFill.addTile(tile, top, right, bottom, left);
+
+		// Join the positions along each shared edge (skipping the corners).
+		int last = Tile.tileSize - 1;
+
+		for (int i = 1; i < last; i++) {
+
+			if (top >= 0) {
+				features.connect(tileIndex, i, 0, top, i, last);
+			}
+
+			if (bottom >= 0) {
+				features.connect(tileIndex, i, last, bottom, i, 0);
+			}
+
+			if (right >= 0) {
+				features.connect(tileIndex, last, i, right, 0, i);
+			}
+
+			if (left >= 0) {
+				features.connect(tileIndex, 0, i, left, last, i);
+			}
+		}
+
+		for (int segment = features.getFirstSegment(tileIndex); segment < features
+				.getNumSegments(); segment++) {
+
+			TileType tileType = features.getType(segment);
+
+			if (tileType == TileType.ROAD || tileType == TileType.CITY) {
+				features.touch(segment);
+			}
+		}
+	}
+
+	/**
+	 * Get the feature graph segment of a tile position on the board.
+	 * 
+	 * @return The segment, or -1 if there is no tile or tile type there.
+	 */
+	private int getSegment(int xBoard, int yBoard, int xTile, int yTile) {
+
+		int tileIndex = tileIndices.get(xBoard, yBoard);
+
+		if (tileIndex < 0) {
+			return -1;
+		}
+
+		return features.getSegment(tileIndex, xTile, yTile);
+	}
+
+	/**
+	 * Add a placed tile to the frontier. The position of the tile is no longer
+	 * free, and each free neighboring position must now match the facing side
+	 * of the tile.
+	 * 
+	 * @param tile
+	 *            The tile which has been placed.
+	 * @param xBoard
+	 *            The x position of the tile on the board.
+	 * @param yBoard
+	 *            The y position of the tile on the board.
+	 */
+	private void updateFrontier(Tile tile, int xBoard, int yBoard) {
+
+		removeSlot(PositionMap.pack(xBoard, yBoard));
+
+		int[] xOffsets = { 0, 1, 0, -1 };
+		int[] yOffsets = { -1, 0, 1, 0 };
+
+		for (int side = 0; side < 4; side++) {
+
+			int xNeighbor = xBoard + xOffsets[side];
+			int yNeighbor = yBoard + yOffsets[side];
+
+			if (tileIndices.get(xNeighbor, yNeighbor) >= 0) {
+				continue;
+			}
+
+			long position = PositionMap.pack(xNeighbor, yNeighbor);
+			int slot = frontier.get(position);
+
+			if (slot < 0) {
+				slot = addSlot(position);
+			} else {
+				indexSlot(slot, -1);
+			}
+
+			// The neighbor's side facing this tile is the opposite side.
+			int facingSide = (side + 2) % 4;
+			int signature = tile.getEdgeSignature(side);
+
+			slotEdges[slot * 4 + facingSide] = Tile
+					.reverseEdgeSignature(signature);
+
+			indexSlot(slot, 1);
+		}
+	}
+
+	private int addSlot(long position) {
+
+		if (numSlots == slotPositions.length) {
+			slotPositions = Arrays.copyOf(slotPositions, numSlots * 2);
+			slotEdges = Arrays.copyOf(slotEdges, numSlots * 2 * 4);
+		}
+
+		int slot = numSlots++;
+
+		slotPositions[slot] = position;
+		Arrays.fill(slotEdges, slot * 4, slot * 4 + 4, -1);
+		frontier.put(position, slot);
+
+		return slot;
+	}
+
+	private void removeSlot(long position) {
+
+		int slot = frontier.remove(position);
+
+		if (slot < 0) {
+			return;
+		}
+
+		indexSlot(slot, -1);
+
+		// Move the last slot into the hole to keep the slots packed.
+		int last = --numSlots;
+
+		if (slot != last) {
+			slotPositions[slot] = slotPositions[last];
+			System.arraycopy(slotEdges, last * 4, slotEdges, slot * 4, 4);
+			frontier.put(slotPositions[slot], slot);
+		}
+	}
+
+	/**
+	 * Check whether a tile fits a frontier slot.
+	 * 
+	 * @param tile
+	 *            The tile which is to be placed.
+	 * @param slot
+	 *            The frontier slot to check.
+	 * @param rotation
+	 *            The number of clockwise rotations to apply to the tile.
+	 * 
+	 * @return True if every side of the rotated tile matches its neighbor.
+	 */
+	private boolean fitsSlot(Tile tile, int slot, int rotation) {
+
+		for (int side = 0; side < 4; side++) {
+
+			int required = slotEdges[slot * 4 + side];
+
+			// Rotating clockwise brings each side round to the next one.
+			if (required >= 0
+					&& tile.getEdgeSignature((side - rotation + 4) % 4) != required) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether a kind of tile fits a frontier slot, in any orientation.
+	 */
+	private boolean fitsSlot(TileShape shape, int slot) {
+
+		for (int orientation = 0; orientation < 4; orientation++) {
+
+			int side = 0;
+
+			while (side < 4) {
+
+				int required = slotEdges[slot * 4 + side];
+
+				if (required >= 0
+						&& shape.getEdgeSignature(orientation, side) != required) {
+					break;
+				}
+
+				side++;
+			}
+
+			if (side == 4) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Add a slot to the placeability index, or take it away; for each kind of
+	 * tile which fits the slot, the number of slots it fits is changed.
+	 * 
+	 * @param slot
+	 *            The frontier slot.
+	 * @param change
+	 *            1 when the slot is added (or its edges have just changed),
+	 *            -1 when it's taken away (or its edges are about to change).
+	 */
+	private void indexSlot(int slot, int change) {
+
+		for (int id = 0; id < indexedShapes.length; id++) {
+
+			TileShape shape = indexedShapes[id];
+
+			if (shape != null && fitsSlot(shape, slot)) {
+				fittingSlots[id] += change;
+			}
+		}
+	}
+
+	/**
+	 * Check if it is possible for a kind of tile to be placed on the board.
+	 * This is a lookup in the placeability index, after the kind has been
+	 * asked about once.
+	 * 
+	 * @param prototype
+	 *            The kind of tile.
+	 * 
+	 * @return false if no tile of the kind can be placed, true otherwise.
+	 */
+	public boolean canPlaceTile(TilePrototype prototype) {
+
+		if (isBoardEmpty) {
+			return true;
+		}
+
+		int id = prototype.getId();
+
+		if (id >= indexedShapes.length) {
+			indexPrototypes(id);
+		}
+
+		return fittingSlots[id] > 0;
+	}
+
+	/**
+	 * Add the kinds of tile up to a prototype id to the placeability index,
+	 * counting the slots each fits.
+	 */
+	private void indexPrototypes(int maxId) {
+
+		int first = indexedShapes.length;
+
+		indexedShapes = Arrays.copyOf(indexedShapes, maxId + 1);
+		fittingSlots = Arrays.copyOf(fittingSlots, maxId + 1);
+
+		for (int id = first; id <= maxId; id++) {
+
+			TilePrototype prototype = TilePrototype.get(id);
+
+			if (prototype == null) {
+				continue;
+			}
+
+			indexedShapes[id] = prototype.getShape();
+
+			for (int slot = 0; slot < numSlots; slot++) {
+				if (fitsSlot(indexedShapes[id], slot)) {
+					fittingSlots[id]++;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Check if it is possible for a tile to be placed on the board.
 	 * 
@@ -77,33 +451,51 @@ public class Board {
 	 */
 	public boolean canPlaceTile(Tile tile) {
 
-		boolean canPlaceTile = false;
-
 		if (tile == null) {
 			return false;
 		}
 
-		// For each position (excluding the borders) check the neighbor tiles to
-		// see if the current tile can be placed.
-		for (int i = 1; i < gameBoard.length - 1; i++) {
-			for (int j = 1; j < gameBoard[i].length - 1; j++) {
-
-				// Check if the tile can be placed in all orientations.
-				// To keep the ui rep. same as the model rep., always rotate
-				// enough to bring back to initial position (4 times).
-				for (int k = 0; k < 4; k++) {
-					canPlaceTile |= isTilePosValid(tile, j, i);
-					tile.rotateClockwise();
-				}
+		return canPlaceTile(tile.getPrototype());
+	}
+
+	/**
+	 * Find all of the legal placements of a tile. Only the frontier (the free
+	 * positions next to placed tiles) is searched, in each orientation of the
+	 * tile. The tile itself is not rotated.
+	 * 
+	 * As any position is legal for the first tile, an empty board returns an
+	 * empty list; see {@link #isEmpty()}.
+	 * 
+	 * @param tile
+	 *            The tile which is to be placed.
+	 * 
+	 * @return An ArrayList of TilePlacement; each a position, along with the
+	 *         orientation the tile must be rotated to.
+	 */
+	public ArrayList<TilePlacement> getLegalPlacements(Tile tile) {
+
+		ArrayList<TilePlacement> placements = new ArrayList<TilePlacement>();
 
-				// Speed things up; return if we already know the answer.
-				if (canPlaceTile) {
-					return canPlaceTile;
+		if (tile == null) {
+			return placements;
+		}
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			for (int rotation = 0; rotation < 4; rotation++) {
+
+				if (fitsSlot(tile, slot, rotation)) {
+
+					long position = slotPositions[slot];
+					int orientation = (tile.getOrientation() + rotation) % 4;
+
+					placements.add(new TilePlacement(PositionMap
+							.unpackX(position), PositionMap.unpackY(position),
+							orientation));
 				}
 			}
 		}
 
-		return canPlaceTile;
+		return placements;
 	}
 
 	/**
@@ -112,8 +504,9 @@ public class Board {
 	 * There are three separate conditions which have to be met. The first is
 	 * that the position for tile placement must not already be occupied by a
 	 * tile. Secondly, there must be at least one adjacent tile on either the
-	 * top, bottom, left, or right of the placement position. Lastly, the sides
-	 * of the tile to be placed must match with any adjacent tile sides.
+	 * top, bottom, left, or right of the placement position. Both of these are
+	 * true exactly when the position is on the frontier. Lastly, the sides of
+	 * the tile to be placed must match with any adjacent tile sides.
 	 * 
 	 * Alternatively, the tile must be the first to be placed on the board.
 	 * 
@@ -128,46 +521,13 @@ public class Board {
 	 */
 	private boolean isTilePosValid(Tile tile, int xBoard, int yBoard) {
 
-		// Check that there is no tile in the specified position.
-		boolean free = (gameBoard[yBoard][xBoard] == null);
-
-		// Check that there is an adjacent tile wrt/ the specified position.
-		Tile top = gameBoard[yBoard - 1][xBoard];
-		Tile bottom = gameBoard[yBoard + 1][xBoard];
-		Tile right = gameBoard[yBoard][xBoard + 1];
-		Tile left = gameBoard[yBoard][xBoard - 1];
-
-		boolean adjacent = (top != null) || (bottom != null) || (right != null)
-				|| (left != null);
-
-		// Check that the adjacent tiles sides' match.
-		boolean topMatches = (top == null);
-		boolean bottomMatches = (bottom == null);
-		boolean rightMatches = (right == null);
-		boolean leftMatches = (left == null);
-
-		if (top != null && Arrays.deepEquals(top.getBottom(), tile.getTop())) {
-			topMatches = true;
-		}
-
-		if (bottom != null
-				&& Arrays.deepEquals(bottom.getTop(), tile.getBottom())) {
-			bottomMatches = true;
-		}
-
-		if (right != null
-				&& Arrays.deepEquals(right.getLeft(), tile.getRight())) {
-			rightMatches = true;
-		}
-
-		if (left != null && Arrays.deepEquals(left.getRight(), tile.getLeft())) {
-			leftMatches = true;
+		if (isBoardEmpty) {
+			return true;
 		}
 
-		boolean sidesMatch = topMatches && bottomMatches && rightMatches
-				&& leftMatches;
+		int slot = frontier.get(xBoard, yBoard);
 
-		return (free && adjacent && sidesMatch) || isBoardEmpty;
+		return slot >= 0 && fitsSlot(tile, slot, 0);
 	}
 
 	/**
@@ -193,8 +553,9 @@ public class Board {
 			int yTile) {
 
 		// Don't allow a player to play on a 'null' tiletype.
-		if (gameBoard[yBoard][xBoard] == null
-				|| gameBoard[yBoard][xBoard].getTileType(xTile, yTile) == null) {
+		Tile tile = getTile(xBoard, yBoard);
+
+		if (tile == null || tile.getTileType(xTile, yTile) == null) {
 			return 1;
 		}
 
@@ -219,7 +580,7 @@ public class Board {
 
                     meeplePosition = new BoardPosition(xBoard, yBoard, xTile,
                             yTile);
-                    meeplePlacement.put(meeple, meeplePosition);
+                    addMeeple(meeple, meeplePosition);
 
                     return 0;
                 }
@@ -229,6 +590,32 @@ public class Board {
 		return 1;
 	}
 
+	/**
+	 * Put a meeple on the game board, claiming the feature at its position.
+	 * 
+	 * @param meeple
+	 *            The meeple to place.
+	 * @param meeplePosition
+	 *            The position of the meeple; on a tile which has been placed.
+	 */
+	private void addMeeple(Meeple meeple, BoardPosition meeplePosition) {
+
+		int xBoard = meeplePosition.xBoard;
+		int yBoard = meeplePosition.yBoard;
+		int xTile = meeplePosition.xTile;
+		int yTile = meeplePosition.yTile;
+
+		meeplePlacement.put(meeple, meeplePosition);
+
+		meepleIndices.put(meepleKey(xBoard, yBoard, xTile, yTile),
+				placedMeeples.size());
+		placedMeeples.add(meeple);
+
+		int segment = getSegment(xBoard, yBoard, xTile, yTile);
+		features.addMeeple(segment, meeple);
+		features.touch(segment);
+	}
+
 	/**
 	 * Remove a player's meeples from the game board, returning their positions.
 	 * 
@@ -245,14 +632,77 @@ public class Board {
         for (Meeple meeple : player.getMeeples()) {
 
             if (meeple != null) {
-                meeplePositions.add(meeplePlacement.get(meeple));
-                meeplePlacement.remove(meeple);
+                meeplePositions.add(removeMeeple(meeple));
             }
         }
 
 		return meeplePositions;
 	}
 
+	/**
+	 * Take a meeple off of the game board, releasing its claim on the feature
+	 * it was placed on.
+	 * 
+	 * @param meeple
+	 *            The meeple to remove.
+	 * 
+	 * @return The position the meeple was removed from, or null if it was not
+	 *         on the game board.
+	 */
+	private BoardPosition removeMeeple(Meeple meeple) {
+
+		BoardPosition meeplePosition = meeplePlacement.remove(meeple);
+
+		if (meeplePosition != null) {
+			int segment = getSegment(meeplePosition.xBoard,
+					meeplePosition.yBoard, meeplePosition.xTile,
+					meeplePosition.yTile);
+			features.removeMeeple(segment, meeple);
+
+			int index = meepleIndices.remove(meepleKey(meeplePosition.xBoard,
+					meeplePosition.yBoard, meeplePosition.xTile,
+					meeplePosition.yTile));
+
+			// Fill the gap with the last placed meeple, and re-index it.
+			Meeple last = placedMeeples.remove(placedMeeples.size() - 1);
+
+			if (index < placedMeeples.size()) {
+
+				BoardPosition lastPosition = meeplePlacement.get(last);
+
+				placedMeeples.set(index, last);
+				meepleIndices.put(meepleKey(lastPosition.xBoard,
+						lastPosition.yBoard, lastPosition.xTile,
+						lastPosition.yTile), index);
+			}
+		}
+
+		return meeplePosition;
+	}
+
+	/**
+	 * Pack a tile position on the board into a key for the meeple index. The
+	 * key is made from the placement index of the tile and the tile position,
+	 * so it is only valid for positions on placed tiles.
+	 * 
+	 * @return The key, or -1 if there is no tile at the board position.
+	 */
+	private long meepleKey(int xBoard, int yBoard, int xTile, int yTile) {
+
+		int tileIndex = tileIndices.get(xBoard, yBoard);
+
+		if (tileIndex < 0 || xTile < 0 || yTile < 0 || xTile >= Tile.tileSize
+				|| yTile >= Tile.tileSize) {
+			return -1;
+		}
+
+		return meepleKey(tileIndex, xTile, yTile);
+	}
+
+	private static long meepleKey(int tileIndex, int xTile, int yTile) {
+		return ((long) tileIndex << 6) | (yTile * Tile.tileSize + xTile);
+	}
+
 	/**
 	 * Find the number of meeples which are in play for a player.
 	 * 
@@ -277,123 +727,76 @@ public class Board {
 
 	/**
 	 * This function returns whether a meeple may be placed on the game board.
-	 * This function uses the method
-	 * {@link #isNewFeatureRecursive(HashSet, HashSet)} to search the game board
-	 * & contained tiles for any meeples which may have already claimed the
-	 * terrain/feature.
+	 * The feature graph is used to look up the feature which contains the
+	 * position, and whether any meeples have already claimed it.
 	 * 
 	 * @param xBoard
-	 *            The x board position to start the search at.
+	 *            The x board position to check.
 	 * @param yBoard
-	 *            The y board position to start the search at.
+	 *            The y board position to check.
 	 * @param xTile
-	 *            The x tile position to start the search at.
+	 *            The x tile position to check.
 	 * @param yTile
-	 *            The y tile position to start the search at.
+	 *            The y tile position to check.
 	 * 
 	 * @return A boolean indicating whether the terrain is free to be claimed.
 	 */
 	private boolean isNewFeature(int xBoard, int yBoard, int xTile, int yTile) {
 
-		// Hold searched tile positions so we don't search any positions twice.
-		HashSet<BoardPosition> searched = new HashSet<BoardPosition>();
-		HashSet<BoardPosition> toSearch = new HashSet<BoardPosition>();
+		int segment = getSegment(xBoard, yBoard, xTile, yTile);
 
-		// Create the starting position.
-		BoardPosition boardPosition;
-		boardPosition = new BoardPosition(xBoard, yBoard, xTile, yTile);
-
-		toSearch.add(boardPosition);
+		// Can't place a meeple on a tile which doesn't exist!
+		if (segment < 0) {
+			return false;
+		}
 
-		// Do a recursive search on all adjacent cells for a meeple.
-		return isNewFeatureRecursive(searched, toSearch);
+		return !features.hasMeeples(segment);
 	}
 
 	/**
-	 * This function returns whether a meeple may be placed on the game board.
+	 * Find where a meeple could claim each feature of a placed tile which no
+	 * meeple has claimed; one position on each, as near the center of the
+	 * tile as it can be.
 	 * 
-	 * @param searched
-	 *            A HashSet containing any searched tiles.
-	 * @param toSearch
-	 *            A HashSet containing any tiles to be searched.
+	 * @param xBoard
+	 *            The x position of the tile on the board.
+	 * @param yBoard
+	 *            The y position of the tile on the board.
 	 * 
-	 * @return A boolean indicating whether the terrain is free to be claimed.
+	 * @return An ArrayList of BoardPosition; empty if there is no tile there.
 	 */
-	private boolean isNewFeatureRecursive(HashSet<BoardPosition> searched,
-			HashSet<BoardPosition> toSearch) {
+	public ArrayList<BoardPosition> getMeeplePlacements(int xBoard, int yBoard) {
 
-		// Take a position from the toSearch map.
-		Iterator<BoardPosition> toSearchIterator = toSearch.iterator();
-		BoardPosition boardPosition;
+		ArrayList<BoardPosition> positions = new ArrayList<BoardPosition>();
+		ArrayList<Integer> segments = new ArrayList<Integer>();
+		int center = Tile.tileSize / 2;
 
-		if (toSearchIterator.hasNext()) {
-			boardPosition = toSearchIterator.next();
-		} else {
-			return false;
-		}
+		// Work outwards from the center of the tile.
+		for (int distance = 0; distance <= center; distance++) {
+			for (int yTile = 0; yTile < Tile.tileSize; yTile++) {
+				for (int xTile = 0; xTile < Tile.tileSize; xTile++) {
 
-		int xBoard = boardPosition.xBoard;
-		int yBoard = boardPosition.yBoard;
-		int xTile = boardPosition.xTile;
-		int yTile = boardPosition.yTile;
-
-		Tile currentTile = gameBoard[yBoard][xBoard];
-
-		// Can't place a meeple on a tile which doesn't exist!
-		if (currentTile == null) {
-			return false;
-		}
-
-		// Search the position & add it to searched map.
-		// If there is a meeple on the feature then it isn't a new feature.
-		if (getMeeple(xBoard, yBoard, xTile, yTile) == null) {
-			toSearch.remove(boardPosition);
-			searched.add(boardPosition);
-		} else {
-			return false;
-		}
-
-		// Add valid neighbors of position to toSearch map.
-		// A neighbor is valid if it is in neither map,
-		// and is of the same tile type.
-		TileType currentTileType = currentTile.getTileType(xTile, yTile);
-
-		// Add to an array. And run through adding each to toSearch.
-		BoardPosition[] neighborTiles = getTileNeighbors(xBoard, yBoard, xTile,
-				yTile);
-
-        for (BoardPosition neighborTile : neighborTiles) {
-
-            // Check the tile is not null.
-            Tile tile = gameBoard[neighborTile.yBoard][neighborTile.xBoard];
-
-            if (tile != null) {
-
-                // Check that the tile has the same tile type.
-                TileType tileType = tile.getTileType(neighborTile.xTile,
-                        neighborTile.yTile);
+					if (Math.max(Math.abs(xTile - center),
+							Math.abs(yTile - center)) != distance) {
+						continue;
+					}
 
-                if (tileType == currentTileType) {
+					int segment = getSegment(xBoard, yBoard, xTile, yTile);
 
-                    BoardPosition toAdd = new BoardPosition(
-                            neighborTile.xBoard, neighborTile.yBoard,
-                            neighborTile.xTile, neighborTile.yTile);
+					if (segment >= 0 && !segments.contains(segment)) {
 
-                    // Check the tile is not already in searched or toSearch.
-                    if (!toSearch.contains(toAdd) && !searched.contains(toAdd)) {
-                        toSearch.add(toAdd);
-                    }
-                }
-            }
-        }
+						segments.add(segment);
 
-		// If toSearch is empty then we are done. We have found that this is
-		// indeed a new feature.
-		if (toSearch.isEmpty()) {
-			return true;
+						if (!features.hasMeeples(segment)) {
+							positions.add(new BoardPosition(xBoard, yBoard,
+									xTile, yTile));
+						}
+					}
+				}
+			}
 		}
 
-		return isNewFeatureRecursive(searched, toSearch);
+		return positions;
 	}
 
 	/**
@@ -416,42 +819,15 @@ public class Board {
 	 */
 	public Meeple getMeeple(int xBoard, int yBoard, int xTile, int yTile) {
 
-        for (Meeple meeple : meeplePlacement.keySet()) {
-
-            BoardPosition meeplePosition = meeplePlacement.get(meeple);
-
-            if (meeplePosition != null && meeplePosition.xBoard == xBoard
-                    && meeplePosition.yBoard == yBoard
-                    && meeplePosition.xTile == xTile
-                    && meeplePosition.yTile == yTile) {
-
-                return meeple;
-            }
-        }
-
-		return null;
-	}
+		long key = meepleKey(xBoard, yBoard, xTile, yTile);
 
-	/**
-	 * Get the x & y position of a tile on the game board.
-	 * 
-	 * @param tile
-	 *            The tile to search for on the game board.
-	 * 
-	 * @return The position of the tile, or null if it was not found.
-	 */
-	private Point getTilePosition(Tile tile) {
-
-		for (int i = 0; i < gameBoard.length; i++) {
-			for (int j = 0; j < gameBoard[i].length; j++) {
-				if (gameBoard[i][j] != null && gameBoard[i][j] == tile) {
-					return new Point(j, i);
-				}
-			}
+		if (key < 0) {
+			return null;
 		}
 
-		// The tile is not placed on the board.
-		return null;
+		int index = meepleIndices.get(key);
+
+		return (index < 0) ? null : placedMeeples.get(index);
 	}
 
 	/**
@@ -474,56 +850,39 @@ public class Board {
 			boolean hasGameEnded) {
 
 		ArrayList<BoardPosition> removedMeeples = new ArrayList<BoardPosition>();
-		Iterator<Meeple> iter = meeplePlacement.keySet().iterator();
+		ArrayList<Meeple> meeples = new ArrayList<Meeple>(placedMeeples);
 
 		// For each meeple which is placed we check to see if it is placed on
 		// a cloister. Then depending on this and the game state we score.
-		while (iter.hasNext()) {
+		for (Meeple meeple : meeples) {
 
-			Meeple meeple = iter.next();
 			BoardPosition meeplePosition = meeplePlacement.get(meeple);
 
 			// Check to see if it is attached to a cloister.
-			Tile tile = gameBoard[meeplePosition.yBoard][meeplePosition.xBoard];
+			int xBoard = meeplePosition.xBoard;
+			int yBoard = meeplePosition.yBoard;
+			Tile tile = getTile(xBoard, yBoard);
 			TileType tileType = tile.getTileType(meeplePosition.xTile,
 					meeplePosition.yTile);
 
 			// If it is attached to a cloister.
 			if (tileType == TileType.CLOISTER) {
-				// If all 8 neighbor tiles are not null.
-				Point tilePosition = getTilePosition(tile);
-				int xIile = tilePosition.x;
-				int yTile = tilePosition.y;
-
-				Tile nTile = gameBoard[xIile][yTile - 1];
-				Tile neTile = gameBoard[xIile + 1][yTile - 1];
-				Tile eTile = gameBoard[xIile + 1][yTile];
-				Tile seTile = gameBoard[xIile + 1][yTile + 1];
-				Tile sTile = gameBoard[xIile][yTile + 1];
-				Tile swTile = gameBoard[xIile - 1][yTile + 1];
-				Tile wTile = gameBoard[xIile - 1][yTile];
-				Tile nwTile = gameBoard[xIile - 1][yTile - 1];
-
-				Tile[] neighborTiles = { nTile, neTile, eTile, seTile, sTile,
-						swTile, wTile, nwTile };
 
+				// Count the number of placed (non-null) neighbor tiles.
 				int numNeighborTiles = 0;
 
-				// Count the number of placed (non-null) neighbor tiles.
-                for (Tile neighborTile : neighborTiles) {
-                    if (neighborTile != null) {
-                        numNeighborTiles++;
-                    }
-                }
+				for (int y = yBoard - 1; y <= yBoard + 1; y++) {
+					for (int x = xBoard - 1; x <= xBoard + 1; x++) {
+						if ((x != xBoard || y != yBoard) && getTile(x, y) != null) {
+							numNeighborTiles++;
+						}
+					}
+				}
 
 				// Score if the game has ended, or score if the game
 				// is still being played and the cloister is complete.
 				if (hasGameEnded || (!hasGameEnded && numNeighborTiles == 8)) {
 
-					// TODO something is wrong;
-					// after all 8 neighbor tiles were placed the meeple wasn't
-					// removed. however end-game scoring removed it.
-
 					// Find out which player owns the meeple.
 					Player scorer = null;
 
@@ -538,12 +897,7 @@ public class Board {
 					scorer.setScore(playerScore + numNeighborTiles + 1);
 
 					// And remove the meeple from the tile.
-					removedMeeples.add(meeplePlacement.get(meeple));
-					meeplePlacement.remove(meeple);
-
-					// Since we are iterating through meeplePlacement
-					// we need to refresh it when it's altered.
-					iter = meeplePlacement.keySet().iterator();
+					removedMeeples.add(removeMeeple(meeple));
 				}
 			}
 		}
@@ -651,17 +1005,15 @@ public class Board {
 	}
 
 	/**
-	 * Generic scoring function used to score roads & cities. The function runs
-	 * through each meeple, determining if each is on a tile of the specified
-	 * type. If so, another helper function
-	 * {@link #genericScoreRecursive(HashSet, HashSet, ArrayList, Object[])}
-	 * assists by finding all the meeples on that feature, if the feature is
-	 * complete, and the number of tiles taken by the feature. This information
-	 * is then used to complete scoring. Scoring is done by finding the
-	 * player(s) which has the maximum number of meeples on the feature and then
-	 * giving them the points. Meeples are also returned to their owners, and
-	 * different scoring types are accounted for through a score multiplier
-	 * (cities during the game).
+	 * Generic scoring function used to score roads & cities. During the game
+	 * only the features which have changed since the last scoring pass can
+	 * have been completed, so the feature graph is asked for these and each
+	 * complete, claimed feature is scored. At the end of the game every
+	 * claimed feature of the type is scored, complete or not. Scoring is done
+	 * by finding the player(s) which has the maximum number of meeples on the
+	 * feature and then giving them the points. Meeples are also returned to
+	 * their owners, and different scoring types are accounted for through a
+	 * score multiplier (cities during the game).
 	 * 
 	 * @param players
 	 *            An array of the players. This is used for scoring purposes.
@@ -676,91 +1028,43 @@ public class Board {
 	private ArrayList<BoardPosition> genericScore(ArrayList<Player> players,
 			TileType scoreTileType, boolean hasGameEnded) {
 
-		// Initialize the variables which will hold information about the
-		// specific feature. These are reset for each feature.
-		int nTiles;
-		boolean nullTileFound;
-		HashSet<BoardPosition> searched;
-		HashSet<BoardPosition> toSearch;
-		ArrayList<Meeple> meeplesOnFeature;
-
-		// And other variables.
 		ArrayList<BoardPosition> removedMeeples = new ArrayList<BoardPosition>();
 
-		// Run through all the placed meeples.
-		Iterator<Meeple> iter = meeplePlacement.keySet().iterator();
-
-		while (iter.hasNext()) {
-
-			// Reset the variables which hold info about specific features.
-			nTiles = 0;
-			nullTileFound = false;
-			searched = new HashSet<BoardPosition>();
-			toSearch = new HashSet<BoardPosition>();
-			meeplesOnFeature = new ArrayList<Meeple>();
-			Object[] featureProperties = { nTiles, nullTileFound };
-
-			// And now the real work begins.
-			BoardPosition meeplePosition = meeplePlacement.get(iter.next());
-
-			// Check to see if it is attached to the correct tile type.
-			Tile tile = gameBoard[meeplePosition.yBoard][meeplePosition.xBoard];
-			TileType tileType = tile.getTileType(meeplePosition.xTile,
-					meeplePosition.yTile);
+		// Score multiplier depends on the feature.
+		// The base multiplier is 1.
+		int multiplier = 1;
 
-			// If it is attached to the correct tile type.
-			if (tileType == scoreTileType) {
-
-				// Init search.
-				Point tilePosition = getTilePosition(tile);
-				BoardPosition boardPosition = new BoardPosition(tilePosition.x,
-						tilePosition.y, meeplePosition.xTile,
-						meeplePosition.yTile);
-
-				toSearch.add(boardPosition);
-
-				// Call our search.
-				genericScoreRecursive(searched, toSearch, meeplesOnFeature,
-						featureProperties);
-
-				// Recover tracker variables from object array.
-				nTiles = (Integer) featureProperties[0];
-				nullTileFound = (Boolean) featureProperties[1];
-
-				// Score multiplier depends on the feature.
-				// The base multiplier is 1.
-				int multiplier = 1;
+		// Each city tile is worth 2 points during the game.
+		if (!hasGameEnded && scoreTileType == TileType.CITY) {
+			multiplier = 2;
+		}
 
-				// Each city tile is worth 2 points during the game.
-				if (!hasGameEnded && scoreTileType == TileType.CITY) {
-					multiplier = 2;
-				}
+		// Run through the features which have changed. These are always taken
+		// so that they don't build up, even if the game has ended.
+		int segment;
 
-				// We are scoring if the feature is complete and
-				// the game is not over, or if the game is over.
-				if (hasGameEnded || (!nullTileFound && !hasGameEnded)) {
+		while ((segment = features.pollTouched(scoreTileType)) >= 0) {
 
-					ArrayList<Player> scoringPlayers = getFeatureScorers(
-							players, meeplesOnFeature);
+			if (!hasGameEnded && features.isComplete(segment)) {
+				scoreFeature(players, segment, multiplier, removedMeeples);
+			}
+		}
 
-					// Remove the meeples from the board.
-                    for (Meeple meeple : meeplesOnFeature) {
+		if (hasGameEnded) {
 
-                        removedMeeples.add(meeplePlacement.get(meeple));
-                        meeplePlacement.remove(meeple);
-                    }
+			// Take a copy of the placed meeples, as scoring removes them.
+			ArrayList<BoardPosition> meeplePositions;
+			meeplePositions = new ArrayList<BoardPosition>(
+					meeplePlacement.values());
 
-					// Since we are iterating through meeplePlacement
-					// we need to refresh it when it's altered.
-					iter = meeplePlacement.keySet().iterator();
+			for (BoardPosition meeplePosition : meeplePositions) {
 
-					// Recalculate scores.
-                    for (Player scoringPlayer : scoringPlayers) {
+				segment = getSegment(meeplePosition.xBoard,
+						meeplePosition.yBoard, meeplePosition.xTile,
+						meeplePosition.yTile);
 
-                        int score = scoringPlayer.getScore();
-                        int newScore = (nTiles * multiplier) + score;
-                        scoringPlayer.setScore(newScore);
-                    }
+				if (features.getType(segment) == scoreTileType) {
+					scoreFeature(players, segment, multiplier, removedMeeples);
 				}
 			}
 		}
@@ -769,133 +1073,54 @@ public class Board {
 	}
 
 	/**
-	 * This method calculates the number of tiles held by a meeple. This method
-	 * is used for the score calculation for both roads and cities in game and
-	 * at the end of a game. It is to be called by one of the main score
-	 * calculation methods which will pass in the proper arguments. A similar
-	 * technique to what is used in
-	 * {@link #isNewFeatureRecursive(HashSet, HashSet)} is utilized for the main
-	 * tile search. While the search is occurring there are several separate
-	 * data items kept track of. These include: <li>A list of meeples which are
-	 * located on the same feature. <li>The total number of tiles which comprise
-	 * the feature. <li>Whether we have found any adjacent tiles which are null;
-	 * this determines if the feature is incomplete.
+	 * Score a single feature from the feature graph. The player(s) with the
+	 * most meeples on the feature receive a number of points based on the
+	 * number of tiles in the feature, and all of the meeples on the feature are
+	 * removed from the board.
 	 * 
-	 * @param searched
-	 *            A HashSet of Strings of board & tile coordinates which have
-	 *            been used.
-	 * @param toSearch
-	 *            A HashSet of Strings of board & tile coordinates which are to
-	 *            be searched.
-	 * @param meeplesOnFeature
-	 *            An ArrayList of Meeple to be filled by the meeples which are
-	 *            found on the feature.
-	 * @param featureProperties
-	 *            An array of objects containing the number of tiles which
-	 *            comprise the feature, and a boolean indicating the presence of
-	 *            a null tile.
+	 * @param players
+	 *            An array of the players. This is used for scoring purposes.
+	 * @param segment
+	 *            Any segment of the feature to score.
+	 * @param multiplier
+	 *            The number of points each tile in the feature is worth.
+	 * @param removedMeeples
+	 *            A list to add the positions of removed meeples to.
 	 */
-	private void genericScoreRecursive(HashSet<BoardPosition> searched,
-			HashSet<BoardPosition> toSearch,
-			ArrayList<Meeple> meeplesOnFeature, Object[] featureProperties) {
-
-		// Take a position from the toSearch map to search.
-		Iterator<BoardPosition> toSearchIterator = toSearch.iterator();
-		BoardPosition boardPosition;
+	private void scoreFeature(ArrayList<Player> players, int segment,
+			int multiplier, ArrayList<BoardPosition> removedMeeples) {
 
-		if (toSearchIterator.hasNext()) {
-			boardPosition = toSearchIterator.next();
-		} else {
+		if (!features.hasMeeples(segment)) {
 			return;
 		}
 
-		int xBoard = boardPosition.xBoard;
-		int yBoard = boardPosition.yBoard;
-		int xTile = boardPosition.xTile;
-		int yTile = boardPosition.yTile;
-
-		Tile currentTile = gameBoard[yBoard][xBoard];
+		ArrayList<Meeple> meeplesOnFeature = new ArrayList<Meeple>(
+				features.getMeeples(segment));
+		ArrayList<Player> scoringPlayers = getFeatureScorers(players,
+				meeplesOnFeature);
 
-		// Search the position & add it to searched map.
-		Meeple meeple = getMeeple(xBoard, yBoard, xTile, yTile);
+		int nTiles = features.getNumTiles(segment);
 
-		if (meeple != null) {
-			// Add the meeple on the tile to our list.
-			meeplesOnFeature.add(meeple);
+		// Remove the meeples from the board.
+		for (Meeple meeple : meeplesOnFeature) {
+			removedMeeples.add(removeMeeple(meeple));
 		}
 
-		toSearch.remove(boardPosition);
-		searched.add(boardPosition);
-
-		// Add valid neighbors of position to toSearch map.
-		// A neighbor is valid if it is in neither map,
-		// and is of the same tile type.
-		TileType currentTileType = currentTile.getTileType(xTile, yTile);
-
-		// Add to an array. And run through adding each to toSearch.
-		BoardPosition[] neighborTiles = getTileNeighbors(xBoard, yBoard, xTile,
-				yTile);
-
-        for (BoardPosition neighborTile : neighborTiles) {
-
-            // Check the tile is not null.
-            Tile tile = gameBoard[neighborTile.yBoard][neighborTile.xBoard];
-
-            if (tile != null) {
-
-                // Check that the tile has the same tile type.
-                TileType tileType = tile.getTileType(neighborTile.xTile,
-                        neighborTile.yTile);
-
-                if (tileType == currentTileType) {
-
-                    BoardPosition toAdd = new BoardPosition(
-                            neighborTile.xBoard, neighborTile.yBoard,
-                            neighborTile.xTile, neighborTile.yTile);
-
-                    // Check the tile is not already in searched or toSearch.
-                    if (!toSearch.contains(toAdd) && !searched.contains(toAdd)) {
-                        toSearch.add(toAdd);
-                    }
-                }
-
-            } else {
-                // If we have a neighboring tile which is null then the
-                // feature is not complete.
-                featureProperties[1] = true;
-            }
-        }
-
-		// If there are still tiles in toSearch then continue searching.
-		if (!toSearch.isEmpty()) {
-			genericScoreRecursive(searched, toSearch, meeplesOnFeature,
-                    featureProperties);
-        } else {
-            // Get the number of tiles searched.
-            HashSet<BoardPosition> searchedTiles = new HashSet<BoardPosition>();
-
-            // Filter out multiple tiles by excluding the xTile & yTile values.
-            for (BoardPosition searchedPosition : searched) {
-
-                BoardPosition tilePosition = new BoardPosition(
-                        searchedPosition.xBoard,
-                        searchedPosition.yBoard, 0, 0);
+		// Recalculate scores.
+		for (Player scoringPlayer : scoringPlayers) {
 
-                searchedTiles.add(tilePosition);
-            }
-
-            // Set the number of tiles searched.
-            featureProperties[0] = searchedTiles.size();
+			int score = scoringPlayer.getScore();
+			int newScore = (nTiles * multiplier) + score;
+			scoringPlayer.setScore(newScore);
 		}
 	}
 
 	/**
-	 * This function scores the fields at the end of the game. It uses
-	 * {@link #fieldScoreRecursive(HashSet, HashSet, ArrayList, ArrayList, ArrayList)}
-	 * and {@link #getCompletedCities()}. This function relies heavily on the
-	 * aforementioned helper functions and does not do much else besides set up
-	 * the variables to be passed to the helpers, recalculate the player scores,
-	 * and meeple removal after scoring.
+	 * This function scores the fields at the end of the game. Each field
+	 * which has been claimed is searched using the flood fill, recording both
+	 * any other meeples on it, and which completed cities (see
+	 * {@link #getCompletedCities()}) are adjacent. The gathered info is used to
+	 * recalculate scores & return meeples to players.
 	 * 
 	 * @param players
 	 *            An array of the players. Used for scoring calculations.
@@ -903,96 +1128,94 @@ public class Board {
 	 * @return an ArrayList of BoardPosition which represent meeples that have
 	 *         been removed from the board.
 	 */
-	// Basic overview:
-	//
-	// Check all meeples for claim to a field,
-	// Once one is found do a search of the whole field to record both
-	// any other meeples on it, and which completed cities are adjacent.
-	// Use the gathered info to recalculate scores & return meeples to players.
-	//
-	// To do this:
-	//
-	// 1. Use the flooding algorithm altered to keep track of completed cities.
-	// It will return a list of 'cities', each of which will be a set of
-	// BoardPosition objects which will hold the xBoard, yBoard, xTile, yTile.
-	//
-	// 2. Use another flooding algorithm to detect if there is an adjacent
-	// castle to the field being explored. If there is, then check if it is a
-	// completed castle and add points, & the castle for future checking.
-	//
 	public ArrayList<BoardPosition> scoreFields(ArrayList<Player> players) {
 
-		// Initialize the variables which will hold information about the
-		// specific feature. These are reset for each feature.
-		HashSet<BoardPosition> searched;
-		HashSet<BoardPosition> toSearch;
-		ArrayList<Meeple> meeplesOnFeature;
-		ArrayList<HashSet<BoardPosition>> adjacentCities;
-
-		// And other variables.
 		ArrayList<BoardPosition> removedMeeples = new ArrayList<BoardPosition>();
-		ArrayList<HashSet<BoardPosition>> completedCities = getCompletedCities();
+		int[] cities = getCompletedCities();
+
+		// The last field each city was found to be adjacent to, so that each
+		// city is only counted once per field.
+		int[] cityFields = new int[cities.length];
+		int field = 0;
 
 		// Run through all the placed meeples.
-		Iterator<Meeple> iter = meeplePlacement.keySet().iterator();
+		ArrayList<Meeple> meeples = new ArrayList<Meeple>(placedMeeples);
 
-		while (iter.hasNext()) {
+		for (Meeple meeple : meeples) {
 
-			// Reset the variables which hold info about specific features.
-			searched = new HashSet<BoardPosition>();
-			toSearch = new HashSet<BoardPosition>();
-			meeplesOnFeature = new ArrayList<Meeple>();
-			adjacentCities = new ArrayList<HashSet<BoardPosition>>();
+			BoardPosition meeplePosition = meeplePlacement.get(meeple);
 
-			// And now the real work begins.
-			BoardPosition meeplePosition = meeplePlacement.get(iter.next());
+			// The meeple may have been scored along with an earlier field.
+			if (meeplePosition == null) {
+				continue;
+			}
 
-			Tile tile = gameBoard[meeplePosition.yBoard][meeplePosition.xBoard];
-			TileType tileType = tile.getTileType(meeplePosition.xTile,
+			int start = FloodFill.cell(tileIndices.get(meeplePosition.xBoard,
+					meeplePosition.yBoard), meeplePosition.xTile,
 					meeplePosition.yTile);
 
-			if (tileType == TileType.FIELD) {
+			if (floodFill.getTileType(start) != TileType.FIELD) {
+				continue;
+			}
 
-				// Init search.
-				Point tilePosition = getTilePosition(tile);
-				BoardPosition boardPosition = new BoardPosition(tilePosition.x,
-						tilePosition.y, meeplePosition.xTile,
-						meeplePosition.yTile);
+			// Search the field.
+			ArrayList<Meeple> meeplesOnFeature = new ArrayList<Meeple>();
+			int nCities = 0;
+			int cell;
 
-				toSearch.add(boardPosition);
+			field++;
+			floodFill.start(start);
 
-				// Call the search.
-				fieldScoreRecursive(searched, toSearch, meeplesOnFeature,
-						completedCities, adjacentCities);
+			while ((cell = floodFill.next()) >= 0) {
 
-				// Recover the tracker variables.
-				// Only primitives need to be recovered.
-				int nCities = adjacentCities.size();
+				Meeple meepleOnCell = getMeeple(cell);
 
-				// Score multiplier.
-				int multiplier = 3;
+				if (meepleOnCell != null) {
+					meeplesOnFeature.add(meepleOnCell);
+				}
 
-				ArrayList<Player> scoringPlayers = getFeatureScorers(players,
-						meeplesOnFeature);
+				for (int direction = 0; direction < 4; direction++) {
 
-				// Remove the meeples from the board.
-                for (Meeple meepleOnFeature : meeplesOnFeature) {
+					int neighbor = floodFill.getNeighbor(cell, direction);
 
-                    removedMeeples.add(meeplePlacement.get(meepleOnFeature));
-                    meeplePlacement.remove(meepleOnFeature);
-                }
+					if (neighbor < 0) {
+						continue;
+					}
 
-				// Since we are iterating through meeplePlacement
-				// we need to refresh it when it's altered.
-				iter = meeplePlacement.keySet().iterator();
+					TileType tileType = floodFill.getTileType(neighbor);
 
-				// Recalculate scores.
-                for (Player scoringPlayer : scoringPlayers) {
+					if (tileType == TileType.FIELD) {
+						floodFill.visit(neighbor);
 
-                    int score = scoringPlayer.getScore();
-                    int newScore = (nCities * multiplier) + score;
-                    scoringPlayer.setScore(newScore);
-                }
+					} else if (tileType == TileType.CITY) {
+
+						int city = cities[neighbor];
+
+						if (city >= 0 && cityFields[city] != field) {
+							cityFields[city] = field;
+							nCities++;
+						}
+					}
+				}
+			}
+
+			// Score multiplier.
+			int multiplier = 3;
+
+			ArrayList<Player> scoringPlayers = getFeatureScorers(players,
+					meeplesOnFeature);
+
+			// Remove the meeples from the board.
+			for (Meeple meepleOnFeature : meeplesOnFeature) {
+				removedMeeples.add(removeMeeple(meepleOnFeature));
+			}
+
+			// Recalculate scores.
+			for (Player scoringPlayer : scoringPlayers) {
+
+				int score = scoringPlayer.getScore();
+				int newScore = (nCities * multiplier) + score;
+				scoringPlayer.setScore(newScore);
 			}
 		}
 
@@ -1000,378 +1223,287 @@ public class Board {
 	}
 
 	/**
-	 * This function returns a list of the completed cities which exist. This is
-	 * the first of two helper functions which are used by
-	 * {@link #scoreFields(ArrayList)}. The other is the
-     * {@link #fieldScoreRecursive(HashSet, HashSet, ArrayList, ArrayList,
-     * ArrayList)}.
+	 * This function finds the completed cities which exist, for use by
+	 * {@link #scoreFields(ArrayList)}. Each city on the board is searched once
+	 * using the flood fill; a city is incomplete if the search reaches the edge
+	 * of a tile without a neighboring tile.
 	 * 
-	 * It searches through the game board position by position testing if each
-	 * is a city tile. If the position is a city tile and is not already part of
-	 * a completed city, then a new city is recorded using the
-	 * {@link #getCompletedCitiesRecursive(HashSet, HashSet, ArrayList, ArrayList)}
-	 * function. As a result of the method of board search, incomplete cities
-	 * must be recorded during the method and are removed at the end, before the
-	 * final list is returned.
-	 * 
-	 * @return A list of sets of board positions belonging to separate completed
-	 *         cities.
+	 * @return An array with an entry for each flood fill cell. Cells which
+	 *         belong to a completed city hold the number of their city (which
+	 *         is also a cell number), all other cells hold a negative value.
 	 */
-	private ArrayList<HashSet<BoardPosition>> getCompletedCities() {
-
-		// Each HashSet in the ArrayList denotes a city; a collection of
-		// BoardPosition objects which indicate the tile locations which
-		// comprise the city.
-		ArrayList<HashSet<BoardPosition>> cities;
-		cities = new ArrayList<HashSet<BoardPosition>>();
-
-		// Each city which is found to be incomplete is recorded by having an
-		// entry put in incompleteCities specifying the index of the incomplete
-		// city in the cities array.
-		ArrayList<Integer> incompleteCities = new ArrayList<Integer>();
-
-		boolean newCity;
-		HashSet<BoardPosition> searched;
-		HashSet<BoardPosition> toSearch;
-
-		// Run through the whole map; all board tiles and all tile positions.
-		// When we find a city tile type we check if the city it belongs to is
-		// already recorded. If not then we call the recursive search to record
-		// the city.
-		for (int i = 0; i < gameBoard.length; i++) {
-			for (int j = 0; j < gameBoard[i].length; j++) {
-
-				Tile tile = gameBoard[i][j];
-
-				if (tile == null) {
-					continue;
-				}
+	private int[] getCompletedCities() {
 
-				for (int k = 0; k < Tile.tileSize; k++) {
-					for (int l = 0; l < Tile.tileSize; l++) {
-						if (tile.getTileType(l, k) == TileType.CITY) {
+		int[] cities = new int[floodFill.getNumCells()];
+		Arrays.fill(cities, notSearched);
 
-							// Reset flags for testing the next tile position.
-							newCity = true;
+		for (int start = 0; start < cities.length; start++) {
 
-							// Get the current tile board position.
-							BoardPosition currentTile;
-							currentTile = new BoardPosition(j, i, l, k);
+			if (cities[start] != notSearched
+					|| floodFill.getTileType(start) != TileType.CITY) {
+				continue;
+			}
 
-                            for (HashSet<BoardPosition> city : cities) {
-                                if (city.contains(currentTile)) {
-                                    newCity = false;
-                                }
-                            }
+			boolean complete = true;
+			int cell;
 
-							if (newCity) {
-								searched = new HashSet<BoardPosition>();
-								toSearch = new HashSet<BoardPosition>();
+			floodFill.start(start);
 
-								toSearch.add(currentTile);
+			while ((cell = floodFill.next()) >= 0) {
 
-								getCompletedCitiesRecursive(searched, toSearch,
-										cities, incompleteCities);
-							}
-						}
+				for (int direction = 0; direction < 4; direction++) {
+
+					int neighbor = floodFill.getNeighbor(cell, direction);
+
+					if (neighbor < 0) {
+						complete = false;
+					} else if (floodFill.getTileType(neighbor) == TileType.CITY) {
+						floodFill.visit(neighbor);
 					}
 				}
 			}
-		}
 
-		// After the search is completed we will remove the incomplete cities
-		// from the list as they are not used in field scoring.
-		for (int i = incompleteCities.size() - 1; i >= 0; i--) {
-			int cityToRemove = incompleteCities.get(i);
-			cities.remove(cityToRemove);
+			// Record the city on each of its cells.
+			int city = complete ? start : incompleteCity;
+
+			for (int i = 0; i < floodFill.getNumVisited(); i++) {
+				cities[floodFill.getVisited(i)] = city;
+			}
 		}
 
 		return cities;
 	}
 
 	/**
-	 * This function uses recursion to find all board positions of a city. This
-	 * function is similar to
-	 * {@link #genericScoreRecursive(HashSet, HashSet, ArrayList, Object[])} and
-	 * {@link #isNewFeatureRecursive(HashSet, HashSet)} in the way that it
-	 * searches the game board feature. It recursively records a city by finding
-	 * the neighbor tile positions of an initial position (passed in in
-	 * toSearch). If a neighboring tile is found to be null during the search,
-	 * this is also recorded and used by the calling function (which indicates
-	 * an incomplete city). When the search has completed the set of coordinates
-	 * is added to the list of cities.
+	 * Return the meeple on a flood fill cell.
 	 * 
-	 * @param searched
-	 *            A set of previously searched game board coordinates.
-	 * @param toSearch
-	 *            A set of game board coordinates to be searched.
-	 * @param cities
-	 *            A list of sets of coordinates which comprise a city.
-	 * @param incompleteCities
-	 *            A list of integers corresponding to any cities in the 'cities'
-	 *            parameter which are incomplete.
+	 * @return The meeple if one has claimed the cell, null otherwise.
 	 */
-	private void getCompletedCitiesRecursive(HashSet<BoardPosition> searched,
-			HashSet<BoardPosition> toSearch,
-			ArrayList<HashSet<BoardPosition>> cities,
-			ArrayList<Integer> incompleteCities) {
+	private Meeple getMeeple(int cell) {
 
-		// Take a position from the toSearch map to search.
-		Iterator<BoardPosition> toSearchIterator = toSearch.iterator();
-		BoardPosition boardPosition;
-
-		if (toSearchIterator.hasNext()) {
-			boardPosition = toSearchIterator.next();
-		} else {
-			return;
-		}
+		long key = meepleKey(FloodFill.getTileIndex(cell),
+				FloodFill.getXTile(cell), FloodFill.getYTile(cell));
+		int index = meepleIndices.get(key);
 
-		int xBoard = boardPosition.xBoard;
-		int yBoard = boardPosition.yBoard;
-		int xTile = boardPosition.xTile;
-		int yTile = boardPosition.yTile;
+		return (index < 0) ? null : placedMeeples.get(index);
+	}
 
-		Tile currentTile = gameBoard[yBoard][xBoard];
+	/**
+	 * Get the placed tiles, in the order they were placed.
+	 * 
+	 * @return An ArrayList of TilePlacement; the position & orientation of
+	 *         each tile.
+	 */
+	public ArrayList<TilePlacement> getPlacedTiles() {
 
-		toSearch.remove(boardPosition);
-		searched.add(boardPosition);
+		ArrayList<TilePlacement> placed = new ArrayList<TilePlacement>();
 
-		TileType currentTileType = currentTile.getTileType(xTile, yTile);
+		for (int i = 0; i < tiles.size(); i++) {
+			placed.add(new TilePlacement(PositionMap.unpackX(tilePositions[i]),
+					PositionMap.unpackY(tilePositions[i]), tiles.get(i)
+							.getOrientation()));
+		}
 
-		// Add neighbors to an array. And run through adding each to toSearch.
-		BoardPosition[] neighborTiles = getTileNeighbors(xBoard, yBoard, xTile,
-				yTile);
+		return placed;
+	}
 
-		// Add valid neighbors of position to toSearch map.
-		// A neighbor is valid if it is in neither map,
-		// and is of the same tile type.
-        for (BoardPosition neighborTile : neighborTiles) {
-            // Check the tile is not null.
-            Tile tile = gameBoard[neighborTile.yBoard][neighborTile.xBoard];
+	/**
+	 * Get the position of a meeple on the board.
+	 * 
+	 * @return The position, or null if the meeple is not on the board.
+	 */
+	public BoardPosition getMeeplePosition(Meeple meeple) {
+		return meeplePlacement.get(meeple);
+	}
 
-            if (tile != null) {
+	/**
+	 * Make a copy of the board, for a copy of the game (see Game.copy). The
+	 * tile prototypes & shapes are shared; the rest is copied array by array,
+	 * rather than placing the tiles again.
+	 * 
+	 * @param meepleCopies
+	 *            The meeple of the copy for each meeple of the players.
+	 * 
+	 * @return The copy.
+	 */
+	Board copy(Map<Meeple, Meeple> meepleCopies) {
 
-                // Check that the tile has the same tile type.
-                TileType tileType = tile.getTileType(neighborTile.xTile,
-                        neighborTile.yTile);
+		Board copy = new Board();
 
-                if (tileType == currentTileType) {
+		copy.tileIndices = tileIndices.copy();
+		copy.tiles = new ArrayList<Tile>(tiles.size());
 
-                    BoardPosition toAdd = new BoardPosition(
-                            neighborTile.xBoard, neighborTile.yBoard,
-                            neighborTile.xTile, neighborTile.yTile);
+		for (Tile tile : tiles) {
+			copy.tiles.add(new Tile(tile.getHandle()));
+		}
 
-                    // Check the tile is not already in searched or toSearch.
-                    if (!toSearch.contains(toAdd) && !searched.contains(toAdd)) {
-                        toSearch.add(toAdd);
-                    }
-                }
+		copy.tilePositions = Arrays.copyOf(tilePositions,
+				tilePositions.length);
+		copy.isBoardEmpty = isBoardEmpty;
+
+		copy.frontier = frontier.copy();
+		copy.slotPositions = Arrays.copyOf(slotPositions,
+				slotPositions.length);
+		copy.slotEdges = Arrays.copyOf(slotEdges, slotEdges.length);
+		copy.numSlots = numSlots;
+		copy.fittingSlots = Arrays.copyOf(fittingSlots, fittingSlots.length);
+		copy.indexedShapes = Arrays.copyOf(indexedShapes,
+				indexedShapes.length);
+
+		copy.minX = minX;
+		copy.maxX = maxX;
+		copy.minY = minY;
+		copy.maxY = maxY;
+
+		for (Map.Entry<Meeple, BoardPosition> placement : meeplePlacement
+				.entrySet()) {
+			copy.meeplePlacement.put(meepleCopies.get(placement.getKey()),
+					placement.getValue());
+		}
 
-            } else {
-                // If we find a null tile, add the city's index to
-                // incompleteCities.
-                // Do not subtract 1, as the city has yet to be added;
-                // Once the city is added to cities, the index will be correct.
-                if (!incompleteCities.contains(cities.size())) {
-                    incompleteCities.add(cities.size());
-                }
-            }
-        }
+		copy.meepleIndices = meepleIndices.copy();
 
-		// If toSearch is empty, the add searched to cities. Otherwise recurse.
-		if (!toSearch.isEmpty()) {
-			getCompletedCitiesRecursive(searched, toSearch, cities,
-					incompleteCities);
-		} else {
-			cities.add(searched);
+		for (Meeple meeple : placedMeeples) {
+			copy.placedMeeples.add(meepleCopies.get(meeple));
 		}
+
+		copy.features = features.copy(meepleCopies);
+		copy.floodFill = floodFill.copy(copy.tiles);
+
+		return copy;
 	}
 
 	/**
-	 * This function searches through the fields to find all adjacent cities.
-	 * Given board coordinates to start with, this function will search out from
-	 * the position recording any adjacent cities along the way. It also tracks
-	 * any meeples which are on the same feature for scoring by the calling
-	 * function.
-	 * 
-	 * @param searched
-	 *            A set of previously searched game board coordinates.
-	 * @param toSearch
-	 *            A set of game board coordinates to be searched.
-	 * @param meeplesOnFeature
-	 *            A list of meeples which are found on the feature.
-	 * @param allCities
-	 *            A list of all completed cities in the game (sets of
-	 *            coordinates).
-	 * @param adjacentCities
-	 *            A list of the adjacent completed cities to the feature being
-	 *            searched (sets of coordinates).
+	 * Get an upper bound on the length of the board's part of a snapshot.
 	 */
-	private void fieldScoreRecursive(HashSet<BoardPosition> searched,
-			HashSet<BoardPosition> toSearch,
-			ArrayList<Meeple> meeplesOnFeature,
-			ArrayList<HashSet<BoardPosition>> allCities,
-			ArrayList<HashSet<BoardPosition>> adjacentCities) {
-
-		// Take a position from the toSearch map to search.
-		Iterator<BoardPosition> toSearchIterator = toSearch.iterator();
-		BoardPosition boardPosition;
-
-		if (toSearchIterator.hasNext()) {
-			boardPosition = toSearchIterator.next();
-		} else {
-			return;
-		}
+	int getSnapshotLength() {
+		return 3 + 10 * tiles.size() + 12 * placedMeeples.size();
+	}
 
-		int xBoard = boardPosition.xBoard;
-		int yBoard = boardPosition.yBoard;
-		int xTile = boardPosition.xTile;
-		int yTile = boardPosition.yTile;
+	/**
+	 * Write the board to a snapshot (see Game.toSnapshot); each tile's handle
+	 * & position, in the order they were placed, and then the owner & position
+	 * of each meeple, in the order they were placed.
+	 * 
+	 * @param out
+	 *            The buffer to write to.
+	 * @param players
+	 *            The players; a meeple's owner is written as the index of its
+	 *            player, and its index among the player's meeples.
+	 */
+	void writeSnapshot(ByteBuffer out, ArrayList<Player> players) {
 
-		// Search the position & add it to searched map.
-		Meeple meeple = getMeeple(xBoard, yBoard, xTile, yTile);
+		out.putShort((short) tiles.size());
 
-		if (meeple != null) {
-			// Add the meeple on the tile to our list.
-			meeplesOnFeature.add(meeple);
+		for (int i = 0; i < tiles.size(); i++) {
+			out.putShort(tiles.get(i).getHandle());
+			out.putInt(PositionMap.unpackX(tilePositions[i]));
+			out.putInt(PositionMap.unpackY(tilePositions[i]));
 		}
 
-		toSearch.remove(boardPosition);
-		searched.add(boardPosition);
+		out.put((byte) placedMeeples.size());
 
-		// Get the neighbor tile positions.
-		BoardPosition[] neighborTiles = getTileNeighbors(xBoard, yBoard, xTile,
-				yTile);
+		for (Meeple meeple : placedMeeples) {
 
-		// Add valid neighbors of position to toSearch map.
-		// A neighbor is valid if it is in neither map, and is a field.
-        for (BoardPosition neighborTile : neighborTiles) {
+			BoardPosition position = meeplePlacement.get(meeple);
 
-            // Check the tile is not null.
-            Tile tile = gameBoard[neighborTile.yBoard][neighborTile.xBoard];
+			for (int i = 0; i < players.size(); i++) {
 
-            if (tile != null) {
+				int index = players.get(i).getMeeples().indexOf(meeple);
 
-                // Add the tile to the toSearch set.
-                BoardPosition toAdd = new BoardPosition(
-                        neighborTile.xBoard, neighborTile.yBoard,
-                        neighborTile.xTile, neighborTile.yTile);
+				if (index >= 0) {
+					out.put((byte) i);
+					out.put((byte) index);
+				}
+			}
 
-                // Check that the tile has the same tile type.
-                TileType tileType = tile.getTileType(neighborTile.xTile,
-                        neighborTile.yTile);
+			out.putInt(position.xBoard);
+			out.putInt(position.yBoard);
+			out.put((byte) position.xTile);
+			out.put((byte) position.yTile);
+		}
+	}
 
-                // Add the tile to be searched if it is also a field.
-                if (tileType == TileType.FIELD) {
+	/**
+	 * Read a board from a snapshot, onto an empty board. The tiles & meeples
+	 * are put back without the checks or scoring of placing them.
+	 * 
+	 * @param in
+	 *            The buffer to read from.
+	 * @param players
+	 *            The players, which own the meeples.
+	 */
+	void readSnapshot(ByteBuffer in, ArrayList<Player> players) {
 
-                    // Check the tile is not already in searched or toSearch.
-                    if (!toSearch.contains(toAdd) && !searched.contains(toAdd)) {
-                        toSearch.add(toAdd);
-                    }
+		int numTiles = in.getShort();
 
-                } else if (tileType == TileType.CITY) {
+		for (int i = 0; i < numTiles; i++) {
+			Tile tile = new Tile(in.getShort());
+			int xBoard = in.getInt();
+			int yBoard = in.getInt();
 
-                    // If the neighboring tile is a city tile, find the city
-                    // that it belongs to and add that city to our adjacent
-                    // cities (only if not already in the adjacent cities).
-                    boolean newCity = true;
+			if (tileIndices.contains(PositionMap.pack(xBoard, yBoard))) {
+				throw new IllegalArgumentException("Tiles overlap.");
+			}
 
-                    for (HashSet<BoardPosition> adjacentCity : adjacentCities) {
-                        if (adjacentCity.contains(toAdd)) {
-                            newCity = false;
-                        }
-                    }
+			addTile(tile, xBoard, yBoard);
+		}
 
-                    if (newCity) {
-                        for (HashSet<BoardPosition> allCity : allCities) {
-                            if (allCity.contains(toAdd)) {
-                                adjacentCities.add(allCity);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+		int numMeeples = in.get();
+
+		for (int i = 0; i < numMeeples; i++) {
+			Meeple meeple = players.get(in.get()).getMeeples().get(in.get());
+			int xBoard = in.getInt();
+			int yBoard = in.getInt();
+			int xTile = in.get();
+			int yTile = in.get();
+
+			if (getTile(xBoard, yBoard) == null
+					|| meeplePlacement.containsKey(meeple)) {
+				throw new IllegalArgumentException("Meeple is misplaced.");
+			}
 
-		// If there are still tiles in toSearch then continue searching.
-		if (!toSearch.isEmpty()) {
-			fieldScoreRecursive(searched, toSearch, meeplesOnFeature,
-					allCities, adjacentCities);
+			addMeeple(meeple, new BoardPosition(xBoard, yBoard, xTile, yTile));
 		}
 	}
 
 	/**
-	 * This function gets neighbor tile positions from a given position. It
-	 * compensates for tile positions which are on the edge of a given tile by
-	 * testing for these cases and will overflow to positions on the neighboring
-	 * tiles if needed.
-	 * 
-	 * @param xBoard
-	 *            An x position on the board.
-	 * @param yBoard
-	 *            An y position on the board.
-	 * @param xTile
-	 *            An x tile position on a board tile.
-	 * @param yTile
-	 *            An y tile position on a board tile.
-	 * 
-	 * @return An array of BoardPosition objects containing the coordinates of
-	 *         all neighboring tile positions (not tiles).
+	 * Return whether any tiles have been placed on the board.
 	 */
-	private BoardPosition[] getTileNeighbors(int xBoard, int yBoard, int xTile,
-			int yTile) {
-
-		int[] nStr = { xBoard, yBoard, xTile, (yTile - 1) };
-		int[] eStr = { xBoard, yBoard, (xTile + 1), yTile };
-		int[] sStr = { xBoard, yBoard, xTile, (yTile + 1) };
-		int[] wStr = { xBoard, yBoard, (xTile - 1), yTile };
-
-		// Catch any across-tiles conditions.
-		// If yTile == 6 then we set it to 0 and increment yBoard.
-		// If yTile == 0 then we set it to 6 and decrement yBoard.
-		// If xTile == 6 then we set it to 0 and increment xBoard.
-		// If xTile == 0 then we set it to 6 and decrement xBoard.
-		// Only for those which we are adding or subtracting from.
-		if (yTile == 6) {
-			sStr[3] = 0;
-			sStr[1]++;
-		}
-
-		if (yTile == 0) {
-			nStr[3] = 6;
-			nStr[1]--;
-		}
+	public boolean isEmpty() {
+		return isBoardEmpty;
+	}
 
-		if (xTile == 6) {
-			eStr[2] = 0;
-			eStr[0]++;
-		}
+	/**
+	 * Get the number of tiles which have been placed on the board.
+	 */
+	public int getNumTiles() {
+		return tiles.size();
+	}
 
-		if (xTile == 0) {
-			wStr[2] = 6;
-			wStr[0]--;
-		}
+	// Return the extent of the placed tiles; the width and height are zero for
+	// an empty board.
+	public int getWidth() {
+		return isBoardEmpty ? 0 : maxX - minX + 1;
+	}
 
-		BoardPosition nBoardPosition;
-		BoardPosition eBoardPosition;
-		BoardPosition sBoardPosition;
-		BoardPosition wBoardPosition;
+	public int getHeight() {
+		return isBoardEmpty ? 0 : maxY - minY + 1;
+	}
 
-		nBoardPosition = new BoardPosition(nStr[0], nStr[1], nStr[2], nStr[3]);
-		eBoardPosition = new BoardPosition(eStr[0], eStr[1], eStr[2], eStr[3]);
-		sBoardPosition = new BoardPosition(sStr[0], sStr[1], sStr[2], sStr[3]);
-		wBoardPosition = new BoardPosition(wStr[0], wStr[1], wStr[2], wStr[3]);
+	public int getMinX() {
+		return minX;
+	}
 
-        return new BoardPosition[]{nBoardPosition, eBoardPosition,
-                sBoardPosition, wBoardPosition};
+	public int getMaxX() {
+		return maxX;
 	}
 
-	// Used for the ui; return the size of the board array.
-	public int getWidth() {
-		return gameBoard[0].length;
+	public int getMinY() {
+		return minY;
 	}
 
-	public int getHeight() {
-		return gameBoard.length;
+	public int getMaxY() {
+		return maxY;
 	}
 }
\ No newline at end of file
@@ -1,15 +1,19 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 public class DrawPile {
 
-	private ArrayList<Tile> tiles = new ArrayList<Tile>();
-	private boolean firstTurn = true;
-
-	private char[][] firstDrawnTile = new char[][] {
+	// The tiles of a basic game are created once, and shared by every draw
+	// pile. Each pile only holds the handles of its remaining tiles (see
+	// Tile.getHandle()), so a new game costs a couple of bytes per tile.
+	// The pile is shuffled once, when it is made, and drawn from the end;
+	// so a pile made with a seed always gives the same tiles in the same
+	// order, and each draw takes constant time.
+	private static final int basicGameSize = 71;
+	private static final char[][] firstDrawnTile = new char[][] {
 			{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
 			{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
 			{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
@@ -18,16 +22,95 @@ public class DrawPile {
 			{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
 			{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
+	private static final short firstTile;
+	private static final short[] basicGame;
+
+	// The number of kinds of tile (prototype ids) a basic game needs.
+	private static final int numBasicKinds;
+
+	static {
+		firstTile = new Tile(firstDrawnTile, "CR").getHandle();
+		basicGame = createBasicGame();
+
+		int maxKind = getKind(firstTile);
+
+		for (short handle : basicGame) {
+			maxKind = Math.max(maxKind, getKind(handle));
+		}
+
+		numBasicKinds = maxKind + 1;
+	}
+
+	private short[] tiles;
+	private int numTiles;
+	private boolean firstTurn = true;
+
+	// The number of tiles of each kind (by prototype id) left in the pile,
+	// less the starting tile.
+	private int[] numTilesOfKind;
+
+	/**
+	 * Constructor, for a draw pile in an unpredictable order.
+	 */
 	public DrawPile() {
-		this.initDrawPile();
+		this.initDrawPile(new Random());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param seed
+	 *            The seed which decides the order of the tiles; piles made
+	 *            with the same seed give the same tiles in the same order.
+	 */
+	public DrawPile(long seed) {
+		this.initDrawPile(new Random(seed));
+	}
+
+	/**
+	 * Constructor, for a copy of a draw pile (see copy).
+	 */
+	private DrawPile(DrawPile pile) {
+		tiles = Arrays.copyOf(pile.tiles, pile.tiles.length);
+		numTiles = pile.numTiles;
+		firstTurn = pile.firstTurn;
+		numTilesOfKind = Arrays.copyOf(pile.numTilesOfKind,
+				pile.numTilesOfKind.length);
+	}
+
+	/**
+	 * Make a copy of the draw pile, with the same tiles in the same order.
+	 */
+	DrawPile copy() {
+		return new DrawPile(this);
 	}
 
 	/**
 	 * Initialize the draw pile for a basic game. The starting tile is
      * automatically assigned on first draw in the {@link #draw(Player)} method.
+	 * 
+	 * @param random
+	 *            The random number generator to shuffle the pile with.
+	 */
+	private void initDrawPile(Random random) {
+
+		tiles = Arrays.copyOf(basicGame, basicGame.length);
+		numTiles = tiles.length;
+		countKinds();
+
+		// Finally shuffle the pile.
+		shuffle(random);
+	}
+
+	/**
+	 * Create the tiles of a basic game, less the starting tile.
+	 * 
+	 * @return The handles of the tiles.
 	 */
-	private void initDrawPile() {
+	private static short[] createBasicGame() {
 
+		short[] deck = new short[basicGameSize];
+		int size = 0;
 		char[][] tile;
 
 		// See http://en.wikipedia.org/wiki/File:CarcassonneTiles.svg,
@@ -49,9 +132,7 @@ public class DrawPile {
 				{ 'F', 'F', 'C', 'C', 'C', 'C', 'C' },
 				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' } };
 
-		for (int i = 0; i < 5; i++) {
-			this.tiles.add(new Tile(tile, "CH"));
-		}
+		size = addTiles(deck, size, tile, "CH", 5);
 
 		// city road 3way (3)
 		tile = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
@@ -62,9 +143,7 @@ public class DrawPile {
 				{ 'C', 'F', 'F', 'R', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "CR3"));
-		}
+		size = addTiles(deck, size, tile, "CR3", 3);
 
 		// city2 opposite (3)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -75,9 +154,7 @@ public class DrawPile {
 				{ 'C', 'F', 'F', 'F', 'F', 'F', 'C' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "C2O"));
-		}
+		size = addTiles(deck, size, tile, "C2O", 3);
 
 		// cloister (4)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -88,9 +165,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 4; i++) {
-			this.tiles.add(new Tile(tile, "K"));
-		}
+		size = addTiles(deck, size, tile, "K", 4);
 
 		// cloister road (2)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -101,9 +176,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 2; i++) {
-			this.tiles.add(new Tile(tile, "KR"));
-		}
+		size = addTiles(deck, size, tile, "KR", 2);
 
 		// road 4way (1)
 		tile = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
@@ -114,7 +187,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		this.tiles.add(new Tile(tile, "R4"));
+		size = addTiles(deck, size, tile, "R4", 1);
 
 		// road bend [2] (9)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -125,9 +198,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 9; i++) {
-			this.tiles.add(new Tile(tile, "R2"));
-		}
+		size = addTiles(deck, size, tile, "R2", 9);
 
 		// road (8)
 		tile = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
@@ -138,9 +209,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 8; i++) {
-			this.tiles.add(new Tile(tile, "R"));
-		}
+		size = addTiles(deck, size, tile, "R", 8);
 
 		// road 3way (4)
 		tile = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
@@ -151,9 +220,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 4; i++) {
-			this.tiles.add(new Tile(tile, "R3"));
-		}
+		size = addTiles(deck, size, tile, "R3", 4);
 
 		// city (1)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -164,7 +231,7 @@ public class DrawPile {
 				{ 'C', 'C', 'C', 'C', 'C', 'C', 'C' },
 				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' } };
 
-		this.tiles.add(new Tile(tile, "C"));
+		size = addTiles(deck, size, tile, "C", 1);
 
 		// city 3 (4)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -175,9 +242,7 @@ public class DrawPile {
 				{ 'C', 'C', 'C', 'C', 'C', 'C', 'C' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 4; i++) {
-			this.tiles.add(new Tile(tile, "C3"));
-		}
+		size = addTiles(deck, size, tile, "C3", 4);
 
 		// city 3 road (3)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -188,9 +253,7 @@ public class DrawPile {
 				{ 'C', 'C', 'C', 'C', 'C', 'C', 'C' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "C3R"));
-		}
+		size = addTiles(deck, size, tile, "C3R", 3);
 
 		// city 2 adjacent (2)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -201,9 +264,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'C' },
 				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' } };
 
-		for (int i = 0; i < 2; i++) {
-			this.tiles.add(new Tile(tile, "C2A"));
-		}
+		size = addTiles(deck, size, tile, "C2A", 2);
 
 		// city side (5)
 		tile = new char[][] { { 'x', 'F', 'F', 'F', 'F', 'F', 'x' },
@@ -214,15 +275,11 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'C' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 5; i++) {
-			this.tiles.add(new Tile(tile, "CS"));
-		}
+		size = addTiles(deck, size, tile, "CS", 5);
 
 		// city road (3 + 1)
 		// The fifth city-road is drawn out on the first draw.
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(firstDrawnTile, "CR"));
-		}
+		size = addTiles(deck, size, firstDrawnTile, "CR", 3);
 
 		// city road bend [2] (3)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -233,9 +290,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "CR2"));
-		}
+		size = addTiles(deck, size, tile, "CR2", 3);
 
 		// city road bend [2] mirrored (3)
 		tile = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
@@ -246,9 +301,7 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'C' },
 				{ 'x', 'F', 'F', 'F', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "CR2M"));
-		}
+		size = addTiles(deck, size, tile, "CR2M", 3);
 
 		// city 2 (3)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -259,9 +312,7 @@ public class DrawPile {
 				{ 'F', 'C', 'C', 'C', 'C', 'C', 'F' },
 				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' } };
 
-		for (int i = 0; i < 3; i++) {
-			this.tiles.add(new Tile(tile, "C2"));
-		}
+		size = addTiles(deck, size, tile, "C2", 3);
 
 		// city half road bend [2] (5)
 		tile = new char[][] { { 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
@@ -272,12 +323,37 @@ public class DrawPile {
 				{ 'F', 'F', 'F', 'R', 'F', 'F', 'C' },
 				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
 
-		for (int i = 0; i < 5; i++) {
-			this.tiles.add(new Tile(tile, "CHR2"));
+		size = addTiles(deck, size, tile, "CHR2", 5);
+
+		return deck;
+	}
+
+	/**
+	 * Add a number of tiles of the same kind to a deck.
+	 * 
+	 * @param deck
+	 *            The deck to add the tiles to.
+	 * @param size
+	 *            The number of tiles already in the deck.
+	 * @param tile
+	 *            A character array describing the layout of land types.
+	 * @param identifier
+	 *            An identifier to associate with the tiles.
+	 * @param count
+	 *            The number of tiles to add.
+	 * 
+	 * @return The number of tiles in the deck after adding the tiles.
+	 */
+	private static int addTiles(short[] deck, int size, char[][] tile,
+			String identifier, int count) {
+
+		short handle = new Tile(tile, identifier).getHandle();
+
+		for (int i = 0; i < count; i++) {
+			deck[size++] = handle;
 		}
 
-		// Finally shuffle the list.
-		Collections.shuffle(this.tiles, new Random(System.nanoTime()));
+		return size;
 	}
 
 	/**
@@ -290,31 +366,201 @@ public class DrawPile {
 	 */
 	public int draw(Player player) {
 
-		if (tiles.isEmpty()) {
+		if (numTiles == 0) {
 			return 1;
 		}
 
 		if (firstTurn) {
-			player.setCurrentTile(new Tile(firstDrawnTile, "CR"));
+			player.setCurrentTile(new Tile(firstTile));
 			firstTurn = false;
 
 		} else {
-			player.setCurrentTile(tiles.remove(0));
+			short handle = tiles[--numTiles];
+			numTilesOfKind[getKind(handle)]--;
+			player.setCurrentTile(new Tile(handle));
 		}
 
-		// For now, let's just re-shuffle the tiles after every draw.
-		Collections.shuffle(tiles, new Random(System.nanoTime()));
-
 		return 0;
 	}
 
+	/**
+	 * Allow a player to take a particular tile from the draw pile, rather than
+	 * the next one; as when replaying a game which has been played before.
+	 * 
+	 * @param player
+	 *            The player which receives the tile.
+	 * @param identifier
+	 *            The identifier of the tile to take.
+	 * @return a non-zero integer if there are no tiles with the identifier
+	 *         left in the pile, zero otherwise.
+	 */
+	public int draw(Player player, String identifier) {
+
+		if (numTiles == 0) {
+			return 1;
+		}
+
+		if (firstTurn) {
+
+			Tile tile = new Tile(firstTile);
+
+			if (!tile.getIdentifier().equals(identifier)) {
+				return 1;
+			}
+
+			player.setCurrentTile(tile);
+			firstTurn = false;
+
+			return 0;
+		}
+
+		// The tile is most likely near the top, if the pile is the one the
+		// game was played with.
+		for (int i = numTiles - 1; i >= 0; i--) {
+
+			Tile tile = new Tile(tiles[i]);
+
+			if (tile.getIdentifier().equals(identifier)) {
+
+				// Fill the gap with the top tile.
+				tiles[i] = tiles[--numTiles];
+				numTilesOfKind[getKind(tile.getHandle())]--;
+				player.setCurrentTile(tile);
+
+				return 0;
+			}
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Shuffle the tiles left in the pile (Fisher-Yates).
+	 * 
+	 * @param random
+	 *            The random number generator to shuffle the pile with.
+	 */
+	public void shuffle(Random random) {
+
+		for (int i = numTiles - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			short swap = tiles[i];
+			tiles[i] = tiles[j];
+			tiles[j] = swap;
+		}
+	}
+
+	/**
+	 * Get an upper bound on the length of the draw pile's part of a snapshot.
+	 */
+	int getSnapshotLength() {
+		return 3 + 2 * numTiles;
+	}
+
+	/**
+	 * Write the draw pile to a snapshot (see Game.toSnapshot); whether the
+	 * starting tile has been drawn, and the handles of the tiles left, in
+	 * order.
+	 */
+	void writeSnapshot(ByteBuffer out) {
+
+		out.put((byte) (firstTurn ? 1 : 0));
+		out.putShort((short) numTiles);
+
+		for (int i = 0; i < numTiles; i++) {
+			out.putShort(tiles[i]);
+		}
+	}
+
+	/**
+	 * Read the draw pile from a snapshot, in place of its tiles.
+	 */
+	void readSnapshot(ByteBuffer in) {
+
+		firstTurn = (in.get() != 0);
+		int count = in.getShort();
+
+		if (count < 0 || count > tiles.length) {
+			throw new IllegalArgumentException("Too many tiles.");
+		}
+
+		for (int i = 0; i < count; i++) {
+			tiles[i] = new Tile(in.getShort()).getHandle();
+		}
+
+		numTiles = count;
+		countKinds();
+	}
+
+	// Count the tiles of each kind left in the pile.
+	private void countKinds() {
+
+		numTilesOfKind = new int[numBasicKinds];
+
+		for (int i = 0; i < numTiles; i++) {
+
+			int kind = getKind(tiles[i]);
+
+			if (kind >= numTilesOfKind.length) {
+				numTilesOfKind = Arrays.copyOf(numTilesOfKind, kind + 1);
+			}
+
+			numTilesOfKind[kind]++;
+		}
+	}
+
+	private static int getKind(short handle) {
+		return handle >> TilePrototype.orientationBits;
+	}
+
+	/**
+	 * Get the number of tiles of a kind left in the draw pile.
+	 * 
+	 * @param prototype
+	 *            The kind of tile.
+	 * 
+	 * @return The number of tiles, not counting the starting tile.
+	 */
+	public int getNumTiles(TilePrototype prototype) {
+
+		int kind = prototype.getId();
+
+		return (kind < numTilesOfKind.length) ? numTilesOfKind[kind] : 0;
+	}
+
+	/**
+	 * Get the number of tiles left in the draw pile which can't be placed
+	 * anywhere on a board, as it is; those which would be set aside if drawn
+	 * now. Each kind of tile left is looked up in the board's placeability
+	 * index (see Board.canPlaceTile(TilePrototype)), so the board isn't
+	 * searched.
+	 * 
+	 * @param board
+	 *            The board the tiles are to be placed on.
+	 * 
+	 * @return The number of tiles which can't be placed.
+	 */
+	public int getNumUnplaceableTiles(Board board) {
+
+		int count = 0;
+
+		for (int kind = 0; kind < numTilesOfKind.length; kind++) {
+			if (numTilesOfKind[kind] > 0
+					&& !board.canPlaceTile(TilePrototype.get(kind))) {
+				count += numTilesOfKind[kind];
+			}
+		}
+
+		return count;
+	}
+
 	/**
 	 * Return whether there are tiles left in the draw pile.
 	 * 
 	 * @return A boolean indicating if the draw pile is empty.
 	 */
 	public boolean isEmpty() {
-		return this.tiles.isEmpty();
+		return numTiles == 0;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,399 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/*
+ * This class keeps track of the features (roads, cities, fields, cloisters)
+ * found on the game board, as a disjoint-set (union-find) of tile segments.
+ *
+ * A segment is a group of connected tile positions of the same tile type on a
+ * single tile. When a tile is placed each of its segments is added to the
+ * graph, and any segments which meet across the edge of a neighboring tile are
+ * joined together. The root of each set holds the information needed to score
+ * the feature: the number of open tile edges (the feature is complete when
+ * there are none), the number of tiles which make up the feature, and the
+ * meeples which have claimed it.
+ *
+ * A tile is only counted twice in a feature if two of its segments are in
+ * it, which needs a tile with more than one segment of a type (a crossroads,
+ * or a city on two opposite edges); each root keeps a short list of those
+ * tiles, so joining features doesn't need a set of all their tiles.
+ */
+class FeatureGraph {
+
+	// Per-segment information. Only the values of root segments are kept up
+	// to date once segments have been joined.
+	private int[] parent = new int[64];
+	private int[] size = new int[64];
+	private int[] openEdges = new int[64];
+	private TileType[] types = new TileType[64];
+	private int[] numTiles = new int[64];
+	private int[][] splitTiles = new int[64][];
+	private int[] numSplitTiles = new int[64];
+	private ArrayList<ArrayList<Meeple>> meeples = new ArrayList<ArrayList<Meeple>>();
+	private int numSegments = 0;
+
+	// Per-tile information. The segments of a tile are numbered consecutively
+	// from its first segment, and the numbering of each tile position within
+	// the tile is shared with all tiles of the same shape & orientation.
+	private int[] firstSegments = new int[64];
+	private ArrayList<int[]> tileCells = new ArrayList<int[]>();
+
+	// Segments which have been changed by a tile or meeple placement since the
+	// last scoring pass, by tile type.
+	private int[][] touched = new int[TileType.values().length][16];
+	private int[] numTouched = new int[TileType.values().length];
+
+	/**
+	 * Add a newly placed tile to the graph. Each segment of the tile is
+	 * recorded as a new feature, which can then be joined with the features
+	 * of neighboring tiles using {@link #connect(int, int, int, int, int, int)}.
+	 *
+	 * @param tile
+	 *            The tile which has been placed.
+	 *
+	 * @return The index of the tile within the graph.
+	 */
+	public int addTile(Tile tile) {
+
+		TileShape shape = tile.getShape();
+		int orientation = tile.getOrientation();
+		int tileIndex = tileCells.size();
+		int numTileSegments = shape.getNumSegments(orientation);
+
+		if (tileIndex == firstSegments.length) {
+			firstSegments = Arrays.copyOf(firstSegments, tileIndex * 2);
+		}
+
+		firstSegments[tileIndex] = numSegments;
+		tileCells.add(shape.getCellSegments(orientation));
+
+		for (int i = 0; i < numTileSegments; i++) {
+
+			TileType type = shape.getSegmentType(orientation, i);
+			int segment = newSegment(type);
+			openEdges[segment] = shape.getSegmentOpenEdges(orientation, i);
+
+			for (int j = 0; j < numTileSegments; j++) {
+				if (j != i && shape.getSegmentType(orientation, j) == type) {
+					addSplitTile(segment, tileIndex);
+					break;
+				}
+			}
+		}
+
+		return tileIndex;
+	}
+
+	/**
+	 * Make a copy of the graph, for a copy of the board. The cells of the
+	 * tiles are shared, as they are with every tile of the same shape.
+	 *
+	 * @param meepleCopies
+	 *            The meeple of the copy for each meeple on the board.
+	 *
+	 * @return The copy.
+	 */
+	FeatureGraph copy(Map<Meeple, Meeple> meepleCopies) {
+
+		FeatureGraph copy = new FeatureGraph();
+		int capacity = parent.length;
+
+		copy.parent = Arrays.copyOf(parent, capacity);
+		copy.size = Arrays.copyOf(size, capacity);
+		copy.openEdges = Arrays.copyOf(openEdges, capacity);
+		copy.types = Arrays.copyOf(types, capacity);
+		copy.numTiles = Arrays.copyOf(numTiles, capacity);
+		copy.splitTiles = new int[capacity][];
+		copy.numSplitTiles = Arrays.copyOf(numSplitTiles, capacity);
+		copy.meeples = new ArrayList<ArrayList<Meeple>>(numSegments);
+		copy.numSegments = numSegments;
+
+		for (int segment = 0; segment < numSegments; segment++) {
+
+			if (splitTiles[segment] != null) {
+				copy.splitTiles[segment] = Arrays.copyOf(splitTiles[segment],
+						splitTiles[segment].length);
+			}
+
+			ArrayList<Meeple> featureMeeples = meeples.get(segment);
+			ArrayList<Meeple> copyMeeples = null;
+
+			if (featureMeeples != null) {
+
+				copyMeeples = new ArrayList<Meeple>(featureMeeples.size());
+
+				for (Meeple meeple : featureMeeples) {
+					copyMeeples.add(meepleCopies.get(meeple));
+				}
+			}
+
+			copy.meeples.add(copyMeeples);
+		}
+
+		copy.firstSegments = Arrays.copyOf(firstSegments,
+				firstSegments.length);
+		copy.tileCells = new ArrayList<int[]>(tileCells);
+
+		for (int type = 0; type < touched.length; type++) {
+			copy.touched[type] = Arrays.copyOf(touched[type],
+					touched[type].length);
+		}
+
+		copy.numTouched = Arrays.copyOf(numTouched, numTouched.length);
+
+		return copy;
+	}
+
+	/**
+	 * Join the features on either side of a shared tile edge. Both of the
+	 * positions lose their open edge, as a tile now exists on each side.
+	 *
+	 * @param tileA
+	 *            The graph index of the first tile.
+	 * @param xTileA
+	 *            The x position on the first tile.
+	 * @param yTileA
+	 *            The y position on the first tile.
+	 * @param tileB
+	 *            The graph index of the second tile.
+	 * @param xTileB
+	 *            The x position on the second tile.
+	 * @param yTileB
+	 *            The y position on the second tile.
+	 */
+	public void connect(int tileA, int xTileA, int yTileA, int tileB,
+			int xTileB, int yTileB) {
+
+		int segmentA = getSegment(tileA, xTileA, yTileA);
+		int segmentB = getSegment(tileB, xTileB, yTileB);
+
+		if (segmentA < 0 || segmentB < 0) {
+			return;
+		}
+
+		int rootA = find(segmentA);
+		int rootB = find(segmentB);
+
+		openEdges[rootA]--;
+		openEdges[rootB]--;
+
+		if (rootA == rootB) {
+			return;
+		}
+
+		// Union by size; the smaller set is merged into the larger one.
+		if (size[rootA] < size[rootB]) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+		}
+
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+		openEdges[rootA] += openEdges[rootB];
+		numTiles[rootA] += numTiles[rootB];
+
+		for (int i = 0; i < numSplitTiles[rootB]; i++) {
+			addSplitTile(rootA, splitTiles[rootB][i]);
+		}
+
+		splitTiles[rootB] = null;
+		numSplitTiles[rootB] = 0;
+
+		ArrayList<Meeple> meeplesB = meeples.get(rootB);
+
+		if (meeplesB != null) {
+			getMeeples(rootA).addAll(meeplesB);
+			meeples.set(rootB, null);
+		}
+	}
+
+	/**
+	 * Get the segment which a tile position belongs to.
+	 *
+	 * @param tileIndex
+	 *            The graph index of the tile.
+	 * @param xTile
+	 *            The x position on the tile.
+	 * @param yTile
+	 *            The y position on the tile.
+	 *
+	 * @return The segment, or -1 if the tile position has no tile type.
+	 */
+	public int getSegment(int tileIndex, int xTile, int yTile) {
+
+		int segment = tileCells.get(tileIndex)[yTile * Tile.tileSize + xTile];
+
+		return (segment < 0) ? -1 : firstSegments[tileIndex] + segment;
+	}
+
+	/**
+	 * Get the first segment which belongs to a tile. The segments of a tile
+	 * run from the first segment up to, but not including, the first segment
+	 * of the next tile.
+	 *
+	 * @param tileIndex
+	 *            The graph index of the tile.
+	 *
+	 * @return The first segment of the tile.
+	 */
+	public int getFirstSegment(int tileIndex) {
+		return firstSegments[tileIndex];
+	}
+
+	/**
+	 * Get the number of segments which have been added to the graph.
+	 */
+	public int getNumSegments() {
+		return numSegments;
+	}
+
+	public TileType getType(int segment) {
+		return types[segment];
+	}
+
+	/**
+	 * A feature is complete once none of its tile positions lie on an edge
+	 * without a neighboring tile.
+	 */
+	public boolean isComplete(int segment) {
+		return openEdges[find(segment)] == 0;
+	}
+
+	/**
+	 * Get the number of tiles which a feature spans.
+	 */
+	public int getNumTiles(int segment) {
+		return numTiles[find(segment)];
+	}
+
+	public boolean hasMeeples(int segment) {
+		ArrayList<Meeple> featureMeeples = meeples.get(find(segment));
+		return featureMeeples != null && !featureMeeples.isEmpty();
+	}
+
+	/**
+	 * Get the meeples which have claimed a feature. The returned list is owned
+	 * by the graph, and is updated as features are joined.
+	 */
+	public ArrayList<Meeple> getMeeples(int segment) {
+
+		int root = find(segment);
+		ArrayList<Meeple> featureMeeples = meeples.get(root);
+
+		if (featureMeeples == null) {
+			featureMeeples = new ArrayList<Meeple>(2);
+			meeples.set(root, featureMeeples);
+		}
+
+		return featureMeeples;
+	}
+
+	public void addMeeple(int segment, Meeple meeple) {
+		getMeeples(segment).add(meeple);
+	}
+
+	public void removeMeeple(int segment, Meeple meeple) {
+		getMeeples(segment).remove(meeple);
+	}
+
+	/**
+	 * Record that a feature has changed, and so may need to be scored.
+	 */
+	public void touch(int segment) {
+
+		int type = types[segment].ordinal();
+
+		if (numTouched[type] == touched[type].length) {
+			touched[type] = Arrays.copyOf(touched[type], numTouched[type] * 2);
+		}
+
+		touched[type][numTouched[type]++] = segment;
+	}
+
+	/**
+	 * Take a segment of the given type which has changed since it was last
+	 * taken.
+	 *
+	 * @param type
+	 *            The tile type of the segment.
+	 *
+	 * @return A segment, or -1 if there are no more changed segments.
+	 */
+	public int pollTouched(TileType type) {
+
+		int ordinal = type.ordinal();
+
+		if (numTouched[ordinal] == 0) {
+			return -1;
+		}
+
+		return touched[ordinal][--numTouched[ordinal]];
+	}
+
+	private int newSegment(TileType type) {
+
+		if (numSegments == parent.length) {
+			int capacity = parent.length * 2;
+
+			parent = Arrays.copyOf(parent, capacity);
+			size = Arrays.copyOf(size, capacity);
+			openEdges = Arrays.copyOf(openEdges, capacity);
+			types = Arrays.copyOf(types, capacity);
+			numTiles = Arrays.copyOf(numTiles, capacity);
+			splitTiles = Arrays.copyOf(splitTiles, capacity);
+			numSplitTiles = Arrays.copyOf(numSplitTiles, capacity);
+		}
+
+		int segment = numSegments++;
+
+		parent[segment] = segment;
+		size[segment] = 1;
+		openEdges[segment] = 0;
+		types[segment] = type;
+		numTiles[segment] = 1;
+		meeples.add(null);
+
+		return segment;
+	}
+
+	// Record that a feature holds a segment of a tile which has another
+	// segment of the same type. If the feature already held one, the tile
+	// has been counted twice.
+	private void addSplitTile(int root, int tileIndex) {
+
+		int[] rootTiles = splitTiles[root];
+		int count = numSplitTiles[root];
+
+		for (int i = 0; i < count; i++) {
+			if (rootTiles[i] == tileIndex) {
+				numTiles[root]--;
+				return;
+			}
+		}
+
+		if (rootTiles == null) {
+			rootTiles = splitTiles[root] = new int[2];
+		} else if (count == rootTiles.length) {
+			rootTiles = splitTiles[root] = Arrays.copyOf(rootTiles, count * 2);
+		}
+
+		rootTiles[count] = tileIndex;
+		numSplitTiles[root] = count + 1;
+	}
+
+	private int find(int segment) {
+
+		// Path halving; every other segment on the path is pointed at its
+		// grandparent, keeping the trees flat.
+		while (parent[segment] != segment) {
+			parent[segment] = parent[parent[segment]];
+			segment = parent[segment];
+		}
+
+		return segment;
+	}
+}
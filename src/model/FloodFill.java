@@ -0,0 +1,258 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * A reusable, iterative search over the tile positions of the placed tiles.
+ *
+ * Every tile position on the board is packed into a single int (see
+ * cell(int, int, int)), made from the placement index of its tile and the x &
+ * y position on the tile. A search keeps its work queue in an int array, and
+ * marks visited positions by stamping them with the number of the current
+ * search; starting a new search only needs a new stamp, rather than clearing
+ * the visited positions of the last one. Searches don't recurse, and once the
+ * arrays have grown to the size of the board they don't allocate either.
+ *
+ * Typical use:
+ *
+ * floodFill.start(cell);
+ *
+ * while ((cell = floodFill.next()) >= 0) {
+ *     for (int direction = 0; direction < 4; direction++) {
+ *         int neighbor = floodFill.getNeighbor(cell, direction);
+ *         ...
+ *         floodFill.visit(neighbor);
+ *     }
+ * }
+ */
+class FloodFill {
+
+	private static final int size = Tile.tileSize;
+	private static final int cellsPerTile = size * size;
+
+	// Per-tile information; the placed tiles, and the placement index of the
+	// neighboring tile on each side (or -1 if there is none).
+	private ArrayList<Tile> tiles = new ArrayList<Tile>();
+	private int[] tileNeighbors = new int[64 * 4];
+
+	// The stamp of the last search to visit each cell.
+	private int[] visited = new int[64 * cellsPerTile];
+	private int stamp = 0;
+
+	// Visited cells, in the order they were visited. Cells between head and
+	// tail are still to be searched.
+	private int[] queue = new int[64];
+	private int head = 0;
+	private int tail = 0;
+
+	/**
+	 * Add a newly placed tile. Tiles must be added in order of placement.
+	 *
+	 * @param tile
+	 *            The tile which has been placed.
+	 * @param top
+	 *            The placement index of the tile above, or -1 if none.
+	 * @param right
+	 *            The placement index of the tile to the right, or -1 if none.
+	 * @param bottom
+	 *            The placement index of the tile below, or -1 if none.
+	 * @param left
+	 *            The placement index of the tile to the left, or -1 if none.
+	 */
+	public void addTile(Tile tile, int top, int right, int bottom, int left) {
+
+		int tileIndex = tiles.size();
+
+		if ((tileIndex + 1) * 4 > tileNeighbors.length) {
+			tileNeighbors = Arrays.copyOf(tileNeighbors,
+					tileNeighbors.length * 2);
+			visited = Arrays.copyOf(visited, visited.length * 2);
+		}
+
+		tiles.add(tile);
+
+		int[] sides = { top, right, bottom, left };
+
+		for (int side = 0; side < 4; side++) {
+
+			tileNeighbors[tileIndex * 4 + side] = sides[side];
+
+			// The neighbor now has this tile on its facing side.
+			if (sides[side] >= 0) {
+				tileNeighbors[sides[side] * 4 + (side + 2) % 4] = tileIndex;
+			}
+		}
+	}
+
+	/**
+	 * Make a copy, for a copy of the board; no search is carried over.
+	 *
+	 * @param tiles
+	 *            The placed tiles of the copy, in order of placement.
+	 */
+	FloodFill copy(ArrayList<Tile> tiles) {
+
+		FloodFill copy = new FloodFill();
+
+		copy.tiles = new ArrayList<Tile>(tiles);
+		copy.tileNeighbors = Arrays.copyOf(tileNeighbors,
+				tileNeighbors.length);
+		copy.visited = new int[visited.length];
+
+		return copy;
+	}
+
+	/**
+	 * Pack a tile position into a cell.
+	 *
+	 * @param tileIndex
+	 *            The placement index of the tile.
+	 * @param xTile
+	 *            The x position on the tile.
+	 * @param yTile
+	 *            The y position on the tile.
+	 *
+	 * @return The cell.
+	 */
+	public static int cell(int tileIndex, int xTile, int yTile) {
+		return tileIndex * cellsPerTile + yTile * size + xTile;
+	}
+
+	public static int getTileIndex(int cell) {
+		return cell / cellsPerTile;
+	}
+
+	public static int getXTile(int cell) {
+		return cell % size;
+	}
+
+	public static int getYTile(int cell) {
+		return (cell % cellsPerTile) / size;
+	}
+
+	/**
+	 * Get the number of cells on the board; every cell is less than this.
+	 */
+	public int getNumCells() {
+		return tiles.size() * cellsPerTile;
+	}
+
+	public TileType getTileType(int cell) {
+		return tiles.get(getTileIndex(cell)).getTileType(getXTile(cell),
+				getYTile(cell));
+	}
+
+	/**
+	 * Get a neighboring cell. Cells on the edge of a tile have neighbors on the
+	 * next tile over.
+	 *
+	 * @param cell
+	 *            The cell to get the neighbor of.
+	 * @param direction
+	 *            One of Tile.TOP, Tile.RIGHT, Tile.BOTTOM, or Tile.LEFT.
+	 *
+	 * @return The neighboring cell, or -1 if it would be on a tile which has
+	 *         not been placed.
+	 */
+	public int getNeighbor(int cell, int direction) {
+
+		int tileIndex = getTileIndex(cell);
+		int xTile = getXTile(cell);
+		int yTile = getYTile(cell);
+		int last = size - 1;
+
+		if (direction == Tile.TOP) {
+			yTile--;
+		} else if (direction == Tile.RIGHT) {
+			xTile++;
+		} else if (direction == Tile.BOTTOM) {
+			yTile++;
+		} else {
+			xTile--;
+		}
+
+		if (xTile >= 0 && xTile <= last && yTile >= 0 && yTile <= last) {
+			return cell(tileIndex, xTile, yTile);
+		}
+
+		int neighbor = tileNeighbors[tileIndex * 4 + direction];
+
+		if (neighbor < 0) {
+			return -1;
+		}
+
+		// Wrap around onto the facing side of the neighboring tile.
+		return cell(neighbor, (xTile + size) % size, (yTile + size) % size);
+	}
+
+	/**
+	 * Start a new search from a cell. Any cells visited by earlier searches
+	 * are forgotten.
+	 */
+	public void start(int cell) {
+
+		stamp++;
+
+		// On the (unlikely) wrap around of the stamp, old stamps could match
+		// again, so clear them.
+		if (stamp == 0) {
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+
+		head = 0;
+		tail = 0;
+
+		visit(cell);
+	}
+
+	/**
+	 * Add a cell to the current search, if it has not been visited yet.
+	 *
+	 * @return True if the cell is newly visited, false otherwise.
+	 */
+	public boolean visit(int cell) {
+
+		if (visited[cell] == stamp) {
+			return false;
+		}
+
+		visited[cell] = stamp;
+
+		if (tail == queue.length) {
+			queue = Arrays.copyOf(queue, queue.length * 2);
+		}
+
+		queue[tail++] = cell;
+
+		return true;
+	}
+
+	public boolean isVisited(int cell) {
+		return visited[cell] == stamp;
+	}
+
+	/**
+	 * Take the next cell to search.
+	 *
+	 * @return A cell, or -1 when the search is finished.
+	 */
+	public int next() {
+		return (head < tail) ? queue[head++] : -1;
+	}
+
+	/**
+	 * Get the number of cells visited by the current search.
+	 */
+	public int getNumVisited() {
+		return tail;
+	}
+
+	/**
+	 * Get a visited cell, in the order the cells were visited.
+	 */
+	public int getVisited(int index) {
+		return queue[index];
+	}
+}
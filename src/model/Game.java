@@ -1,13 +1,43 @@
 package model;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 
 public class Game {
 	private Board gameBoard = new Board();
-	private DrawPile drawPile = new DrawPile();
+	private DrawPile drawPile;
 	private ArrayList<Player> players = new ArrayList<Player>();
 
+	private static final int minBoardSize = 145;
+
+	// The version of the snapshot format, written first.
+	private static final byte snapshotVersion = 1;
+
 	public Game(int numPlayers) {
+		this(numPlayers, new DrawPile());
+	}
+
+	/**
+	 * Constructor, for a game which can be reproduced; the tiles are drawn in
+	 * an order decided by the seed.
+	 * 
+	 * @param numPlayers
+	 *            The number of players which will be playing the game.
+	 * @param seed
+	 *            The seed of the draw pile (see DrawPile(long)).
+	 */
+	public Game(int numPlayers, long seed) {
+		this(numPlayers, new DrawPile(seed));
+	}
+
+	private Game(int numPlayers, DrawPile drawPile) {
+		this.drawPile = drawPile;
+
 		// TODO input checking on number of players
 		// Initialize the players.
 		initPlayers(numPlayers);
@@ -31,14 +61,78 @@ public class Game {
 	 * 
 	 * @param player
 	 *            The player which receives the tile.
+	 * 
+	 * @return a non-zero integer if the draw pile ran out before a tile which
+	 *         can be placed was drawn, zero otherwise.
+	 */
+	public int drawTile(Player player) {
+		return drawTile(player, null);
+	}
+
+	/**
+	 * Allow a player to take a tile from the draw pile, noting any tiles which
+	 * were drawn and set aside as they could not be placed.
+	 * 
+	 * @param player
+	 *            The player which receives the tile.
+	 * @param discarded
+	 *            A list the identifiers of the tiles set aside are added to,
+	 *            in the order they were drawn; or null.
+	 * 
+	 * @return a non-zero integer if the draw pile ran out before a tile which
+	 *         can be placed was drawn, zero otherwise.
+	 */
+	public int drawTile(Player player, List<String> discarded) {
+		int error = drawPile.draw(player);
+
+		// Set aside any tile which can't be placed, and draw again; the board
+		// looks the tile up in its placeability index, rather than searching.
+		while (error == 0 && !gameBoard.canPlaceTile(player.getCurrentTile())) {
+
+			if (discarded != null) {
+				discarded.add(player.getCurrentTile().getIdentifier());
+			}
+
+			error = drawPile.draw(player);
+		}
+
+		if (error != 0) {
+			player.setCurrentTile(null);
+		}
+
+		return error;
+	}
+
+	/**
+	 * Replay a draw made by {@link #drawTile(Player, List)}; the same tiles are
+	 * taken from the draw pile, and the player receives the same tile.
+	 * 
+	 * @param player
+	 *            The player which receives the tile.
+	 * @param discarded
+	 *            The identifiers of the tiles which were set aside.
+	 * @param identifier
+	 *            The identifier of the tile which was drawn.
+	 * 
+	 * @return a non-zero integer if any of the tiles is not in the draw pile,
+	 *         zero otherwise.
 	 */
-	public void drawTile(Player player) {
-		drawPile.draw(player);
+	public int drawTile(Player player, List<String> discarded,
+			String identifier) {
+
+		int error = 0;
+
+		for (String discard : discarded) {
+			error |= drawPile.draw(player, discard);
+		}
 
-		// Re-draw if we get a tile which is not able to be placed.
-		while (!gameBoard.canPlaceTile(player.getCurrentTile())) {
-			drawPile.draw(player);
+		error |= drawPile.draw(player, identifier);
+
+		if (error != 0) {
+			player.setCurrentTile(null);
 		}
+
+		return error;
 	}
 
 	/**
@@ -50,6 +144,17 @@ public class Game {
 		return drawPile.isEmpty();
 	}
 
+	/**
+	 * Get the number of tiles left in the draw pile which can't currently be
+	 * placed anywhere on the board, and would be set aside if drawn.
+	 * 
+	 * @return The number of tiles; a lookup for each kind of tile left, not a
+	 *         search of the board.
+	 */
+	public int getNumUnplaceableTiles() {
+		return drawPile.getNumUnplaceableTiles(gameBoard);
+	}
+
 	/**
 	 * Allow a player to place a tile on the game board.
 	 * 
@@ -67,6 +172,30 @@ public class Game {
 		return gameBoard.placeTile(player, xBoard, yBoard);
 	}
 
+	/**
+	 * Find every legal placement of the player's current tile.
+	 * 
+	 * @param player
+	 *            The player whose tile is to be placed.
+	 * 
+	 * @return An ArrayList of TilePlacement, which is empty if the board is
+	 *         empty (any position is legal) or the tile can't be placed.
+	 */
+	public ArrayList<TilePlacement> getLegalPlacements(Player player) {
+		return gameBoard.getLegalPlacements(player.getCurrentTile());
+	}
+
+	/**
+	 * Shuffle the tiles left in the draw pile; as when a player who can't see
+	 * the pile imagines the order the tiles will come in.
+	 * 
+	 * @param random
+	 *            The random number generator to shuffle the pile with.
+	 */
+	public void shuffleDrawPile(Random random) {
+		drawPile.shuffle(random);
+	}
+
 	/**
 	 * Allow a player to place a meeple on the game board.
 	 * 
@@ -144,6 +273,126 @@ public class Game {
 		return gameBoard.removeMeeples(player);
 	}
 
+	/**
+	 * Take a snapshot of the game, from which an equal game can be made (see
+	 * fromSnapshot).
+	 * 
+	 * The snapshot is compact; a version, then each player's score, current
+	 * tile (as its handle, or -1) and last placed tile position, followed by
+	 * the board (see Board.writeSnapshot) and the draw pile, in order. Tiles
+	 * are kept as handles, so a snapshot can only be read by the same build.
+	 * 
+	 * @return The snapshot.
+	 */
+	public byte[] toSnapshot() {
+
+		ByteBuffer out = ByteBuffer.allocate(2 + 14 * players.size()
+				+ gameBoard.getSnapshotLength() + drawPile.getSnapshotLength());
+
+		out.put(snapshotVersion);
+		out.put((byte) players.size());
+
+		for (Player player : players) {
+
+			Tile tile = player.getCurrentTile();
+
+			out.putInt(player.getScore());
+			out.putShort((tile != null) ? tile.getHandle() : -1);
+			out.putInt(player.getLastTilePlacedXPos());
+			out.putInt(player.getLastTilePlacedYPos());
+		}
+
+		gameBoard.writeSnapshot(out, players);
+		drawPile.writeSnapshot(out);
+
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	/**
+	 * Make a copy of the game, which can be played on without changing this
+	 * one. It's the same game as one made from a snapshot (see fromSnapshot),
+	 * but the board's structures are copied as they are rather than built up
+	 * again tile by tile, so it's cheap enough to make for every playout of a
+	 * search.
+	 * 
+	 * @return The copy.
+	 */
+	public Game copy() {
+
+		Game copy = new Game(players.size(), drawPile.copy());
+		HashMap<Meeple, Meeple> meepleCopies = new HashMap<Meeple, Meeple>();
+
+		for (int i = 0; i < players.size(); i++) {
+
+			Player player = players.get(i);
+			Player playerCopy = copy.players.get(i);
+			Tile tile = player.getCurrentTile();
+
+			playerCopy.setScore(player.getScore());
+			playerCopy.setCurrentTile((tile != null) ? new Tile(tile
+					.getHandle()) : null);
+			playerCopy.setLastTilePlacedPosition(
+					player.getLastTilePlacedXPos(),
+					player.getLastTilePlacedYPos());
+
+			for (int j = 0; j < player.getMeeples().size(); j++) {
+				meepleCopies.put(player.getMeeples().get(j), playerCopy
+						.getMeeples().get(j));
+			}
+		}
+
+		copy.gameBoard = gameBoard.copy(meepleCopies);
+
+		return copy;
+	}
+
+	/**
+	 * Make a game from a snapshot.
+	 * 
+	 * @param snapshot
+	 *            A snapshot, as returned by toSnapshot.
+	 * 
+	 * @return The game, as it was when the snapshot was taken.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the snapshot isn't valid.
+	 */
+	public static Game fromSnapshot(byte[] snapshot) {
+
+		ByteBuffer in = ByteBuffer.wrap(snapshot);
+
+		try {
+			if (in.get() != snapshotVersion) {
+				throw new IllegalArgumentException("Unknown snapshot version.");
+			}
+
+			Game game = new Game(in.get());
+
+			for (Player player : game.players) {
+
+				player.setScore(in.getInt());
+
+				short tile = in.getShort();
+				player.setCurrentTile((tile >= 0) ? new Tile(tile) : null);
+				player.setLastTilePlacedPosition(in.getInt(), in.getInt());
+			}
+
+			game.gameBoard.readSnapshot(in, game.players);
+			game.drawPile.readSnapshot(in);
+
+			return game;
+
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Snapshot is truncated.", e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Snapshot isn't valid.", e);
+		}
+	}
+
+	public Board getBoard() {
+		return gameBoard;
+	}
+
 	public ArrayList<Player> getPlayers() {
 		return players;
 	}
@@ -157,11 +406,14 @@ public class Game {
 	}
 
 	// Pass off info about the board, used for ui to calculate the canvas size.
+	// The board itself has no fixed size, so report at least enough room for
+	// the classic game; 72 tiles can be placed either way from a starting tile
+	// in the center (72, 72). Use an odd number for an easier 'center'.
 	public int getBoardWidth() {
-		return gameBoard.getWidth();
+		return Math.max(minBoardSize, gameBoard.getMaxX() + 2);
 	}
 
 	public int getBoardHeight() {
-		return gameBoard.getHeight();
+		return Math.max(minBoardSize, gameBoard.getMaxY() + 2);
 	}
 }
@@ -0,0 +1,232 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * A map from board positions to non-negative integers (such as an index into
+ * a list of placed tiles).
+ *
+ * Positions are packed into a single long (see pack(int, int)) and stored in
+ * an open-addressing table with linear probing, so that lookups don't need to
+ * allocate any objects. The table doubles in size whenever it becomes half
+ * full.
+ */
+public class PositionMap {
+
+	private static final int empty = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+
+	public PositionMap() {
+		this(16);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedSize
+	 *            The number of positions the map is expected to hold.
+	 */
+	public PositionMap(int expectedSize) {
+
+		int capacity = 16;
+
+		while (capacity < expectedSize * 2) {
+			capacity *= 2;
+		}
+
+		allocate(capacity);
+	}
+
+	/**
+	 * Pack an x & y board position into a single long value.
+	 *
+	 * @param xBoard
+	 *            The x position on the board.
+	 * @param yBoard
+	 *            The y position on the board.
+	 *
+	 * @return A long holding x in the high 32 bits, and y in the low 32 bits.
+	 */
+	public static long pack(int xBoard, int yBoard) {
+		return ((long) xBoard << 32) | (yBoard & 0xffffffffL);
+	}
+
+	public static int unpackX(long position) {
+		return (int) (position >> 32);
+	}
+
+	public static int unpackY(long position) {
+		return (int) position;
+	}
+
+	/**
+	 * Get the value stored for a position.
+	 *
+	 * @return The value, or -1 if the position is not in the map.
+	 */
+	public int get(int xBoard, int yBoard) {
+		return get(pack(xBoard, yBoard));
+	}
+
+	public int get(long position) {
+
+		int slot = slot(position);
+
+		while (values[slot] != empty) {
+
+			if (keys[slot] == position) {
+				return values[slot];
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return empty;
+	}
+
+	public boolean contains(long position) {
+		return get(position) != empty;
+	}
+
+	/**
+	 * Store a value for a position, replacing any existing value.
+	 *
+	 * @param position
+	 *            A packed board position.
+	 * @param value
+	 *            A non-negative value.
+	 */
+	public void put(long position, int value) {
+
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative.");
+		}
+
+		int slot = slot(position);
+
+		while (values[slot] != empty) {
+
+			if (keys[slot] == position) {
+				values[slot] = value;
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = position;
+		values[slot] = value;
+		size++;
+
+		if (size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Remove a position from the map.
+	 *
+	 * @return The value which was stored, or -1 if there was none.
+	 */
+	public int remove(long position) {
+
+		int slot = slot(position);
+
+		while (values[slot] != empty) {
+
+			if (keys[slot] == position) {
+
+				int value = values[slot];
+				values[slot] = empty;
+				size--;
+
+				// Shift back any following entries which would no longer be
+				// found past the now empty slot.
+				int next = (slot + 1) & mask;
+
+				while (values[next] != empty) {
+
+					int home = slot(keys[next]);
+
+					// Move the entry if its home slot is not between the
+					// empty slot and its current slot (cyclically).
+					if (((next - home) & mask) >= ((next - slot) & mask)) {
+						keys[slot] = keys[next];
+						values[slot] = values[next];
+						values[next] = empty;
+						slot = next;
+					}
+
+					next = (next + 1) & mask;
+				}
+
+				return value;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return empty;
+	}
+
+	/**
+	 * Make a copy of the map, which can be changed without changing this one.
+	 */
+	public PositionMap copy() {
+
+		PositionMap copy = new PositionMap(0);
+
+		copy.keys = Arrays.copyOf(keys, keys.length);
+		copy.values = Arrays.copyOf(values, values.length);
+		copy.mask = mask;
+		copy.size = size;
+
+		return copy;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	private int slot(long position) {
+
+		// Mix the bits of both coordinates (a 64-bit finalizer), so that
+		// neighboring positions don't crowd together in the table.
+		long hash = position;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+
+		return (int) hash & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, empty);
+		mask = capacity - 1;
+	}
+
+	private void resize(int capacity) {
+
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+
+		allocate(capacity);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != empty) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
@@ -29,23 +29,22 @@ public class Tile {
 	// Representation in this way allows for easier scoring and tests for
 	// connectedness.
 
-	private TileType[][] tile;
-	private String identifier = "";
-	private int orientation = 0;
+	// A tile is only a handle onto its prototype, which holds the identifier &
+	// layout shared by all tiles of the same kind (see TilePrototype). The
+	// prototype id and the orientation of the tile are packed into a short.
+	private short handle;
 
 	/** Denotes the width & height of a tile (number of tileType's). **/
 	public static final int tileSize = 7;
 
-	private Tile() {
-		// Create the tile array.
-		tile = new TileType[tileSize][tileSize];
+	// Sides of a tile, in clockwise order.
+	public static final int TOP = 0;
+	public static final int RIGHT = 1;
+	public static final int BOTTOM = 2;
+	public static final int LEFT = 3;
 
-		// Set the corners.
-		tile[0][0] = null;
-		tile[0][tileSize - 1] = null;
-		tile[tileSize - 1][0] = null;
-		tile[tileSize - 1][tileSize - 1] = null;
-	}
+	// Each tile type in an edge signature takes this many bits.
+	static final int edgeBits = 3;
 
 	/**
 	 * Constructor
@@ -54,23 +53,40 @@ public class Tile {
 	 * @param identifier an identifier to associate with the tile.
 	 */
 	public Tile(char[][] tile, String identifier) {
-		this();
 
 		if (tile.length != tileSize) {
 			throw new IllegalArgumentException("Tile size must be 7x7.");
 		}
 
+		TileType[][] layout = new TileType[tileSize][tileSize];
+
 		for (int i = 0; i < tile.length; i++) {
 			if (tile[i].length != tileSize) {
 				throw new IllegalArgumentException("Tile size must be 7x7.");
 			}
 
 			for (int j = 0; j < tile[i].length; j++) {
-				this.tile[i][j] = charToTileType(tile[i][j]);
+				layout[i][j] = charToTileType(tile[i][j]);
 			}
 		}
 
-		this.identifier = identifier;
+		TilePrototype prototype = TilePrototype.intern(layout, identifier);
+		this.handle = (short) (prototype.getId() << TilePrototype.orientationBits);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param handle
+	 *            a tile handle, as returned by {@link #getHandle()}.
+	 */
+	public Tile(short handle) {
+
+		if (TilePrototype.get(handle >> TilePrototype.orientationBits) == null) {
+			throw new IllegalArgumentException("Unknown tile prototype.");
+		}
+
+		this.handle = handle;
 	}
 
 	/**
@@ -102,73 +118,106 @@ public class Tile {
 	 * Rotate the tile clockwise by 90 degrees.
 	 */
 	public void rotateClockwise() {
-		TileType[][] ret = new TileType[tileSize][tileSize];
-
-		for (int i = 0; i < tile.length; i++) {
-			for (int j = 0; j < tile[i].length; j++) {
-				ret[i][j] = tile[tileSize - j - 1][i];
-			}
-		}
-
-		tile = ret;
-		orientation = (orientation + 1) % 4;
+		setOrientation((getOrientation() + 1) % 4);
 	}
 
 	/**
 	 * Rotate the tile counter-clockwise by 90 degrees.
 	 */
 	public void rotateCounterClockwise() {
-		TileType[][] ret = new TileType[tileSize][tileSize];
-
-		for (int i = 0; i < tile.length; i++) {
-			for (int j = 0; j < tile[i].length; j++) {
-				ret[i][j] = tile[j][tileSize - i - 1];
-			}
-		}
-
-		tile = ret;
 		// Modulus of a negative number doesn't work, so add 4.
-		orientation = (orientation + 3) % 4;
+		setOrientation((getOrientation() + 3) % 4);
+	}
+
+	private void setOrientation(int orientation) {
+		handle = (short) ((handle & ~TilePrototype.orientationMask) | orientation);
 	}
 
 	// Accessor Methods
+	// The returned sides are shared by all tiles of the same kind, and must not
+	// be modified.
 	public TileType[] getTop() {
-		return tile[0];
+		return getShape().getSide(getOrientation(), TOP);
 	}
 
 	public TileType[] getRight() {
-		TileType[] right = new TileType[tileSize];
-
-		for (int i = 0; i < tileSize; i++) {
-			right[i] = tile[i][tileSize - 1];
-		}
-
-		return right;
+		return getShape().getSide(getOrientation(), RIGHT);
 	}
 
 	public TileType[] getBottom() {
-		return tile[tileSize - 1];
+		return getShape().getSide(getOrientation(), BOTTOM);
 	}
 
 	public TileType[] getLeft() {
-		TileType[] left = new TileType[tileSize];
+		return getShape().getSide(getOrientation(), LEFT);
+	}
+
+	/**
+	 * Get a signature of the tile types along one side of the tile, packed
+	 * into an integer. Sides are read clockwise around the tile (the top from
+	 * left to right, the right from top to bottom, and so on), so rotating a
+	 * tile only changes which side a signature belongs to.
+	 * 
+	 * Two tiles can be placed against each other when the signature of one
+	 * side equals the reverse (see {@link #reverseEdgeSignature(int)}) of the
+	 * signature of the facing side.
+	 * 
+	 * @param side
+	 *            One of TOP, RIGHT, BOTTOM, or LEFT.
+	 * 
+	 * @return The edge signature of the side.
+	 */
+	public int getEdgeSignature(int side) {
+		return getShape().getEdgeSignature(getOrientation(), side);
+	}
+
+	/**
+	 * Reverse the order of the tile types in an edge signature. This gives the
+	 * signature a side must have to be placed against the given side.
+	 * 
+	 * @param signature
+	 *            An edge signature.
+	 * 
+	 * @return The reversed edge signature.
+	 */
+	public static int reverseEdgeSignature(int signature) {
+
+		int mask = (1 << edgeBits) - 1;
+		int reversed = 0;
 
 		for (int i = 0; i < tileSize; i++) {
-			left[i] = tile[i][0];
+			int code = (signature >> (edgeBits * i)) & mask;
+			reversed |= code << (edgeBits * (tileSize - 1 - i));
 		}
 
-		return left;
+		return reversed;
 	}
 
 	public TileType getTileType(int x, int y) {
-		return tile[y][x];
+		return getShape().getTileType(getOrientation(), x, y);
 	}
 
 	public String getIdentifier() {
-		return identifier;
+		return getPrototype().getIdentifier();
 	}
 
 	public int getOrientation() {
-		return orientation;
+		return handle & TilePrototype.orientationMask;
+	}
+
+	/**
+	 * Get the packed prototype id & orientation of the tile. A tile created
+	 * from the handle is the same kind of tile, in the same orientation.
+	 */
+	public short getHandle() {
+		return handle;
+	}
+
+	public TilePrototype getPrototype() {
+		return TilePrototype.get(handle >> TilePrototype.orientationBits);
+	}
+
+	TileShape getShape() {
+		return getPrototype().getShape();
 	}
 }
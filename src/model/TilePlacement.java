@@ -0,0 +1,42 @@
+package model;
+
+/*
+ * This class describes a legal move; a position on the board along with the
+ * orientation the tile must be rotated to for it to be placed there.
+ */
+
+public class TilePlacement {
+
+	public final int xBoard;
+	public final int yBoard;
+	public final int orientation;
+
+	public TilePlacement(int xBoard, int yBoard, int orientation) {
+		this.xBoard = xBoard;
+		this.yBoard = yBoard;
+		this.orientation = orientation;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (other == this) {
+			return true;
+		}
+
+		if (!(other instanceof TilePlacement)) {
+			return false;
+		}
+
+		TilePlacement otherPlacement = (TilePlacement) other;
+
+		return this.xBoard == otherPlacement.xBoard
+				&& this.yBoard == otherPlacement.yBoard
+				&& this.orientation == otherPlacement.orientation;
+	}
+
+	@Override
+	public int hashCode() {
+		return (((xBoard * 31) + yBoard) * 4) + orientation;
+	}
+}
@@ -0,0 +1,109 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * A kind of tile; its identifier along with its (shared) shape.
+ *
+ * Prototypes are kept in a catalog shared by every game, and each is given a
+ * small id when it is first created. A tile is then just a handle onto its
+ * prototype; the prototype id and the tile's orientation packed into a short
+ * (see Tile.getHandle()).
+ */
+public final class TilePrototype {
+
+	// The orientation takes the low two bits of a tile handle, leaving the
+	// rest of a (positive) short for the prototype id.
+	static final int orientationBits = 2;
+	static final int orientationMask = (1 << orientationBits) - 1;
+	static final int maxPrototypes = 1 << (15 - orientationBits);
+
+	private static final HashMap<String, TilePrototype> catalog = new HashMap<String, TilePrototype>();
+	private static volatile TilePrototype[] prototypes = new TilePrototype[32];
+	private static int numPrototypes = 0;
+
+	private final int id;
+	private final String identifier;
+	private final TileShape shape;
+
+	private TilePrototype(int id, String identifier, TileShape shape) {
+		this.id = id;
+		this.identifier = identifier;
+		this.shape = shape;
+	}
+
+	/**
+	 * Get the prototype for a tile layout & identifier, adding it to the
+	 * catalog if this is the first tile of its kind.
+	 *
+	 * @param layout
+	 *            A 7x7 matrix of land types, in the tile's initial
+	 *            orientation. The matrix must not be modified afterwards.
+	 * @param identifier
+	 *            An identifier to associate with the tile.
+	 *
+	 * @return The prototype with the given layout & identifier.
+	 */
+	static synchronized TilePrototype intern(TileType[][] layout,
+			String identifier) {
+
+		TileShape shape = TileShape.get(layout);
+		String key = identifier + ";" + shape.getKey();
+
+		TilePrototype prototype = catalog.get(key);
+
+		if (prototype != null) {
+			return prototype;
+		}
+
+		if (numPrototypes == maxPrototypes) {
+			throw new IllegalStateException("Too many kinds of tile.");
+		}
+
+		prototype = new TilePrototype(numPrototypes, identifier, shape);
+
+		// Readers don't lock, so publish a new array rather than changing the
+		// one they may be reading.
+		TilePrototype[] updated = prototypes;
+
+		if (numPrototypes == updated.length) {
+			updated = Arrays.copyOf(updated, updated.length * 2);
+		} else {
+			updated = updated.clone();
+		}
+
+		updated[numPrototypes++] = prototype;
+		prototypes = updated;
+		catalog.put(key, prototype);
+
+		return prototype;
+	}
+
+	/**
+	 * Get a prototype from the catalog.
+	 *
+	 * @param id
+	 *            The id of the prototype.
+	 *
+	 * @return The prototype, or null if there is no prototype with the id.
+	 */
+	public static TilePrototype get(int id) {
+
+		TilePrototype[] current = prototypes;
+
+		return (id >= 0 && id < current.length) ? current[id] : null;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	TileShape getShape() {
+		return shape;
+	}
+}
@@ -0,0 +1,255 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The layout of land types on a tile, in each of its four orientations.
+ *
+ * Everything a tile needs in order to be rotated & matched against other
+ * tiles is worked out once, when the shape is created: the rotated matrices,
+ * the sides of each rotation, the packed edge signatures of each side, and the
+ * segments which the feature graph is built from.
+ * Shapes are immutable and shared between all tiles with the same layout, so
+ * rotating a tile only changes its orientation, and no arrays are created
+ * when checking placements.
+ */
+final class TileShape {
+
+	// Shapes are shared between all tiles (& games) with the same layout.
+	private static final ConcurrentHashMap<String, TileShape> shapes = new ConcurrentHashMap<String, TileShape>();
+
+	private static final int size = Tile.tileSize;
+	private static final int cells = size * size;
+
+	private final String key;
+
+	// Indexed by orientation (the number of clockwise rotations).
+	private final TileType[][][] matrices = new TileType[4][][];
+	private final TileType[][][] sides = new TileType[4][4][];
+	private final int[] edgeSignatures = new int[4 * 4];
+
+	// The segments (groups of connected tile positions of the same type) of
+	// each orientation; see FeatureGraph.
+	private final int[][] cellSegments = new int[4][];
+	private final TileType[][] segmentTypes = new TileType[4][];
+	private final int[][] segmentOpenEdges = new int[4][];
+
+	private TileShape(String key, TileType[][] layout) {
+
+		this.key = key;
+		matrices[0] = layout;
+
+		for (int orientation = 1; orientation < 4; orientation++) {
+			matrices[orientation] = rotateClockwise(matrices[orientation - 1]);
+		}
+
+		for (int orientation = 0; orientation < 4; orientation++) {
+
+			TileType[][] matrix = matrices[orientation];
+			TileType[] right = new TileType[size];
+			TileType[] left = new TileType[size];
+
+			for (int i = 0; i < size; i++) {
+				right[i] = matrix[i][size - 1];
+				left[i] = matrix[i][0];
+			}
+
+			sides[orientation][Tile.TOP] = matrix[0];
+			sides[orientation][Tile.RIGHT] = right;
+			sides[orientation][Tile.BOTTOM] = matrix[size - 1];
+			sides[orientation][Tile.LEFT] = left;
+
+			for (int side = 0; side < 4; side++) {
+				edgeSignatures[orientation * 4 + side] = edgeSignature(matrix,
+						side);
+			}
+
+			labelSegments(orientation);
+		}
+	}
+
+	/**
+	 * Get the shared shape for a layout of land types.
+	 *
+	 * @param layout
+	 *            A 7x7 matrix of land types, in the tile's initial
+	 *            orientation. The matrix must not be modified afterwards.
+	 *
+	 * @return The shape with the given layout.
+	 */
+	public static TileShape get(TileType[][] layout) {
+
+		StringBuilder key = new StringBuilder(size * size);
+
+		for (TileType[] row : layout) {
+			for (TileType tileType : row) {
+				key.append(tileType == null ? '-' : (char) ('0' + tileType
+						.ordinal()));
+			}
+		}
+
+		String layoutKey = key.toString();
+		TileShape shape = shapes.get(layoutKey);
+
+		if (shape == null) {
+			shapes.putIfAbsent(layoutKey, new TileShape(layoutKey, layout));
+			shape = shapes.get(layoutKey);
+		}
+
+		return shape;
+	}
+
+	/**
+	 * A string which uniquely identifies the layout of the shape.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public TileType getTileType(int orientation, int x, int y) {
+		return matrices[orientation][y][x];
+	}
+
+	/**
+	 * Get the tile types along a side. Top & bottom are read left to right,
+	 * left & right are read top to bottom. The returned array is shared, and
+	 * must not be modified.
+	 */
+	public TileType[] getSide(int orientation, int side) {
+		return sides[orientation][side];
+	}
+
+	public int getEdgeSignature(int orientation, int side) {
+		return edgeSignatures[orientation * 4 + side];
+	}
+
+	/**
+	 * Get the segment of each tile position (row by row), numbered from zero,
+	 * with -1 marking positions without a tile type. The returned array is
+	 * shared, and must not be modified.
+	 */
+	public int[] getCellSegments(int orientation) {
+		return cellSegments[orientation];
+	}
+
+	public int getNumSegments(int orientation) {
+		return segmentTypes[orientation].length;
+	}
+
+	public TileType getSegmentType(int orientation, int segment) {
+		return segmentTypes[orientation][segment];
+	}
+
+	/**
+	 * Get the number of tile positions of a segment which lie on the border
+	 * of the tile.
+	 */
+	public int getSegmentOpenEdges(int orientation, int segment) {
+		return segmentOpenEdges[orientation][segment];
+	}
+
+	// Label each group of connected tile positions of the same type.
+	private void labelSegments(int orientation) {
+
+		TileType[][] matrix = matrices[orientation];
+		int[] labels = new int[cells];
+		TileType[] types = new TileType[cells];
+		int[] openEdges = new int[cells];
+		int[] stack = new int[cells];
+		int numSegments = 0;
+
+		Arrays.fill(labels, -1);
+
+		for (int cell = 0; cell < cells; cell++) {
+
+			TileType type = matrix[cell / size][cell % size];
+
+			if (type == null || labels[cell] >= 0) {
+				continue;
+			}
+
+			int segment = numSegments++;
+			int stackSize = 0;
+
+			types[segment] = type;
+			labels[cell] = segment;
+			stack[stackSize++] = cell;
+
+			while (stackSize > 0) {
+
+				int current = stack[--stackSize];
+				int x = current % size;
+				int y = current / size;
+
+				// Each position on the border of the tile has one open edge,
+				// until a neighboring tile is placed against it.
+				if (x == 0 || y == 0 || x == size - 1 || y == size - 1) {
+					openEdges[segment]++;
+				}
+
+				int[] neighbors = { x > 0 ? current - 1 : -1,
+						x < size - 1 ? current + 1 : -1,
+						y > 0 ? current - size : -1,
+						y < size - 1 ? current + size : -1 };
+
+				for (int neighbor : neighbors) {
+
+					if (neighbor < 0 || labels[neighbor] >= 0) {
+						continue;
+					}
+
+					if (matrix[neighbor / size][neighbor % size] == type) {
+						labels[neighbor] = segment;
+						stack[stackSize++] = neighbor;
+					}
+				}
+			}
+		}
+
+		cellSegments[orientation] = labels;
+		segmentTypes[orientation] = Arrays.copyOf(types, numSegments);
+		segmentOpenEdges[orientation] = Arrays.copyOf(openEdges, numSegments);
+	}
+
+	private static TileType[][] rotateClockwise(TileType[][] matrix) {
+
+		TileType[][] ret = new TileType[size][size];
+
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				ret[i][j] = matrix[size - j - 1][i];
+			}
+		}
+
+		return ret;
+	}
+
+	// See Tile.getEdgeSignature(int); sides are read clockwise around the
+	// tile, with each tile type taking three bits.
+	private static int edgeSignature(TileType[][] matrix, int side) {
+
+		int last = size - 1;
+		int signature = 0;
+
+		for (int i = 0; i < size; i++) {
+
+			TileType tileType;
+
+			if (side == Tile.TOP) {
+				tileType = matrix[0][i];
+			} else if (side == Tile.RIGHT) {
+				tileType = matrix[i][last];
+			} else if (side == Tile.BOTTOM) {
+				tileType = matrix[last][last - i];
+			} else {
+				tileType = matrix[last - i][0];
+			}
+
+			int code = (tileType == null) ? 0 : tileType.ordinal() + 1;
+			signature |= code << (Tile.edgeBits * i);
+		}
+
+		return signature;
+	}
+}
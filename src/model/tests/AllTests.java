@@ -5,7 +5,8 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ BoardTest.class, DrawPileTest.class, MeepleTest.class,
-		PlayerTest.class, TileTest.class })
+@SuiteClasses({ BoardTest.class, DrawPileTest.class, GameTest.class,
+		MeepleTest.class, PlayerTest.class, PositionMapTest.class,
+		TileTest.class })
 public class AllTests {
 }
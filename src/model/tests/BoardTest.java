@@ -1,15 +1,23 @@
 package model.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
 
 
 import model.Board;
+import model.BoardPosition;
+import model.DrawPile;
 import model.Meeple;
 import model.Player;
 import model.Tile;
+import model.TilePlacement;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +35,7 @@ public class BoardTest {
 	private char[][] k;
 	private char[][] cr3;
 	private char[][] c2a;
+	private char[][] r;
 
 	@Before
 	public void initialize() {
@@ -64,6 +73,14 @@ public class BoardTest {
 				{ 'F', 'F', 'F', 'F', 'F', 'F', 'C' },
 				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' } };
 
+		r = new char[][] { { 'x', 'F', 'F', 'R', 'F', 'F', 'x' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'F' },
+				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
+
 		board = new Board();
 		player = new Player();
 		player2 = new Player();
@@ -141,6 +158,70 @@ public class BoardTest {
 		assertEquals(43, player.getLastTilePlacedYPos());
 	}
 
+	@Test
+	public void legalPlacementsTest() {
+		// Find the legal placements for a tile next to a single placed tile.
+		// Each placement found should be accepted by the board.
+
+		player.setCurrentTile(new Tile(chr2, "CHR2"));
+		err = board.placeTile(player, 64, 42);
+		assertEquals(0, err);
+
+		Tile aTile = new Tile(chr2, "CHR2");
+		ArrayList<TilePlacement> placements = board.getLegalPlacements(aTile);
+
+		// The tile fits below the first tile rotated once, but never as is.
+		assertTrue(placements.contains(new TilePlacement(64, 43, 1)));
+		assertFalse(placements.contains(new TilePlacement(64, 43, 0)));
+		assertTrue(board.canPlaceTile(aTile));
+
+		// The tile itself should not have been rotated.
+		assertEquals(0, aTile.getOrientation());
+
+		for (TilePlacement placement : placements) {
+			assertTrue(Math.abs(placement.xBoard - 64)
+					+ Math.abs(placement.yBoard - 42) == 1);
+		}
+
+		TilePlacement placement = placements.get(0);
+
+		while (aTile.getOrientation() != placement.orientation) {
+			aTile.rotateClockwise();
+		}
+
+		player.setCurrentTile(aTile);
+		err = board.placeTile(player, placement.xBoard, placement.yBoard);
+		assertEquals(0, err);
+	}
+
+	@Test
+	public void boardExtentTest() {
+		// The board starts empty and grows as tiles are placed, in any
+		// direction (including negative positions).
+
+		assertEquals(0, board.getWidth());
+		assertEquals(0, board.getHeight());
+
+		player.setCurrentTile(new Tile(chr2, "CHR2"));
+		err = board.placeTile(player, 0, 0);
+		assertEquals(0, err);
+
+		assertEquals(1, board.getWidth());
+		assertEquals(1, board.getHeight());
+
+		Tile aTile = new Tile(chr2, "CHR2");
+		aTile.rotateClockwise();
+		aTile.rotateClockwise();
+		player.setCurrentTile(aTile);
+		err = board.placeTile(player, 0, -1);
+		assertEquals(0, err);
+
+		assertEquals(1, board.getWidth());
+		assertEquals(2, board.getHeight());
+		assertEquals(-1, board.getMinY());
+		assertEquals(0, board.getMaxY());
+	}
+
 	@Test
 	public void placeMeepleTest01() {
 		// Place a meeple on a tile which was just placed.
@@ -248,6 +329,37 @@ public class BoardTest {
 		assertNotNull(m);
 	}
 
+	@Test
+	public void getMeepleTest02() {
+		// Place meeples for two players, then remove the first player's
+		// meeples. Only the second player's meeple should remain.
+
+		player.setCurrentTile(new Tile(chr2, "CHR2"));
+
+		err = board.placeTile(player, 64, 42);
+		assertEquals(0, err);
+
+		err = board.placeMeeple(player, 64, 42, 0, 4);
+		assertEquals(0, err);
+
+		Tile secondTile = new Tile(chr2, "CHR2");
+		secondTile.rotateClockwise();
+		player2.setCurrentTile(secondTile);
+
+		err = board.placeTile(player2, 64, 43);
+		assertEquals(0, err);
+
+		err = board.placeMeeple(player2, 64, 43, 3, 0);
+		assertEquals(0, err);
+
+		board.removeMeeples(player);
+
+		assertNull(board.getMeeple(64, 42, 0, 4));
+		assertEquals(player2.getMeeples().get(0),
+				board.getMeeple(64, 43, 3, 0));
+		assertNull(board.getMeeple(64, 44, 3, 0));
+	}
+
 	@Test
 	public void scoreRoadTest01() {
 		// Test scoring of a simple road (during game).
@@ -296,6 +408,46 @@ public class BoardTest {
 		assertEquals(1, player.getScore());
 	}
 
+	@Test
+	public void scoreRoadTest03() {
+		// Test scoring of a road over three tiles (during game).
+		// The road is not complete after the second tile, so nothing should
+		// be scored until the third tile finishes it.
+
+		player.setCurrentTile(new Tile(cr3, "CR3"));
+		err = board.placeTile(player, 4, 4);
+		assertEquals(0, err);
+
+		err = board.placeMeeple(player, 4, 4, 5, 3);
+		assertEquals(0, err);
+
+		ArrayList<Player> playersList = new ArrayList<Player>();
+		playersList.add(player);
+
+		player.setCurrentTile(new Tile(r, "R"));
+		player.getCurrentTile().rotateClockwise();
+		err = board.placeTile(player, 5, 4);
+		assertEquals(0, err);
+
+		board.scoreRoads(playersList, false);
+		assertEquals(0, player.getScore());
+		assertEquals(1, board.getNumMeeplesPlaced(player));
+
+		player.setCurrentTile(new Tile(cr3, "CR3"));
+		player.getCurrentTile().rotateClockwise();
+		player.getCurrentTile().rotateClockwise();
+		err = board.placeTile(player, 6, 4);
+		assertEquals(0, err);
+
+		board.scoreRoads(playersList, false);
+		assertEquals(3, player.getScore());
+		assertEquals(0, board.getNumMeeplesPlaced(player));
+
+		// The road is now free to be claimed again.
+		err = board.placeMeeple(player, 6, 4, 1, 3);
+		assertEquals(0, err);
+	}
+
 	@Test
 	public void scoreCastleTest01() {
 		// Test scoring of a simple castle (during game).
@@ -443,7 +595,7 @@ public class BoardTest {
 
 		board.scoreCloisters(playersList, false);
 		assertEquals(9, player.getScore());
-		// TODO meeple should also have been removed from the tile.
+		assertEquals(0, board.getNumMeeplesPlaced(player));
 	}
 
 	@Test
@@ -478,6 +630,41 @@ public class BoardTest {
 		assertEquals(3, player.getScore());
 	}
 
+	@Test
+	public void scoreCloisterTest03() {
+		// Test scoring of a finished cloister away from the board diagonal
+		// (during game), so that x & y board positions differ.
+
+		int[][] neighbors = { { 6, 3 }, { 7, 3 }, { 7, 4 }, { 7, 5 },
+				{ 6, 5 }, { 5, 5 }, { 5, 4 }, { 5, 3 } };
+
+		player.setCurrentTile(new Tile(k, "K"));
+
+		err = board.placeTile(player, 6, 4);
+		assertEquals(0, err);
+
+		err = board.placeMeeple(player, 6, 4, 3, 3);
+		assertEquals(0, err);
+
+		ArrayList<Player> playersList = new ArrayList<Player>();
+		playersList.add(player);
+
+		for (int[] neighbor : neighbors) {
+
+			// Not yet complete.
+			board.scoreCloisters(playersList, false);
+			assertEquals(0, player.getScore());
+
+			player.setCurrentTile(new Tile(k, "K"));
+			err = board.placeTile(player, neighbor[0], neighbor[1]);
+			assertEquals(0, err);
+		}
+
+		board.scoreCloisters(playersList, false);
+		assertEquals(9, player.getScore());
+		assertEquals(0, board.getNumMeeplesPlaced(player));
+	}
+
 	@Test
 	public void scoreFieldTest01() {
 		// Test scoring of a field (not finished) (end game).
@@ -510,4 +697,97 @@ public class BoardTest {
 		assertEquals(3, player.getScore());
 	}
 
+	@Test
+	public void placeabilityIndexTest() {
+
+		// One tile of each kind, to check the index against a search.
+		HashMap<String, Tile> kinds = new HashMap<String, Tile>();
+		DrawPile fullPile = new DrawPile(1);
+
+		while (fullPile.draw(player) == 0) {
+			kinds.put(player.getCurrentTile().getIdentifier(),
+					player.getCurrentTile());
+		}
+
+		DrawPile drawPile = new DrawPile(7);
+		Random random = new Random(7);
+
+		assertEquals(0, drawPile.getNumUnplaceableTiles(board));
+
+		while (drawPile.draw(player) == 0) {
+
+			Tile tile = player.getCurrentTile();
+
+			if (board.isEmpty()) {
+				assertEquals(0, board.placeTile(player, 0, 0));
+			} else {
+
+				ArrayList<TilePlacement> placements = board
+						.getLegalPlacements(tile);
+
+				if (placements.isEmpty()) {
+					assertFalse(board.canPlaceTile(tile));
+					continue;
+				}
+
+				TilePlacement placement = placements.get(random
+						.nextInt(placements.size()));
+
+				while (tile.getOrientation() != placement.orientation) {
+					tile.rotateClockwise();
+				}
+
+				assertEquals(0, board.placeTile(player, placement.xBoard,
+						placement.yBoard));
+			}
+
+			int unplaceable = 0;
+
+			for (Tile kind : kinds.values()) {
+
+				boolean placeable = !board.getLegalPlacements(kind).isEmpty();
+
+				assertEquals(placeable, board.canPlaceTile(kind));
+
+				if (!placeable) {
+					unplaceable += drawPile.getNumTiles(kind.getPrototype());
+				}
+			}
+
+			assertEquals(unplaceable, drawPile.getNumUnplaceableTiles(board));
+		}
+	}
+
+	@Test
+	public void meeplePlacementsTest() {
+		// A road tile has three features to claim; the road, through the
+		// center, comes first.
+
+		assertTrue(board.getMeeplePlacements(4, 4).isEmpty());
+
+		player.setCurrentTile(new Tile(r, "R"));
+		err = board.placeTile(player, 4, 4);
+		assertEquals(0, err);
+
+		ArrayList<BoardPosition> positions = board.getMeeplePlacements(4, 4);
+		assertEquals(3, positions.size());
+		assertEquals(new BoardPosition(4, 4, 3, 3), positions.get(0));
+
+		err = board.placeMeeple(player, 4, 4, 3, 3);
+		assertEquals(0, err);
+		assertEquals(2, board.getMeeplePlacements(4, 4).size());
+
+		// The road carries on to the next tile, and is still claimed.
+		player.setCurrentTile(new Tile(r, "R"));
+		err = board.placeTile(player, 4, 5);
+		assertEquals(0, err);
+
+		positions = board.getMeeplePlacements(4, 5);
+		assertEquals(2, positions.size());
+
+		for (BoardPosition position : positions) {
+			assertFalse(position.xTile == 3);
+		}
+	}
+
 }
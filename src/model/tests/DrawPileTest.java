@@ -1,6 +1,7 @@
 package model.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import model.DrawPile;
 import model.Player;
@@ -35,4 +36,71 @@ public class DrawPileTest {
 		assertEquals(72, numTiles);
 	}
 
+	@Test
+	public void drawPileTakeTest() {
+
+		DrawPile drawPile = new DrawPile();
+		Player player = new Player();
+
+		// The starting tile is always taken first.
+		assertTrue(drawPile.draw(player, "K") != 0);
+		assertEquals(0, drawPile.draw(player, "CR"));
+		assertEquals("CR", player.getCurrentTile().getIdentifier());
+
+		// There are four cloisters.
+		for (int i = 0; i < 4; i++) {
+			assertEquals(0, drawPile.draw(player, "K"));
+			assertEquals("K", player.getCurrentTile().getIdentifier());
+		}
+
+		assertTrue(drawPile.draw(player, "K") != 0);
+		assertEquals("K", player.getCurrentTile().getIdentifier());
+
+		// The tiles taken are gone from the pile.
+		int numTiles = 5;
+
+		while (!drawPile.isEmpty()) {
+			drawPile.draw(player);
+			assertTrue(!player.getCurrentTile().getIdentifier().equals("K"));
+			numTiles++;
+		}
+
+		assertEquals(72, numTiles);
+	}
+
+	@Test
+	public void drawPileSeedTest() {
+
+		DrawPile drawPile = new DrawPile(42);
+		DrawPile sameSeed = new DrawPile(42);
+		DrawPile otherSeed = new DrawPile(43);
+
+		Player player = new Player();
+		Player samePlayer = new Player();
+		Player otherPlayer = new Player();
+
+		boolean differs = false;
+
+		// Piles with the same seed give the same tiles, in the same order.
+		while (drawPile.draw(player) == 0) {
+
+			assertEquals(0, sameSeed.draw(samePlayer));
+			assertEquals(0, otherSeed.draw(otherPlayer));
+
+			String identifier = player.getCurrentTile().getIdentifier();
+
+			assertEquals(identifier, samePlayer.getCurrentTile()
+					.getIdentifier());
+
+			if (!identifier.equals(otherPlayer.getCurrentTile()
+					.getIdentifier())) {
+				differs = true;
+			}
+		}
+
+		assertTrue(sameSeed.isEmpty());
+		assertTrue(otherSeed.isEmpty());
+		assertTrue(differs);
+	}
+
 }
@@ -0,0 +1,262 @@
+package model.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import model.Game;
+import model.Player;
+import model.TilePlacement;
+
+import org.junit.Test;
+
+
+public class GameTest {
+
+	@Test
+	public void snapshotTest() {
+
+		Game game = new Game(3);
+
+		// Play part of a game, with a meeple on every tile which allows one.
+		for (int turn = 0; turn < 30; turn++) {
+
+			Player player = game.getPlayers().get(turn % 3);
+			assertEquals(0, game.drawTile(player));
+
+			ArrayList<TilePlacement> placements = game.getLegalPlacements(player);
+			TilePlacement placement = placements.isEmpty() ? new TilePlacement(
+					72, 72, 0) : placements.get(0);
+
+			while (player.getCurrentTile().getOrientation() != placement.orientation) {
+				player.getCurrentTile().rotateClockwise();
+			}
+
+			assertEquals(0, game.placeTile(player, placement.xBoard,
+					placement.yBoard));
+			game.placeMeeple(player, placement.xBoard, placement.yBoard, 3, 3);
+			game.score(false);
+		}
+
+		// Leave a tile in hand.
+		game.drawTile(game.getPlayers().get(0));
+
+		byte[] snapshot = game.toSnapshot();
+		Game restored = Game.fromSnapshot(snapshot);
+
+		assertArrayEquals(snapshot, restored.toSnapshot());
+		assertEquals(30, restored.getBoard().getNumTiles());
+
+		for (int i = 0; i < 3; i++) {
+
+			Player player = game.getPlayers().get(i);
+			Player restoredPlayer = restored.getPlayers().get(i);
+
+			assertEquals(player.getScore(), restoredPlayer.getScore());
+			assertEquals(game.getNumMeeplesPlaced(player),
+					restored.getNumMeeplesPlaced(restoredPlayer));
+		}
+
+		assertEquals(game.getPlayers().get(0).getCurrentTile().getHandle(),
+				restored.getPlayers().get(0).getCurrentTile().getHandle());
+
+		// The features are rebuilt too; the final scores are the same.
+		game.score(true);
+		restored.score(true);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(game.getPlayers().get(i).getScore(), restored
+					.getPlayers().get(i).getScore());
+		}
+	}
+
+	@Test
+	public void copyTest() {
+
+		Game game = new Game(2, 7);
+		Player player = game.getPlayers().get(0);
+
+		assertEquals(0, game.drawTile(player));
+		assertEquals(0, game.placeTile(player, 72, 72));
+
+		byte[] snapshot = game.toSnapshot();
+		Game copy = game.copy();
+
+		assertArrayEquals(snapshot, copy.toSnapshot());
+
+		// Playing on the copy leaves the game as it was.
+		Player copyPlayer = copy.getPlayers().get(1);
+		assertEquals(0, copy.drawTile(copyPlayer));
+
+		ArrayList<TilePlacement> placements = copy.getLegalPlacements(copyPlayer);
+		TilePlacement placement = placements.get(0);
+
+		while (copyPlayer.getCurrentTile().getOrientation() != placement.orientation) {
+			copyPlayer.getCurrentTile().rotateClockwise();
+		}
+
+		assertEquals(0, copy.placeTile(copyPlayer, placement.xBoard,
+				placement.yBoard));
+		assertEquals(2, copy.getBoard().getNumTiles());
+
+		assertArrayEquals(snapshot, game.toSnapshot());
+		assertEquals(1, game.getBoard().getNumTiles());
+	}
+
+	@Test
+	public void copyPlayoutTest() {
+
+		Game game = new Game(3, 5);
+
+		// Part of a game, with meeples on the board and a tile in hand.
+		for (int turn = 0; turn < 20; turn++) {
+			playTurn(game, game.getPlayers().get(turn % 3));
+		}
+
+		game.drawTile(game.getPlayers().get(2));
+
+		// A copy plays out as the same game made from a snapshot does.
+		Game copy = game.copy();
+		Game restored = Game.fromSnapshot(game.toSnapshot());
+
+		assertArrayEquals(restored.toSnapshot(), copy.toSnapshot());
+
+		copy.shuffleDrawPile(new Random(11));
+		restored.shuffleDrawPile(new Random(11));
+
+		for (int turn = 2; !copy.isDrawPileEmpty(); turn++) {
+
+			Player copyPlayer = copy.getPlayers().get(turn % 3);
+			Player restoredPlayer = restored.getPlayers().get(turn % 3);
+
+			if (turn > 2) {
+				copy.drawTile(copyPlayer);
+				restored.drawTile(restoredPlayer);
+			}
+
+			placeCurrentTile(copy, copyPlayer);
+			placeCurrentTile(restored, restoredPlayer);
+
+			assertArrayEquals(restored.toSnapshot(), copy.toSnapshot());
+		}
+
+		copy.score(true);
+		restored.score(true);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(restored.getPlayers().get(i).getScore(), copy
+					.getPlayers().get(i).getScore());
+		}
+
+		// The game itself is as it was.
+		assertEquals(20, game.getBoard().getNumTiles());
+	}
+
+	@Test
+	public void drawUnplaceableTest() {
+
+		Game game = makeUnplaceableGame(2);
+		Player player = game.getPlayers().get(1);
+		int unplaceable = game.getNumUnplaceableTiles();
+
+		assertTrue(unplaceable > 0);
+		assertTrue(!game.isDrawPileEmpty());
+
+		// Every tile left is set aside, and there is no tile to place.
+		ArrayList<String> discarded = new ArrayList<String>();
+
+		assertTrue(game.drawTile(player, discarded) != 0);
+		assertEquals(unplaceable, discarded.size());
+		assertNull(player.getCurrentTile());
+		assertTrue(game.isDrawPileEmpty());
+	}
+
+	// Draw a tile and place it; see placeCurrentTile.
+	private static void playTurn(Game game, Player player) {
+		assertEquals(0, game.drawTile(player));
+		placeCurrentTile(game, player);
+	}
+
+	// Place the player's current tile at the first legal placement, with a
+	// meeple on it if one can go there, and score.
+	private static void placeCurrentTile(Game game, Player player) {
+
+		if (player.getCurrentTile() == null) {
+			return;
+		}
+
+		ArrayList<TilePlacement> placements = game.getLegalPlacements(player);
+		TilePlacement placement = placements.isEmpty() ? new TilePlacement(
+				72, 72, player.getCurrentTile().getOrientation()) : placements
+				.get(0);
+
+		while (player.getCurrentTile().getOrientation() != placement.orientation) {
+			player.getCurrentTile().rotateClockwise();
+		}
+
+		assertEquals(0, game.placeTile(player, placement.xBoard,
+				placement.yBoard));
+		game.placeMeeple(player, placement.xBoard, placement.yBoard, 3, 3);
+		game.score(false);
+	}
+
+	/**
+	 * Make a game whose draw pile holds only tiles which can't be placed.
+	 * 
+	 * Tiles are placed (the first legal placement each time) until one of the
+	 * tiles left can't be placed; then every tile which can be placed is
+	 * taken out of the pile.
+	 * 
+	 * @param numPlayers
+	 *            The number of players of the game.
+	 * 
+	 * @return The game; it is the first player's turn to draw.
+	 */
+	public static Game makeUnplaceableGame(int numPlayers) {
+
+		Game game = new Game(numPlayers, 1);
+		Player player = game.getPlayers().get(0);
+
+		while (game.getNumUnplaceableTiles() == 0) {
+
+			assertEquals(0, game.drawTile(player));
+
+			ArrayList<TilePlacement> placements = game.getLegalPlacements(player);
+			TilePlacement placement = placements.isEmpty() ? new TilePlacement(
+					72, 72, player.getCurrentTile().getOrientation())
+					: placements.get(0);
+
+			while (player.getCurrentTile().getOrientation() != placement.orientation) {
+				player.getCurrentTile().rotateClockwise();
+			}
+
+			assertEquals(0, game.placeTile(player, placement.xBoard,
+					placement.yBoard));
+		}
+
+		// Find the tiles which can be placed by drawing from a copy; the board
+		// doesn't change, so neither does which tiles can be placed.
+		Game copy = game.copy();
+		Player copyPlayer = copy.getPlayers().get(0);
+		ArrayList<String> placeable = new ArrayList<String>();
+
+		while (copy.drawTile(copyPlayer) == 0) {
+			placeable.add(copyPlayer.getCurrentTile().getIdentifier());
+		}
+
+		for (String identifier : placeable) {
+			assertEquals(0, game.drawTile(player,
+					Collections.<String> emptyList(), identifier));
+		}
+
+		player.setCurrentTile(null);
+
+		return game;
+	}
+
+}
@@ -0,0 +1,81 @@
+package model.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import model.PositionMap;
+
+import org.junit.Test;
+
+
+public class PositionMapTest {
+
+	@Test
+	public void packTest() {
+
+		// Tests.
+		long position = PositionMap.pack(-3, 72);
+
+		assertEquals(-3, PositionMap.unpackX(position));
+		assertEquals(72, PositionMap.unpackY(position));
+	}
+
+	@Test
+	public void putGetTest() {
+
+		// Test object.
+		PositionMap map = new PositionMap();
+
+		// Tests.
+		// Fill past the initial capacity so that the table has to grow.
+		for (int i = 0; i < 100; i++) {
+			map.put(PositionMap.pack(i, -i), i);
+		}
+
+		assertEquals(100, map.size());
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, map.get(i, -i));
+		}
+
+		assertEquals(-1, map.get(100, -100));
+
+		// Replacing a value doesn't change the size.
+		map.put(PositionMap.pack(5, -5), 500);
+
+		assertEquals(100, map.size());
+		assertEquals(500, map.get(5, -5));
+	}
+
+	@Test
+	public void removeTest() {
+
+		// Test object.
+		PositionMap map = new PositionMap();
+
+		for (int i = 0; i < 50; i++) {
+			map.put(PositionMap.pack(i, i), i);
+		}
+
+		// Tests.
+		// Remove every other position; the rest must still be found.
+		for (int i = 0; i < 50; i += 2) {
+			assertEquals(i, map.remove(PositionMap.pack(i, i)));
+		}
+
+		assertEquals(25, map.size());
+		assertEquals(-1, map.remove(PositionMap.pack(0, 0)));
+
+		for (int i = 0; i < 50; i++) {
+			int expected = (i % 2 == 0) ? -1 : i;
+			assertEquals(expected, map.get(i, i));
+		}
+
+		for (int i = 1; i < 50; i += 2) {
+			map.remove(PositionMap.pack(i, i));
+		}
+
+		assertTrue(map.isEmpty());
+	}
+
+}
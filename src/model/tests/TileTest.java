@@ -2,6 +2,7 @@ package model.tests;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import model.Tile;
@@ -163,4 +164,78 @@ public class TileTest {
 
 	}
 
+	@Test
+	// Cover the getEdgeSignature, reverseEdgeSignature methods.
+	public void edgeSignatureTests() {
+
+		// Test object.
+		char[][] testTileArr = new char[][] {
+				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
+				{ 'F', 'F', 'C', 'C', 'C', 'C', 'C' },
+				{ 'F', 'F', 'F', 'F', 'C', 'C', 'C' },
+				{ 'R', 'R', 'R', 'F', 'F', 'C', 'C' },
+				{ 'F', 'F', 'R', 'R', 'F', 'C', 'C' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'C' },
+				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
+
+		Tile testTile = new Tile(testTileArr, "CHR2");
+
+		// Oracle.
+		int[] oracleEdges = new int[4];
+
+		for (int side = 0; side < 4; side++) {
+			oracleEdges[side] = testTile.getEdgeSignature(side);
+		}
+
+		// Tests.
+		// The top & right sides are all city, as are the bottom & left sides
+		// all field with a road in the middle.
+		assertEquals(oracleEdges[Tile.TOP], oracleEdges[Tile.RIGHT]);
+		assertEquals(oracleEdges[Tile.BOTTOM], oracleEdges[Tile.LEFT]);
+		assertTrue(oracleEdges[Tile.TOP] != oracleEdges[Tile.BOTTOM]);
+
+		// Both sides are symmetrical, so reversing them has no effect.
+		assertEquals(oracleEdges[Tile.TOP],
+				Tile.reverseEdgeSignature(oracleEdges[Tile.TOP]));
+
+		// Rotating clockwise brings each side round to the next one.
+		testTile.rotateClockwise();
+
+		for (int side = 0; side < 4; side++) {
+			assertEquals(oracleEdges[(side + 3) % 4],
+					testTile.getEdgeSignature(side));
+		}
+
+	}
+
+	@Test
+	// Cover the getHandle, getPrototype methods & the handle constructor.
+	public void handleTests() {
+
+		// Test object.
+		char[][] testTileArr = new char[][] {
+				{ 'x', 'C', 'C', 'C', 'C', 'C', 'x' },
+				{ 'F', 'F', 'C', 'C', 'C', 'C', 'C' },
+				{ 'F', 'F', 'F', 'F', 'C', 'C', 'C' },
+				{ 'R', 'R', 'R', 'F', 'F', 'C', 'C' },
+				{ 'F', 'F', 'R', 'R', 'F', 'C', 'C' },
+				{ 'F', 'F', 'F', 'R', 'F', 'F', 'C' },
+				{ 'x', 'F', 'F', 'R', 'F', 'F', 'x' } };
+
+		Tile testTile = new Tile(testTileArr, "CHR2");
+		Tile sameKindTile = new Tile(testTileArr, "CHR2");
+		testTile.rotateClockwise();
+
+		Tile handleTile = new Tile(testTile.getHandle());
+
+		// Tests.
+		assertSame(testTile.getPrototype(), sameKindTile.getPrototype());
+		assertEquals(1, handleTile.getOrientation());
+		assertEquals("CHR2", handleTile.getIdentifier());
+		assertEquals(TileType.ROAD, handleTile.getTileType(2, 2));
+
+		// Rotating a tile doesn't change tiles created from its handle.
+		handleTile.rotateClockwise();
+		assertEquals(1, testTile.getOrientation());
+	}
 }
@@ -0,0 +1,753 @@
+package net.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * A compact binary encoding of the text messages sent between server and
+ * client.
+ *
+ * Every message is sent as a frame; its length (as a varint), followed by the
+ * number of the schema the message matched, and then only the values of the
+ * message, in order. The keys & names of a message are known from its schema,
+ * so they are never sent. A schema is written the same way as the message it
+ * describes, with # in place of an int value, $ in place of a string value,
+ * and % in place of a color (see SocketClientProtocol.colorToString); a
+ * repeated group of fields follows a *, and is sent with the number of times
+ * it repeats.
+ *
+ * Decoding a frame gives back the exact text of the message which was
+ * encoded, so the protocols don't need to know which encoding is used. A
+ * message which matches no schema is sent as its text (schema 0). So the
+ * encoding saves bandwidth, not parsing; the text decoded is parsed by the
+ * protocols as any other message is.
+ *
+ * The messages sent to a client in reply to one message are sent together as
+ * a batch frame; the batch schema, followed by the number of messages, and
+ * then the frame of each message. A client reads the whole batch before it
+ * acts on any of its messages.
+ *
+ * The binary encoding is negotiated at connect time; a client which wants it
+ * sends HELLO as its first message, as text. A server which supports it
+ * replies with HELLO (as text), and every message after that, both ways, is
+ * a frame. Older servers reply with NAK, and the client stays with text.
+ */
+public class BinaryCodec {
+
+	public static final String HELLO = "HELLO;encoding;binary";
+
+	// Clients ask for the binary encoding if this system property is set to
+	// binaryEncoding (see SocketClient).
+	public static final String encodingProperty = "carcassonne.net.encoding";
+	public static final String binaryEncoding = "binary";
+
+	// Longer frames are refused, rather than buffered without limit.
+	public static final int maxFrameLength = 64 * 1024;
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private static final int textSchema = 0;
+
+	// Kept clear of the message schemas, which must stay below it.
+	private static final int batchSchema = 127;
+
+	// Client & server messages. The numbers of the schemas are part of the
+	// encoding; add new schemas to the end.
+	private static final String[] schemaStrings = {
+			SocketClientProtocol.ACK,
+			SocketClientProtocol.NAK,
+			SocketClientProtocol.EXIT,
+			"JOINLOBBY",
+			"JOINLOBBY;room;$",
+			"LEAVELOBBY;player;#",
+			"LEAVEGAME;player;#*meeple;xBoard;#;yBoard;#;xTile;#;yTile;#",
+			"ASSIGNPLAYER;player;#",
+			"UPDATELOBBY*player;#;name;$;color;%",
+			"UPDATEPLAYER;player;#;name;$;color;%",
+			"INIT;numPlayers;#",
+			"INIT;currentPlayer;#;gameBoardWidth;#;gameBoardHeight;#",
+			"DRAWTILE;currentPlayer;#",
+			"DRAWTILE;currentPlayer;#;identifier;$;orientation;#",
+			"ROTATETILE;currentPlayer;#;direction;$",
+			"PLACETILE;currentPlayer;#;xBoard;#;yBoard;#",
+			"PLACETILE;currentPlayer;#;xBoard;#;yBoard;#;error;#",
+			"PLACEMEEPLE;currentPlayer;#;xBoard;#;yBoard;#;xTile;#;yTile;#",
+			"PLACEMEEPLE;currentPlayer;#;xBoard;#;yBoard;#;xTile;#;yTile;#;error;#",
+			"SCORE*meeple;xBoard;#;yBoard;#;xTile;#;yTile;#",
+			"ENDTURN;currentPlayer;#",
+			"INFO;player;#;currentPlayer;#;score;#;meeplesPlaced;#",
+			"INFO;game;currentPlayer;#;drawPileEmpty;#",
+			"INFO;player;#;version;#*$;#",
+			"INFO;game;version;#*$;#",
+			"INFO;game;version;#;currentPlayer;#;drawPileEmpty;#;unplaceableTiles;#" };
+
+	private static final String intValue = "#";
+	private static final String stringValue = "$";
+	private static final String colorValue = "%";
+
+	// The fixed tokens & repeated tokens of each schema, by number.
+	private static final String[][] schemaTokens = new String[schemaStrings.length + 1][];
+	private static final String[][] groupTokens = new String[schemaStrings.length + 1][];
+
+	// The numbers of the schemas starting with each message name; those with
+	// a repeated group last, as they match more messages.
+	private static final HashMap<String, int[]> schemasByName = new HashMap<String, int[]>();
+
+	static {
+		for (int i = 0; i < schemaStrings.length; i++) {
+
+			int schema = i + 1;
+			String[] parts = schemaStrings[i].split("\\*", -1);
+
+			schemaTokens[schema] = intern(parts[0].split(";", -1));
+			groupTokens[schema] = (parts.length > 1) ? intern(parts[1]
+					.split(";", -1)) : null;
+
+			String name = schemaTokens[schema][0];
+			int[] schemas = schemasByName.get(name);
+			schemas = (schemas == null) ? new int[1] : Arrays.copyOf(
+					schemas, schemas.length + 1);
+
+			int j = schemas.length - 1;
+
+			if (groupTokens[schema] == null) {
+				while (j > 0 && groupTokens[schemas[j - 1]] != null) {
+					schemas[j] = schemas[j - 1];
+					j--;
+				}
+			}
+
+			schemas[j] = schema;
+			schemasByName.put(name, schemas);
+		}
+	}
+
+	// Intern the tokens of a schema, so the value tokens can be told apart by
+	// reference.
+	private static String[] intern(String[] tokens) {
+
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = tokens[i].intern();
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Encode a message as a frame.
+	 * 
+	 * @param message
+	 *            The text of the message.
+	 * 
+	 * @return The frame, including its length.
+	 */
+	public static byte[] encode(String message) {
+
+		ByteWriter frame = new ByteWriter();
+		writeFrame(frame, message);
+
+		return Arrays.copyOf(frame.bytes, frame.length);
+	}
+
+	/**
+	 * Encode messages as one batch frame, which is decoded all at once. A
+	 * single message, or a batch too long for one frame, is encoded as plain
+	 * frames.
+	 * 
+	 * @param messages
+	 *            The text of the messages, in the order they are sent.
+	 * 
+	 * @return The frame, including its length.
+	 */
+	public static byte[] encode(List<String> messages) {
+
+		if (messages.size() == 1) {
+			return encode(messages.get(0));
+		}
+
+		ByteWriter body = new ByteWriter();
+		body.writeVarint(batchSchema);
+		body.writeVarint(messages.size());
+
+		for (String message : messages) {
+			writeFrame(body, message);
+		}
+
+		ByteWriter frame = new ByteWriter();
+
+		if (body.length <= maxFrameLength) {
+			frame.writeVarint(body.length);
+			frame.write(body.bytes, 0, body.length);
+		} else {
+
+			// Too long for one frame; the messages are sent one by one.
+			for (String message : messages) {
+				writeFrame(frame, message);
+			}
+		}
+
+		return Arrays.copyOf(frame.bytes, frame.length);
+	}
+
+	// Write the frame of a single message.
+	private static void writeFrame(ByteWriter frame, String message) {
+
+		String[] tokens = split(message);
+		int[] schemas = schemasByName.get(tokens[0]);
+		ByteWriter body = new ByteWriter();
+
+		if (schemas != null) {
+			for (int schema : schemas) {
+				if (matches(schema, tokens)) {
+					writeValues(body, schema, tokens);
+					break;
+				}
+			}
+		}
+
+		if (body.length == 0) {
+			body.writeVarint(textSchema);
+			body.writeString(message);
+		}
+
+		if (body.length > maxFrameLength) {
+			throw new IllegalArgumentException("Message is too long to send.");
+		}
+
+		frame.writeVarint(body.length);
+		frame.write(body.bytes, 0, body.length);
+	}
+
+	/**
+	 * Get the length of the first frame in a buffer.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 * @param offset
+	 *            Where the frame starts in the buffer.
+	 * @param length
+	 *            The number of bytes available from the offset.
+	 * 
+	 * @return The length of the frame (including its length), or -1 if the
+	 *         buffer doesn't hold a whole frame yet.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the frame is longer than maxFrameLength.
+	 */
+	public static int getFrameLength(byte[] buffer, int offset, int length) {
+
+		int frameLength = readFrameLength(buffer, offset, length);
+
+		return (frameLength <= length) ? frameLength : -1;
+	}
+
+	/**
+	 * Read the length of the first frame in a buffer, which needs only the
+	 * first few bytes of the frame.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 * @param offset
+	 *            Where the frame starts in the buffer.
+	 * @param length
+	 *            The number of bytes available from the offset.
+	 * 
+	 * @return The length of the frame (including its length), or -1 if the
+	 *         buffer doesn't hold the whole of its length yet.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the frame is longer than maxFrameLength.
+	 */
+	public static int readFrameLength(byte[] buffer, int offset, int length) {
+
+		int bodyLength = 0;
+
+		for (int i = 0; i < 5; i++) {
+
+			if (i == length) {
+				return -1;
+			}
+
+			int b = buffer[offset + i];
+			bodyLength |= (b & 0x7f) << (7 * i);
+
+			if ((b & 0x80) == 0) {
+
+				if (bodyLength < 0 || bodyLength > maxFrameLength) {
+					throw new IllegalArgumentException("Frame is too long.");
+				}
+
+				return i + 1 + bodyLength;
+			}
+		}
+
+		throw new IllegalArgumentException("Frame is too long.");
+	}
+
+	/**
+	 * Decode a whole frame (see getFrameLength).
+	 * 
+	 * @param buffer
+	 *            The buffer holding the frame.
+	 * @param offset
+	 *            Where the frame starts in the buffer.
+	 * @param length
+	 *            The length of the frame, including its length.
+	 * 
+	 * @param messages
+	 *            The list the text of the messages is added to; one message,
+	 *            or each message of a batch.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the frame is not valid.
+	 */
+	public static void decode(byte[] buffer, int offset, int length,
+			List<String> messages) {
+
+		ByteReader reader = new ByteReader(buffer, offset, offset + length);
+
+		// Skip the length.
+		reader.readVarint();
+
+		if (reader.offset < reader.end
+				&& (buffer[reader.offset] & 0xff) == batchSchema) {
+
+			reader.readVarint();
+			int count = reader.readVarint();
+
+			for (int i = 0; i < count; i++) {
+
+				int start = reader.offset;
+				int bodyLength = reader.readVarint();
+				int end = reader.offset + bodyLength;
+
+				if (bodyLength < 0 || end > reader.end) {
+					throw new IllegalArgumentException("Frame is truncated.");
+				}
+
+				reader.offset = end;
+				messages.add(decodeMessage(buffer, start, end - start));
+			}
+
+			if (reader.offset != reader.end) {
+				throw new IllegalArgumentException("Frame has trailing bytes.");
+			}
+
+			return;
+		}
+
+		messages.add(decodeMessage(buffer, offset, length));
+	}
+
+	// Decode the frame of a single message.
+	private static String decodeMessage(byte[] buffer, int offset, int length) {
+
+		ByteReader reader = new ByteReader(buffer, offset, offset + length);
+
+		// Skip the length.
+		reader.readVarint();
+
+		int schema = reader.readVarint();
+
+		if (schema == textSchema) {
+			return reader.readString();
+		}
+
+		if (schema < 0 || schema >= schemaTokens.length) {
+			throw new IllegalArgumentException("Unknown schema: " + schema);
+		}
+
+		StringBuilder message = new StringBuilder();
+
+		readValues(reader, message, schemaTokens[schema]);
+
+		if (groupTokens[schema] != null) {
+
+			int count = reader.readVarint();
+
+			for (int i = 0; i < count; i++) {
+				message.append(';');
+				readValues(reader, message, groupTokens[schema]);
+			}
+		}
+
+		if (reader.offset != reader.end) {
+			throw new IllegalArgumentException("Frame has trailing bytes.");
+		}
+
+		return message.toString();
+	}
+
+	/**
+	 * Read the next frame from a stream.
+	 * 
+	 * @param messages
+	 *            The list the text of the messages in the frame is added to.
+	 * 
+	 * @return False at the end of the stream.
+	 */
+	public static boolean readFrame(InputStream in, List<String> messages)
+			throws IOException {
+
+		byte[] frame = new byte[5];
+		int length = 0;
+
+		// The length is read a byte at a time, as it may be shorter than the
+		// space left for it.
+		while (true) {
+
+			int b = in.read();
+
+			if (b < 0) {
+				if (length == 0) {
+					return false;
+				}
+
+				throw new EOFException("Stream ended within a frame.");
+			}
+
+			frame[length++] = (byte) b;
+
+			if ((b & 0x80) == 0) {
+				break;
+			}
+
+			if (length == frame.length) {
+				throw new IOException("Frame is too long.");
+			}
+		}
+
+		int bodyLength = new ByteReader(frame, 0, length).readVarint();
+
+		if (bodyLength < 0 || bodyLength > maxFrameLength) {
+			throw new IOException("Frame is too long.");
+		}
+
+		frame = Arrays.copyOf(frame, length + bodyLength);
+
+		while (length < frame.length) {
+
+			int read = in.read(frame, length, frame.length - length);
+
+			if (read < 0) {
+				throw new EOFException("Stream ended within a frame.");
+			}
+
+			length += read;
+		}
+
+		try {
+			decode(frame, 0, frame.length, messages);
+			return true;
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	// Split a message into its tokens, keeping any empty tokens (unlike
+	// String.split) so that the message can be rebuilt exactly.
+	private static String[] split(String message) {
+
+		ArrayList<String> tokens = new ArrayList<String>();
+		int start = 0;
+		int end;
+
+		while ((end = message.indexOf(';', start)) >= 0) {
+			tokens.add(message.substring(start, end));
+			start = end + 1;
+		}
+
+		tokens.add(message.substring(start));
+
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private static boolean matches(int schema, String[] tokens) {
+
+		String[] fixed = schemaTokens[schema];
+		String[] group = groupTokens[schema];
+
+		if (tokens.length < fixed.length) {
+			return false;
+		}
+
+		if (!matches(fixed, tokens, 0)) {
+			return false;
+		}
+
+		int remaining = tokens.length - fixed.length;
+
+		if (group == null) {
+			return remaining == 0;
+		}
+
+		if (remaining % group.length != 0) {
+			return false;
+		}
+
+		for (int i = fixed.length; i < tokens.length; i += group.length) {
+			if (!matches(group, tokens, i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean matches(String[] schema, String[] tokens, int offset) {
+
+		for (int i = 0; i < schema.length; i++) {
+
+			String token = tokens[offset + i];
+
+			if (schema[i] == intValue) {
+				if (!isInt(token)) {
+					return false;
+				}
+			} else if (schema[i] == colorValue) {
+				if (!isColor(token)) {
+					return false;
+				}
+			} else if (schema[i] != stringValue && !schema[i].equals(token)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void writeValues(ByteWriter body, int schema,
+			String[] tokens) {
+
+		String[] fixed = schemaTokens[schema];
+		String[] group = groupTokens[schema];
+
+		body.writeVarint(schema);
+		writeValues(body, fixed, tokens, 0);
+
+		if (group != null) {
+
+			body.writeVarint((tokens.length - fixed.length) / group.length);
+
+			for (int i = fixed.length; i < tokens.length; i += group.length) {
+				writeValues(body, group, tokens, i);
+			}
+		}
+	}
+
+	private static void writeValues(ByteWriter body, String[] schema,
+			String[] tokens, int offset) {
+
+		for (int i = 0; i < schema.length; i++) {
+
+			String token = tokens[offset + i];
+
+			if (schema[i] == intValue) {
+				int value = Integer.parseInt(token);
+				// Zig-zag, so that small negative numbers are short too.
+				body.writeVarint((value << 1) ^ (value >> 31));
+
+			} else if (schema[i] == colorValue) {
+				for (int c = 0; c < 9; c += 3) {
+					body.write(Integer.parseInt(token.substring(c, c + 3)));
+				}
+
+			} else if (schema[i] == stringValue) {
+				body.writeString(token);
+			}
+		}
+	}
+
+	private static void readValues(ByteReader reader, StringBuilder message,
+			String[] schema) {
+
+		for (int i = 0; i < schema.length; i++) {
+
+			if (i > 0) {
+				message.append(';');
+			}
+
+			if (schema[i] == intValue) {
+				int value = reader.readVarint();
+				message.append((value >>> 1) ^ -(value & 1));
+
+			} else if (schema[i] == colorValue) {
+				for (int c = 0; c < 3; c++) {
+					int value = reader.readByte();
+					message.append((char) ('0' + value / 100));
+					message.append((char) ('0' + value / 10 % 10));
+					message.append((char) ('0' + value % 10));
+				}
+
+			} else if (schema[i] == stringValue) {
+				message.append(reader.readString());
+
+			} else {
+				message.append(schema[i]);
+			}
+		}
+	}
+
+	// An int which is written the way Integer.toString would write it, so
+	// that it is decoded to the same text.
+	private static boolean isInt(String token) {
+
+		int length = token.length();
+		int start = (length > 0 && token.charAt(0) == '-') ? 1 : 0;
+
+		if (length == start || length - start > 10) {
+			return false;
+		}
+
+		for (int i = start; i < length; i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+
+		// No leading zeros, or negative zero.
+		if (token.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+			return false;
+		}
+
+		if (length - start == 10) {
+			long value = Long.parseLong(token);
+			return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+		}
+
+		return true;
+	}
+
+	private static boolean isColor(String token) {
+
+		if (token.length() != 9) {
+			return false;
+		}
+
+		for (int c = 0; c < 9; c += 3) {
+
+			int value = 0;
+
+			for (int i = c; i < c + 3; i++) {
+
+				char digit = token.charAt(i);
+
+				if (digit < '0' || digit > '9') {
+					return false;
+				}
+
+				value = value * 10 + digit - '0';
+			}
+
+			if (value > 255) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static class ByteWriter {
+
+		byte[] bytes = new byte[32];
+		int length = 0;
+
+		void write(int b) {
+
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+
+			bytes[length++] = (byte) b;
+		}
+
+		void write(byte[] source, int offset, int count) {
+
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes,
+						Math.max(bytes.length * 2, length + count));
+			}
+
+			System.arraycopy(source, offset, bytes, length, count);
+			length += count;
+		}
+
+		void writeVarint(int value) {
+
+			while ((value & ~0x7f) != 0) {
+				write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+
+			write(value);
+		}
+
+		void writeString(String value) {
+
+			byte[] encoded = value.getBytes(utf8);
+
+			writeVarint(encoded.length);
+			write(encoded, 0, encoded.length);
+		}
+	}
+
+	private static class ByteReader {
+
+		final byte[] bytes;
+		int offset;
+		final int end;
+
+		ByteReader(byte[] bytes, int offset, int end) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.end = end;
+		}
+
+		int readByte() {
+
+			if (offset == end) {
+				throw new IllegalArgumentException("Frame is too short.");
+			}
+
+			return bytes[offset++] & 0xff;
+		}
+
+		int readVarint() {
+
+			int value = 0;
+
+			for (int shift = 0; shift < 35; shift += 7) {
+
+				int b = readByte();
+				value |= (b & 0x7f) << shift;
+
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+
+			throw new IllegalArgumentException("Varint is too long.");
+		}
+
+		String readString() {
+
+			int length = readVarint();
+
+			if (length < 0 || length > end - offset) {
+				throw new IllegalArgumentException("Frame is too short.");
+			}
+
+			String value = new String(bytes, offset, length, utf8);
+			offset += length;
+
+			return value;
+		}
+	}
+}
@@ -10,17 +10,26 @@ import java.util.Set;
 
 import model.MeepleStruct;
 import model.PlayerStruct;
-import ui.GameUi;
 
 // Adapter class which receives the returned messages from the server.
-// The received messages are processed, followed by the client being told to
-// update itself.
+// The received messages are processed, followed by the client (a UI, or a
+// computer player) being told to update itself.
 public class ClientProtocol extends SocketClientProtocol {
 
-	private GameUi gameUi;
+	private GameListener listener;
 
-	public ClientProtocol(GameUi gameUi) {
-		this.gameUi = gameUi;
+	// The INFO fields received so far, after the version; INFO messages only
+	// carry the fields which have changed (see ServerProtocol).
+	private static final List<String> playerInfoFields = Arrays.asList(
+			"currentPlayer", "score", "meeplesPlaced");
+	private static final List<String> gameInfoFields = Arrays.asList(
+			"currentPlayer", "drawPileEmpty", "unplaceableTiles");
+
+	private HashMap<Integer, int[]> playerInfo = new HashMap<Integer, int[]>();
+	private int[] gameInfo = new int[gameInfoFields.size() + 1];
+
+	public ClientProtocol(GameListener listener) {
+		this.listener = listener;
 	}
 
 	@Override
@@ -32,7 +41,7 @@ public class ClientProtocol extends SocketClientProtocol {
 		// Pre-game messages.
 
 		if (message.get(0).equals(SocketClientProtocol.EXIT)) {
-			gameUi.exit();
+			listener.exit();
 		}
 
 		// ASSIGNPLAYER;player;<int>
@@ -40,7 +49,7 @@ public class ClientProtocol extends SocketClientProtocol {
 
 			int player = Integer.parseInt(message.get(2));
 
-			gameUi.assignPlayer(player);
+			listener.assignPlayer(player);
 		}
 
 		// UPDATELOBBY[;player;<int>;name;<string>;color;<string:(RGB)>]+
@@ -59,7 +68,7 @@ public class ClientProtocol extends SocketClientProtocol {
 				players.put(rep, new PlayerStruct(name, color));
 			}
 
-			gameUi.updateLobby(players);
+			listener.updateLobby(players);
 		}
 
 		// In-game messages.
@@ -71,7 +80,11 @@ public class ClientProtocol extends SocketClientProtocol {
 			int width = Integer.parseInt(message.get(4));
 			int height = Integer.parseInt(message.get(6));
 
-			gameUi.init(currentPlayer, width, height);
+			// A new game; its info starts over.
+			playerInfo.clear();
+			gameInfo = new int[gameInfoFields.size() + 1];
+
+			listener.init(currentPlayer, width, height);
 		}
 
 		// DRAWTILE;currentPlayer;<int>;identifier;<string>;orientation;<int:[0-3]>
@@ -81,7 +94,7 @@ public class ClientProtocol extends SocketClientProtocol {
 			String identifier = message.get(4);
 			int orientation = Integer.parseInt(message.get(6));
 
-			gameUi.drawTile(currentPlayer, identifier, orientation);
+			listener.drawTile(currentPlayer, identifier, orientation);
 		}
 
 		// ROTATETILE;currentPlayer;<int>;direction;<string:(clockwise|counterClockwise)>
@@ -90,7 +103,7 @@ public class ClientProtocol extends SocketClientProtocol {
 			int currentPlayer = Integer.parseInt(message.get(2));
 			String direction = message.get(4);
 
-			gameUi.rotateTile(currentPlayer, direction);
+			listener.rotateTile(currentPlayer, direction);
 		}
 
 		// PLACETILE;currentPlayer;<int>;xBoard;<int>;yBoard;<int>;error;<int:(0|1)>
@@ -101,7 +114,7 @@ public class ClientProtocol extends SocketClientProtocol {
 			int yBoard = Integer.parseInt(message.get(6));
 			int err = Integer.parseInt(message.get(8));
 
-			gameUi.placeTile(currentPlayer, xBoard, yBoard, err);
+			listener.placeTile(currentPlayer, xBoard, yBoard, err);
 		}
 
 		// PLACEMEEPLE;currentPlayer;<int>;xBoard;<int>;yBoard;<int>;
@@ -115,7 +128,7 @@ public class ClientProtocol extends SocketClientProtocol {
 			int yTile = Integer.parseInt(message.get(10));
 			int err = Integer.parseInt(message.get(12));
 
-			gameUi.placeMeeple(currentPlayer, xBoard, yBoard, xTile, yTile, err);
+			listener.placeMeeple(currentPlayer, xBoard, yBoard, xTile, yTile, err);
 		}
 
 		// SCORE[;meeple;xBoard;<int>;yBoard;<int>;xTile;<int>;yTile;<int>]*
@@ -134,7 +147,7 @@ public class ClientProtocol extends SocketClientProtocol {
 				meeplePositions.add(ms);
 			}
 
-			gameUi.score(meeplePositions);
+			listener.score(meeplePositions);
 		}
 
 		// ENDTURN;currentPlayer;<int>
@@ -142,28 +155,43 @@ public class ClientProtocol extends SocketClientProtocol {
 
 			int currentPlayer = Integer.parseInt(message.get(2));
 
-			gameUi.endTurn(currentPlayer);
+			listener.endTurn(currentPlayer);
 		}
 
-		// INFO;player;<int>;currentPlayer;<int:(0|1)>;score;<int>;meeplesPlaced;<int>
+		// INFO;player;<int>;version;<int>[;currentPlayer;<int:(0|1)>][;score;<int>][;meeplesPlaced;<int>]
 		if (message.get(0).equals("INFO") && message.get(1).equals("player")) {
 
 			int player = Integer.parseInt(message.get(2));
-			int currentPlayer = Integer.parseInt(message.get(4));
-			int playerScore = Integer.parseInt(message.get(6));
-			int meeplesPlaced = Integer.parseInt(message.get(8));
+			int[] info = playerInfo.get(player);
+
+			if (info == null) {
+				info = new int[playerInfoFields.size() + 1];
+				playerInfo.put(player, info);
+			}
+
+			if (applyInfo(message, 3, playerInfoFields, info)) {
+
+				int currentPlayer = info[1];
+				int playerScore = info[2];
+				int meeplesPlaced = info[3];
 
-			gameUi.playerInfo(player, currentPlayer, playerScore, meeplesPlaced);
+				listener.playerInfo(player, currentPlayer, playerScore,
+						meeplesPlaced);
+			}
 		}
 
-		// INFO;game;currentPlayer;<int>;drawPileEmpty;<int:(0|1)>
+		// INFO;game;version;<int>[;currentPlayer;<int>][;drawPileEmpty;<int:(0|1)>][;unplaceableTiles;<int>]
 		if (message.get(0).equals("INFO") && message.get(1).equals("game")) {
 
-			int currentPlayer = Integer.parseInt(message.get(3));
-			int isDrawPileEmpty = Integer.parseInt(message.get(5));
-			boolean drawPileEmpty = !(isDrawPileEmpty == 0);
+			if (applyInfo(message, 2, gameInfoFields, gameInfo)) {
+
+				int currentPlayer = gameInfo[1];
+				boolean drawPileEmpty = !(gameInfo[2] == 0);
+				int unplaceableTiles = gameInfo[3];
 
-			gameUi.gameInfo(currentPlayer, drawPileEmpty);
+				listener.gameInfo(currentPlayer, drawPileEmpty,
+						unplaceableTiles);
+			}
 		}
 
         // LEAVEGAME;player;<int>[;meeple;xBoard;<int>;yBoard;<int>;xTile;<int>;yTile;<int>]*
@@ -183,9 +211,62 @@ public class ClientProtocol extends SocketClientProtocol {
 				meeplePositions.add(ms);
             }
 
-            gameUi.leaveGame(player, meeplePositions);
+            // The players after the one leaving are renumbered; the server
+            // sends their info in full again, with the versions starting over.
+            playerInfo.clear();
+
+            listener.leaveGame(player, meeplePositions);
         }
 
 		return null;
 	}
+
+	/**
+	 * Apply the field & value pairs of an INFO message to the info received
+	 * before it. A message without a version (from an older server) has all
+	 * of the fields, and is always applied.
+	 * 
+	 * @param message
+	 *            The tokens of the INFO message.
+	 * @param start
+	 *            The index of the first field name.
+	 * @param fields
+	 *            The names of the fields, in the order they are kept in info.
+	 * @param info
+	 *            The version, followed by the value of each field; updated in
+	 *            place.
+	 * 
+	 * @return False if the message is older than the info, and was ignored.
+	 */
+	private boolean applyInfo(List<String> message, int start,
+			List<String> fields, int[] info) {
+
+		int[] values = Arrays.copyOf(info, info.length);
+
+		for (int i = start; i + 1 < message.size(); i += 2) {
+
+			int value = Integer.parseInt(message.get(i + 1));
+
+			if (message.get(i).equals("version")) {
+
+				if (value <= info[0]) {
+					return false;
+				}
+
+				values[0] = value;
+
+			} else {
+
+				int field = fields.indexOf(message.get(i));
+
+				if (field >= 0) {
+					values[field + 1] = value;
+				}
+			}
+		}
+
+		System.arraycopy(values, 0, info, 0, info.length);
+
+		return true;
+	}
 }
@@ -0,0 +1,115 @@
+package net.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/*
+ * Executors to run the blocking, per-connection loops of the socket servers &
+ * clients on (see SocketServerThread and SocketClientThread).
+ *
+ * By default each connection gets its own platform thread. Setting the system
+ * property carcassonne.net.threads to "virtual" runs them on virtual threads
+ * instead, which cost far less memory than platform threads while blocked on
+ * a read; any other Executor can also be given to a SocketServer or
+ * SocketClient directly.
+ *
+ * Virtual threads need Java 21 or later; they are looked up at run time, so
+ * the project still builds & runs on older JVMs.
+ */
+public class ConnectionExecutors {
+
+	public static final String modeProperty = "carcassonne.net.threads";
+
+	public static final String platformMode = "platform";
+	public static final String virtualMode = "virtual";
+
+	/**
+	 * Get an executor of the mode set by the carcassonne.net.threads system
+	 * property (platform threads if unset).
+	 * 
+	 * @param name
+	 *            The name of the threads, if they are platform threads.
+	 * 
+	 * @return An executor.
+	 */
+	public static Executor getDefault(String name) {
+		return forMode(System.getProperty(modeProperty, platformMode), name);
+	}
+
+	/**
+	 * Get an executor of a mode.
+	 * 
+	 * @param mode
+	 *            Either "platform" or "virtual".
+	 * @param name
+	 *            The name of the threads, if they are platform threads.
+	 * 
+	 * @return An executor.
+	 */
+	public static Executor forMode(String mode, String name) {
+
+		if (mode.equals(platformMode)) {
+			return newPlatformThreadExecutor(name);
+		} else if (mode.equals(virtualMode)) {
+			return newVirtualThreadExecutor();
+		}
+
+		throw new IllegalArgumentException("Unknown thread mode: " + mode);
+	}
+
+	/**
+	 * Get an executor which starts a new platform thread for every task.
+	 * 
+	 * @param name
+	 *            The name of the threads.
+	 * 
+	 * @return An executor.
+	 */
+	public static Executor newPlatformThreadExecutor(final String name) {
+		return new Executor() {
+
+			@Override
+			public void execute(Runnable task) {
+				new Thread(task, name).start();
+			}
+		};
+	}
+
+	/**
+	 * Get an executor which starts a new virtual thread for every task.
+	 * 
+	 * @return An executor.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             If the JVM doesn't support virtual threads.
+	 */
+	public static Executor newVirtualThreadExecutor() {
+
+		Method factory = getVirtualThreadFactory();
+
+		if (factory == null) {
+			throw new UnsupportedOperationException(
+					"Virtual threads need Java 21 or later.");
+		}
+
+		try {
+			return (Executor) factory.invoke(null);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException(
+					"Virtual threads could not be created.", e);
+		}
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return getVirtualThreadFactory() != null;
+	}
+
+	private static Method getVirtualThreadFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
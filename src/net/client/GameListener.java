@@ -0,0 +1,60 @@
+package net.client;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import model.MeepleStruct;
+import model.PlayerStruct;
+
+/*
+ * What a client does with the messages the server sends it, once they have
+ * been parsed (see ClientProtocol); a player's UI, or a computer player.
+ *
+ * The methods are called on the thread listening to the server, in the order
+ * the messages were sent; see the message format in ServerProtocol.
+ */
+public interface GameListener {
+
+	public void exit();
+
+	public void assignPlayer(int player);
+
+	public void updateLobby(HashMap<Integer, PlayerStruct> players);
+
+	public void init(int currentPlayer, int width, int height);
+
+	public void drawTile(int currentPlayer, String identifier, int orientation);
+
+	public void rotateTile(int currentPlayer, String direction);
+
+	public void placeTile(int currentPlayer, int xBoard, int yBoard, int error);
+
+	public void placeMeeple(int currentPlayer, int xBoard, int yBoard,
+			int xTile, int yTile, int error);
+
+	/**
+	 * Take the meeples of completed features off the board.
+	 */
+	public void score(Set<MeepleStruct> meeplePositions);
+
+	/**
+	 * End the turn of a player; the next player's turn begins.
+	 */
+	public void endTurn(int player);
+
+	public void playerInfo(int player, int currentPlayer, int playerScore,
+			int meeplesPlaced);
+
+	/**
+	 * Update the game's info; unplaceableTiles is the number of tiles left to
+	 * draw which can't be placed on the board as it is (zero from a server
+	 * which doesn't send it).
+	 */
+	public void gameInfo(int currentPlayer, boolean drawPileEmpty,
+			int unplaceableTiles);
+
+	/**
+	 * Take a player, and their meeples, out of the game.
+	 */
+	public void leaveGame(int player, Set<MeepleStruct> meeplePositions);
+}
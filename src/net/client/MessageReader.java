@@ -0,0 +1,143 @@
+package net.client;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Reads the messages sent over a socket; lines of text, or binary frames once
+ * the binary encoding has been negotiated (see BinaryCodec).
+ *
+ * Lines are read a byte at a time from a buffered stream, rather than with a
+ * BufferedReader, so that no bytes past the HELLO line are taken as text.
+ */
+public class MessageReader {
+
+	private static final int maxLineLength = BinaryCodec.maxFrameLength;
+
+	// The same as PrintWriter, which the text messages are written with.
+	private static final Charset charset = Charset.defaultCharset();
+
+	private final InputStream in;
+	private boolean binary = false;
+
+	private byte[] line = new byte[256];
+
+	// The messages of the last batch which haven't been read yet.
+	private final ArrayList<String> batch = new ArrayList<String>();
+	private int nextInBatch = 0;
+
+	public MessageReader(InputStream in) {
+		this.in = new BufferedInputStream(in);
+	}
+
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * Read the next message.
+	 * 
+	 * @return The text of the message, or null at the end of the stream.
+	 */
+	public String readMessage() throws IOException {
+
+		if (!binary) {
+			return readLine();
+		}
+
+		if (nextInBatch == batch.size()) {
+
+			batch.clear();
+			nextInBatch = 0;
+
+			if (!BinaryCodec.readFrame(in, batch)) {
+				return null;
+			}
+		}
+
+		return batch.get(nextInBatch++);
+	}
+
+	/**
+	 * Read the next batch of messages; the messages sent together in one
+	 * frame. A line of text is a batch of one message.
+	 * 
+	 * @param messages
+	 *            The list the messages are added to.
+	 * 
+	 * @return False at the end of the stream.
+	 */
+	public boolean readBatch(List<String> messages) throws IOException {
+
+		if (nextInBatch < batch.size()) {
+
+			messages.addAll(batch.subList(nextInBatch, batch.size()));
+			nextInBatch = batch.size();
+
+			return true;
+		}
+
+		if (binary) {
+			return BinaryCodec.readFrame(in, messages);
+		}
+
+		String message = readLine();
+
+		if (message == null) {
+			return false;
+		}
+
+		messages.add(message);
+
+		return true;
+	}
+
+	private String readLine() throws IOException {
+
+		int length = 0;
+		int b;
+
+		while ((b = in.read()) != '\n') {
+
+			if (b < 0) {
+				if (length == 0) {
+					return null;
+				}
+
+				break;
+			}
+
+			if (length == line.length) {
+
+				if (length == maxLineLength) {
+					throw new IOException("Line is too long.");
+				}
+
+				line = Arrays.copyOf(line,
+						Math.min(line.length * 2, maxLineLength));
+			}
+
+			line[length++] = (byte) b;
+		}
+
+		// Allow for "\r\n" separators.
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+
+		return new String(line, 0, length, charset);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,112 @@
+package net.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+/*
+ * Writes messages to a socket; lines of text, or binary frames once the binary
+ * encoding has been negotiated (see BinaryCodec). Messages are written whole,
+ * and flushed, even when sent from more than one thread.
+ */
+public class MessageWriter {
+
+	private static final String lineSeparator = System
+			.getProperty("line.separator");
+
+	private final OutputStream out;
+	private final PrintWriter writer;
+	private boolean binary = false;
+	private boolean error = false;
+
+	public MessageWriter(OutputStream out) {
+		this.out = out;
+		this.writer = new PrintWriter(out, true);
+	}
+
+	/**
+	 * Write a message. Like PrintWriter, errors are not thrown (see
+	 * checkError()).
+	 * 
+	 * @param message
+	 *            The text of the message.
+	 */
+	public synchronized void println(String message) {
+
+		if (!binary) {
+			writer.println(message);
+			return;
+		}
+
+		try {
+			out.write(BinaryCodec.encode(message));
+			out.flush();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	/**
+	 * Write messages together, with one write to the socket; as a batch frame
+	 * when binary, which the receiver reads all at once.
+	 * 
+	 * @param messages
+	 *            The text of the messages, in order.
+	 */
+	public synchronized void println(List<String> messages) {
+
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		if (!binary) {
+
+			// The same separators as println, written with one flush.
+			StringBuilder lines = new StringBuilder();
+
+			for (String message : messages) {
+				lines.append(message).append(lineSeparator);
+			}
+
+			writer.print(lines);
+			writer.flush();
+			return;
+		}
+
+		try {
+			out.write(BinaryCodec.encode(messages));
+			out.flush();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	/**
+	 * Write a message as text, and then switch to the binary encoding; no
+	 * other message can be written between the two.
+	 * 
+	 * @param message
+	 *            The last text message; BinaryCodec.HELLO.
+	 */
+	public synchronized void switchToBinary(String message) {
+		println(message);
+		binary = true;
+	}
+
+	public synchronized void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	public synchronized boolean isBinary() {
+		return binary;
+	}
+
+	public synchronized boolean checkError() {
+		return error || writer.checkError();
+	}
+
+	public synchronized void close() {
+		writer.close();
+	}
+}
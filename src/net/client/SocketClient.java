@@ -1,17 +1,22 @@
 package net.client;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
 
 public class SocketClient {
 
 	private final String server;
 	private final int portNumber;
 	private SocketClientProtocol protocol;
+	private Executor executor;
 
-    private PrintWriter writer = null;
+    private MessageWriter writer = null;
+
+	// Whether to ask the server for the binary encoding (see BinaryCodec).
+	private boolean binary = BinaryCodec.binaryEncoding.equals(System
+			.getProperty(BinaryCodec.encodingProperty));
 
 	/**
 	 * Constructor for the GameClient.
@@ -22,9 +27,26 @@ public class SocketClient {
 	 *            A port number for which to bind to the server on.
 	 */
 	public SocketClient(String server, int portNumber, SocketClientProtocol protocol) {
+		this(server, portNumber, protocol, ConnectionExecutors
+				.getDefault("SocketClientThread"));
+	}
+
+	/**
+	 * Constructor for the GameClient.
+	 * 
+	 * @param server
+	 *            A string indicating the hostname of the server.
+	 * @param portNumber
+	 *            A port number for which to bind to the server on.
+	 * @param executor
+	 *            The executor to run the thread listening to the server on.
+	 */
+	public SocketClient(String server, int portNumber,
+			SocketClientProtocol protocol, Executor executor) {
 		this.server = server;
 		this.portNumber = portNumber;
 		this.protocol = protocol;
+		this.executor = executor;
 	}
 
 	/**
@@ -36,11 +58,18 @@ public class SocketClient {
 	public int bind() {
 		try {
             Socket socket = new Socket(server, portNumber);
-			writer = new PrintWriter(socket.getOutputStream(), true);
+			writer = new MessageWriter(socket.getOutputStream());
+
+			MessageReader reader = new MessageReader(socket.getInputStream());
+
+			if (binary && negotiateBinary(reader) != 0) {
+				socket.close();
+				return 1;
+			}
 
 			// Start a separate thread listening for events from the server;
 			// the events are created by different clients (or this one!).
-			new SocketClientThread(socket, protocol).start();
+			executor.execute(new SocketClientThread(socket, reader, protocol));
 
 		} catch (UnknownHostException e) {
 			return 1;
@@ -51,6 +80,51 @@ public class SocketClient {
 		return 0;
 	}
 
+	/**
+	 * Ask the server for the binary encoding, and wait for its answer. Any
+	 * other messages sent by the server in the meantime are passed on to the
+	 * protocol.
+	 * 
+	 * @return a non-zero integer if the server closed the connection,
+	 *         otherwise return zero (whether or not the server agreed).
+	 */
+	private int negotiateBinary(MessageReader reader) throws IOException {
+
+		writer.println(BinaryCodec.HELLO);
+
+		String message;
+
+		while ((message = reader.readMessage()) != null) {
+
+			if (message.equals(BinaryCodec.HELLO)) {
+				reader.setBinary(true);
+				writer.setBinary(true);
+				return 0;
+			}
+
+			// A server which doesn't know the binary encoding.
+			if (message.equals(SocketClientProtocol.NAK)) {
+				return 0;
+			}
+
+			protocol.processInput(null, message);
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Use the binary encoding if the server supports it; this needs to be set
+	 * before binding. By default it is used if the system property
+	 * carcassonne.net.encoding is set to "binary".
+	 * 
+	 * @param binary
+	 *            True to ask for the binary encoding, false for text.
+	 */
+	public void setBinaryEncoding(boolean binary) {
+		this.binary = binary;
+	}
+
 	/**
 	 * Send a message to the bound socket. The message sent back is caught by
 	 * the thread created in bind function.
@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.net.Socket;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.List;
 
 public abstract class SocketClientProtocol {
 
@@ -20,6 +21,23 @@ public abstract class SocketClientProtocol {
 	 */
 	public abstract ArrayList<String> processInput(Socket sender, String input);
 
+	/**
+	 * Process a batch of messages; the messages sent together in reply to one
+	 * message, which have all been received. By default each message is
+	 * processed in turn.
+	 * 
+	 * @param sender
+	 *            The sender of the messages.
+	 * @param inputs
+	 *            The messages, in the order they were sent.
+	 */
+	public void processBatch(Socket sender, List<String> inputs) {
+
+		for (String input : inputs) {
+			processInput(sender, input);
+		}
+	}
+
 	/**
 	 * Convert a Color to a String of length nine consisting of an RGB value.
 	 * Each individual color value (R, G, B) is a string of length three,
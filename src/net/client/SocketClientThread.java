@@ -1,23 +1,21 @@
 package net.client;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayList;
 
 // We have 2 avenues to send/receive messages from the server. We can either
 // send a message and get a message back directly (sendMessage). Or we can
 // receive messages from the server without sending a message.
-class SocketClientThread extends Thread {
+class SocketClientThread implements Runnable {
 
 	private Socket server = null;
+	private MessageReader reader = null;
 	private SocketClientProtocol protocol = null;
 
-	public SocketClientThread(Socket server, SocketClientProtocol protocol) {
-		super("SocketClientThread");
+	public SocketClientThread(Socket server, MessageReader reader,
+			SocketClientProtocol protocol) {
 		this.server = server;
+		this.reader = reader;
 		this.protocol = protocol;
 	}
 
@@ -25,25 +23,16 @@ class SocketClientThread extends Thread {
 	public void run() {
 
 		try {
-			OutputStream outputStream = server.getOutputStream();
-			InputStream inputStream = server.getInputStream();
+			ArrayList<String> batch = new ArrayList<String>();
 
-			InputStreamReader isr = new InputStreamReader(inputStream);
-
-			PrintWriter writer = new PrintWriter(outputStream, true);
-			BufferedReader reader = new BufferedReader(isr);
-
-			String inputLine;
-
-			while ((inputLine = reader.readLine()) != null) {
+			while (reader.readBatch(batch)) {
 
 				// Don't do anything with the response for now.
                 // Nor does the client protocol use the socket.
-				protocol.processInput(null, inputLine);
+				protocol.processBatch(null, batch);
 
-				if (inputLine.equals(SocketClientProtocol.EXIT)) {
+				if (batch.contains(SocketClientProtocol.EXIT)) {
 
-					writer.close();
 					reader.close();
 
 					// Close the socket here instead of in the parent
@@ -58,6 +47,8 @@ class SocketClientThread extends Thread {
 
 					return;
 				}
+
+				batch.clear();
 			}
 
 		} catch (Exception e) {
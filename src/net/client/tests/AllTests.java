@@ -0,0 +1,10 @@
+package net.client.tests;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({ BinaryCodecTest.class, ClientProtocolTest.class })
+public class AllTests {
+}
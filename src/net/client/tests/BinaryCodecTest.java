@@ -0,0 +1,372 @@
+package net.client.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.client.BinaryCodec;
+
+import org.junit.Test;
+
+public class BinaryCodecTest {
+
+	// The schema numbers of text & batch frames.
+	private static final int textSchema = 0;
+	private static final int batchSchema = 127;
+
+	@Test
+	public void drawTileTest() {
+		assertSchemaRoundTrip("DRAWTILE;currentPlayer;0");
+		assertSchemaRoundTrip("DRAWTILE;currentPlayer;4;identifier;RCRRCX;orientation;3");
+	}
+
+	@Test
+	public void placeTest() {
+		assertSchemaRoundTrip("ROTATETILE;currentPlayer;1;direction;clockwise");
+		assertSchemaRoundTrip("PLACETILE;currentPlayer;1;xBoard;72;yBoard;72");
+		assertSchemaRoundTrip("PLACETILE;currentPlayer;1;xBoard;-1;yBoard;0;error;1");
+		assertSchemaRoundTrip("PLACEMEEPLE;currentPlayer;2;xBoard;71;yBoard;73;xTile;0;yTile;4");
+		assertSchemaRoundTrip("PLACEMEEPLE;currentPlayer;2;xBoard;-71;yBoard;2147483647;xTile;-2147483648;yTile;4;error;0");
+	}
+
+	@Test
+	public void scoreTest() {
+
+		assertSchemaRoundTrip("SCORE");
+		assertSchemaRoundTrip("SCORE;meeple;xBoard;71;yBoard;72;xTile;2;yTile;2");
+		assertSchemaRoundTrip("SCORE;meeple;xBoard;71;yBoard;72;xTile;2;yTile;2"
+				+ ";meeple;xBoard;73;yBoard;72;xTile;0;yTile;4"
+				+ ";meeple;xBoard;-5;yBoard;300;xTile;4;yTile;0");
+
+		// A group cut short isn't the schema's.
+		assertTextRoundTrip("SCORE;meeple;xBoard;71;yBoard;72;xTile;2");
+	}
+
+	@Test
+	public void lobbyTest() {
+
+		assertSchemaRoundTrip("JOINLOBBY");
+		assertSchemaRoundTrip("JOINLOBBY;room;the kitchen");
+		assertSchemaRoundTrip("ASSIGNPLAYER;player;3");
+		assertSchemaRoundTrip("LEAVELOBBY;player;0");
+		assertSchemaRoundTrip("LEAVEGAME;player;1");
+		assertSchemaRoundTrip("LEAVEGAME;player;1;meeple;xBoard;1;yBoard;2;xTile;3;yTile;4");
+		assertSchemaRoundTrip("UPDATELOBBY");
+		assertSchemaRoundTrip("UPDATELOBBY;player;0;name;Player 1;color;255000000");
+		assertSchemaRoundTrip("UPDATELOBBY;player;0;name;Ann;color;000128255"
+				+ ";player;1;name;;color;009010099"
+				+ ";player;2;name;Zo\u00eb;color;255255255");
+		assertSchemaRoundTrip("UPDATEPLAYER;player;1;name;Bob;color;000000000");
+		assertSchemaRoundTrip("INIT;numPlayers;5");
+		assertSchemaRoundTrip("INIT;currentPlayer;0;gameBoardWidth;145;gameBoardHeight;145");
+		assertSchemaRoundTrip("ENDTURN;currentPlayer;3");
+		assertSchemaRoundTrip("ACK");
+		assertSchemaRoundTrip("NAK");
+		assertSchemaRoundTrip("EXIT");
+
+		// Colors out of range, or not of three digits each, are sent as text.
+		assertTextRoundTrip("UPDATEPLAYER;player;1;name;Bob;color;256000000");
+		assertTextRoundTrip("UPDATEPLAYER;player;1;name;Bob;color;00000000");
+		assertTextRoundTrip("UPDATEPLAYER;player;1;name;Bob;color;0000000a0");
+	}
+
+	@Test
+	public void infoTest() {
+
+		assertSchemaRoundTrip("INFO;player;1;currentPlayer;0;score;17;meeplesPlaced;3");
+		assertSchemaRoundTrip("INFO;game;currentPlayer;2;drawPileEmpty;0");
+
+		// The deltas; only the fields which changed, in any number.
+		assertSchemaRoundTrip("INFO;player;1;version;1");
+		assertSchemaRoundTrip("INFO;player;1;version;7;score;21");
+		assertSchemaRoundTrip("INFO;player;4;version;2;currentPlayer;1;score;0;meeplesPlaced;7");
+		assertSchemaRoundTrip("INFO;game;version;1;currentPlayer;0;drawPileEmpty;0;unplaceableTiles;0");
+		assertSchemaRoundTrip("INFO;game;version;12;drawPileEmpty;1");
+
+		// The first game info has all of its fields, which have a schema of
+		// their own; shorter than the names written out.
+		String first = "INFO;game;version;1;currentPlayer;0;drawPileEmpty;0;unplaceableTiles;0";
+		String delta = "INFO;game;version;1;currentPlayer;0;drawPileEmpty;0;meeplesPlaced;0";
+
+		assertSchemaRoundTrip(first);
+		assertTrue(BinaryCodec.encode(first).length + 20 < BinaryCodec
+				.encode(delta).length);
+	}
+
+	@Test
+	public void textFallbackTest() {
+
+		// Ints which Integer.toString wouldn't write.
+		assertTextRoundTrip("ENDTURN;currentPlayer;01");
+		assertTextRoundTrip("ENDTURN;currentPlayer;-0");
+		assertTextRoundTrip("ENDTURN;currentPlayer;+1");
+		assertTextRoundTrip("ENDTURN;currentPlayer;2147483648");
+		assertTextRoundTrip("ENDTURN;currentPlayer;-2147483649");
+		assertTextRoundTrip("ENDTURN;currentPlayer;");
+		assertTextRoundTrip("ENDTURN;currentPlayer;one");
+
+		// Messages which match no schema.
+		assertTextRoundTrip("");
+		assertTextRoundTrip(";");
+		assertTextRoundTrip("UNKNOWN;player;1");
+		assertTextRoundTrip("ENDTURN;currentPlayer;1;");
+		assertTextRoundTrip("ENDTURN;player;1");
+		assertTextRoundTrip("SCORE;");
+		assertTextRoundTrip("caf\u00e9;\u20ac");
+	}
+
+	@Test
+	public void batchTest() {
+
+		List<String> messages = Arrays.asList(
+				"PLACEMEEPLE;currentPlayer;0;xBoard;72;yBoard;71;xTile;2;yTile;0;error;0",
+				"SCORE;meeple;xBoard;72;yBoard;71;xTile;2;yTile;0",
+				"INFO;player;0;version;4;score;4;meeplesPlaced;0",
+				"INFO;game;version;9;currentPlayer;1", "ENDTURN;currentPlayer;0",
+				"NOT;A;SCHEMA");
+		byte[] frame = BinaryCodec.encode(messages);
+
+		assertEquals(frame.length, BinaryCodec.getFrameLength(frame, 0,
+				frame.length));
+		assertEquals(batchSchema, frame[1]);
+		assertEquals(messages, decode(frame));
+
+		// A single message isn't put in a batch.
+		List<String> single = Collections.singletonList("ENDTURN;currentPlayer;0");
+		byte[] singleFrame = BinaryCodec.encode(single);
+
+		assertTrue(Arrays.equals(BinaryCodec.encode(single.get(0)),
+				singleFrame));
+		assertEquals(single, decode(singleFrame));
+	}
+
+	@Test
+	public void longBatchTest() {
+
+		// Longer than one frame; the messages are sent as plain frames, one
+		// after the other.
+		char[] name = new char[1000];
+		Arrays.fill(name, 'x');
+		List<String> messages = new ArrayList<String>();
+
+		for (int i = 0; i < 100; i++) {
+			messages.add("UPDATEPLAYER;player;" + i + ";name;"
+					+ new String(name) + ";color;000000000");
+		}
+
+		byte[] frames = BinaryCodec.encode(messages);
+		ArrayList<String> decoded = new ArrayList<String>();
+		int offset = 0;
+
+		while (offset < frames.length) {
+
+			int frameLength = BinaryCodec.getFrameLength(frames, offset,
+					frames.length - offset);
+
+			assertTrue(frameLength > 0);
+			BinaryCodec.decode(frames, offset, frameLength, decoded);
+			offset += frameLength;
+		}
+
+		assertEquals(messages, decoded);
+	}
+
+	@Test
+	public void byteByByteTest() throws IOException {
+
+		// A batch with a length of more than one byte.
+		List<String> messages = new ArrayList<String>();
+
+		for (int i = 0; i < 20; i++) {
+			messages.add("PLACEMEEPLE;currentPlayer;" + i + ";xBoard;" + i
+					+ ";yBoard;" + -i + ";xTile;2;yTile;2");
+		}
+
+		byte[] frame = BinaryCodec.encode(messages);
+		int lengthOfLength = 0;
+
+		while ((frame[lengthOfLength] & 0x80) != 0) {
+			lengthOfLength++;
+		}
+
+		lengthOfLength++;
+		assertTrue(lengthOfLength > 1);
+
+		// As the server reads a frame; the length is known once its own bytes
+		// are, and the frame is whole once the last byte is.
+		byte[] buffer = new byte[frame.length];
+
+		for (int i = 0; i < frame.length; i++) {
+
+			buffer[i] = frame[i];
+			int read = i + 1;
+
+			assertEquals((read < lengthOfLength) ? -1 : frame.length,
+					BinaryCodec.readFrameLength(buffer, 0, read));
+			assertEquals((read < frame.length) ? -1 : frame.length,
+					BinaryCodec.getFrameLength(buffer, 0, read));
+		}
+
+		assertEquals(messages, decode(buffer));
+
+		// As the clients read a frame, from a stream giving a byte at a time.
+		byte[] stream = Arrays.copyOf(frame, frame.length * 2);
+		System.arraycopy(frame, 0, stream, frame.length, frame.length);
+
+		InputStream in = new OneByteInputStream(stream);
+		ArrayList<String> decoded = new ArrayList<String>();
+
+		assertTrue(BinaryCodec.readFrame(in, decoded));
+		assertEquals(messages, decoded);
+
+		decoded.clear();
+		assertTrue(BinaryCodec.readFrame(in, decoded));
+		assertEquals(messages, decoded);
+
+		assertFalse(BinaryCodec.readFrame(in, decoded));
+	}
+
+	@Test
+	public void invalidFrameTest() throws IOException {
+
+		// Longer than the limit.
+		byte[] tooLong = { (byte) 0x81, (byte) 0x80, 0x08 };
+
+		try {
+			BinaryCodec.readFrameLength(tooLong, 0, tooLong.length);
+			fail("A frame over the limit was accepted.");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			BinaryCodec.readFrame(new ByteArrayInputStream(tooLong),
+					new ArrayList<String>());
+			fail("A frame over the limit was read.");
+		} catch (IOException e) {
+		}
+
+		// A length which never ends.
+		byte[] endless = { (byte) 0x80, (byte) 0x80, (byte) 0x80,
+				(byte) 0x80, (byte) 0x80, 0x01 };
+
+		try {
+			BinaryCodec.readFrameLength(endless, 0, endless.length);
+			fail("An endless length was accepted.");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// A schema which doesn't exist.
+		try {
+			decode(new byte[] { 0x01, 0x7e });
+			fail("An unknown schema was decoded.");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// Values missing, or left over.
+		byte[] frame = BinaryCodec.encode("ENDTURN;currentPlayer;1");
+		byte[] shortFrame = Arrays.copyOf(frame, frame.length - 1);
+		shortFrame[0]--;
+
+		try {
+			decode(shortFrame);
+			fail("A frame with values missing was decoded.");
+		} catch (IllegalArgumentException e) {
+		}
+
+		byte[] longFrame = Arrays.copyOf(frame, frame.length + 1);
+		longFrame[0]++;
+
+		try {
+			decode(longFrame);
+			fail("A frame with trailing bytes was decoded.");
+		} catch (IllegalArgumentException e) {
+		}
+
+		// A stream which ends within a frame.
+		try {
+			BinaryCodec.readFrame(new ByteArrayInputStream(shortFrame),
+					new ArrayList<String>());
+			fail("A truncated frame was read.");
+		} catch (IOException e) {
+		}
+	}
+
+	// The message is encoded by its schema, and decoded to the same text;
+	// and its frame is shorter than its text.
+	private static void assertSchemaRoundTrip(String message) {
+
+		byte[] frame = assertRoundTrip(message);
+
+		assertTrue(message, frame[1] != textSchema);
+		assertTrue(message, frame.length < message.length());
+	}
+
+	// The message is encoded as text, and decoded to the same text.
+	private static void assertTextRoundTrip(String message) {
+
+		byte[] frame = assertRoundTrip(message);
+
+		assertEquals(message, textSchema, frame[1]);
+	}
+
+	private static byte[] assertRoundTrip(String message) {
+
+		byte[] frame = BinaryCodec.encode(message);
+
+		assertEquals(message, frame.length,
+				BinaryCodec.getFrameLength(frame, 0, frame.length));
+		assertEquals(Collections.singletonList(message), decode(frame));
+
+		return frame;
+	}
+
+	private static List<String> decode(byte[] frame) {
+
+		ArrayList<String> messages = new ArrayList<String>();
+		BinaryCodec.decode(frame, 0, frame.length, messages);
+
+		return messages;
+	}
+
+	// Gives one byte per read, as a slow connection might.
+	private static class OneByteInputStream extends InputStream {
+
+		private final byte[] bytes;
+		private int offset = 0;
+
+		OneByteInputStream(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read() {
+			return (offset < bytes.length) ? bytes[offset++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int off, int len) {
+
+			if (len == 0) {
+				return 0;
+			}
+
+			int b = read();
+
+			if (b < 0) {
+				return -1;
+			}
+
+			buffer[off] = (byte) b;
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package net.client.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import model.Game;
+import model.MeepleStruct;
+import model.Player;
+import model.PlayerStruct;
+import model.TilePlacement;
+import net.client.ClientProtocol;
+import net.client.GameListener;
+import net.server.ServerProtocol;
+import net.server.tests.ServerProtocolTest.RecordingWriter;
+
+import org.junit.Test;
+
+public class ClientProtocolTest {
+
+	// Plays a seeded game, which the test looks into to find its moves.
+	private static class SeededProtocol extends ServerProtocol {
+
+		Game game;
+
+		@Override
+		protected Game newGame(int numPlayers) {
+			game = new Game(numPlayers, 1);
+			return game;
+		}
+	}
+
+	// Keeps the latest player info the client was given, by player.
+	private static class InfoListener implements GameListener {
+
+		final HashMap<Integer, int[]> playerInfo = new HashMap<Integer, int[]>();
+
+		@Override
+		public void playerInfo(int player, int currentPlayer,
+				int playerScore, int meeplesPlaced) {
+			playerInfo.put(player, new int[] { currentPlayer, playerScore,
+					meeplesPlaced });
+		}
+
+		@Override
+		public void leaveGame(int player, Set<MeepleStruct> meeplePositions) {
+			playerInfo.clear();
+		}
+
+		@Override
+		public void exit() {
+		}
+
+		@Override
+		public void assignPlayer(int player) {
+		}
+
+		@Override
+		public void updateLobby(HashMap<Integer, PlayerStruct> players) {
+		}
+
+		@Override
+		public void init(int currentPlayer, int width, int height) {
+		}
+
+		@Override
+		public void drawTile(int currentPlayer, String identifier,
+				int orientation) {
+		}
+
+		@Override
+		public void rotateTile(int currentPlayer, String direction) {
+		}
+
+		@Override
+		public void placeTile(int currentPlayer, int xBoard, int yBoard,
+				int error) {
+		}
+
+		@Override
+		public void placeMeeple(int currentPlayer, int xBoard, int yBoard,
+				int xTile, int yTile, int error) {
+		}
+
+		@Override
+		public void score(Set<MeepleStruct> meeplePositions) {
+		}
+
+		@Override
+		public void endTurn(int player) {
+		}
+
+		@Override
+		public void gameInfo(int currentPlayer, boolean drawPileEmpty,
+				int unplaceableTiles) {
+		}
+	}
+
+	@Test
+	public void leaveGameInfoTest() {
+
+		SeededProtocol protocol = new SeededProtocol();
+		Socket[] sockets = new Socket[3];
+		RecordingWriter[] writers = new RecordingWriter[3];
+
+		for (int i = 0; i < sockets.length; i++) {
+			sockets[i] = new Socket();
+			writers[i] = new RecordingWriter();
+			protocol.addSender(sockets[i], writers[i]);
+			protocol.processInput(sockets[i], "JOINLOBBY");
+		}
+
+		protocol.processInput(sockets[0], "INIT;numPlayers;3");
+		playTurn(protocol, sockets[0], 0);
+
+		// The first player leaves; the others are renumbered, and the next
+		// turn sends their info again.
+		protocol.processInput(sockets[0], "LEAVEGAME;player;0");
+		playTurn(protocol, sockets[2], 1);
+
+		InfoListener listener = new InfoListener();
+		ClientProtocol client = new ClientProtocol(listener);
+
+		for (String message : writers[1].messages) {
+			client.processInput(null, message);
+		}
+
+		// The client has each player's info as it is, under the player's new
+		// number.
+		List<Player> players = protocol.game.getPlayers();
+
+		assertEquals(2, listener.playerInfo.size());
+
+		for (int i = 0; i < players.size(); i++) {
+
+			Player player = players.get(i);
+			int[] expected = { (i == 0) ? 1 : 0, player.getScore(),
+					protocol.game.getNumMeeplesPlaced(player) };
+
+			assertArrayEquals(expected, listener.playerInfo.get(i));
+		}
+	}
+
+	// Draw a tile, and place it where it first fits; the first tile goes in
+	// the middle of the board.
+	private static void playTurn(SeededProtocol protocol, Socket sender,
+			int seat) {
+
+		protocol.processInput(sender, "DRAWTILE;currentPlayer;" + seat);
+
+		Player player = protocol.game.getPlayers().get(seat);
+		ArrayList<TilePlacement> placements = protocol.game
+				.getLegalPlacements(player);
+		TilePlacement placement = placements.isEmpty() ? new TilePlacement(
+				72, 72, player.getCurrentTile().getOrientation()) : placements
+				.get(0);
+
+		while (player.getCurrentTile().getOrientation() != placement.orientation) {
+			protocol.processInput(sender, "ROTATETILE;currentPlayer;" + seat
+					+ ";direction;clockwise");
+		}
+
+		protocol.processInput(sender, "PLACETILE;currentPlayer;" + seat
+				+ ";xBoard;" + placement.xBoard + ";yBoard;"
+				+ placement.yBoard);
+		protocol.processInput(sender, "ENDTURN;currentPlayer;" + seat);
+	}
+}
@@ -0,0 +1,47 @@
+package net.server;
+
+import java.util.List;
+
+/*
+ * A way of sending messages to a connected client, which doesn't depend on how
+ * the client is connected; a blocking socket with its own thread, or a
+ * non-blocking channel shared with other clients on a selector.
+ */
+public interface ClientWriter {
+
+	/**
+	 * Send a message to the client. The message is terminated with a line
+	 * separator.
+	 * 
+	 * @param message
+	 *            The message to be sent.
+	 */
+	public void println(String message);
+
+	/**
+	 * Send messages to the client together, as one write; and as one batch,
+	 * which the client reads whole before acting on any of it, if the
+	 * encoding allows (see BinaryCodec).
+	 * 
+	 * @param messages
+	 *            The messages to be sent, in order.
+	 */
+	public void println(List<String> messages);
+
+	/**
+	 * Send the replies to a message from the client, as println does, but
+	 * after the fact (as once the move they're about is on disk, see
+	 * ServerProtocol). Unlike other messages, they're never dropped or held to
+	 * a limit when the client is slow to read.
+	 * 
+	 * @param messages
+	 *            The replies, in order.
+	 */
+	public void printReplies(List<String> messages);
+
+	/**
+	 * Close the connection to the client, once any messages already sent have
+	 * been written.
+	 */
+	public void close();
+}
@@ -0,0 +1,749 @@
+package net.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * An append-only log of the games being played, in a memory-mapped file, so
+ * that the games can be rebuilt when the server is restarted.
+ *
+ * Each move a game accepts is appended as a record (see ServerProtocol); the
+ * length of its body, a CRC32 of the body, and the body: the id of the game,
+ * the sequence number of the record within the game, the type of the record,
+ * and its int, string & byte values, as varints & UTF-8. The file is mapped
+ * ahead of the records, so past them it holds zeros.
+ * Reading stops at a zero length, or at a record whose checksum doesn't match,
+ * as may be left by a crash while it was written.
+ *
+ * Appending a record only copies it into the mapping. It's on disk once it is
+ * committed (see commit); the thread committing forces every record appended
+ * so far, while any other thread which needs a commit waits, so the moves made
+ * in many rooms during one force are all committed by the next. A thread which
+ * mustn't wait (as the server's event loop) has the log's own thread commit
+ * for it instead (see commitLater).
+ *
+ * Every so often a game also appends a snapshot of itself, which stands in for
+ * its records before the snapshot's sequence number; so a game is rebuilt from
+ * its latest snapshot and the few records after it. Snapshots are appended on
+ * a thread of their own, and may land after later records of the game.
+ *
+ * Opening a log reads the records of the games which hadn't ended, and writes
+ * the log afresh with only those (from their latest snapshots); so it doesn't
+ * grow across restarts, and a torn record at its end is dropped. The records
+ * of a game which can't be rebuilt from them are kept aside, in a file of
+ * their own, before the game is ended (see setAside).
+ *
+ * The system property carcassonne.log.file names the file of the log the room
+ * server keeps (see RoomServerProtocol); without it, no log is kept. The
+ * property carcassonne.log.snapshotTurns sets how many turns a game plays
+ * between snapshots.
+ */
+public class GameLog {
+
+	public static final String fileProperty = "carcassonne.log.file";
+	public static final String snapshotTurnsProperty = "carcassonne.log.snapshotTurns";
+
+	public static final int defaultSnapshotTurns = 10;
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	// The types of the records which end a game, and of snapshots.
+	private static final int endType = 0;
+	private static final int snapshotType = 1;
+
+	// The length & checksum before the body of a record.
+	private static final int headerLength = 8;
+
+	private static final int initialCapacity = 1 << 20;
+
+	private static GameLog defaultLog = null;
+
+	/**
+	 * A record of the log.
+	 */
+	public static class Record {
+
+		private final int game;
+		private final int sequence;
+		private final int type;
+		private final int[] values;
+		private final String[] strings;
+		private final byte[] data;
+
+		Record(int game, int sequence, int type, int[] values,
+				String[] strings, byte[] data) {
+			this.game = game;
+			this.sequence = sequence;
+			this.type = type;
+			this.values = values;
+			this.strings = strings;
+			this.data = data;
+		}
+
+		public int getGame() {
+			return game;
+		}
+
+		public int getSequence() {
+			return sequence;
+		}
+
+		public boolean isSnapshot() {
+			return type == snapshotType;
+		}
+
+		public int getType() {
+			return type;
+		}
+
+		public int[] getValues() {
+			return values;
+		}
+
+		public String[] getStrings() {
+			return strings;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final File asidePath;
+
+	private final LatencyHistogram forceTime = ServerMetrics.getDefault()
+			.getHistogram("log.force");
+
+	private final ExecutorService snapshotWriter = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "GameLog-snapshots");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final ExecutorService committer = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "GameLog-commits");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	// Guarded by this.
+	private MappedByteBuffer buffer;
+	private int written;
+	private int committed;
+	private boolean committing = false;
+	private int nextGame = 0;
+	private LinkedHashMap<Integer, List<Record>> unfinishedGames;
+
+	/**
+	 * Get the log named by the system property, opening it the first time.
+	 *
+	 * @return The log, or null if the property isn't set.
+	 *
+	 * @throws IllegalStateException
+	 *             If the log could not be opened.
+	 */
+	public static synchronized GameLog getDefault() {
+
+		String name = System.getProperty(fileProperty);
+
+		if (defaultLog == null && name != null) {
+			try {
+				defaultLog = new GameLog(new File(name));
+			} catch (IOException e) {
+				throw new IllegalStateException("Can't open the game log.", e);
+			}
+		}
+
+		return defaultLog;
+	}
+
+	/**
+	 * Constructor; open a log, creating it if it doesn't exist, and read the
+	 * games which hadn't ended (see takeUnfinishedGames).
+	 *
+	 * @param path
+	 *            The file of the log.
+	 */
+	public GameLog(File path) throws IOException {
+
+		File temp = new File(path.getPath() + ".tmp");
+		asidePath = new File(path.getPath() + ".failed");
+
+		// A crash while the log was written afresh, after the old log was
+		// deleted.
+		if (!path.exists() && temp.exists() && !temp.renameTo(path)) {
+			throw new IOException("Can't rename " + temp);
+		}
+
+		unfinishedGames = read(path);
+
+		for (int game : unfinishedGames.keySet()) {
+			nextGame = Math.max(nextGame, game + 1);
+		}
+
+		// Write the records of the unfinished games to a new log, and only
+		// then put it in place of the old one.
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+		for (List<Record> game : unfinishedGames.values()) {
+			for (Record record : game) {
+				records.write(encode(record));
+			}
+		}
+
+		FileOutputStream out = new FileOutputStream(temp);
+
+		try {
+			records.writeTo(out);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		if (path.exists() && !path.delete()) {
+			throw new IOException("Can't replace " + path);
+		}
+
+		if (!temp.renameTo(path)) {
+			throw new IOException("Can't rename " + temp);
+		}
+
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+
+		written = records.size();
+		committed = written;
+		map(Math.max(initialCapacity, 2 * written));
+	}
+
+	/**
+	 * Get the records of the games which hadn't ended when the log was
+	 * opened, by game, in the order the games started. They are only kept
+	 * until taken.
+	 */
+	public synchronized Map<Integer, List<Record>> takeUnfinishedGames() {
+
+		Map<Integer, List<Record>> games = unfinishedGames;
+		unfinishedGames = new LinkedHashMap<Integer, List<Record>>();
+
+		return games;
+	}
+
+	/**
+	 * Keep the records of a game aside, as they would be lost once the game
+	 * is ended; they're appended to a file named as the log, with .failed
+	 * after it, which can itself be opened as a log.
+	 *
+	 * @param records
+	 *            The records of the game.
+	 */
+	public synchronized void setAside(List<Record> records) throws IOException {
+
+		FileOutputStream out = new FileOutputStream(asidePath, true);
+
+		try {
+			for (Record record : records) {
+				out.write(encode(record));
+			}
+
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Get an id for a new game; one which no game in the log has.
+	 */
+	public synchronized int newGame() {
+		return nextGame++;
+	}
+
+	/**
+	 * Append a record. It's not on disk until it has been committed.
+	 *
+	 * @param game
+	 *            The id of the game.
+	 * @param sequence
+	 *            The number of records the game has appended before this one
+	 *            (or that its latest snapshot stands in for).
+	 * @param type
+	 *            The type of the record, above one.
+	 * @param values
+	 *            The int values of the record.
+	 * @param strings
+	 *            The string values of the record.
+	 *
+	 * @return The position after the record in the log, to commit up to.
+	 */
+	public long append(int game, int sequence, int type, int[] values,
+			String[] strings) {
+
+		if (type <= snapshotType) {
+			throw new IllegalArgumentException("Type must be above one.");
+		}
+
+		return write(new Record(game, sequence, type, values, strings,
+				new byte[0]));
+	}
+
+	/**
+	 * Append a snapshot of a game, later, on another thread. It's committed
+	 * along with the records appended after it.
+	 *
+	 * @param game
+	 *            The id of the game.
+	 * @param sequence
+	 *            The number of records of the game the snapshot stands in
+	 *            for; the sequence of the game's next record.
+	 * @param values
+	 *            The int values of the snapshot.
+	 * @param strings
+	 *            The string values of the snapshot.
+	 * @param data
+	 *            The bytes of the snapshot.
+	 */
+	public void appendSnapshot(int game, int sequence, int[] values,
+			String[] strings, byte[] data) {
+
+		final Record snapshot = new Record(game, sequence, snapshotType,
+				values, strings, data);
+
+		snapshotWriter.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				write(snapshot);
+			}
+		});
+	}
+
+	/**
+	 * Append a record ending a game; its records are dropped from the log
+	 * when it is next opened.
+	 *
+	 * @param game
+	 *            The id of the game.
+	 *
+	 * @return The position after the record in the log, to commit up to.
+	 */
+	public long end(int game) {
+		return write(new Record(game, 0, endType, new int[0], new String[0],
+				new byte[0]));
+	}
+
+	/**
+	 * Wait until the log is on disk up to a position. If no other thread is
+	 * forcing the log to disk this thread does, up to the last record
+	 * appended; otherwise it waits for that thread, and then forces the log
+	 * itself if it still needs to.
+	 *
+	 * @param position
+	 *            The position, as returned by append.
+	 */
+	public void commit(long position) {
+
+		MappedByteBuffer forcing;
+		int target;
+
+		synchronized (this) {
+
+			while (committed < position && committing) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			if (committed >= position) {
+				return;
+			}
+
+			committing = true;
+			forcing = buffer;
+			target = written;
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			forcing.force();
+			forceTime.recordSince(start);
+
+			synchronized (this) {
+				committed = Math.max(committed, target);
+			}
+
+		} finally {
+			synchronized (this) {
+				committing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Commit the log up to a position on the log's own thread, without
+	 * waiting, and then run a task on that thread. Once the log is closing,
+	 * this thread commits, and runs the task, itself.
+	 *
+	 * @param position
+	 *            The position, as returned by append.
+	 * @param then
+	 *            The task to run once the log is on disk up to the position.
+	 */
+	public void commitLater(final long position, final Runnable then) {
+
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					commit(position);
+				} finally {
+					then.run();
+				}
+			}
+		};
+
+		try {
+			committer.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Check whether the log is on disk up to a position.
+	 *
+	 * @param position
+	 *            The position, as returned by append.
+	 */
+	public synchronized boolean isCommitted(long position) {
+		return committed >= position;
+	}
+
+	/**
+	 * Commit every record, and close the log; snapshots which haven't been
+	 * appended yet are given a few seconds to be.
+	 */
+	public void close() throws IOException {
+
+		snapshotWriter.shutdown();
+
+		try {
+			snapshotWriter.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		committer.shutdown();
+
+		try {
+			committer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		long position;
+
+		synchronized (this) {
+			position = written;
+		}
+
+		commit(position);
+		channel.close();
+		file.close();
+	}
+
+	private synchronized long write(Record record) {
+
+		byte[] bytes = encode(record);
+
+		if (written + bytes.length > buffer.capacity()) {
+
+			// The old mapping may have records which aren't committed; the
+			// new one is forced from now on.
+			buffer.force();
+			map(Math.max(2 * buffer.capacity(), written + bytes.length));
+		}
+
+		buffer.position(written);
+		buffer.put(bytes);
+		written += bytes.length;
+
+		return written;
+	}
+
+	// Map the log up to a capacity, growing the file if needed.
+	private void map(int capacity) {
+
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't map the game log.", e);
+		}
+	}
+
+	/**
+	 * Read the records of the games in a log which haven't ended; for each,
+	 * its latest snapshot (if any), and the records after it.
+	 */
+	private static LinkedHashMap<Integer, List<Record>> read(File path)
+			throws IOException {
+
+		LinkedHashMap<Integer, List<Record>> games = new LinkedHashMap<Integer, List<Record>>();
+		HashSet<Integer> ended = new HashSet<Integer>();
+
+		if (!path.exists()) {
+			return games;
+		}
+
+		byte[] log;
+		RandomAccessFile in = new RandomAccessFile(path, "r");
+
+		try {
+			log = new byte[(int) in.length()];
+			in.readFully(log);
+		} finally {
+			in.close();
+		}
+
+		int[] offset = { 0 };
+		Record record;
+
+		while ((record = decode(log, offset)) != null) {
+
+			// A snapshot may be appended after its game ended.
+			if (ended.contains(record.game)) {
+				continue;
+			}
+
+			if (record.type == endType) {
+				games.remove(record.game);
+				ended.add(record.game);
+				continue;
+			}
+
+			List<Record> game = games.get(record.game);
+
+			if (game == null) {
+				game = new ArrayList<Record>();
+				games.put(record.game, game);
+			}
+
+			Record snapshot = (!game.isEmpty() && game.get(0).isSnapshot()) ? game
+					.get(0) : null;
+
+			if (record.isSnapshot()) {
+
+				if (snapshot != null && snapshot.sequence > record.sequence) {
+					continue;
+				}
+
+				// Drop the records the snapshot stands in for.
+				for (Iterator<Record> i = game.iterator(); i.hasNext();) {
+
+					Record earlier = i.next();
+
+					if (earlier.isSnapshot()
+							|| earlier.sequence < record.sequence) {
+						i.remove();
+					}
+				}
+
+				game.add(0, record);
+
+			} else if (snapshot == null || record.sequence >= snapshot.sequence) {
+				game.add(record);
+			}
+		}
+
+		return games;
+	}
+
+	private static byte[] encode(Record record) {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		writeVarint(body, record.game);
+		writeVarint(body, record.sequence);
+		writeVarint(body, record.type);
+		writeVarint(body, record.values.length);
+
+		for (int value : record.values) {
+			// Zig-zag, so small negative values are short too.
+			writeVarint(body, (value << 1) ^ (value >> 31));
+		}
+
+		writeVarint(body, record.strings.length);
+
+		for (String string : record.strings) {
+			byte[] bytes = string.getBytes(utf8);
+			writeVarint(body, bytes.length);
+			body.write(bytes, 0, bytes.length);
+		}
+
+		writeVarint(body, record.data.length);
+		body.write(record.data, 0, record.data.length);
+
+		CRC32 crc = new CRC32();
+		crc.update(body.toByteArray());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeInt(bytes, body.size());
+		writeInt(bytes, (int) crc.getValue());
+		bytes.write(body.toByteArray(), 0, body.size());
+
+		return bytes.toByteArray();
+	}
+
+	// Decode the record at the offset, and move the offset past it; or
+	// return null if there's no whole record there.
+	private static Record decode(byte[] log, int[] offset) {
+
+		int start = offset[0];
+
+		if (start + headerLength > log.length) {
+			return null;
+		}
+
+		int length = readInt(log, start);
+		int checksum = readInt(log, start + 4);
+		int bodyStart = start + headerLength;
+
+		if (length <= 0 || length > log.length - bodyStart) {
+			return null;
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(log, bodyStart, length);
+
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+
+		int[] position = { bodyStart };
+		int end = bodyStart + length;
+
+		try {
+			int game = readVarint(log, position, end);
+			int sequence = readVarint(log, position, end);
+			int type = readVarint(log, position, end);
+			int[] values = new int[readVarint(log, position, end)];
+
+			for (int i = 0; i < values.length; i++) {
+				int value = readVarint(log, position, end);
+				values[i] = (value >>> 1) ^ -(value & 1);
+			}
+
+			String[] strings = new String[readVarint(log, position, end)];
+
+			for (int i = 0; i < strings.length; i++) {
+
+				int stringLength = readVarint(log, position, end);
+
+				if (stringLength < 0 || stringLength > end - position[0]) {
+					return null;
+				}
+
+				strings[i] = new String(log, position[0], stringLength, utf8);
+				position[0] += stringLength;
+			}
+
+			int dataLength = readVarint(log, position, end);
+
+			if (dataLength < 0 || dataLength > end - position[0]) {
+				return null;
+			}
+
+			byte[] data = Arrays.copyOfRange(log, position[0], position[0]
+					+ dataLength);
+
+			offset[0] = end;
+
+			return new Record(game, sequence, type, values, strings, data);
+
+		} catch (IndexOutOfBoundsException e) {
+			// The checksum matched a body which isn't a record.
+			return null;
+		}
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write(value);
+	}
+
+	private static int readVarint(byte[] bytes, int[] position, int end) {
+
+		int value = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+
+			if (position[0] >= end) {
+				throw new IndexOutOfBoundsException("Record is truncated.");
+			}
+
+			int b = bytes[position[0]++];
+			value |= (b & 0x7f) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IndexOutOfBoundsException("Varint is too long.");
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xff) << 24)
+				| ((bytes[offset + 1] & 0xff) << 16)
+				| ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+	}
+}
@@ -0,0 +1,154 @@
+package net.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A histogram of durations, in nanoseconds, which can be recorded to from many
+ * threads at once without locking.
+ *
+ * Like an HDR histogram, the buckets are log-linear; each power of two is split
+ * into 2^subBucketBits buckets of equal width, so any value is counted within
+ * about 6% of its size, from a nanosecond up to the longest duration, in under
+ * a thousand buckets. Recording a value is a few shifts and an atomic add.
+ */
+public class LatencyHistogram {
+
+	private static final int subBucketBits = 4;
+	private static final int subBuckets = 1 << subBucketBits;
+
+	// Enough buckets for any positive long.
+	private static final int numBuckets = (64 - subBucketBits) * subBuckets;
+
+	private final AtomicLongArray counts = new AtomicLongArray(numBuckets);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a duration.
+	 *
+	 * @param nanos
+	 *            The duration, in nanoseconds; negative durations (from a clock
+	 *            going backwards) are counted as zero.
+	 */
+	public void record(long nanos) {
+
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		counts.incrementAndGet(getBucket(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long previous = max.get();
+
+		while (nanos > previous && !max.compareAndSet(previous, nanos)) {
+			previous = max.get();
+		}
+	}
+
+	/**
+	 * Record the time since a start time.
+	 *
+	 * @param startNanos
+	 *            The start time, from System.nanoTime().
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the mean of the durations recorded, in nanoseconds.
+	 */
+	public double getMean() {
+
+		long n = count.get();
+
+		return (n == 0) ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * Get a percentile of the durations recorded.
+	 *
+	 * @param percentile
+	 *            The percentile, from 0 to 100.
+	 *
+	 * @return The largest duration which may be in the same bucket as the
+	 *         percentile (but no more than the maximum), in nanoseconds; zero
+	 *         if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+
+		long n = count.get();
+
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+
+		for (int i = 0; i < numBuckets; i++) {
+
+			seen += counts.get(i);
+
+			if (seen >= rank) {
+				return Math.min(getBucketMax(i), max.get());
+			}
+		}
+
+		// Recorded to while being read.
+		return max.get();
+	}
+
+	/**
+	 * Clear the histogram. Durations recorded while it is cleared may be only
+	 * partly cleared.
+	 */
+	public void reset() {
+
+		for (int i = 0; i < numBuckets; i++) {
+			counts.set(i, 0);
+		}
+
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	private static int getBucket(long value) {
+
+		if (value < subBuckets) {
+			return (int) value;
+		}
+
+		// The width of the buckets of the value's power of two.
+		int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+		int subBucket = (int) (value >>> shift) - subBuckets;
+
+		return (shift + 1) * subBuckets + subBucket;
+	}
+
+	private static long getBucketMax(int bucket) {
+
+		if (bucket < subBuckets) {
+			return bucket;
+		}
+
+		int shift = bucket / subBuckets - 1;
+		long subBucket = bucket % subBuckets;
+		long min = (subBuckets + subBucket) << shift;
+
+		return min + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,212 @@
+package net.server;
+
+import java.util.Arrays;
+
+/*
+ * Splits a message into its ;-separated tokens, without making a String of
+ * each.
+ *
+ * The characters of the message are copied into a buffer, and only the start
+ * & end of each token are kept; the buffer and arrays are reused from message
+ * to message. Tokens are compared and parsed where they lie in the buffer, so
+ * tokenizing, dispatching on the message name (see getOpcode()) and reading
+ * int values allocate nothing. Only getString(int) makes a new String.
+ */
+public class MessageTokenizer {
+
+	// The message names, by opcode, and a hash table of the opcodes; each
+	// slot holds an opcode plus one, or zero if empty.
+	private final String[] names;
+	private final int[] opcodes;
+
+	private char[] message = new char[256];
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int numTokens = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param names
+	 *            The message names; the opcode of a name is its index.
+	 */
+	public MessageTokenizer(String... names) {
+
+		this.names = names.clone();
+
+		int size = Integer.highestOneBit(Math.max(names.length, 1) * 4);
+		opcodes = new int[size];
+
+		for (int opcode = 0; opcode < names.length; opcode++) {
+
+			int slot = names[opcode].hashCode() & (size - 1);
+
+			while (opcodes[slot] != 0) {
+				slot = (slot + 1) & (size - 1);
+			}
+
+			opcodes[slot] = opcode + 1;
+		}
+	}
+
+	/**
+	 * Split a message into tokens, replacing those of the last message.
+	 */
+	public void tokenize(String message) {
+
+		int length = message.length();
+
+		if (length > this.message.length) {
+			this.message = new char[Math.max(length, this.message.length * 2)];
+		}
+
+		message.getChars(0, length, this.message, 0);
+
+		char[] chars = this.message;
+		int start = 0;
+		numTokens = 0;
+
+		for (int i = 0; i <= length; i++) {
+
+			if (i == length || chars[i] == ';') {
+
+				if (numTokens == starts.length) {
+					starts = Arrays.copyOf(starts, numTokens * 2);
+					ends = Arrays.copyOf(ends, numTokens * 2);
+				}
+
+				starts[numTokens] = start;
+				ends[numTokens] = i;
+				numTokens++;
+				start = i + 1;
+			}
+		}
+	}
+
+	public int getNumTokens() {
+		return numTokens;
+	}
+
+	/**
+	 * Get the opcode of the message; the index of its name (the first token)
+	 * in the names given to the constructor.
+	 * 
+	 * @return The opcode, or -1 if the name is not known.
+	 */
+	public int getOpcode() {
+
+		// The same hash as String.hashCode, over the first token.
+		int hash = 0;
+
+		for (int i = starts[0]; i < ends[0]; i++) {
+			hash = 31 * hash + message[i];
+		}
+
+		int slot = hash & (opcodes.length - 1);
+
+		while (opcodes[slot] != 0) {
+
+			int opcode = opcodes[slot] - 1;
+
+			if (equals(0, names[opcode])) {
+				return opcode;
+			}
+
+			slot = (slot + 1) & (opcodes.length - 1);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get whether a token is the same as a string.
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no such token.
+	 */
+	public boolean equals(int index, String value) {
+
+		checkIndex(index);
+
+		int start = starts[index];
+		int length = ends[index] - start;
+
+		if (length != value.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (message[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parse a token as an int, the same as Integer.parseInt would.
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no such token.
+	 * @throws NumberFormatException
+	 *             If the token is not an int.
+	 */
+	public int getInt(int index) {
+
+		checkIndex(index);
+
+		int i = starts[index];
+		int end = ends[index];
+		boolean negative = false;
+
+		if (i < end && (message[i] == '-' || message[i] == '+')) {
+			negative = message[i] == '-';
+			i++;
+		}
+
+		if (i == end) {
+			throw new NumberFormatException("Not an int: " + getString(index));
+		}
+
+		// Accumulate negatively, as the range of negative ints is larger.
+		int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+		int value = 0;
+
+		for (; i < end; i++) {
+
+			// Any digit Integer.parseInt takes, not only ASCII.
+			int digit = Character.digit(message[i], 10);
+
+			if (digit < 0 || value < limit / 10
+					|| value * 10 < limit + digit) {
+				throw new NumberFormatException("Not an int: "
+						+ getString(index));
+			}
+
+			value = value * 10 - digit;
+		}
+
+		return negative ? value : -value;
+	}
+
+	/**
+	 * Get a token as a new String.
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no such token.
+	 */
+	public String getString(int index) {
+
+		checkIndex(index);
+
+		return new String(message, starts[index], ends[index] - starts[index]);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= numTokens) {
+			throw new IndexOutOfBoundsException("Token " + index + " of "
+					+ numTokens);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package net.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.client.BinaryCodec;
+
+/*
+ * A client connection served by an event loop.
+ *
+ * Bytes read are collected until a line separator (or a whole frame, once the
+ * client has asked for the binary encoding; see BinaryCodec), and each message
+ * is passed to the protocol. Messages to the client may be sent from any thread; they are
+ * queued, and written by the loop as the channel allows. The replies to each
+ * message are queued as one buffer, up to the server's OutboundLimits; the
+ * client's own replies aren't held to the limits, but the client isn't read
+ * from while its queue is full.
+ */
+class NioConnection implements ClientWriter {
+
+	private static final int bufferSize = 8192;
+
+	// A client sending a longer line than this is disconnected, rather than
+	// having the line buffered without limit. Frames have their own limit,
+	// past their length.
+	private static final int maxMessageLength = BinaryCodec.maxFrameLength + 5;
+
+	// The same as the readers & writers of the socket clients.
+	private static final Charset charset = Charset.defaultCharset();
+
+	private final SocketChannel channel;
+	private final NioEventLoop loop;
+	private final SocketServerProtocol protocol;
+	private final OutboundLimits limits;
+	private SelectionKey key = null;
+
+	// Only used by the loop. The length of the frame being read is known (or
+	// -1) once its first few bytes have been, and it's decoded into the same
+	// list each time.
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(bufferSize);
+	private byte[] message = new byte[256];
+	private int messageLength = 0;
+	private boolean binaryInput = false;
+	private int frameLength = -1;
+	private final ArrayList<String> inputMessages = new ArrayList<String>();
+
+	// Messages which have not been written yet. Guarded by this, along with
+	// the encoding of messages sent, and closing.
+	private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	private boolean binaryOutput = false;
+	private boolean closing = false;
+	private volatile boolean closed = false;
+
+	NioConnection(SocketChannel channel, NioEventLoop loop,
+			SocketServerProtocol protocol, OutboundLimits limits) {
+		this.channel = channel;
+		this.loop = loop;
+		this.protocol = protocol;
+		this.limits = limits;
+	}
+
+	@Override
+	public void println(String message) {
+		println(Collections.singletonList(message));
+	}
+
+	@Override
+	public void println(List<String> messages) {
+		queue(messages, false);
+	}
+
+	@Override
+	public void printReplies(List<String> messages) {
+		queue(messages, true);
+	}
+
+	// Queue messages to be written, as one buffer. Replies to the client's
+	// own messages are always queued.
+	private void queue(List<String> messages, boolean reply) {
+
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		synchronized (this) {
+			if (closing) {
+				return;
+			}
+
+			// The client isn't keeping up.
+			if (!reply && writeQueue.size() >= limits.getMaxQueued()) {
+
+				if (limits.getOverflow() == OutboundLimits.Overflow.DROP) {
+					limits.onDropped();
+					return;
+				}
+
+				limits.onDisconnected();
+				limits.onDequeued(writeQueue.size());
+				writeQueue.clear();
+				closing = true;
+
+			} else if (binaryOutput) {
+				writeQueue.add(ByteBuffer.wrap(BinaryCodec.encode(messages)));
+			} else {
+				StringBuilder lines = new StringBuilder();
+
+				for (String message : messages) {
+					lines.append(message).append('\n');
+				}
+
+				writeQueue.add(charset.encode(lines.toString()));
+			}
+
+			if (!closing) {
+				limits.onQueued(writeQueue.size());
+			}
+		}
+
+		loop.update(this);
+	}
+
+	@Override
+	public void close() {
+
+		synchronized (this) {
+			closing = true;
+		}
+
+		loop.update(this);
+	}
+
+	/**
+	 * Register the connection if needed, write what can be written, and close
+	 * it if it is closing and has nothing left to write. Only called by the
+	 * loop.
+	 */
+	void update() {
+
+		if (closed) {
+			return;
+		}
+
+		boolean hasWrites;
+		boolean hasClosed;
+		boolean isFull;
+
+		try {
+			if (key == null) {
+				key = channel.register(loop.getSelector(),
+						SelectionKey.OP_READ, this);
+			}
+
+			synchronized (this) {
+
+				while (!writeQueue.isEmpty()) {
+
+					ByteBuffer buffer = writeQueue.peek();
+					channel.write(buffer);
+
+					// The socket's send buffer is full; wait until it's
+					// writable again.
+					if (buffer.hasRemaining()) {
+						break;
+					}
+
+					writeQueue.poll();
+					limits.onDequeued(1);
+				}
+
+				hasWrites = !writeQueue.isEmpty();
+				hasClosed = closing && !hasWrites;
+				isFull = writeQueue.size() >= limits.getMaxQueued();
+			}
+
+		} catch (IOException e) {
+			disconnect();
+			return;
+		}
+
+		if (hasClosed) {
+			disconnect();
+			return;
+		}
+
+		// Stop reading from a client which isn't reading its replies, until
+		// they have been written.
+		int ops = isFull ? 0 : SelectionKey.OP_READ;
+
+		if (hasWrites) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+
+		key.interestOps(ops);
+	}
+
+	/**
+	 * Read what is available from the client, and process any complete
+	 * messages. Only called by the loop.
+	 */
+	void read() {
+
+		try {
+			readBuffer.clear();
+
+			if (channel.read(readBuffer) < 0) {
+				disconnect();
+				return;
+			}
+
+		} catch (IOException e) {
+			disconnect();
+			return;
+		}
+
+		readBuffer.flip();
+
+		while (readBuffer.hasRemaining() && !closed) {
+
+			if (binaryInput) {
+				readFrame();
+				continue;
+			}
+
+			byte b = readBuffer.get();
+
+			if (b == '\n') {
+
+				// Allow for "\r\n" separators.
+				int length = (messageLength > 0 && message[messageLength - 1] == '\r') ? messageLength - 1
+						: messageLength;
+
+				messageLength = 0;
+				processMessage(new String(message, 0, length, charset));
+				continue;
+			}
+
+			if (messageLength == message.length) {
+
+				if (messageLength == maxMessageLength) {
+					disconnect();
+					return;
+				}
+
+				message = Arrays.copyOf(message,
+						Math.min(message.length * 2, maxMessageLength));
+			}
+
+			message[messageLength++] = b;
+		}
+	}
+
+	// Read what has arrived of a frame. Its length is read a byte at a time,
+	// as it may be split between reads; the rest of the frame is then copied
+	// as it arrives, and decoded once it's whole.
+	private void readFrame() {
+
+		try {
+			if (frameLength < 0) {
+
+				message[messageLength++] = readBuffer.get();
+				frameLength = BinaryCodec.readFrameLength(message, 0,
+						messageLength);
+
+				if (frameLength < 0) {
+					return;
+				}
+
+				if (frameLength > message.length) {
+					message = Arrays.copyOf(message, frameLength);
+				}
+			}
+
+			int count = Math.min(readBuffer.remaining(), frameLength
+					- messageLength);
+
+			readBuffer.get(message, messageLength, count);
+			messageLength += count;
+
+			if (messageLength < frameLength) {
+				return;
+			}
+
+			BinaryCodec.decode(message, 0, frameLength, inputMessages);
+
+		} catch (IllegalArgumentException e) {
+			disconnect();
+			return;
+		}
+
+		messageLength = 0;
+		frameLength = -1;
+
+		for (String inputMessage : inputMessages) {
+			if (!closed) {
+				processMessage(inputMessage);
+			}
+		}
+
+		inputMessages.clear();
+	}
+
+	private void processMessage(String inputLine) {
+
+		// The client wants the binary encoding; everything after this message
+		// is in frames, both ways.
+		if (!binaryInput && inputLine.equals(BinaryCodec.HELLO)) {
+
+			synchronized (this) {
+				println(BinaryCodec.HELLO);
+				binaryOutput = true;
+			}
+
+			binaryInput = true;
+			return;
+		}
+
+		ArrayList<String> outputLines;
+
+		try {
+			outputLines = protocol.processInput(channel.socket(), inputLine);
+
+		} catch (RuntimeException e) {
+			// A malformed message; don't let it take down the loop.
+			disconnect();
+			return;
+		}
+
+		// The replies are sent as one batch; nothing after an exit.
+		int exit = outputLines.indexOf(SocketServerProtocol.EXIT);
+
+		if (exit < 0) {
+			queue(outputLines, true);
+		} else {
+			queue(outputLines.subList(0, exit + 1), true);
+			close();
+		}
+	}
+
+	/**
+	 * Close the channel now, dropping anything not yet written, and remove the
+	 * client from the protocol. Only called by the loop.
+	 */
+	void disconnect() {
+
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		synchronized (this) {
+			closing = true;
+			limits.onDequeued(writeQueue.size());
+			writeQueue.clear();
+		}
+
+		if (key != null) {
+			key.cancel();
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+
+		protocol.removeSender(channel.socket());
+	}
+}
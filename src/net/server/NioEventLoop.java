@@ -0,0 +1,106 @@
+package net.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * A thread which serves a number of connections, waiting on a Selector for any
+ * of them to be ready to read or write.
+ *
+ * Other threads never touch the selector or its keys; instead they queue the
+ * connection, and the loop brings it up to date (registering it, writing
+ * queued messages, or closing it) before it next waits.
+ */
+class NioEventLoop extends Thread {
+
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<NioConnection> pending = new ConcurrentLinkedQueue<NioConnection>();
+	private volatile boolean running = true;
+
+	NioEventLoop(String name) throws IOException {
+		super(name);
+		selector = Selector.open();
+	}
+
+	Selector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Start serving a new connection.
+	 */
+	void register(NioConnection connection) {
+		update(connection);
+	}
+
+	/**
+	 * Have a connection brought up to date; it has messages to write or is to
+	 * be closed. This can be called from any thread.
+	 */
+	void update(NioConnection connection) {
+
+		pending.add(connection);
+
+		// The loop will get to the connection before it next waits.
+		if (Thread.currentThread() != this) {
+			selector.wakeup();
+		}
+	}
+
+	void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			while (running) {
+
+				NioConnection connection;
+
+				while ((connection = pending.poll()) != null) {
+					connection.update();
+				}
+
+				selector.select();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys()
+						.iterator();
+
+				while (keys.hasNext()) {
+
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					connection = (NioConnection) key.attachment();
+
+					if (key.isValid() && key.isReadable()) {
+						connection.read();
+					}
+
+					if (key.isValid() && key.isWritable()) {
+						connection.update();
+					}
+				}
+			}
+
+		} catch (IOException e) {
+			// The selector has failed; nothing can be served.
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				((NioConnection) key.attachment()).disconnect();
+			}
+
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+	}
+}
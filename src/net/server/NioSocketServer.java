@@ -0,0 +1,232 @@
+package net.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * A server which serves every client from a few threads, rather than a thread
+ * per client (see SocketServer).
+ *
+ * This thread accepts connections, and hands each one to one of a number of
+ * event loops, in turn. An event loop waits on a Selector for any of its
+ * connections to be readable or writable, splits what is read into lines, and
+ * passes each line to the protocol. The protocol is shared by every
+ * connection, and so is called from every loop (see SocketServerProtocol).
+ *
+ * A client which can't be set up is closed, and the server carries on; when
+ * accepting fails (as when the server is out of file descriptors), it waits a
+ * while before trying again. Only closing the server stops it (see shutdown()).
+ */
+public class NioSocketServer extends Thread {
+
+	// How long to wait after accepting a client fails.
+	private static final long acceptBackoffMillis = 100;
+
+	// Sent to a client turned away because the server is full.
+	private static final byte[] exitLine = (SocketServerProtocol.EXIT + "\n")
+			.getBytes(Charset.forName("UTF-8"));
+
+	private int port;
+	private Class<? extends SocketServerProtocol> protocol;
+	private int numLoops;
+	private OutboundLimits outboundLimits = new OutboundLimits();
+
+	private ServerSocketChannel serverChannel = null;
+	private NioEventLoop[] loops = null;
+
+	/**
+	 * Constructor for the Server, with an event loop per processor (up to
+	 * four).
+	 * 
+	 * @param port
+	 *            The port number to run the server on.
+	 * @param protocol
+	 *            The protocol to run on the clients.
+	 */
+	public NioSocketServer(int port,
+			Class<? extends SocketServerProtocol> protocol) {
+		this(port, protocol, Math.min(4, Runtime.getRuntime()
+				.availableProcessors()));
+	}
+
+	/**
+	 * Constructor for the Server.
+	 * 
+	 * @param port
+	 *            The port number to run the server on, or zero for any free
+	 *            port (see bind()).
+	 * @param protocol
+	 *            The protocol to run on the clients.
+	 * @param numLoops
+	 *            The number of event loops (threads) to serve the clients.
+	 */
+	public NioSocketServer(int port,
+			Class<? extends SocketServerProtocol> protocol, int numLoops) {
+
+		super("NioSocketServer");
+
+		this.port = port;
+		this.protocol = protocol;
+		this.numLoops = Math.max(1, numLoops);
+	}
+
+	/**
+	 * Set the limits of the messages queued for each client; before the
+	 * server is started.
+	 * 
+	 * @param outboundLimits
+	 *            The limits, which also count the queues' depths.
+	 */
+	public void setOutboundLimits(OutboundLimits outboundLimits) {
+		this.outboundLimits = outboundLimits;
+	}
+
+	public OutboundLimits getOutboundLimits() {
+		return outboundLimits;
+	}
+
+	/**
+	 * Bind the server to its port, if it isn't bound already. This is done
+	 * when the server is started, but can be done before to find out which
+	 * port was bound.
+	 * 
+	 * @return The port the server is bound to.
+	 */
+	public synchronized int bind() throws IOException {
+
+		if (serverChannel == null) {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(port));
+		}
+
+		return serverChannel.socket().getLocalPort();
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			bind();
+			SocketServerProtocol socketProtocol = protocol.getDeclaredConstructor()
+					.newInstance();
+			ServerMetrics.getDefault().setServerGauges(socketProtocol,
+					outboundLimits);
+
+			synchronized (this) {
+				loops = new NioEventLoop[numLoops];
+
+				for (int i = 0; i < numLoops; i++) {
+					loops[i] = new NioEventLoop("NioEventLoop-" + i);
+					loops[i].start();
+				}
+			}
+
+			AtomicLong acceptFailures = ServerMetrics.getDefault().getCounter(
+					"server.acceptFailures");
+			AtomicLong setupFailures = ServerMetrics.getDefault().getCounter(
+					"server.setupFailures");
+
+			for (int next = 0; true;) {
+
+				SocketChannel client;
+
+				try {
+					client = serverChannel.accept();
+
+				} catch (ClosedChannelException e) {
+					// Closed by shutdown() (which, while accept() waits, is
+					// an AsynchronousCloseException).
+					break;
+
+				} catch (IOException e) {
+					acceptFailures.incrementAndGet();
+					Thread.sleep(acceptBackoffMillis);
+					continue;
+				}
+
+				try {
+					if (addClient(client, loops[next], socketProtocol)) {
+						next = (next + 1) % numLoops;
+					}
+
+				} catch (IOException e) {
+					// The client reset the connection as it was set up.
+					setupFailures.incrementAndGet();
+					closeQuietly(client);
+				}
+			}
+
+		} catch (Exception e) {
+			// The server channel could not be opened, or the thread was
+			// interrupted.
+		} finally {
+			shutdown();
+		}
+	}
+
+	// Hand a client to an event loop, or turn it away if the server is full.
+	private boolean addClient(SocketChannel client, NioEventLoop loop,
+			SocketServerProtocol socketProtocol) throws IOException {
+
+		client.configureBlocking(false);
+		client.socket().setTcpNoDelay(true);
+
+		NioConnection connection = new NioConnection(client, loop,
+				socketProtocol, outboundLimits);
+
+		synchronized (socketProtocol) {
+
+			int maxConnections = socketProtocol.getMaxConnections();
+			int numConnections = socketProtocol.getNumConnections();
+
+			if (numConnections >= maxConnections) {
+				// Tell the client to leave, as far as the socket will take it
+				// without waiting.
+				client.write(ByteBuffer.wrap(exitLine));
+				client.close();
+				return false;
+			}
+
+			socketProtocol.addSender(client.socket(), connection);
+		}
+
+		loop.register(connection);
+
+		return true;
+	}
+
+	private static void closeQuietly(SocketChannel client) {
+
+		try {
+			client.close();
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+	}
+
+	/**
+	 * Stop accepting clients, and close every connection.
+	 */
+	public synchronized void shutdown() {
+
+		try {
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+
+		if (loops != null) {
+			for (NioEventLoop loop : loops) {
+				loop.shutdown();
+			}
+		}
+	}
+}
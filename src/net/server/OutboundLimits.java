@@ -0,0 +1,139 @@
+package net.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Bounds the messages waiting to be written to each client of a server, and
+ * counts how deep the queues get.
+ *
+ * Messages to a client are queued, and written by another task, so nothing
+ * which sends them ever waits on the network. A client which doesn't keep up
+ * (a slow or stalled connection) would have its queue grow without limit, so
+ * once it holds maxQueued batches (see ClientWriter) the client is either
+ * disconnected, or has further messages dropped until it catches up. Dropping
+ * leaves the client out of step with the game, so it only suits clients which
+ * can live with that, eg. spectators; disconnecting is the default.
+ *
+ * The system properties carcassonne.net.maxQueued and carcassonne.net.overflow
+ * ("disconnect" or "drop") set up the limits of the servers.
+ */
+public class OutboundLimits {
+
+	public static final String maxQueuedProperty = "carcassonne.net.maxQueued";
+	public static final String overflowProperty = "carcassonne.net.overflow";
+
+	public static final int defaultMaxQueued = 1024;
+
+	public enum Overflow {
+		DISCONNECT, DROP
+	}
+
+	private final int maxQueued;
+	private final Overflow overflow;
+
+	// The batches queued across every client, the deepest any one client's
+	// queue has been, and what has been done about full queues.
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong disconnected = new AtomicLong();
+
+	/**
+	 * Constructor, with the limits set by the system properties.
+	 */
+	public OutboundLimits() {
+		this(Integer.getInteger(maxQueuedProperty, defaultMaxQueued), Overflow
+				.valueOf(System.getProperty(overflowProperty, "disconnect")
+						.toUpperCase()));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxQueued
+	 *            The most batches of messages to queue for a client.
+	 * @param overflow
+	 *            What to do when a client's queue is full.
+	 */
+	public OutboundLimits(int maxQueued, Overflow overflow) {
+
+		if (maxQueued < 1) {
+			throw new IllegalArgumentException("At least one batch must fit.");
+		}
+
+		this.maxQueued = maxQueued;
+		this.overflow = overflow;
+	}
+
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	public Overflow getOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * Get the number of batches queued for all of the clients, which haven't
+	 * been written yet.
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * Get the most batches which have been queued for a single client at
+	 * once.
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * Get the number of batches dropped, as their client's queue was full.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get the number of clients disconnected, as their queue was full.
+	 */
+	public long getDisconnected() {
+		return disconnected.get();
+	}
+
+	/**
+	 * Record a batch being queued for a client.
+	 *
+	 * @param depth
+	 *            The number of batches in the client's queue, including it.
+	 */
+	void onQueued(int depth) {
+
+		queued.incrementAndGet();
+
+		int max = maxQueueDepth.get();
+
+		while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+			max = maxQueueDepth.get();
+		}
+	}
+
+	/**
+	 * Record batches leaving a client's queue; written, or thrown away as the
+	 * client disconnected.
+	 */
+	void onDequeued(int count) {
+		queued.addAndGet(-count);
+	}
+
+	void onDropped() {
+		dropped.incrementAndGet();
+	}
+
+	void onDisconnected() {
+		disconnected.incrementAndGet();
+	}
+}
@@ -0,0 +1,252 @@
+package net.server;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import net.client.MessageWriter;
+
+/*
+ * Sends messages to a client connected by a blocking socket, without waiting
+ * on the socket.
+ *
+ * Messages are queued, up to the server's OutboundLimits, and written in order
+ * by a task run on the server's executor; a task is started when messages are
+ * queued and none is running, and ends once the queue is empty. The messages
+ * of a batch must not be changed once sent.
+ *
+ * The replies to the client's own messages are not held to the limits, as the
+ * client can be slowed down instead (see reply); nor are those sent after the
+ * fact (see printReplies), as they're few.
+ */
+public class QueuedClientWriter implements ClientWriter, Runnable {
+
+	private final MessageWriter writer;
+	private final Executor executor;
+	private final OutboundLimits limits;
+
+	// Closes the socket, once there is nothing left to write.
+	private final Runnable onClose;
+
+	// Guarded by this.
+	private final ArrayDeque<List<String>> queue = new ArrayDeque<List<String>>();
+	private boolean writing = false;
+	private boolean closing = false;
+	private boolean closed = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param writer
+	 *            The writer of the client's socket.
+	 * @param executor
+	 *            The executor to run the writing task on.
+	 * @param limits
+	 *            The limits of the queue.
+	 * @param onClose
+	 *            Closes the client's socket.
+	 */
+	public QueuedClientWriter(MessageWriter writer, Executor executor,
+			OutboundLimits limits, Runnable onClose) {
+		this.writer = writer;
+		this.executor = executor;
+		this.limits = limits;
+		this.onClose = onClose;
+	}
+
+	@Override
+	public void println(String message) {
+		println(Collections.singletonList(message));
+	}
+
+	@Override
+	public void println(List<String> messages) {
+		queue(messages, false);
+	}
+
+	@Override
+	public void printReplies(List<String> messages) {
+		queue(messages, true);
+	}
+
+	// Queue messages to be written by a task. Replies to the client's own
+	// messages are always queued.
+	private void queue(List<String> messages, boolean reply) {
+
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		boolean overflowed = false;
+
+		synchronized (this) {
+
+			if (closing) {
+				return;
+			}
+
+			// The client isn't keeping up.
+			if (!reply && queue.size() >= limits.getMaxQueued()) {
+
+				if (limits.getOverflow() == OutboundLimits.Overflow.DROP) {
+					limits.onDropped();
+					return;
+				}
+
+				limits.onDisconnected();
+				limits.onDequeued(queue.size());
+				queue.clear();
+				closing = true;
+				overflowed = true;
+				notifyAll();
+
+			} else {
+
+				queue.add(messages);
+				limits.onQueued(queue.size());
+
+				if (writing) {
+					return;
+				}
+
+				writing = true;
+			}
+		}
+
+		// A running task may be blocked on the socket; closing it lets the
+		// task finish.
+		if (overflowed) {
+			closeNow();
+			return;
+		}
+
+		executor.execute(this);
+	}
+
+	/**
+	 * Send the replies to a message from the client, on the thread reading
+	 * from the client. If nothing else is writing, the replies are written on
+	 * this thread; otherwise this thread waits for room in the queue. Either
+	 * way a client which sends faster than it reads is slowed down, rather
+	 * than disconnected.
+	 * 
+	 * @param messages
+	 *            The replies.
+	 */
+	void reply(List<String> messages) {
+
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		synchronized (this) {
+
+			while (writing && !closing && queue.size() >= limits.getMaxQueued()) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			if (closing) {
+				return;
+			}
+
+			queue.add(messages);
+			limits.onQueued(queue.size());
+
+			if (writing) {
+				return;
+			}
+
+			writing = true;
+		}
+
+		run();
+	}
+
+	@Override
+	public void close() {
+
+		boolean idle;
+
+		synchronized (this) {
+			closing = true;
+			idle = !writing;
+			notifyAll();
+		}
+
+		// Otherwise the running task closes once the queue is empty.
+		if (idle) {
+			closeNow();
+		}
+	}
+
+	@Override
+	public void run() {
+
+		while (true) {
+
+			List<String> messages;
+			boolean done;
+
+			synchronized (this) {
+
+				messages = queue.poll();
+				done = (messages == null);
+
+				if (done) {
+					writing = false;
+				} else {
+					limits.onDequeued(1);
+				}
+
+				// A reply may be waiting for room.
+				notifyAll();
+			}
+
+			if (done) {
+
+				if (isClosing()) {
+					closeNow();
+				}
+
+				return;
+			}
+
+			writer.println(messages);
+
+			if (writer.checkError()) {
+
+				// The socket is gone; the reading thread removes the client.
+				synchronized (this) {
+					limits.onDequeued(queue.size());
+					queue.clear();
+					closing = true;
+				}
+			}
+		}
+	}
+
+	private synchronized boolean isClosing() {
+		return closing;
+	}
+
+	// Close the socket, once.
+	private void closeNow() {
+
+		synchronized (this) {
+
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+		}
+
+		onClose.run();
+	}
+}
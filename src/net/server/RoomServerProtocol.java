@@ -0,0 +1,312 @@
+package net.server;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.Game;
+
+/*
+ * Hosts many games at once, each in its own room; a ServerProtocol with its own
+ * game, lobby and set of clients to broadcast to.
+ *
+ * Usage: RoomServerProtocol [port] [event loops]
+ *
+ * A client isn't in a room until it joins a lobby. JOINLOBBY puts the client in
+ * the first room which hasn't started its game and has a free seat, or a new
+ * room if there is none; JOINLOBBY;room;<string> instead joins (or creates) the
+ * room of that name, so friends can play together. From then on every message
+ * from the client is handled by its room. A room is reclaimed once the last of
+ * its clients has disconnected.
+ *
+ * Rooms do their own locking, so games in different rooms are played at the
+ * same time. This protocol's lock is only held while clients join & leave
+ * rooms; the room of a client which has joined one is found without it.
+ *
+ * With a GameLog (see GameLog.fileProperty) the moves of every game are
+ * logged, and the games which hadn't ended when the server stopped are
+ * rebuilt when it starts, each in a room of the same name; the clients which
+ * then join the room take the seats of the game. A recovered game is only
+ * joined by name, so a client looking for any game isn't seated in someone
+ * else's; a game which had no room name is given one from its id in the log
+ * (game-<id>), and the server prints it as the game is recovered.
+ */
+public class RoomServerProtocol extends SocketServerProtocol {
+
+	// JOINLOBBY;room;<string>
+	private static final int roomNameIndex = 2;
+
+	private final int maxRooms;
+
+	// Clients which have not joined a room yet.
+	private ConcurrentHashMap<Socket, ClientWriter> lobbyless = new ConcurrentHashMap<Socket, ClientWriter>();
+
+	// The room of each client which has joined one.
+	private ConcurrentHashMap<Socket, ServerProtocol> clientRooms = new ConcurrentHashMap<Socket, ServerProtocol>();
+
+	// Rooms which may have free seats, and the rooms which have names.
+	private ArrayList<ServerProtocol> openRooms = new ArrayList<ServerProtocol>();
+	private HashMap<String, ServerProtocol> namedRooms = new HashMap<String, ServerProtocol>();
+
+	private volatile int numRooms = 0;
+
+	private final GameLog gameLog;
+
+	public RoomServerProtocol() {
+		this(1000);
+	}
+
+	/**
+	 * Constructor, logging the games to the log named by the system property,
+	 * if any.
+	 * 
+	 * @param maxRooms
+	 *            The maximum number of rooms to be open at once.
+	 */
+	public RoomServerProtocol(int maxRooms) {
+		this(maxRooms, GameLog.getDefault());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxRooms
+	 *            The maximum number of rooms to be open at once.
+	 * @param gameLog
+	 *            The log to keep the games in, or null; the games it has which
+	 *            hadn't ended are recovered.
+	 */
+	public RoomServerProtocol(int maxRooms, GameLog gameLog) {
+
+		this.maxRooms = maxRooms;
+		this.gameLog = gameLog;
+
+		if (gameLog != null) {
+			recoverGames();
+		}
+
+		ServerMetrics.getDefault().setGauge("rooms",
+				new ServerMetrics.Gauge() {
+
+					@Override
+					public long getValue() {
+						return getNumRooms();
+					}
+				});
+	}
+
+	@Override
+	public synchronized void addSender(Socket sender, ClientWriter writer) {
+		lobbyless.put(sender, writer);
+	}
+
+	@Override
+	public synchronized void removeSender(Socket sender) {
+
+		ClientWriter writer = lobbyless.remove(sender);
+
+		if (writer != null) {
+			writer.close();
+			return;
+		}
+
+		ServerProtocol room = clientRooms.remove(sender);
+
+		if (room != null) {
+
+			room.removeSender(sender);
+
+			if (room.getNumConnections() == 0) {
+				closeRoom(room);
+			}
+		}
+	}
+
+	@Override
+	public int getMaxConnections() {
+		return maxRooms * Game.getMaxPlayers();
+	}
+
+	@Override
+	public int getNumConnections() {
+		return lobbyless.size() + clientRooms.size();
+	}
+
+	/**
+	 * Get the number of rooms which are open.
+	 * 
+	 * @return The number of rooms with at least one client.
+	 */
+	public int getNumRooms() {
+		return numRooms;
+	}
+
+	@Override
+	public ArrayList<String> processInput(Socket sender, String input) {
+
+		ServerProtocol room = clientRooms.get(sender);
+
+		if (room == null) {
+			room = getRoom(sender, input);
+		}
+
+		if (room == null) {
+
+			ArrayList<String> messages = new ArrayList<String>();
+
+			// Allow the client to exit without having joined a room.
+			if (input.equals(SocketServerProtocol.EXIT)) {
+				messages.add(SocketServerProtocol.EXIT);
+			} else {
+				messages.add(SocketServerProtocol.NAK);
+			}
+
+			return messages;
+		}
+
+		// The room's own lock is held while the message is processed.
+		return room.processInput(sender, input);
+	}
+
+	/**
+	 * Find the room of a client, or the room it is to join.
+	 * 
+	 * @return The room, or null if the client is not in a room and the message
+	 *         doesn't join one (or there are no rooms to be had).
+	 */
+	private synchronized ServerProtocol getRoom(Socket sender, String input) {
+
+		ServerProtocol room = clientRooms.get(sender);
+
+		if (room != null || !input.startsWith("JOINLOBBY")) {
+			return room;
+		}
+
+		ClientWriter writer = lobbyless.get(sender);
+
+		if (writer == null) {
+			return null;
+		}
+
+		String[] parsedMessage = input.split(";");
+		String name = (parsedMessage.length > roomNameIndex) ? parsedMessage[roomNameIndex]
+				: null;
+
+		if (name != null) {
+
+			room = namedRooms.get(name);
+
+			// A named room which is full or playing; the client stays out of
+			// any room.
+			if (room != null && !room.joinRoom(sender, writer)) {
+				return null;
+			}
+
+		} else {
+			room = joinOpenRoom(sender, writer);
+		}
+
+		if (room == null) {
+
+			if (numRooms == maxRooms) {
+				return null;
+			}
+
+			room = new ServerProtocol(gameLog, name);
+			numRooms++;
+
+			// Named rooms are only joined by name.
+			if (name != null) {
+				namedRooms.put(name, room);
+			} else {
+				openRooms.add(room);
+			}
+
+			room.joinRoom(sender, writer);
+		}
+
+		lobbyless.remove(sender);
+		clientRooms.put(sender, room);
+
+		return room;
+	}
+
+	/**
+	 * Add a client to the oldest unnamed room which has a free seat.
+	 * 
+	 * @return The room, or null if none has.
+	 */
+	private ServerProtocol joinOpenRoom(Socket sender, ClientWriter writer) {
+
+		for (ServerProtocol room : openRooms) {
+			if (room.isAcceptingPlayers() && room.joinRoom(sender, writer)) {
+				return room;
+			}
+		}
+
+		return null;
+	}
+
+	private void closeRoom(ServerProtocol room) {
+
+		// A room may be left empty more than once, if its clients left the
+		// lobby before disconnecting.
+		if (openRooms.remove(room) || namedRooms.values().remove(room)) {
+			numRooms--;
+			room.close();
+		}
+	}
+
+	/**
+	 * Rebuild the games in the log which hadn't ended, each in its own room.
+	 */
+	private synchronized void recoverGames() {
+
+		for (Map.Entry<Integer, List<GameLog.Record>> game : gameLog
+				.takeUnfinishedGames().entrySet()) {
+
+			ServerProtocol room = new ServerProtocol(gameLog, null);
+
+			if (!room.recover(game.getKey(), game.getValue())) {
+				continue;
+			}
+
+			String name = room.getRoomName();
+
+			if (name == null || namedRooms.containsKey(name)) {
+				name = "game-" + game.getKey();
+			}
+
+			if (namedRooms.containsKey(name)) {
+				System.err.println("Game " + game.getKey()
+						+ " isn't recovered; room " + name + " is taken.");
+				room.close();
+				continue;
+			}
+
+			namedRooms.put(name, room);
+			numRooms++;
+
+			System.err.println("Recovered game " + game.getKey()
+					+ " in room " + name + ".");
+		}
+	}
+
+	/**
+	 * Run a dedicated server, hosting games in rooms.
+	 */
+	public static void main(String[] args) {
+
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 4444;
+
+		if (args.length > 1) {
+			new NioSocketServer(port, RoomServerProtocol.class,
+					Integer.parseInt(args[1])).start();
+		} else {
+			new NioSocketServer(port, RoomServerProtocol.class).start();
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package net.server;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/*
+ * Counters, latency histograms and gauges of a server, by name.
+ *
+ * Metrics are looked up (or created) by name once, and the returned counter or
+ * histogram kept; recording to them takes no locks. A gauge is read when the
+ * metrics are, from whatever it measures (eg. the number of connections).
+ *
+ * The default metrics, which the servers & protocols record to, are
+ * registered with JMX as carcassonne:type=ServerMetrics; every metric is an
+ * attribute, a histogram being split into its count, mean, percentiles & max
+ * (in microseconds). They can also be printed as text; every N seconds, to
+ * standard out, if the system property carcassonne.metrics.period is set to N.
+ */
+public class ServerMetrics implements DynamicMBean {
+
+	public static final String periodProperty = "carcassonne.metrics.period";
+	public static final String objectName = "carcassonne:type=ServerMetrics";
+
+	/**
+	 * A value which is read when the metrics are, rather than recorded.
+	 */
+	public interface Gauge {
+		public long getValue();
+	}
+
+	private static ServerMetrics defaultMetrics = null;
+
+	// The percentiles of each histogram which are reported.
+	private static final double[] percentiles = { 50, 90, 99, 99.9 };
+	private static final String[] percentileNames = { "p50", "p90", "p99",
+			"p999" };
+
+	private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+	private ScheduledExecutorService reporter = null;
+
+	/**
+	 * Get the metrics the servers & protocols record to. They're registered
+	 * with JMX, and reported periodically if set up to be, when first got.
+	 */
+	public static synchronized ServerMetrics getDefault() {
+
+		if (defaultMetrics == null) {
+
+			defaultMetrics = new ServerMetrics();
+			defaultMetrics.registerMBean(objectName);
+
+			Integer period = Integer.getInteger(periodProperty);
+
+			if (period != null && period > 0) {
+				defaultMetrics.startReporting(period, System.out);
+			}
+		}
+
+		return defaultMetrics;
+	}
+
+	/**
+	 * Get a counter, creating it if needed.
+	 */
+	public AtomicLong getCounter(String name) {
+
+		AtomicLong counter = counters.get(name);
+
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong existing = counters.putIfAbsent(name, counter);
+			counter = (existing != null) ? existing : counter;
+		}
+
+		return counter;
+	}
+
+	/**
+	 * Get a histogram, creating it if needed.
+	 */
+	public LatencyHistogram getHistogram(String name) {
+
+		LatencyHistogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = histograms.putIfAbsent(name, histogram);
+			histogram = (existing != null) ? existing : histogram;
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Add a gauge, replacing any of the same name.
+	 */
+	public void setGauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	public void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * Add the gauges of a server; its connections, and its outbound queues.
+	 */
+	void setServerGauges(final SocketServerProtocol protocol,
+			final OutboundLimits limits) {
+
+		setGauge("connections", new Gauge() {
+
+			@Override
+			public long getValue() {
+				return protocol.getNumConnections();
+			}
+		});
+
+		setGauge("outbound.queued", new Gauge() {
+
+			@Override
+			public long getValue() {
+				return limits.getQueued();
+			}
+		});
+
+		setGauge("outbound.maxQueueDepth", new Gauge() {
+
+			@Override
+			public long getValue() {
+				return limits.getMaxQueueDepth();
+			}
+		});
+
+		setGauge("outbound.dropped", new Gauge() {
+
+			@Override
+			public long getValue() {
+				return limits.getDropped();
+			}
+		});
+
+		setGauge("outbound.disconnected", new Gauge() {
+
+			@Override
+			public long getValue() {
+				return limits.getDisconnected();
+			}
+		});
+	}
+
+	/**
+	 * Clear the counters & histograms.
+	 */
+	public void reset() {
+
+		for (AtomicLong counter : counters.values()) {
+			counter.set(0);
+		}
+
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Get every metric, by name, in order; histograms split as for JMX.
+	 */
+	public TreeMap<String, Number> getValues() {
+
+		TreeMap<String, Number> values = new TreeMap<String, Number>();
+
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().get());
+		}
+
+		for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getValue());
+		}
+
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+
+			String name = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+
+			values.put(name + ".count", histogram.getCount());
+			values.put(name + ".meanMicros", histogram.getMean() / 1000);
+
+			for (int i = 0; i < percentiles.length; i++) {
+				values.put(name + "." + percentileNames[i] + "Micros",
+						histogram.getPercentile(percentiles[i]) / 1000.0);
+			}
+
+			values.put(name + ".maxMicros", histogram.getMax() / 1000.0);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Get the metrics as text; a line for each counter & gauge, and for each
+	 * histogram which has been recorded to.
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+
+		TreeMap<String, Long> scalars = new TreeMap<String, Long>();
+
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			scalars.put(counter.getKey(), counter.getValue().get());
+		}
+
+		for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+			scalars.put(gauge.getKey(), gauge.getValue().getValue());
+		}
+
+		for (Map.Entry<String, Long> scalar : scalars.entrySet()) {
+			report.append(scalar.getKey()).append(' ')
+					.append(scalar.getValue()).append('\n');
+		}
+
+		TreeMap<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(
+				histograms);
+
+		for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+
+			LatencyHistogram histogram = entry.getValue();
+
+			if (histogram.getCount() == 0) {
+				continue;
+			}
+
+			report.append(entry.getKey()).append(" count=")
+					.append(histogram.getCount());
+			report.append(String.format(" mean=%.1fus", histogram.getMean() / 1000));
+
+			for (int i = 0; i < percentiles.length; i++) {
+				report.append(String.format(" %s=%.1fus", percentileNames[i],
+						histogram.getPercentile(percentiles[i]) / 1000.0));
+			}
+
+			report.append(String.format(" max=%.1fus\n",
+					histogram.getMax() / 1000.0));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Print the report periodically, on a daemon thread.
+	 *
+	 * @param periodSeconds
+	 *            The time between reports.
+	 * @param out
+	 *            Where to print them.
+	 */
+	public synchronized void startReporting(long periodSeconds,
+			final PrintStream out) {
+
+		stopReporting();
+
+		reporter = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "ServerMetrics");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		reporter.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				out.print(getReport());
+				out.flush();
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stopReporting() {
+
+		if (reporter != null) {
+			reporter.shutdown();
+			reporter = null;
+		}
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server. Failing to (eg. if
+	 * the name is taken) is not an error; the metrics are still recorded.
+	 *
+	 * @return True if registered.
+	 */
+	public boolean registerMBean(String name) {
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(name));
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	// JMX; the attributes are whatever metrics there are when asked.
+
+	@Override
+	public Object getAttribute(String attribute)
+			throws AttributeNotFoundException {
+
+		Number value = getValues().get(attribute);
+
+		if (value == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+
+		TreeMap<String, Number> values = getValues();
+		AttributeList list = new AttributeList();
+
+		for (String attribute : attributes) {
+			if (values.containsKey(attribute)) {
+				list.add(new Attribute(attribute, values.get(attribute)));
+			}
+		}
+
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute)
+			throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read only.");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+			throws ReflectionException {
+
+		if (actionName.equals("getReport")) {
+			return getReport();
+		}
+
+		if (actionName.equals("reset")) {
+			reset();
+			return null;
+		}
+
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+
+		ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+
+		for (Map.Entry<String, Number> value : getValues().entrySet()) {
+			attributes.add(new MBeanAttributeInfo(value.getKey(), value
+					.getValue().getClass().getName(), value.getKey(), true,
+					false, false));
+		}
+
+		MBeanOperationInfo[] operations = {
+				new MBeanOperationInfo("getReport", "The metrics as text",
+						null, String.class.getName(),
+						MBeanOperationInfo.INFO),
+				new MBeanOperationInfo("reset",
+						"Clear the counters & histograms", null, "void",
+						MBeanOperationInfo.ACTION) };
+
+		return new MBeanInfo(getClass().getName(),
+				"Message handling & game metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+				null, operations, null);
+	}
+}
@@ -2,21 +2,50 @@ package net.server;
 
 import java.awt.Color;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Board;
 import model.BoardPosition;
 import model.Game;
 import model.GameState;
+import model.Meeple;
 import model.Player;
 import model.PlayerStruct;
 import model.Tile;
-
+import model.TilePlacement;
+
+/*
+ * A single game; its lobby, its players and the clients to broadcast to.
+ *
+ * Messages are processed one at a time, holding the protocol's lock, so the
+ * game is only ever changed by one thread. Broadcasts, and the replies to
+ * each client, are queued in the order the messages were processed, and
+ * written once the lock is released (see
+ * flushBroadcasts), so a slow client never holds up the game. The clients,
+ * and whether the game is accepting players, can be looked up without the
+ * lock.
+ *
+ * If the room is given a GameLog, each move the game accepts is appended to
+ * it, and no message about the move is sent until it is committed. The log
+ * commits on its own thread, so the thread processing the message (as the
+ * server's event loop) doesn't wait for the disk; the replies are queued with
+ * the broadcasts instead, and written by the log's thread once the move is on
+ * disk (see processInput). Every few
+ * turns a snapshot of the game is appended too, so a room can rebuild a game
+ * which hadn't ended from its latest snapshot and the moves since (see
+ * recover).
+ */
 public class ServerProtocol extends SocketServerProtocol {
 
 	// Message format is as follows (client sends followed by server replies):
@@ -45,6 +74,10 @@ public class ServerProtocol extends SocketServerProtocol {
 	// DRAWTILE;currentPlayer;<int>
 	// DRAWTILE;currentPlayer;<int>;identifier;<string>;orientation;<int:[0-3]>
 	//
+	// Note: if none of the tiles left can be placed, they are all set aside
+	// and the game ends; the reply is then SCORE and the INFO messages, with
+	// drawPileEmpty set, instead of DRAWTILE.
+	//
 	// ROTATETILE;currentPlayer;<int>;direction;<string:(clockwise|counterClockwise)>
 	// ROTATETILE;currentPlayer;<int>;direction;<string:(clockwise|counterClockwise)>
 	//
@@ -61,38 +94,128 @@ public class ServerProtocol extends SocketServerProtocol {
 	// ENDTURN;currentPlayer;<int>
 	//
 	// INFO;player;<int>;
-	// INFO;player;<int>;currentPlayer;<int:(0|1)>;score;<int>;meeplesPlaced;<int>
+	// INFO;player;<int>;version;<int>[;currentPlayer;<int:(0|1)>][;score;<int>][;meeplesPlaced;<int>]
 	//
 	// INFO;game;
-	// INFO;game;currentPlayer;<int>;drawPileEmpty;<int:(0|1)>
+	// INFO;game;version;<int>[;currentPlayer;<int>][;drawPileEmpty;<int:(0|1)>][;unplaceableTiles;<int>]
+	//
+	// Note: INFO messages only carry the fields which have changed since the
+	// last INFO message for the same player (or the game); all of them the
+	// first time. The version counts the INFO messages sent for it, from 1;
+	// the players' count from 1 again after LEAVEGAME, as they're renumbered.
 	//
 
-	private HashMap<Socket, PrintWriter> writers = new HashMap<Socket, PrintWriter>();
-	private ArrayList<String> parsedMessage = new ArrayList<String>();
+	private ConcurrentHashMap<Socket, ClientWriter> writers = new ConcurrentHashMap<Socket, ClientWriter>();
 
-	@Override
-	public void addSender(Socket socket) {
-		try {
-			OutputStream outStream = socket.getOutputStream();
-			PrintWriter writer = new PrintWriter(outStream, true);
+	// Broadcasts which have not been written yet, oldest first, and whether a
+	// thread is writing them. Those about a move wait for it to be committed
+	// to the game log; how many are held back so, with the replies held back
+	// alongside them, is counted. The broadcasts of the message being
+	// processed are kept aside until it has been.
+	private final ConcurrentLinkedQueue<Broadcast> broadcasts = new ConcurrentLinkedQueue<Broadcast>();
+	private final AtomicBoolean flushing = new AtomicBoolean(false);
+	private final AtomicInteger heldBack = new AtomicInteger(0);
+	private final ArrayList<Broadcast> pending = new ArrayList<Broadcast>();
 
-			writers.put(socket, writer);
+	// Writes the broadcasts a commit of the game log has let through.
+	private final Runnable flushTask = new Runnable() {
 
-		} catch (IOException e) {
-			// Getting the output stream has
-			// failed.
-			// TODO
+		@Override
+		public void run() {
+			flushBroadcasts();
+		}
+	};
+
+	// The messages received, by opcode (see MessageTokenizer).
+	private static final String[] messageNames = { SocketServerProtocol.EXIT,
+			"JOINLOBBY", "UPDATEPLAYER", "LEAVELOBBY", "LEAVEGAME", "INIT",
+			"DRAWTILE", "ROTATETILE", "PLACETILE", "PLACEMEEPLE", "ENDTURN" };
+
+	private static final int opExit = 0;
+	private static final int opJoinLobby = 1;
+	private static final int opUpdatePlayer = 2;
+	private static final int opLeaveLobby = 3;
+	private static final int opLeaveGame = 4;
+	private static final int opInit = 5;
+	private static final int opDrawTile = 6;
+	private static final int opRotateTile = 7;
+	private static final int opPlaceTile = 8;
+	private static final int opPlaceMeeple = 9;
+	private static final int opEndTurn = 10;
+
+	// The message being processed; it is split in place, and reused for every
+	// message.
+	private MessageTokenizer message = new MessageTokenizer(messageNames);
+
+	// How long messages take to process, by opcode, with unknown messages
+	// last; how long they wait for the lock; how long the game takes; and how
+	// many games in the log couldn't be recovered.
+	private static final ServerMetrics metrics = ServerMetrics.getDefault();
+	private static final LatencyHistogram[] messageTimes = new LatencyHistogram[messageNames.length + 1];
+	private static final LatencyHistogram lockWaitTime = metrics
+			.getHistogram("message.lockWait");
+	private static final LatencyHistogram drawTileTime = metrics
+			.getHistogram("game.drawTile");
+	private static final LatencyHistogram placeTileTime = metrics
+			.getHistogram("game.placeTile");
+	private static final LatencyHistogram placeMeepleTime = metrics
+			.getHistogram("game.placeMeeple");
+	private static final LatencyHistogram scoreTime = metrics
+			.getHistogram("game.score");
+	private static final LatencyHistogram snapshotTime = metrics
+			.getHistogram("game.snapshot");
+	private static final AtomicLong recoverFailures = metrics
+			.getCounter("log.recoverFailures");
+
+	// The types of the records of the game log. The values of each are the
+	// current player, followed by those of its message; a draw also has the
+	// identifiers of the tiles drawn, the tile kept last, and a new game has
+	// the room's name and its lobby.
+	// INIT: numPlayers, currentPlayer[, player]*; name[, name, color]*
+	// DRAWTILE: currentPlayer, orientation; [identifier]+
+	// ROTATETILE: currentPlayer, clockwise <int:(0|1)>
+	// The values of a snapshot are the game state, the current player, the
+	// game's INFO version & fields, each player's, the player who placed each
+	// tile on the board, and the lobby; its strings are as for INIT, and its
+	// data is the Game's snapshot.
+	// snapshot: state, currentPlayer, version, sent <int:(0|1)>, field*3,
+	//     [version, sent, field*3]*[, placedBy]*[, player]*;
+	//     name[, name, color]*
+	private static final int logInit = 2;
+	private static final int logDrawTile = 3;
+	private static final int logRotateTile = 4;
+	private static final int logPlaceTile = 5;
+	private static final int logPlaceMeeple = 6;
+	private static final int logEndTurn = 7;
+	private static final int logLeaveGame = 8;
+
+	private static final int snapshotTurns = Integer.getInteger(
+			GameLog.snapshotTurnsProperty, GameLog.defaultSnapshotTurns);
+
+	static {
+		for (int i = 0; i < messageNames.length; i++) {
+			messageTimes[i] = metrics.getHistogram("message." + messageNames[i]);
 		}
+
+		messageTimes[messageNames.length] = metrics
+				.getHistogram("message.unknown");
+	}
+
+	@Override
+	public void addSender(Socket socket, ClientWriter writer) {
+		writers.put(socket, writer);
 	}
 
 	@Override
 	public void removeSender(Socket socket) {
-        // First retrieve the writer so that we can close it.
-        // TODO this may already be done? I don't think so. Check during testing.
-        writers.get(socket).close();
+        // Remove the socket from our list, and close its writer. The socket
+        // may already have been removed, eg. if the client disconnected after
+        // leaving the lobby.
+		ClientWriter writer = writers.remove(socket);
 
-        // Remove the socket from our list.
-		writers.remove(socket);
+		if (writer != null) {
+			writer.close();
+		}
 	}
 
 	@Override
@@ -105,8 +228,55 @@ public class ServerProtocol extends SocketServerProtocol {
 		return writers.size();
 	}
 
-	// Pre-game variables (lobby).
+	/**
+	 * Get whether another player can join the game; the game has not started,
+	 * and there is a free seat in the lobby.
+	 * 
+	 * @return True if a player can join, false otherwise.
+	 */
+	public boolean isAcceptingPlayers() {
+
+		if (freeSeats > 0) {
+			return true;
+		}
+
+		return gameState == null && writers.size() < Game.getMaxPlayers()
+				&& numLobbyPlayers < Game.getMaxPlayers();
+	}
+
+	/**
+	 * Add a client which is joining the room, if another player can join it
+	 * (see isAcceptingPlayers). The check and the client's place are made
+	 * under the room's lock, so clients joining at once can't overfill the
+	 * room. A client joining a recovered game is given its seat here, and
+	 * takes it with its JOINLOBBY.
+	 * 
+	 * @param sender
+	 *            The client's socket.
+	 * @param writer
+	 *            The client's writer.
+	 * 
+	 * @return True if the client was added, false if the room is full or
+	 *         its game has started.
+	 */
+	public synchronized boolean joinRoom(Socket sender, ClientWriter writer) {
+
+		if (freeSeats > 0) {
+			joiningSeats.put(sender, game.getNumPlayers() - freeSeats);
+			freeSeats--;
+		} else if (!isAcceptingPlayers()) {
+			return false;
+		}
+
+		addSender(sender, writer);
+
+		return true;
+	}
+
+	// Pre-game variables (lobby). The number of players is kept apart from
+	// the map, so it can be read without the lock.
 	private HashMap<Integer, PlayerStruct> lobbyPlayers = new HashMap<Integer, PlayerStruct>();
+	private volatile int numLobbyPlayers = 0;
 
 	private final Color[] colors = { Color.black, Color.blue, Color.green,
 			Color.red, Color.yellow };
@@ -115,9 +285,75 @@ public class ServerProtocol extends SocketServerProtocol {
 
 	// In-game variables.
 	private Game game;
-	private GameState gameState = null;
+	private volatile GameState gameState = null;
 	private int currentPlayer;
 
+	// The player who placed each tile on the board, in the order they were
+	// placed (see Board.getPlacedTiles); -1 for a player who has left.
+	private ArrayList<Integer> tilePlacers = new ArrayList<Integer>();
+
+	// The INFO fields last sent to the clients, so that only changes are
+	// sent; null until sent once. Reset with each new game.
+	private static final String[] playerInfoFields = { "currentPlayer",
+			"score", "meeplesPlaced" };
+	private static final String[] gameInfoFields = { "currentPlayer",
+			"drawPileEmpty", "unplaceableTiles" };
+
+	private int[][] sentPlayerInfo;
+	private int[] playerInfoVersions;
+	private int[] sentGameInfo;
+	private int gameInfoVersion;
+
+	// The log the game's moves are appended to (or null), the game's id in
+	// it, the room's name (or null), and the end of the last record appended
+	// while processing a message, to be committed. The sequence is that of
+	// the game's next record, and the turns are those since its last
+	// snapshot.
+	private final GameLog gameLog;
+	private String roomName;
+	private int gameId = -1;
+	private long logPosition = 0;
+	private int logSequence = 0;
+	private int turnsSinceSnapshot = 0;
+
+	// While the game is replayed from the log its moves aren't logged again,
+	// and the tiles drawn are those which were drawn before.
+	private boolean replaying = false;
+	private List<String> replayedDraw;
+	private int replayedOrientation;
+
+	// The seats of a recovered game which no client has been given yet, the
+	// seats given to the clients joining it, and the messages sent about the
+	// game so far, for the clients which take them.
+	private volatile int freeSeats = 0;
+	private HashMap<Socket, Integer> joiningSeats = new HashMap<Socket, Integer>();
+	private ArrayList<String> history = null;
+
+	public ServerProtocol() {
+		this(null, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param gameLog
+	 *            The log to append the game's moves to, or null.
+	 * @param roomName
+	 *            The name of the room, or null; kept in the log, with the
+	 *            game.
+	 */
+	ServerProtocol(GameLog gameLog, String roomName) {
+		this.gameLog = gameLog;
+		this.roomName = roomName;
+	}
+
+	/**
+	 * Get the name of the room; or null if it has none.
+	 */
+	synchronized String getRoomName() {
+		return roomName;
+	}
+
 	// Pre-game messages.
 	private String[] makeAssignPlayerMsg(int numberRep) {
 
@@ -162,16 +398,29 @@ public class ServerProtocol extends SocketServerProtocol {
         return new String[] {SocketServerProtocol.replyAll, message};
 	}
 
+	// Returns null if nothing has changed since the last game info message.
 	private String[] makeGameInfoMsg() {
 
 		int isDrawPileEmpty = game.isDrawPileEmpty() ? 1 : 0;
+		int numUnplaceable = game.getNumUnplaceableTiles();
+		int[] info = { currentPlayer, isDrawPileEmpty, numUnplaceable };
+
+		String delta = makeInfoDelta(gameInfoFields, sentGameInfo, info);
+
+		if (delta == null) {
+			return null;
+		}
+
+		sentGameInfo = info;
+		gameInfoVersion++;
 
-		String message = "INFO;game;currentPlayer;" + currentPlayer
-				+ ";drawPileEmpty;" + isDrawPileEmpty;
+		String message = "INFO;game;version;" + gameInfoVersion + delta;
 
         return new String[] {SocketServerProtocol.replyAll, message};
 	}
 
+	// Returns null if nothing has changed since the last info message for the
+	// player.
 	private String[] makePlayerInfoMsg(int player) {
 
 		Player playerModel = game.getPlayers().get(player);
@@ -179,14 +428,39 @@ public class ServerProtocol extends SocketServerProtocol {
 		int isCurrentPlayer = (player == currentPlayer) ? 1 : 0;
 		int playerScore = playerModel.getScore();
 		int numMeeplesPlaced = game.getNumMeeplesPlaced(playerModel);
+		int[] info = { isCurrentPlayer, playerScore, numMeeplesPlaced };
 
-		String message = "INFO;player;" + player + ";currentPlayer;"
-				+ isCurrentPlayer + ";score;" + playerScore + ";meeplesPlaced;"
-				+ numMeeplesPlaced;
+		String delta = makeInfoDelta(playerInfoFields, sentPlayerInfo[player],
+				info);
+
+		if (delta == null) {
+			return null;
+		}
+
+		sentPlayerInfo[player] = info;
+		playerInfoVersions[player]++;
+
+		String message = "INFO;player;" + player + ";version;"
+				+ playerInfoVersions[player] + delta;
 
         return new String[] {SocketServerProtocol.replyAll, message};
 	}
 
+	// Make the ";<field>;<value>" pairs of the fields which differ from those
+	// last sent (all of them if none were), or null if none do.
+	private String makeInfoDelta(String[] fields, int[] sent, int[] info) {
+
+		StringBuilder delta = new StringBuilder();
+
+		for (int i = 0; i < fields.length; i++) {
+			if (sent == null || sent[i] != info[i]) {
+				delta.append(';').append(fields[i]).append(';').append(info[i]);
+			}
+		}
+
+		return (delta.length() == 0) ? null : delta.toString();
+	}
+
 	private String[] makeInitMsg(int player) {
 
 		String message = "INIT;currentPlayer;" + player + ";gameBoardWidth;"
@@ -289,6 +563,7 @@ public class ServerProtocol extends SocketServerProtocol {
 		Color rgb = availablePlayerColors.remove(0);
 		String name = "Player " + numberRep;
 		lobbyPlayers.put(numberRep, new PlayerStruct(name, rgb));
+		numLobbyPlayers = lobbyPlayers.size();
 	}
 
 	/**
@@ -302,6 +577,7 @@ public class ServerProtocol extends SocketServerProtocol {
 		PlayerStruct player = lobbyPlayers.get(numberRep);
 		availablePlayerColors.add(0, player.getColor());
 		lobbyPlayers.remove(numberRep);
+		numLobbyPlayers = lobbyPlayers.size();
 	}
 
 	/**
@@ -332,10 +608,15 @@ public class ServerProtocol extends SocketServerProtocol {
 	// The String arrays contained in processedMessages are two elements each.
 	// The first element is the message recipient, and the second element is the
 	// message itself.
+	// The messages for the other clients are sent to each as one batch, so a
+	// turn's update is written once per client rather than once per message.
+	// They're kept aside, to be queued once the message has been processed
+	// (see processInput), and written once the lock is released.
 	private ArrayList<String> disseminateMessages(Socket sender,
 			String[]... processedMessages) {
 
 		ArrayList<String> messages = new ArrayList<String>();
+		ArrayList<String> broadcast = new ArrayList<String>();
 
         for (String[] processedMessage : processedMessages) {
 
@@ -344,19 +625,114 @@ public class ServerProtocol extends SocketServerProtocol {
             messages.add(currentMessage);
 
             if (recipient.equals(SocketServerProtocol.replyAll)) {
+                broadcast.add(currentMessage);
+            }
+        }
+
+        // Clients which take a seat of a recovered game later are sent the
+        // broadcasts too.
+        if (history != null) {
+            history.addAll(broadcast);
+        }
 
-                for (Socket receiver : writers.keySet()) {
+        if (!broadcast.isEmpty() && !replaying) {
 
-                    if (!receiver.equals(sender)) {
-                        writers.get(receiver).println(currentMessage);
-                    }
+            ArrayList<ClientWriter> receivers = new ArrayList<ClientWriter>();
+
+            for (Map.Entry<Socket, ClientWriter> receiver : writers.entrySet()) {
+
+                if (!receiver.getKey().equals(sender)) {
+                    receivers.add(receiver.getValue());
                 }
             }
+
+            pending.add(new Broadcast(receivers, broadcast, false));
         }
 
 		return messages;
 	}
 
+	/**
+	 * Write the queued broadcasts, in order, up to the first which is waiting
+	 * for the game log. Only one thread writes at a time; any other returns at
+	 * once, leaving what it queued to that thread.
+	 */
+	private void flushBroadcasts() {
+
+		// Check again once done, in case a broadcast was queued (or committed)
+		// just as the writing thread finished.
+		while (isReady(broadcasts.peek())
+				&& flushing.compareAndSet(false, true)) {
+
+			try {
+				Broadcast broadcast;
+
+				while (isReady(broadcast = broadcasts.peek())) {
+
+					broadcasts.poll();
+					broadcast.write();
+
+					if (broadcast.held) {
+						heldBack.decrementAndGet();
+					}
+				}
+
+			} finally {
+				flushing.set(false);
+			}
+		}
+	}
+
+	// Whether a broadcast can be written; its move, if any, is on disk.
+	private boolean isReady(Broadcast broadcast) {
+		return broadcast != null
+				&& (broadcast.position == 0 || gameLog
+						.isCommitted(broadcast.position));
+	}
+
+	// Messages for other clients, with the clients they were for when queued;
+	// or the replies to a client, held back. Once queued, the position in the
+	// game log it waits for (or zero), and whether it's counted as held back.
+	private static class Broadcast {
+
+		final List<ClientWriter> receivers;
+		final List<String> messages;
+		final boolean isReply;
+
+		long position = 0;
+		boolean held = false;
+
+		Broadcast(List<ClientWriter> receivers, List<String> messages,
+				boolean isReply) {
+			this.receivers = receivers;
+			this.messages = messages;
+			this.isReply = isReply;
+		}
+
+		void write() {
+
+			if (!isReply) {
+				for (ClientWriter receiver : receivers) {
+					receiver.println(messages);
+				}
+
+				return;
+			}
+
+			// As the caller would have; nothing after an exit, and the client
+			// is closed once it's been written.
+			ClientWriter sender = receivers.get(0);
+			int exit = messages.indexOf(SocketServerProtocol.EXIT);
+
+			if (exit < 0) {
+				sender.printReplies(messages);
+			} else {
+				sender.printReplies(messages.subList(0, exit + 1));
+				sender.close();
+			}
+		}
+	}
+
 	/**
 	 * Process input received from a game client/user. Depending on the game
 	 * state, carry out an appropriate action, and return any relevant updates
@@ -367,11 +743,81 @@ public class ServerProtocol extends SocketServerProtocol {
 	 *            format at the top of this file).
 	 * 
 	 * @return An ArrayList of string messages to return to the
-	 *         client(s)/user(s).
+	 *         client(s)/user(s); empty if the client has a writer, which they
+	 *         are queued to instead, in order with the broadcasts.
 	 */
 	@Override
 	public ArrayList<String> processInput(Socket sender, String input) {
 
+		long start = System.nanoTime();
+		ArrayList<String> messages;
+		int opcode;
+		long logged;
+
+		synchronized (this) {
+			lockWaitTime.recordSince(start);
+			messages = processMessage(sender, input);
+			opcode = message.getOpcode();
+			logged = logPosition;
+			logPosition = 0;
+			messages = queueBroadcasts(sender, messages, logged);
+		}
+
+		// Nothing is sent about a move until it's on disk; the log's thread
+		// writes what was held back once it is.
+		if (logged > 0) {
+			gameLog.commitLater(logged, flushTask);
+		}
+
+		flushBroadcasts();
+
+		if (opcode < 0) {
+			opcode = messageNames.length;
+		}
+
+		messageTimes[opcode].recordSince(start);
+
+		return messages;
+	}
+
+	// Queue the broadcasts of the message just processed, holding the lock.
+	// The replies are queued ahead of them, so every client gets its messages
+	// in the order they were processed in. While a move isn't on disk, they're
+	// held back, as are those of any later message. Returns the replies to
+	// send now, for a client without a writer.
+	private ArrayList<String> queueBroadcasts(Socket sender,
+			ArrayList<String> messages, long logged) {
+
+		boolean hold = logged > 0 || heldBack.get() > 0;
+		ClientWriter writer = (sender != null) ? writers.get(sender) : null;
+
+		if (writer != null && !messages.isEmpty()) {
+
+			pending.add(0, new Broadcast(Collections.singletonList(writer),
+					messages, true));
+			messages = new ArrayList<String>();
+		}
+
+		for (Broadcast broadcast : pending) {
+
+			broadcast.position = logged;
+			broadcast.held = hold;
+
+			if (hold) {
+				heldBack.incrementAndGet();
+			}
+
+			broadcasts.add(broadcast);
+		}
+
+		pending.clear();
+
+		return messages;
+	}
+
+	// Process a message, holding the lock.
+	private ArrayList<String> processMessage(Socket sender, String input) {
+
 		// First we have some actions which are able to be called at any point
 		// during the game. These are requests for info about the game and any
 		// player. Scoring is also allowed at different points throughout the
@@ -379,22 +825,30 @@ public class ServerProtocol extends SocketServerProtocol {
 
 		// This also allows us to manipulate the input info to reduce any
 		// duplicated code.
-		parsedMessage.clear();
-		parsedMessage.addAll(Arrays.asList(input.split(";")));
+		message.tokenize(input);
+		int opcode = message.getOpcode();
 
 		// Exit message is sent with the LEAVEGAME and LEAVELOBBY messages;
         // it is a generic message meant to be used for network layer management.
-		if (parsedMessage.get(0).equals(SocketServerProtocol.EXIT)) {
+		if (opcode == opExit) {
 
 			String[] exitMsg = {SocketServerProtocol.replySender,
                 SocketServerProtocol.EXIT};
 			return disseminateMessages(sender, exitMsg);
 		}
 
-		if (parsedMessage.get(0).equals("JOINLOBBY")) {
+		if (opcode == opJoinLobby) {
+
+			Integer seat = joiningSeats.remove(sender);
 
-			// Assign a player to the client which has joined the lobby.
-			if (lobbyPlayers.size() >= Game.getMaxPlayers()) {
+			if (seat != null) {
+				return takeSeat(seat);
+			}
+
+			// Assign a player to the client which has joined the lobby; not
+			// once the game has started.
+			if (gameState != null
+					|| lobbyPlayers.size() >= Game.getMaxPlayers()) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
@@ -409,11 +863,11 @@ public class ServerProtocol extends SocketServerProtocol {
 			return disseminateMessages(sender, assignPlayer, updateLobby);
 		}
 
-		if (parsedMessage.get(0).equals("UPDATEPLAYER")) {
+		if (opcode == opUpdatePlayer) {
 
-			int numberRep = Integer.parseInt(parsedMessage.get(2));
-			String name = parsedMessage.get(4);
-			String color = parsedMessage.get(6);
+			int numberRep = message.getInt(2);
+			String name = message.getString(4);
+			String color = message.getString(6);
 
 			// Set the new values.
 			PlayerStruct player = lobbyPlayers.get(numberRep);
@@ -424,9 +878,9 @@ public class ServerProtocol extends SocketServerProtocol {
 			return disseminateMessages(sender, updateLobby);
 		}
 
-		if (parsedMessage.get(0).equals("LEAVELOBBY")) {
+		if (opcode == opLeaveLobby) {
 			// Free the player which left the lobby.
-			int playerSlot = Integer.parseInt(parsedMessage.get(2));
+			int playerSlot = message.getInt(2);
 			removePlayer(playerSlot);
             removeSender(sender);
 
@@ -437,15 +891,36 @@ public class ServerProtocol extends SocketServerProtocol {
 		}
 
 		// TODO: EXITGAME
-		if (parsedMessage.get(0).equals("LEAVEGAME")) {
+		if (opcode == opLeaveGame) {
 
 			// Remove the player from the game.
-			int playerSlot = Integer.parseInt(parsedMessage.get(2));
+			int playerSlot = message.getInt(2);
 			Player player = game.getPlayers().get(playerSlot);
 			ArrayList<BoardPosition> meeplesToRemove = game.exitGame(player);
 
+			for (int i = 0; i < tilePlacers.size(); i++) {
+
+				int placer = tilePlacers.get(i);
+
+				if (placer == playerSlot) {
+					tilePlacers.set(i, -1);
+				} else if (placer > playerSlot) {
+					tilePlacers.set(i, placer - 1);
+				}
+			}
+
+			// The players after the one leaving are renumbered, so their
+			// information is sent in full with the next update, and its
+			// versions start over (as the clients' do; see ClientProtocol).
+			sentPlayerInfo = new int[game.getNumPlayers()][];
+			playerInfoVersions = new int[game.getNumPlayers()];
+
+			log(logLeaveGame, null, playerSlot);
+
             // Remove the player from the network server/client list.
-            removeSender(sender);
+            if (!replaying) {
+                removeSender(sender);
+            }
 
 			// Return the message to update the client ui's.
 			String[] leaveGameMsg = makeLeaveGameMsg(playerSlot,
@@ -456,48 +931,97 @@ public class ServerProtocol extends SocketServerProtocol {
 		// If the game is just starting then we need to send over initialization
 		// info. The gameboard width, height (# of tiles), the player whose turn
 		// it is, &c.
-		if (parsedMessage.get(0).equals("INIT")) {
+		if (opcode == opInit) {
 
-			if (!parsedMessage.get(1).equals("numPlayers")) {
+			if (!message.equals(1, "numPlayers")) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
 			gameState = GameState.START_GAME;
-			int numPlayers = Integer.parseInt(parsedMessage.get(2));
+			int numPlayers = message.getInt(2);
 
 			// TODO .. what?
-			game = new Game(numPlayers);
+			game = newGame(numPlayers);
+			tilePlacers.clear();
 			gameState = GameState.DRAW_TILE;
 
+			sentPlayerInfo = new int[game.getNumPlayers()][];
+			playerInfoVersions = new int[game.getNumPlayers()];
+			sentGameInfo = null;
+			gameInfoVersion = 0;
+
+			logInit(numPlayers);
+
 			String[] initMsg = makeInitMsg(currentPlayer);
 			return disseminateMessages(sender, initMsg);
 		}
 
-		if (parsedMessage.get(0).equals("DRAWTILE")) {
+		if (opcode == opDrawTile) {
 
 			if (GameState.DRAW_TILE != gameState) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
-			if (!parsedMessage.get(1).equals("currentPlayer")) {
+			if (!message.equals(1, "currentPlayer")) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
-			if (Integer.parseInt(parsedMessage.get(2)) != currentPlayer) {
+			if (message.getInt(2) != currentPlayer) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
 			// Otherwise continue the game by drawing a tile for the current
 			// player and letting the client know what the result was.
 			Player player = game.getPlayers().get(currentPlayer);
-			game.drawTile(player);
+			ArrayList<String> drawn = new ArrayList<String>();
+			long start = System.nanoTime();
+
+			int error;
+
+			if (replaying) {
+				int kept = replayedDraw.size() - 1;
+				error = game.drawTile(player, replayedDraw.subList(0, kept),
+						replayedDraw.get(kept));
+			} else {
+				error = game.drawTile(player, drawn);
+			}
+
+			drawTileTime.recordSince(start);
+
+			if (error != 0) {
+
+				// A logged draw was of tiles which aren't in the pile.
+				if (replaying) {
+					throw new IllegalStateException("Can't replay the draw of "
+							+ replayedDraw + ".");
+				}
+
+				// Every tile left has been set aside, as none of them can be
+				// placed; the pile is empty, and the game is over.
+				gameState = GameState.END_GAME;
+				logEnd();
+
+				return disseminateMessages(sender, makeGameUpdateInfo(null,
+						true));
+			}
+
 			gameState = GameState.PLACE_TILE;
 
 			// Get variables to make the message & return it.
 			Tile tile = player.getCurrentTile();
+
+			for (int i = 0; replaying && i < 4
+					&& tile.getOrientation() != replayedOrientation; i++) {
+				tile.rotateClockwise();
+			}
+
 			String identifier = tile.getIdentifier();
 			int orientation = tile.getOrientation();
 
+			drawn.add(identifier);
+			log(logDrawTile, drawn.toArray(new String[drawn.size()]),
+					currentPlayer, orientation);
+
 			String[] drawTileMsg = makeDrawTileMsg(currentPlayer, identifier,
 					orientation);
 			return disseminateMessages(sender, drawTileMsg);
@@ -505,35 +1029,36 @@ public class ServerProtocol extends SocketServerProtocol {
 
 		if (GameState.PLACE_TILE == gameState) {
 
-			if (!parsedMessage.get(0).equals("PLACETILE")
-					&& !parsedMessage.get(0).equals("ROTATETILE")) {
+			if (opcode != opPlaceTile && opcode != opRotateTile) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
-			if (!parsedMessage.get(1).equals("currentPlayer")) {
+			if (!message.equals(1, "currentPlayer")) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
-			if (Integer.parseInt(parsedMessage.get(2)) != currentPlayer) {
+			if (message.getInt(2) != currentPlayer) {
 				return disseminateMessages(sender, makeErrorMsg());
 			}
 
 			// Check what the client wants us to do.
-			if (parsedMessage.get(0).equals("ROTATETILE")) {
+			if (opcode == opRotateTile) {
 
-				if (!parsedMessage.get(3).equals("direction")) {
+				if (!message.equals(3, "direction")) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
-				String direction = parsedMessage.get(4);
+				String direction = message.getString(4);
 				Player player = game.getPlayers().get(currentPlayer);
 
 				if (direction.equals("clockwise")) {
 					player.getCurrentTile().rotateClockwise();
+					log(logRotateTile, null, currentPlayer, 1);
 				}
 
 				if (direction.equals("counterClockwise")) {
 					player.getCurrentTile().rotateCounterClockwise();
+					log(logRotateTile, null, currentPlayer, 0);
 				}
 
 				String[] rotateTileMsg = makeRotateTileMsg(currentPlayer,
@@ -541,18 +1066,20 @@ public class ServerProtocol extends SocketServerProtocol {
 				return disseminateMessages(sender, rotateTileMsg);
 			}
 
-			if (parsedMessage.get(0).equals("PLACETILE")) {
+			if (opcode == opPlaceTile) {
 
-				if (!parsedMessage.get(3).equals("xBoard")
-						|| !parsedMessage.get(5).equals("yBoard")) {
+				if (!message.equals(3, "xBoard")
+						|| !message.equals(5, "yBoard")) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
-				int xBoard = Integer.parseInt(parsedMessage.get(4));
-				int yBoard = Integer.parseInt(parsedMessage.get(6));
+				int xBoard = message.getInt(4);
+				int yBoard = message.getInt(6);
 
 				Player player = game.getPlayers().get(currentPlayer);
+				long start = System.nanoTime();
 				int error = game.placeTile(player, xBoard, yBoard);
+				placeTileTime.recordSince(start);
 
 				String[][] ret;
 				String[] placeTileMsg = makePlaceTileMsg(currentPlayer, xBoard,
@@ -561,6 +1088,9 @@ public class ServerProtocol extends SocketServerProtocol {
 				// Advance play if we don't encounter any errors.
 				if (error == 0) {
 
+					log(logPlaceTile, null, currentPlayer, xBoard, yBoard);
+					tilePlacers.add(currentPlayer);
+
 					gameState = GameState.PLACE_MEEPLE;
 					ret = addGameUpdateInfo(placeTileMsg);
 
@@ -578,16 +1108,18 @@ public class ServerProtocol extends SocketServerProtocol {
 		// PLACEMEEPLE;currentPlayer;<int>;xBoard;<int>;yBoard;<int>;xTile;<int>;yTile;<int>
 		if (GameState.PLACE_MEEPLE == gameState) {
 
-			if (parsedMessage.get(0).equals("ENDTURN")) {
+			if (opcode == opEndTurn) {
 
-				if (!parsedMessage.get(1).equals("currentPlayer")) {
+				if (!message.equals(1, "currentPlayer")) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
-				if (Integer.parseInt(parsedMessage.get(2)) != currentPlayer) {
+				if (message.getInt(2) != currentPlayer) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
+				log(logEndTurn, null, currentPlayer);
+
 				String[] endTurnMsg = makeEndTurnMsg(currentPlayer);
 
 				currentPlayer = (currentPlayer + 1) % game.getNumPlayers();
@@ -595,28 +1127,34 @@ public class ServerProtocol extends SocketServerProtocol {
 
 				String ret[][] = addGameUpdateInfo(endTurnMsg);
 
+				if (++turnsSinceSnapshot >= snapshotTurns) {
+					logSnapshot();
+				}
+
 				return disseminateMessages(sender, ret);
 			}
 
-			if (parsedMessage.get(0).equals("PLACEMEEPLE")) {
+			if (opcode == opPlaceMeeple) {
 
-				if (!parsedMessage.get(1).equals("currentPlayer")) {
+				if (!message.equals(1, "currentPlayer")) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
-				if (Integer.parseInt(parsedMessage.get(2)) != currentPlayer) {
+				if (message.getInt(2) != currentPlayer) {
 					return disseminateMessages(sender, makeErrorMsg());
 				}
 
 				// If everything is good; we're synchronized, continue.
-				int xBoard = Integer.parseInt(parsedMessage.get(4));
-				int yBoard = Integer.parseInt(parsedMessage.get(6));
-				int xTile = Integer.parseInt(parsedMessage.get(8));
-				int yTile = Integer.parseInt(parsedMessage.get(10));
+				int xBoard = message.getInt(4);
+				int yBoard = message.getInt(6);
+				int xTile = message.getInt(8);
+				int yTile = message.getInt(10);
 
 				Player player = game.getPlayers().get(currentPlayer);
 
+				long start = System.nanoTime();
 				int e = game.placeMeeple(player, xBoard, yBoard, xTile, yTile);
+				placeMeepleTime.recordSince(start);
 
 				String ret[][];
 				String[] placeMeepleMsg = makePlaceMeepleMsg(currentPlayer,
@@ -626,6 +1164,9 @@ public class ServerProtocol extends SocketServerProtocol {
 				// messages to be returned to the clients to update them.
 				if (e == 0) {
 
+					log(logPlaceMeeple, null, currentPlayer, xBoard, yBoard,
+							xTile, yTile);
+
 					ret = addGameUpdateInfo(placeMeepleMsg);
 
 				} else {
@@ -646,18 +1187,24 @@ public class ServerProtocol extends SocketServerProtocol {
 		return disseminateMessages(sender, makeErrorMsg());
 	}
 
+	/**
+	 * Make the game which is played when the game is started; a new game with
+	 * the draw pile in an unpredictable order.
+	 * 
+	 * @param numPlayers
+	 *            The number of players.
+	 * 
+	 * @return The game.
+	 */
+	protected Game newGame(int numPlayers) {
+		return new Game(numPlayers);
+	}
+
 	// Add game update info messages to the passed in message.
 	// This function will determine if the game is over (needed to determine
-	// scoring rules). While doing this it will create a message list which
-	// begins with the passed-in message, and is followed by the score message,
-	// player information messages, and a game information message.
+	// scoring rules), and make the messages (see makeGameUpdateInfo).
 	private String[][] addGameUpdateInfo(String[] message) {
 
-		// We'll have a player information message for each player, along with
-		// a score message, game info message, and the passed-in message.
-		int numMessages = game.getNumPlayers() + 3;
-		String ret[][] = new String[numMessages][];
-
 		boolean isGameOver = false;
 
 		// This method can be called during many game states; we don't want to
@@ -666,17 +1213,449 @@ public class ServerProtocol extends SocketServerProtocol {
 		if (game.isDrawPileEmpty() && GameState.PLACE_MEEPLE == gameState) {
 			gameState = GameState.END_GAME;
 			isGameOver = true;
+			logEnd();
+		}
+
+		return makeGameUpdateInfo(message, isGameOver);
+	}
+
+	// Score the game, and create a message list which begins with the passed
+	// in message (if any), and is followed by the score message, player
+	// information messages, and a game information message; the information
+	// messages only for players (or the game) whose information has changed.
+	private String[][] makeGameUpdateInfo(String[] message, boolean isGameOver) {
+
+		ArrayList<String[]> ret = new ArrayList<String[]>();
+
+		long start = System.nanoTime();
+		ArrayList<BoardPosition> scoredMeeples = game.score(isGameOver);
+		scoreTime.recordSince(start);
+
+		if (message != null) {
+			ret.add(message);
 		}
 
-		ret[0] = message;
-		ret[1] = makeScoreMsg(game.score(isGameOver));
+		ret.add(makeScoreMsg(scoredMeeples));
 
 		for (int i = 0; i < game.getNumPlayers(); i++) {
-			ret[i + 2] = makePlayerInfoMsg(i);
+
+			String[] playerInfoMsg = makePlayerInfoMsg(i);
+
+			if (playerInfoMsg != null) {
+				ret.add(playerInfoMsg);
+			}
+		}
+
+		String[] gameInfoMsg = makeGameInfoMsg();
+
+		if (gameInfoMsg != null) {
+			ret.add(gameInfoMsg);
+		}
+
+		return ret.toArray(new String[ret.size()][]);
+	}
+
+	/**
+	 * Rebuild a game from its records in the log; from its snapshot, if it
+	 * has one, then by processing its moves again. Afterwards each client
+	 * which joins the room is given the next seat of the game (the clients
+	 * can't be told apart after a restart; see joinRoom), and is sent the
+	 * messages sent about the game so far (or, from a snapshot, messages to
+	 * the same effect).
+	 * 
+	 * @param gameId
+	 *            The id of the game in the log.
+	 * @param records
+	 *            The records of the game, oldest first.
+	 * 
+	 * @return False if the game had ended, or its moves couldn't be replayed;
+	 *         it's then ended in the log. The records of a game which
+	 *         couldn't be replayed are kept aside first (see
+	 *         GameLog.setAside).
+	 */
+	synchronized boolean recover(int gameId, List<GameLog.Record> records) {
+
+		replaying = true;
+		history = new ArrayList<String>();
+
+		try {
+			for (GameLog.Record record : records) {
+
+				if (record.isSnapshot()) {
+					restore(record);
+					logSequence = record.getSequence();
+				} else {
+					replay(record);
+					logSequence = record.getSequence() + 1;
+				}
+			}
+		} catch (RuntimeException e) {
+
+			// The records don't make a game; it's given up.
+			recoverFailures.incrementAndGet();
+			System.err.println("Can't recover game " + gameId + ": " + e);
+			game = null;
+
+			try {
+				gameLog.setAside(records);
+			} catch (IOException setAsideError) {
+				System.err.println("Can't keep the records of game " + gameId
+						+ " aside: " + setAsideError);
+			}
+		} finally {
+			replaying = false;
+		}
+
+		this.gameId = gameId;
+
+		if (game == null || game.getNumPlayers() == 0
+				|| GameState.END_GAME == gameState) {
+
+			logEnd();
+			history = null;
+
+			return false;
 		}
 
-		ret[numMessages - 1] = makeGameInfoMsg();
+		freeSeats = game.getNumPlayers();
+
+		return true;
+	}
+
+	/**
+	 * Close the room. Its game is ended in the log, so it isn't recovered.
+	 */
+	synchronized void close() {
+
+		logEnd();
+		freeSeats = 0;
+		joiningSeats.clear();
+		history = null;
+	}
+
+	// Process the message a record was made from.
+	private void replay(GameLog.Record record) {
+
+		int[] values = record.getValues();
+		String[] strings = record.getStrings();
+		String input;
+
+		switch (record.getType()) {
+
+		case logInit:
+			restoreLobby(values, 2, strings);
+			currentPlayer = values[1];
+			input = "INIT;numPlayers;" + values[0];
+			break;
+
+		case logDrawTile:
+			replayedDraw = Arrays.asList(strings);
+			replayedOrientation = values[1];
+			input = "DRAWTILE;currentPlayer;" + values[0];
+			break;
+
+		case logRotateTile:
+			input = "ROTATETILE;currentPlayer;" + values[0] + ";direction;"
+					+ ((values[1] == 1) ? "clockwise" : "counterClockwise");
+			break;
+
+		case logPlaceTile:
+			input = "PLACETILE;currentPlayer;" + values[0] + ";xBoard;"
+					+ values[1] + ";yBoard;" + values[2];
+			break;
+
+		case logPlaceMeeple:
+			input = "PLACEMEEPLE;currentPlayer;" + values[0] + ";xBoard;"
+					+ values[1] + ";yBoard;" + values[2] + ";xTile;"
+					+ values[3] + ";yTile;" + values[4];
+			break;
+
+		case logEndTurn:
+			input = "ENDTURN;currentPlayer;" + values[0];
+			break;
+
+		case logLeaveGame:
+			input = "LEAVEGAME;player;" + values[0];
+			break;
+
+		default:
+			throw new IllegalStateException("Unknown record type "
+					+ record.getType() + ".");
+		}
+
+		if (processMessage(null, input).contains(SocketServerProtocol.NAK)) {
+			throw new IllegalStateException("Can't replay " + input + ".");
+		}
+	}
+
+	// Restore the game, and the state of the protocol, from a snapshot.
+	private void restore(GameLog.Record snapshot) {
+
+		int[] values = snapshot.getValues();
+
+		game = Game.fromSnapshot(snapshot.getData());
+
+		int numPlayers = game.getNumPlayers();
+		int v = 0;
+
+		gameState = GameState.values()[values[v++]];
+		currentPlayer = values[v++];
+		gameInfoVersion = values[v++];
+		sentGameInfo = (values[v++] == 1) ? Arrays.copyOfRange(values, v,
+				v + gameInfoFields.length) : null;
+		v += gameInfoFields.length;
+
+		sentPlayerInfo = new int[numPlayers][];
+		playerInfoVersions = new int[numPlayers];
+
+		for (int i = 0; i < numPlayers; i++) {
+
+			playerInfoVersions[i] = values[v++];
+			sentPlayerInfo[i] = (values[v++] == 1) ? Arrays.copyOfRange(
+					values, v, v + playerInfoFields.length) : null;
+			v += playerInfoFields.length;
+		}
+
+		tilePlacers.clear();
+
+		for (int i = game.getBoard().getPlacedTiles().size(); i > 0; i--) {
+			tilePlacers.add(values[v++]);
+		}
+
+		restoreLobby(values, v, snapshot.getStrings());
+
+		history = makeCatchUpMsgs();
+	}
+
+	// Make the messages which bring a client up to date with a restored
+	// game, as if it had seen the game played: each tile drawn & placed in
+	// turn by the player who placed it, with any meeples on it (as their
+	// owner's, for their color), then the INFO last sent, and the tile in
+	// hand. The tiles of a player who has left are given to the player before
+	// the current one. Scoring isn't replayed; the meeples it returned aren't
+	// on the board, and the scores are in the INFO.
+	private ArrayList<String> makeCatchUpMsgs() {
+
+		ArrayList<String> messages = new ArrayList<String>();
+		Board board = game.getBoard();
+		ArrayList<Player> players = game.getPlayers();
+		ArrayList<TilePlacement> placed = board.getPlacedTiles();
+		int lastPlayer = (currentPlayer + players.size() - 1) % players.size();
+
+		messages.add(makeInitMsg(currentPlayer)[1]);
+
+		for (int i = 0; i < placed.size(); i++) {
+
+			TilePlacement tile = placed.get(i);
+			String identifier = board.getTile(tile.xBoard, tile.yBoard)
+					.getIdentifier();
+			int placer = tilePlacers.get(i);
+
+			if (placer < 0) {
+				placer = lastPlayer;
+			}
+
+			messages.add(makeDrawTileMsg(placer, identifier,
+					tile.orientation)[1]);
+			messages.add(makePlaceTileMsg(placer, tile.xBoard,
+					tile.yBoard, 0)[1]);
+
+			for (int p = 0; p < players.size(); p++) {
+				for (Meeple meeple : players.get(p).getMeeples()) {
+
+					BoardPosition position = board.getMeeplePosition(meeple);
+
+					if (position != null && position.xBoard == tile.xBoard
+							&& position.yBoard == tile.yBoard) {
+						messages.add(makePlaceMeepleMsg(p,
+								position.xBoard, position.yBoard,
+								position.xTile, position.yTile, 0)[1]);
+					}
+				}
+			}
+
+			// The last tile's turn may not be over.
+			if (i < placed.size() - 1 || GameState.PLACE_MEEPLE != gameState) {
+				messages.add(makeEndTurnMsg(placer)[1]);
+			}
+		}
+
+		for (int i = 0; i < players.size(); i++) {
+			if (sentPlayerInfo[i] != null) {
+				messages.add("INFO;player;" + i + ";version;"
+						+ playerInfoVersions[i]
+						+ makeInfoDelta(playerInfoFields, null,
+								sentPlayerInfo[i]));
+			}
+		}
+
+		if (sentGameInfo != null) {
+			messages.add("INFO;game;version;" + gameInfoVersion
+					+ makeInfoDelta(gameInfoFields, null, sentGameInfo));
+		}
+
+		if (GameState.PLACE_TILE == gameState) {
+
+			Tile tile = players.get(currentPlayer).getCurrentTile();
+
+			messages.add(makeDrawTileMsg(currentPlayer, tile.getIdentifier(),
+					tile.getOrientation())[1]);
+		}
+
+		return messages;
+	}
+
+	// Seat a client in a recovered game, in the seat it was given.
+	private ArrayList<String> takeSeat(int seat) {
+
+		ArrayList<String> messages = new ArrayList<String>();
+		messages.add(makeAssignPlayerMsg(seat)[1]);
+		messages.add(makeUpdateLobbyMsg()[1]);
+		messages.addAll(history);
+
+		if (freeSeats == 0 && joiningSeats.isEmpty()) {
+			history = null;
+		}
+
+		return messages;
+	}
+
+	// Start the game's records in the log, ending the room's last game.
+	private void logInit(int numPlayers) {
+
+		if (gameLog == null || replaying) {
+			return;
+		}
+
+		logEnd();
+		gameId = gameLog.newGame();
+		logSequence = 0;
+		turnsSinceSnapshot = 0;
+
+		int[] values = new int[2 + lobbyPlayers.size()];
+		String[] strings = makeLobbyStrings();
+
+		values[0] = numPlayers;
+		values[1] = currentPlayer;
+		writeLobby(values, 2);
+
+		log(logInit, strings, values);
+	}
+
+	// Append a snapshot of the game to the log; it's taken now, and written
+	// on the log's own thread.
+	private void logSnapshot() {
+
+		turnsSinceSnapshot = 0;
+
+		if (gameLog == null || gameId < 0 || replaying) {
+			return;
+		}
+
+		long start = System.nanoTime();
+
+		int numPlayers = game.getNumPlayers();
+		int[] values = new int[4 + gameInfoFields.length + numPlayers
+				* (2 + playerInfoFields.length) + tilePlacers.size()
+				+ lobbyPlayers.size()];
+		int v = 0;
+
+		values[v++] = gameState.ordinal();
+		values[v++] = currentPlayer;
+		values[v++] = gameInfoVersion;
+		values[v++] = (sentGameInfo != null) ? 1 : 0;
+
+		if (sentGameInfo != null) {
+			System.arraycopy(sentGameInfo, 0, values, v, gameInfoFields.length);
+		}
+
+		v += gameInfoFields.length;
+
+		for (int i = 0; i < numPlayers; i++) {
+
+			values[v++] = playerInfoVersions[i];
+			values[v++] = (sentPlayerInfo[i] != null) ? 1 : 0;
+
+			if (sentPlayerInfo[i] != null) {
+				System.arraycopy(sentPlayerInfo[i], 0, values, v,
+						playerInfoFields.length);
+			}
+
+			v += playerInfoFields.length;
+		}
+
+		for (int placer : tilePlacers) {
+			values[v++] = placer;
+		}
+
+		writeLobby(values, v);
+
+		gameLog.appendSnapshot(gameId, logSequence, values,
+				makeLobbyStrings(), game.toSnapshot());
+
+		snapshotTime.recordSince(start);
+	}
+
+	// The strings of INIT & snapshot records; the room's name, and the name &
+	// color of each player in the lobby.
+	private String[] makeLobbyStrings() {
+
+		String[] strings = new String[1 + 2 * lobbyPlayers.size()];
+		strings[0] = (roomName != null) ? roomName : "";
+
+		int i = 0;
+
+		for (PlayerStruct player : lobbyPlayers.values()) {
+			strings[1 + 2 * i] = player.getName();
+			strings[2 + 2 * i] = player.getColorString();
+			i++;
+		}
+
+		return strings;
+	}
+
+	// Write the slot of each player in the lobby, in the same order as
+	// makeLobbyStrings.
+	private void writeLobby(int[] values, int first) {
+
+		int i = first;
+
+		for (Integer slot : lobbyPlayers.keySet()) {
+			values[i++] = slot;
+		}
+	}
+
+	// Restore the room's name & lobby from the values from the first slot on,
+	// and the strings.
+	private void restoreLobby(int[] values, int first, String[] strings) {
+
+		roomName = strings[0].isEmpty() ? null : strings[0];
+		lobbyPlayers.clear();
+
+		for (int i = 0; i < values.length - first; i++) {
+			lobbyPlayers.put(values[first + i], new PlayerStruct(
+					strings[1 + 2 * i], strings[2 + 2 * i]));
+		}
+
+		numLobbyPlayers = lobbyPlayers.size();
+	}
+
+	// Append a record of a move to the log; it's committed once the message
+	// has been processed (see processInput).
+	private void log(int type, String[] strings, int... values) {
+
+		if (gameLog != null && gameId >= 0 && !replaying) {
+			logPosition = gameLog.append(gameId, logSequence++, type, values,
+					(strings != null) ? strings : new String[0]);
+		}
+	}
+
+	private void logEnd() {
+
+		if (gameLog != null && gameId >= 0 && !replaying) {
+			logPosition = gameLog.end(gameId);
+		}
 
-		return ret;
+		gameId = -1;
 	}
 }
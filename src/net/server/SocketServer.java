@@ -2,17 +2,23 @@ package net.server;
 
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.Executor;
+
+import net.client.ConnectionExecutors;
 
 public class SocketServer extends Thread {
 
 	private int port;
 	private Class<? extends SocketServerProtocol> protocol;
+	private Executor executor;
+	private OutboundLimits outboundLimits = new OutboundLimits();
 
 	/**
 	 * Constructor for the Server.
 	 * 
 	 * Allow clients to connect to the server. With each connection we create a
-	 * new thread to serve the client.
+	 * new thread to serve the client; a platform thread, or a virtual thread if
+	 * set up so (see ConnectionExecutors).
 	 * 
 	 * @param port
 	 *            The port number to run the server on.
@@ -20,9 +26,45 @@ public class SocketServer extends Thread {
 	 *            The protocol to run on the clients.
 	 */
 	public SocketServer(int port, Class<? extends SocketServerProtocol> protocol) {
+		this(port, protocol, ConnectionExecutors
+				.getDefault("SocketServerThread"));
+	}
+
+	/**
+	 * Constructor for the Server.
+	 * 
+	 * Allow clients to connect to the server. Each connection is served by a
+	 * task run on the executor.
+	 * 
+	 * @param port
+	 *            The port number to run the server on.
+	 * @param protocol
+	 *            The protocol to run on the clients.
+	 * @param executor
+	 *            The executor to serve the clients on, and write to them; it
+	 *            needs to be able to run two tasks for each client at once.
+	 */
+	public SocketServer(int port,
+			Class<? extends SocketServerProtocol> protocol, Executor executor) {
 
 		this.port = port;
 		this.protocol = protocol;
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the limits of the messages queued for each client; before the
+	 * server is started.
+	 * 
+	 * @param outboundLimits
+	 *            The limits, which also count the queues' depths.
+	 */
+	public void setOutboundLimits(OutboundLimits outboundLimits) {
+		this.outboundLimits = outboundLimits;
+	}
+
+	public OutboundLimits getOutboundLimits() {
+		return outboundLimits;
 	}
 
 	@Override
@@ -31,19 +73,25 @@ public class SocketServer extends Thread {
 		try {
 			ServerSocket serverSocket = new ServerSocket(port);
 			SocketServerProtocol socketProtocol = protocol.newInstance();
+			ServerMetrics.getDefault().setServerGauges(socketProtocol,
+					outboundLimits);
 
 			while (true) {
 
 				Socket client = serverSocket.accept();
 
-				int maxConnections = socketProtocol.getMaxConnections();
-				int numConnections = socketProtocol.getNumConnections();
+				synchronized (socketProtocol) {
+
+					int maxConnections = socketProtocol.getMaxConnections();
+					int numConnections = socketProtocol.getNumConnections();
 
-				if (numConnections < maxConnections) {
-					new SocketServerThread(client, socketProtocol).start();
-				} else {
-					// TODO: something.. send a message to client saying game
-					// is full.?
+					if (numConnections < maxConnections) {
+						executor.execute(new SocketServerThread(client,
+								socketProtocol, executor, outboundLimits));
+					} else {
+						// TODO: something.. send a message to client saying
+						// game is full.?
+					}
 				}
 			}
 
@@ -4,6 +4,12 @@ import java.net.Socket;
 
 import net.client.SocketClientProtocol;
 
+// A single protocol is shared by all of a server's clients, and its methods
+// are called from the thread serving each client; it must make its own state
+// safe to use from those threads, with locks or concurrent structures. A
+// server adds a client with addSender while holding the protocol's lock, so
+// that no other client can be added between checking the number of
+// connections & adding the client.
 public abstract class SocketServerProtocol extends SocketClientProtocol {
 
 	/**
@@ -14,8 +20,10 @@ public abstract class SocketServerProtocol extends SocketClientProtocol {
 	 * 
 	 * @param sender
 	 *            A Socket object which is tied to the sender object.
+	 * @param writer
+	 *            A ClientWriter to send messages to the sender.
 	 */
-	public abstract void addSender(Socket sender);
+	public abstract void addSender(Socket sender, ClientWriter writer);
 
 	/**
 	 * Allow a sender to be removed from the socket protocol's list of senders.
@@ -1,38 +1,61 @@
 package net.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
-public class SocketServerThread extends Thread {
+import net.client.BinaryCodec;
+import net.client.MessageReader;
+import net.client.MessageWriter;
+
+public class SocketServerThread implements Runnable {
 
 	private Socket clientSocket = null;
 	private SocketServerProtocol protocol = null;
 
-	private PrintWriter clientWriter = null;
-	private BufferedReader clientReader = null;
+	private MessageWriter clientWriter = null;
+	private MessageReader clientReader = null;
+
+	// Messages to the client, from the protocol & this thread, are queued
+	// here and written by another task, so no one waits on the socket.
+	private QueuedClientWriter clientQueue = null;
 
 	/**
 	 * Constructor for SocketServerThread. This class is created by a
-	 * SocketServer, and is meant to connect directly to a client.
+	 * SocketServer, and is meant to connect directly to a client. It is run on
+	 * a thread of the server's executor (see ConnectionExecutors).
 	 * 
 	 * @param clientSocket
 	 *            The socket that represents a connection to the client.
 	 * @param protocol
 	 *            The message protocol to be followed.
+	 * @param executor
+	 *            The executor to write messages to the client on.
+	 * @param limits
+	 *            The limits of the messages queued for the client.
 	 */
-	public SocketServerThread(Socket clientSocket, SocketServerProtocol protocol) {
-
-		super("SocketServerThread");
+	public SocketServerThread(Socket clientSocket,
+			SocketServerProtocol protocol, Executor executor,
+			OutboundLimits limits) {
 
 		this.clientSocket = clientSocket;
 		this.protocol = protocol;
-		this.protocol.addSender(clientSocket);
+
+		createMessagers();
+
+		this.clientQueue = new QueuedClientWriter(clientWriter, executor,
+				limits, new Runnable() {
+
+					@Override
+					public void run() {
+						removeClient();
+					}
+				});
+
+		this.protocol.addSender(clientSocket, clientQueue);
 	}
 
 	/**
@@ -41,27 +64,32 @@ public class SocketServerThread extends Thread {
 	 */
 	private void removeClient() {
 
-		// Close the writer for the client.
-		clientWriter.close();
-
-		// Attempt to close the reader and socket for the client.
+		// Close the socket first; a write blocked on it then fails, rather
+		// than holding up closing the writer.
 		try {
-			clientReader.close();
 			clientSocket.close();
 		} catch (IOException io) {
 			// Working on removing references of the object anyway; it should
 			// be garbage collected eventually.
 		}
+
+		// Close the writer & reader for the client.
+		clientWriter.close();
+
+		try {
+			clientReader.close();
+		} catch (IOException io) {
+			// As above.
+		}
 	}
 
 	private void createMessagers() {
 		try {
 			OutputStream outStream = clientSocket.getOutputStream();
-			clientWriter = new PrintWriter(outStream, true);
+			clientWriter = new MessageWriter(outStream);
 
 			InputStream inStream = clientSocket.getInputStream();
-			InputStreamReader inStreamReader = new InputStreamReader(inStream);
-			clientReader = new BufferedReader(inStreamReader);
+			clientReader = new MessageReader(inStream);
 
 		} catch (IOException e) {
 			// Getting either (or both) of the output and input streams has
@@ -76,31 +104,45 @@ public class SocketServerThread extends Thread {
 		String inputLine;
 		ArrayList<String> outputLines;
 
-		createMessagers();
-
 		try {
 
 			// Get the response, process it, and send back the next message.
-			while ((inputLine = clientReader.readLine()) != null) {
-
-				outputLines = protocol.processInput(clientSocket, inputLine);
+			while ((inputLine = clientReader.readMessage()) != null) {
 
-                for (String outputLine : outputLines) {
+				// The client wants the binary encoding; everything after
+				// this message is in frames, both ways.
+				if (!clientReader.isBinary()
+						&& inputLine.equals(BinaryCodec.HELLO)) {
 
-                    clientWriter.println(outputLine);
+					clientWriter.switchToBinary(BinaryCodec.HELLO);
+					clientReader.setBinary(true);
+					continue;
+				}
 
-                    if (outputLine.equals(SocketServerProtocol.EXIT)) {
+				outputLines = protocol.processInput(clientSocket, inputLine);
 
-                        removeClient();
-                        return;
-                    }
-                }
+				// The replies are sent as one batch; nothing after an exit,
+				// and the client is removed once it's been written.
+				int exit = outputLines.indexOf(SocketServerProtocol.EXIT);
+
+				if (exit < 0) {
+					clientQueue.reply(outputLines);
+				} else {
+					clientQueue.reply(outputLines.subList(0, exit + 1));
+					clientQueue.close();
+					return;
+				}
 			}
 
 		} catch (IOException io) {
-			// Readline has created an exception in the main loop. Close down
-			// the system and remove all related sockets, readers, writers, etc.
-			// TODO
+			// Readline has created an exception in the main loop; the client
+			// is removed below, as when it disconnects.
+		} finally {
+			// Whether the client exited, disconnected or failed, it's done;
+			// close its socket once its replies are written, and free its
+			// place (and its room) in the protocol.
+			clientQueue.close();
+			protocol.removeSender(clientSocket);
 		}
 	}
 }
@@ -0,0 +1,11 @@
+package net.server.tests;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+
+@RunWith(Suite.class)
+@SuiteClasses({ ServerProtocolTest.class, GameLogTest.class,
+		MessageTokenizerTest.class, QueuedClientWriterTest.class })
+public class AllTests {
+}
@@ -0,0 +1,659 @@
+package net.server.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+import net.server.ClientWriter;
+import net.server.GameLog;
+import net.server.RoomServerProtocol;
+import net.server.ServerMetrics;
+import net.server.SocketServerProtocol;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameLogTest {
+
+	private File path;
+
+	@Before
+	public void setUp() throws IOException {
+		path = File.createTempFile("GameLogTest", ".log");
+		path.delete();
+	}
+
+	@After
+	public void tearDown() {
+		path.delete();
+		new File(path.getPath() + ".tmp").delete();
+		new File(path.getPath() + ".failed").delete();
+	}
+
+	@Test
+	public void appendTest() throws IOException {
+
+		GameLog log = new GameLog(path);
+
+		assertTrue(log.takeUnfinishedGames().isEmpty());
+
+		int first = log.newGame();
+		int second = log.newGame();
+		int ended = log.newGame();
+
+		log.append(first, 0, 2, new int[] { 1, -1, Integer.MAX_VALUE },
+				new String[] { "room", "" });
+		log.append(second, 0, 3, new int[0], new String[] { "caf\u00e9" });
+		log.append(ended, 0, 2, new int[] { 5 }, new String[0]);
+		log.append(first, 1, 4, new int[] { Integer.MIN_VALUE },
+				new String[0]);
+		log.commit(log.end(ended));
+		log.close();
+
+		GameLog reopened = new GameLog(path);
+		Map<Integer, List<GameLog.Record>> games = reopened
+				.takeUnfinishedGames();
+
+		// The games which hadn't ended, in the order they started.
+		assertEquals(Arrays.asList(first, second),
+				new ArrayList<Integer>(games.keySet()));
+
+		List<GameLog.Record> records = games.get(first);
+
+		assertEquals(2, records.size());
+		assertRecord(records.get(0), first, 0, 2, new int[] { 1, -1,
+				Integer.MAX_VALUE }, new String[] { "room", "" });
+		assertRecord(records.get(1), first, 1, 4,
+				new int[] { Integer.MIN_VALUE }, new String[0]);
+		assertRecord(games.get(second).get(0), second, 0, 3, new int[0],
+				new String[] { "caf\u00e9" });
+
+		// They're only kept until taken, and a new game never has the id of
+		// one in the log.
+		assertTrue(reopened.takeUnfinishedGames().isEmpty());
+		assertTrue(reopened.newGame() > second);
+
+		reopened.close();
+	}
+
+	@Test
+	public void tornTailTest() throws IOException {
+
+		GameLog log = new GameLog(path);
+		int game = log.newGame();
+
+		long first = log.append(game, 0, 2, new int[] { 0 }, new String[0]);
+		long second = log.append(game, 1, 2, new int[] { 1 }, new String[0]);
+		long third = log.append(game, 2, 2, new int[] { 2 },
+				new String[] { "a string long enough to tear" });
+		log.close();
+
+		// The server stopped partway through writing the last record.
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+		try {
+			file.setLength((second + third) / 2);
+		} finally {
+			file.close();
+		}
+
+		log = new GameLog(path);
+		List<GameLog.Record> records = log.takeUnfinishedGames().get(game);
+
+		assertEquals(2, records.size());
+		assertEquals(1, records.get(1).getValues()[0]);
+
+		// The torn record is gone for good; the next record follows the
+		// whole ones.
+		assertEquals(second + (second - first), log.append(game, 2, 2,
+				new int[] { 1 }, new String[0]));
+		log.close();
+
+		log = new GameLog(path);
+		records = log.takeUnfinishedGames().get(game);
+
+		assertEquals(3, records.size());
+		assertEquals(2, records.get(2).getSequence());
+		log.close();
+	}
+
+	@Test
+	public void checksumMismatchTest() throws IOException {
+
+		GameLog log = new GameLog(path);
+		int game = log.newGame();
+
+		long first = log.append(game, 0, 2, new int[] { 0 }, new String[0]);
+		log.append(game, 1, 2, new int[] { 1 }, new String[] { "changed" });
+		log.append(game, 2, 2, new int[] { 2 }, new String[0]);
+		log.close();
+
+		// A byte of the second record's body is changed on disk; reading
+		// stops there, as nothing after it can be trusted.
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+		try {
+			long position = first + 8 + 6;
+			file.seek(position);
+			int b = file.read();
+			file.seek(position);
+			file.write(b ^ 0x01);
+		} finally {
+			file.close();
+		}
+
+		log = new GameLog(path);
+		List<GameLog.Record> records = log.takeUnfinishedGames().get(game);
+
+		assertEquals(1, records.size());
+		assertEquals(0, records.get(0).getSequence());
+		log.close();
+	}
+
+	@Test
+	public void compactionTest() throws IOException {
+
+		// The log of one game, on its own.
+		File alone = new File(path.getPath() + ".alone");
+
+		try {
+			GameLog log = new GameLog(alone);
+			appendGame(log, log.newGame(), 3);
+			log.close();
+
+			log = new GameLog(alone);
+			long aloneEnd = log.append(0, 3, 2, new int[0], new String[0]);
+			log.close();
+
+			// The same game, with a longer game which ended beside it.
+			log = new GameLog(path);
+			int game = log.newGame();
+			int ended = log.newGame();
+
+			appendGame(log, ended, 50);
+			appendGame(log, game, 3);
+			log.end(ended);
+			log.close();
+
+			// Opening the log writes it afresh, without the ended game; and
+			// again, each time, so it doesn't grow.
+			for (int i = 0; i < 3; i++) {
+				log = new GameLog(path);
+				log.close();
+			}
+
+			log = new GameLog(path);
+			assertEquals(Collections.singleton(game), log
+					.takeUnfinishedGames().keySet());
+			assertEquals(aloneEnd,
+					log.append(game, 3, 2, new int[0], new String[0]));
+			log.close();
+
+			// A crash after the old log was deleted, but before the new one
+			// took its place.
+			File temp = new File(path.getPath() + ".tmp");
+
+			assertFalse(temp.exists());
+			assertTrue(path.renameTo(temp));
+
+			log = new GameLog(path);
+			assertEquals(4, log.takeUnfinishedGames().get(game).size());
+			log.close();
+
+		} finally {
+			alone.delete();
+			new File(alone.getPath() + ".tmp").delete();
+		}
+	}
+
+	@Test
+	public void replayTest() throws IOException, InterruptedException {
+
+		GameLog log = new GameLog(path);
+		Table table = new Table(new RoomServerProtocol(10, log), 2);
+
+		table.start("replayed");
+
+		for (int turn = 0; turn < 3; turn++) {
+			table.playTurn();
+		}
+
+		// The server stops.
+		log.close();
+
+		// The game is rebuilt from its moves, in a room of the same name;
+		// the clients joining it take its seats, and are told what happened.
+		log = new GameLog(path);
+		Table rejoined = table.rejoin(new RoomServerProtocol(10, log),
+				"replayed");
+
+		for (int seat = 0; seat < rejoined.clients.length; seat++) {
+
+			List<String> replies = rejoined.joined.get(seat);
+
+			assertEquals("ASSIGNPLAYER;player;" + seat, replies.get(0));
+			assertTrue(replies.get(1).startsWith("UPDATELOBBY"));
+			assertEquals(table.played, replies.subList(2, replies.size()));
+		}
+
+		// And the game goes on from where it was.
+		rejoined.playTurn();
+		log.close();
+	}
+
+	@Test
+	public void snapshotRecoveryTest() throws IOException,
+			InterruptedException {
+
+		GameLog log = new GameLog(path);
+		Table table = new Table(new RoomServerProtocol(10, log), 2);
+
+		table.start("snapshot");
+
+		// A snapshot is taken after the turns which make up the interval, and
+		// a few more turns are played after it.
+		int snapshotTurns = Integer.getInteger(GameLog.snapshotTurnsProperty,
+				GameLog.defaultSnapshotTurns);
+
+		for (int turn = 0; turn < snapshotTurns; turn++) {
+			table.playTurn();
+		}
+
+		int atSnapshot = table.played.size();
+
+		for (int turn = 0; turn < 2; turn++) {
+			table.playTurn();
+		}
+
+		List<String> tail = table.played.subList(atSnapshot,
+				table.played.size());
+
+		log.close();
+
+		// The game is read back as its snapshot and the records after it.
+		log = new GameLog(path);
+		List<GameLog.Record> records = log.takeUnfinishedGames().values()
+				.iterator().next();
+		GameLog.Record snapshot = records.get(0);
+
+		assertTrue(snapshot.isSnapshot());
+		assertTrue(snapshot.getSequence() > 0);
+		assertTrue(records.size() > 2);
+
+		for (int i = 1; i < records.size(); i++) {
+			assertFalse(records.get(i).isSnapshot());
+			assertEquals(snapshot.getSequence() + i - 1, records.get(i)
+					.getSequence());
+		}
+
+		log.close();
+
+		// The game is rebuilt from them; the clients are caught up on the
+		// game as of the snapshot, and then told of the moves after it.
+		log = new GameLog(path);
+		Table rejoined = table.rejoin(new RoomServerProtocol(10, log),
+				"snapshot");
+
+		for (int seat = 0; seat < rejoined.clients.length; seat++) {
+
+			List<String> replies = rejoined.joined.get(seat);
+
+			assertEquals("ASSIGNPLAYER;player;" + seat, replies.get(0));
+			assertTrue(replies.size() > 2 + tail.size());
+			assertEquals(tail, replies.subList(replies.size() - tail.size(),
+					replies.size()));
+
+			// Each tile is placed by the player who placed it.
+			assertEquals(getPlaceTileMsgs(table.played),
+					getPlaceTileMsgs(replies));
+		}
+
+		// And the game goes on from where it was.
+		rejoined.playTurn();
+		rejoined.playTurn();
+		log.close();
+	}
+
+	@Test
+	public void recoveredRoomTest() throws IOException, InterruptedException {
+
+		GameLog log = new GameLog(path);
+		Table table = new Table(new RoomServerProtocol(10, log), 2);
+
+		// A game in an unnamed room.
+		table.start(null);
+		table.playTurn();
+		log.close();
+
+		log = new GameLog(path);
+		int game = log.takeUnfinishedGames().keySet().iterator().next();
+		log.close();
+
+		log = new GameLog(path);
+		RoomServerProtocol recovered = new RoomServerProtocol(10, log);
+
+		// A client looking for any game isn't seated in the recovered one;
+		// it's given a lobby of its own.
+		TestClient stranger = new TestClient();
+		recovered.addSender(stranger.socket, stranger);
+
+		List<String> replies = stranger.send(recovered, "JOINLOBBY");
+
+		assertEquals(Arrays.asList("ASSIGNPLAYER;player;0",
+				"UPDATELOBBY;player;0;name;Player 0;color;000000000"), replies);
+		assertEquals(2, recovered.getNumRooms());
+
+		// The game's players rejoin it by the name it was given, and take its
+		// seats; and no one else can.
+		Table rejoined = table.rejoin(recovered, "game-" + game);
+
+		for (int seat = 0; seat < rejoined.clients.length; seat++) {
+			assertEquals(table.played, rejoined.joined.get(seat).subList(2,
+					rejoined.joined.get(seat).size()));
+		}
+
+		TestClient late = new TestClient();
+		recovered.addSender(late.socket, late);
+
+		assertEquals(Arrays.asList(SocketServerProtocol.NAK), late.send(
+				recovered, "JOINLOBBY;room;game-" + game));
+
+		rejoined.playTurn();
+		log.close();
+	}
+
+	@Test
+	public void failedRecoveryTest() throws IOException,
+			InterruptedException {
+
+		// A game whose records can't be replayed, after one which can.
+		GameLog log = new GameLog(path);
+		Table table = new Table(new RoomServerProtocol(10, log), 2);
+
+		table.start("replayed");
+		table.playTurn();
+
+		int broken = log.newGame();
+		log.append(broken, 0, 99, new int[] { 1 }, new String[] { "bad" });
+		log.close();
+
+		AtomicLong failures = ServerMetrics.getDefault().getCounter(
+				"log.recoverFailures");
+		long failed = failures.get();
+
+		// The broken game is counted, and ended; the other is recovered.
+		log = new GameLog(path);
+		RoomServerProtocol recovered = new RoomServerProtocol(10, log);
+
+		assertEquals(failed + 1, failures.get());
+		assertEquals(1, recovered.getNumRooms());
+		log.close();
+
+		log = new GameLog(path);
+		assertEquals(1, log.takeUnfinishedGames().size());
+		log.close();
+
+		// Its records are kept aside, and can be read back.
+		GameLog aside = new GameLog(new File(path.getPath() + ".failed"));
+		Map<Integer, List<GameLog.Record>> games = aside
+				.takeUnfinishedGames();
+
+		assertEquals(Collections.singleton(broken), games.keySet());
+		assertRecord(games.get(broken).get(0), broken, 0, 99,
+				new int[] { 1 }, new String[] { "bad" });
+		aside.close();
+	}
+
+	private static void assertRecord(GameLog.Record record, int game,
+			int sequence, int type, int[] values, String[] strings) {
+
+		assertEquals(game, record.getGame());
+		assertEquals(sequence, record.getSequence());
+		assertEquals(type, record.getType());
+		assertFalse(record.isSnapshot());
+		assertTrue(Arrays.equals(values, record.getValues()));
+		assertTrue(Arrays.equals(strings, record.getStrings()));
+	}
+
+	private static List<String> getPlaceTileMsgs(List<String> messages) {
+
+		List<String> placeTileMsgs = new ArrayList<String>();
+
+		for (String message : messages) {
+			if (message.startsWith("PLACETILE")) {
+				placeTileMsgs.add(message);
+			}
+		}
+
+		return placeTileMsgs;
+	}
+
+	private static void appendGame(GameLog log, int game, int numRecords) {
+
+		for (int i = 0; i < numRecords; i++) {
+			log.append(game, i, 2, new int[] { i, i * 1000 },
+					new String[] { "record " + i });
+		}
+	}
+
+	/**
+	 * A game played through a protocol, with a client in each seat; and a
+	 * copy of the game, kept by the messages sent, as the clients would.
+	 */
+	static class Table {
+
+		final SocketServerProtocol protocol;
+		final TestClient[] clients;
+		final Game game;
+
+		// The replies to the messages sent since the game started, and the
+		// replies to each client joining the lobby.
+		final List<String> played = new ArrayList<String>();
+		final List<List<String>> joined = new ArrayList<List<String>>();
+
+		int currentPlayer = 0;
+
+		Table(SocketServerProtocol protocol, int numPlayers) {
+			this(protocol, new Game(numPlayers));
+		}
+
+		private Table(SocketServerProtocol protocol, Game game) {
+
+			this.protocol = protocol;
+			this.game = game;
+			this.clients = new TestClient[game.getNumPlayers()];
+
+			for (int i = 0; i < clients.length; i++) {
+				clients[i] = new TestClient();
+			}
+		}
+
+		/**
+		 * Seat the clients in a room (or any room, if null), and start the
+		 * game.
+		 */
+		void start(String room) throws InterruptedException {
+
+			join(room);
+
+			List<String> replies = send(0, "INIT;numPlayers;"
+					+ clients.length);
+
+			assertTrue(replies.get(0).startsWith("INIT;currentPlayer;"));
+			currentPlayer = getInt(replies.get(0), 2);
+		}
+
+		/**
+		 * Seat new clients in the room of a game recovered by another
+		 * protocol.
+		 */
+		Table rejoin(SocketServerProtocol recovered, String room)
+				throws InterruptedException {
+
+			Table table = new Table(recovered, game);
+
+			table.currentPlayer = currentPlayer;
+			table.join(room);
+
+			return table;
+		}
+
+		private void join(String room) throws InterruptedException {
+
+			for (TestClient client : clients) {
+				protocol.addSender(client.socket, client);
+				joined.add(client.send(protocol,
+						(room != null) ? "JOINLOBBY;room;" + room : "JOINLOBBY"));
+			}
+		}
+
+		/**
+		 * Play the current player's turn; the first legal placement of the
+		 * tile drawn, without a meeple.
+		 */
+		void playTurn() throws InterruptedException {
+
+			int seat = currentPlayer;
+			Player player = game.getPlayers().get(seat);
+
+			String draw = ServerProtocolTest.getMessage(
+					send(seat, "DRAWTILE;currentPlayer;" + seat), "DRAWTILE");
+
+			assertTrue(draw != null);
+			assertEquals(0, game.drawTile(player,
+					Collections.<String> emptyList(), draw.split(";")[4]));
+
+			Tile tile = player.getCurrentTile();
+
+			while (tile.getOrientation() != getInt(draw, 6)) {
+				tile.rotateClockwise();
+			}
+
+			TilePlacement placement = game.getBoard().isEmpty() ? new TilePlacement(
+					game.getBoardWidth() / 2, game.getBoardHeight() / 2,
+					tile.getOrientation())
+					: game.getLegalPlacements(player).get(0);
+
+			while (tile.getOrientation() != placement.orientation) {
+				tile.rotateClockwise();
+				send(seat, "ROTATETILE;currentPlayer;" + seat
+						+ ";direction;clockwise");
+			}
+
+			String placed = ServerProtocolTest.getMessage(
+					send(seat, "PLACETILE;currentPlayer;" + seat + ";xBoard;"
+							+ placement.xBoard + ";yBoard;"
+							+ placement.yBoard), "PLACETILE");
+
+			assertEquals(0, getInt(placed, 8));
+			game.placeTile(player, placement.xBoard, placement.yBoard);
+
+			assertTrue(ServerProtocolTest.hasMessage(
+					send(seat, "ENDTURN;currentPlayer;" + seat), "ENDTURN"));
+			game.score(false);
+
+			currentPlayer = (seat + 1) % clients.length;
+		}
+
+		private List<String> send(int seat, String input)
+				throws InterruptedException {
+
+			List<String> replies = clients[seat].send(protocol, input);
+			played.addAll(replies);
+
+			return replies;
+		}
+	}
+
+	// The int value of the token at an index of a message.
+	private static int getInt(String message, int index) {
+		return Integer.parseInt(message.split(";")[index]);
+	}
+
+	/**
+	 * A client of a protocol, which keeps the replies it's sent after the fact
+	 * apart from the broadcasts.
+	 */
+	static class TestClient implements ClientWriter {
+
+		final Socket socket = new Socket();
+		final List<String> broadcasts = new ArrayList<String>();
+
+		private final List<String> replies = new ArrayList<String>();
+
+		@Override
+		public synchronized void println(String message) {
+			broadcasts.add(message);
+		}
+
+		@Override
+		public synchronized void println(List<String> messages) {
+			broadcasts.addAll(messages);
+		}
+
+		@Override
+		public synchronized void printReplies(List<String> messages) {
+			replies.addAll(messages);
+			notifyAll();
+		}
+
+		@Override
+		public void close() {
+		}
+
+		/**
+		 * Send a message, and get the replies; they're sent by the log's
+		 * thread, if they're about a move, once it's on disk.
+		 */
+		List<String> send(SocketServerProtocol protocol, String input)
+				throws InterruptedException {
+
+			List<String> sent = protocol.processInput(socket, input);
+
+			if (sent.isEmpty()) {
+				sent = awaitReplies();
+			}
+
+			return sent;
+		}
+
+		private synchronized List<String> awaitReplies()
+				throws InterruptedException {
+
+			long deadline = System.currentTimeMillis() + 10000;
+
+			while (replies.isEmpty()) {
+
+				long timeout = deadline - System.currentTimeMillis();
+
+				if (timeout <= 0) {
+					fail("No replies were sent.");
+				}
+
+				wait(timeout);
+			}
+
+			List<String> sent = new ArrayList<String>(replies);
+			replies.clear();
+
+			return sent;
+		}
+	}
+}
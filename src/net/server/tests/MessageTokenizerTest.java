@@ -0,0 +1,205 @@
+package net.server.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import net.server.MessageTokenizer;
+
+import org.junit.Test;
+
+public class MessageTokenizerTest {
+
+	private static final String[] names = { "EXIT", "JOINLOBBY",
+			"UPDATEPLAYER", "LEAVELOBBY", "LEAVEGAME", "INIT", "DRAWTILE",
+			"ROTATETILE", "PLACETILE", "PLACEMEEPLE", "ENDTURN", "Aa", "BB" };
+
+	@Test
+	public void parseIntTest() {
+
+		String[] tokens = { "0", "7", "42", "-0", "+0", "-7", "+7", "007",
+				"-007", "2147483647", "+2147483647", "-2147483648",
+				"2147483648", "-2147483649", "+2147483648", "99999999999",
+				"-99999999999", "00000000002147483647", "", "-", "+", "--1",
+				"+-1", "-+1", "1-", " 1", "1 ", "1.0", "1e3", "0x1F", "a",
+				"\u0663\u0661", "-\u0661\u0662", "\uff11\uff12", "1\u00b2",
+				"\u00bd" };
+
+		MessageTokenizer tokenizer = new MessageTokenizer(names);
+
+		for (String token : tokens) {
+			assertParity(tokenizer, token);
+		}
+	}
+
+	@Test
+	public void parseIntFuzzTest() {
+
+		MessageTokenizer tokenizer = new MessageTokenizer(names);
+		Random random = new Random(1);
+		String alphabet = "0123456789-+ x";
+
+		for (int i = 0; i < 20000; i++) {
+
+			StringBuilder token = new StringBuilder();
+
+			if (i % 2 == 0) {
+
+				// Ints near the ends of the range, and all between.
+				long value = (i % 4 == 0) ? random.nextInt()
+						: Integer.MAX_VALUE - random.nextInt(1000)
+								* ((random.nextBoolean()) ? 1L : -1L);
+
+				if (i % 8 == 0) {
+					value = -value - 1;
+				}
+
+				token.append(value);
+
+			} else {
+				for (int length = random.nextInt(13); length > 0; length--) {
+					token.append(alphabet.charAt(random.nextInt(alphabet
+							.length())));
+				}
+			}
+
+			assertParity(tokenizer, token.toString());
+		}
+	}
+
+	@Test
+	public void emptyTokenTest() {
+
+		MessageTokenizer tokenizer = new MessageTokenizer(names);
+
+		tokenizer.tokenize("");
+		assertEquals(1, tokenizer.getNumTokens());
+		assertEquals("", tokenizer.getString(0));
+		assertEquals(-1, tokenizer.getOpcode());
+
+		// Empty tokens are kept, first, between and last, as the protocol
+		// counts them.
+		tokenizer.tokenize(";PLACETILE;;1;");
+		assertEquals(5, tokenizer.getNumTokens());
+		assertTrue(tokenizer.equals(0, ""));
+		assertTrue(tokenizer.equals(1, "PLACETILE"));
+		assertTrue(tokenizer.equals(2, ""));
+		assertFalse(tokenizer.equals(2, "1"));
+		assertEquals(1, tokenizer.getInt(3));
+		assertEquals("", tokenizer.getString(4));
+		assertEquals(-1, tokenizer.getOpcode());
+
+		tokenizer.tokenize(";;");
+		assertEquals(3, tokenizer.getNumTokens());
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("", tokenizer.getString(i));
+		}
+	}
+
+	@Test
+	public void opcodeTest() {
+
+		MessageTokenizer tokenizer = new MessageTokenizer(names);
+
+		for (int opcode = 0; opcode < names.length; opcode++) {
+
+			tokenizer.tokenize(names[opcode]);
+			assertEquals(opcode, tokenizer.getOpcode());
+
+			tokenizer.tokenize(names[opcode] + ";currentPlayer;1");
+			assertEquals(opcode, tokenizer.getOpcode());
+		}
+
+		// "Aa" and "BB" share a hash, and so a slot; each is told apart.
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		String[] unknown = { "FOO", "exit", "Exit", "JOIN", "JOINLOBBYX",
+				"XEXIT", " EXIT", "EXIT ", "Ab", "AaBB", "PLACE", "\u0000" };
+
+		for (String name : unknown) {
+
+			tokenizer.tokenize(name);
+			assertEquals(name, -1, tokenizer.getOpcode());
+
+			tokenizer.tokenize(name + ";EXIT");
+			assertEquals(name, -1, tokenizer.getOpcode());
+		}
+
+		// With no names, nothing is known.
+		MessageTokenizer none = new MessageTokenizer();
+
+		none.tokenize("EXIT");
+		assertEquals(-1, none.getOpcode());
+	}
+
+	@Test
+	public void indexTest() {
+
+		MessageTokenizer tokenizer = new MessageTokenizer(names);
+
+		// A longer message first, so the tokens of the next are read from
+		// arrays which had more in them.
+		StringBuilder longMessage = new StringBuilder("SCORE");
+
+		for (int i = 0; i < 100; i++) {
+			longMessage.append(";meeple;xBoard;").append(i);
+		}
+
+		tokenizer.tokenize(longMessage.toString());
+		assertEquals(301, tokenizer.getNumTokens());
+		assertEquals(99, tokenizer.getInt(300));
+
+		tokenizer.tokenize("ENDTURN;currentPlayer;1");
+		assertEquals(3, tokenizer.getNumTokens());
+
+		for (int index : new int[] { -1, 3, 4, 300, Integer.MAX_VALUE,
+				Integer.MIN_VALUE }) {
+
+			try {
+				tokenizer.getInt(index);
+				fail("getInt read token " + index + ".");
+			} catch (IndexOutOfBoundsException e) {
+			}
+
+			try {
+				tokenizer.getString(index);
+				fail("getString read token " + index + ".");
+			} catch (IndexOutOfBoundsException e) {
+			}
+
+			try {
+				tokenizer.equals(index, "");
+				fail("equals read token " + index + ".");
+			} catch (IndexOutOfBoundsException e) {
+			}
+		}
+	}
+
+	// The token, in the middle of a message, is parsed as Integer.parseInt
+	// parses it, or refused as it is.
+	private static void assertParity(MessageTokenizer tokenizer, String token) {
+
+		tokenizer.tokenize("PLACETILE;" + token + ";1");
+
+		Integer expected;
+
+		try {
+			expected = Integer.parseInt(token);
+		} catch (NumberFormatException e) {
+			expected = null;
+		}
+
+		try {
+			int value = tokenizer.getInt(1);
+			assertEquals(token, expected, Integer.valueOf(value));
+		} catch (NumberFormatException e) {
+			assertEquals(token, null, expected);
+		}
+
+		assertEquals(token, token, tokenizer.getString(1));
+	}
+}
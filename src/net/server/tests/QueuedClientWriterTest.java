@@ -0,0 +1,181 @@
+package net.server.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import net.client.MessageWriter;
+import net.server.OutboundLimits;
+import net.server.QueuedClientWriter;
+
+import org.junit.Test;
+
+public class QueuedClientWriterTest {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final HeldExecutor executor = new HeldExecutor();
+	private final CountingClose onClose = new CountingClose();
+
+	@Test
+	public void dropTest() {
+
+		OutboundLimits limits = new OutboundLimits(3,
+				OutboundLimits.Overflow.DROP);
+		QueuedClientWriter writer = newWriter(limits);
+
+		// The client isn't reading; its writing task never runs.
+		writer.println("ENDTURN;currentPlayer;0");
+		writer.println(Arrays.asList("SCORE", "ENDTURN;currentPlayer;1"));
+		writer.println("ENDTURN;currentPlayer;2");
+
+		assertEquals(3, limits.getQueued());
+		assertEquals(3, limits.getMaxQueueDepth());
+		assertEquals(0, limits.getDropped());
+
+		// Once the queue is full, batches are dropped and counted.
+		writer.println("ENDTURN;currentPlayer;3");
+		writer.println(Arrays.asList("SCORE", "ENDTURN;currentPlayer;4"));
+
+		assertEquals(2, limits.getDropped());
+		assertEquals(0, limits.getDisconnected());
+		assertEquals(3, limits.getQueued());
+		assertEquals(0, onClose.count);
+
+		// Replies sent after the fact aren't dropped.
+		writer.printReplies(Arrays.asList("PLACETILE;currentPlayer;0;xBoard;1;yBoard;2;error;0"));
+
+		assertEquals(2, limits.getDropped());
+		assertEquals(4, limits.getQueued());
+
+		// When the client catches up, it gets what was queued, in order,
+		// and nothing which was dropped.
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+
+		assertEquals("ENDTURN;currentPlayer;0\nSCORE\nENDTURN;currentPlayer;1\n"
+				+ "ENDTURN;currentPlayer;2\n"
+				+ "PLACETILE;currentPlayer;0;xBoard;1;yBoard;2;error;0\n",
+				written());
+		assertEquals(0, limits.getQueued());
+
+		// And messages are queued again.
+		writer.println("ENDTURN;currentPlayer;5");
+
+		assertEquals(1, limits.getQueued());
+		assertEquals(2, limits.getDropped());
+		executor.runAll();
+		assertTrue(written().endsWith("ENDTURN;currentPlayer;5\n"));
+
+		writer.close();
+		assertEquals(1, onClose.count);
+	}
+
+	@Test
+	public void disconnectTest() {
+
+		OutboundLimits limits = new OutboundLimits(3,
+				OutboundLimits.Overflow.DISCONNECT);
+		QueuedClientWriter writer = newWriter(limits);
+
+		for (int i = 0; i < 3; i++) {
+			writer.println("ENDTURN;currentPlayer;" + i);
+		}
+
+		assertEquals(3, limits.getQueued());
+		assertEquals(0, onClose.count);
+
+		// The queue is full; the client is closed at once, and what was
+		// queued for it is thrown away.
+		writer.println("ENDTURN;currentPlayer;3");
+
+		assertEquals(1, onClose.count);
+		assertEquals(1, limits.getDisconnected());
+		assertEquals(0, limits.getDropped());
+		assertEquals(0, limits.getQueued());
+
+		// Nothing more is queued, and the client is only closed once.
+		writer.println("ENDTURN;currentPlayer;4");
+		writer.printReplies(Arrays.asList("NAK"));
+		writer.close();
+
+		assertEquals(0, limits.getQueued());
+		assertEquals(1, limits.getDisconnected());
+
+		// The task which was to write the queue finds it empty.
+		executor.runAll();
+
+		assertEquals(1, onClose.count);
+		assertEquals("", written());
+	}
+
+	@Test
+	public void closeTest() {
+
+		OutboundLimits limits = new OutboundLimits(3,
+				OutboundLimits.Overflow.DISCONNECT);
+		QueuedClientWriter writer = newWriter(limits);
+
+		// Closing waits for what was queued to be written.
+		writer.println("EXIT");
+		writer.close();
+
+		assertEquals(0, onClose.count);
+
+		executor.runAll();
+
+		assertEquals("EXIT\n", written());
+		assertEquals(1, onClose.count);
+		assertEquals(0, limits.getDisconnected());
+
+		// An idle writer closes at once, and only once.
+		QueuedClientWriter idle = newWriter(limits);
+
+		idle.close();
+		idle.close();
+
+		assertEquals(2, onClose.count);
+	}
+
+	private QueuedClientWriter newWriter(OutboundLimits limits) {
+		return new QueuedClientWriter(new MessageWriter(out), executor,
+				limits, onClose);
+	}
+
+	private String written() {
+		return out.toString().replace("\r\n", "\n");
+	}
+
+	// Holds the writing tasks until the test runs them, as though the client
+	// had stopped reading.
+	private static class HeldExecutor implements Executor {
+
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		void runAll() {
+
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+
+	private static class CountingClose implements Runnable {
+
+		int count = 0;
+
+		@Override
+		public void run() {
+			count++;
+		}
+	}
+}
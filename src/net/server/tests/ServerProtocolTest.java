@@ -0,0 +1,171 @@
+package net.server.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.Game;
+import model.tests.GameTest;
+import net.client.SocketClientProtocol;
+import net.server.ClientWriter;
+import net.server.ServerProtocol;
+
+import org.junit.Test;
+
+public class ServerProtocolTest {
+
+	/**
+	 * Keeps the messages sent to a client.
+	 */
+	public static class RecordingWriter implements ClientWriter {
+
+		public final List<String> messages = new ArrayList<String>();
+		public boolean closed = false;
+
+		@Override
+		public synchronized void println(String message) {
+			messages.add(message);
+		}
+
+		@Override
+		public synchronized void println(List<String> batch) {
+			messages.addAll(batch);
+		}
+
+		@Override
+		public synchronized void printReplies(List<String> batch) {
+			messages.addAll(batch);
+		}
+
+		@Override
+		public synchronized void close() {
+			closed = true;
+		}
+	}
+
+	// Plays a game made by the test.
+	private static class FixedGameProtocol extends ServerProtocol {
+
+		private final Game fixedGame;
+
+		FixedGameProtocol(Game fixedGame) {
+			this.fixedGame = fixedGame;
+		}
+
+		@Override
+		protected Game newGame(int numPlayers) {
+			return fixedGame;
+		}
+	}
+
+	@Test
+	public void drawUnplaceableTest() {
+
+		ServerProtocol protocol = new FixedGameProtocol(
+				GameTest.makeUnplaceableGame(2));
+		Socket first = new Socket();
+		Socket second = new Socket();
+		RecordingWriter firstWriter = new RecordingWriter();
+		RecordingWriter secondWriter = new RecordingWriter();
+
+		protocol.addSender(first, firstWriter);
+		protocol.addSender(second, secondWriter);
+
+		send(protocol, first, firstWriter, "JOINLOBBY");
+		send(protocol, second, secondWriter, "JOINLOBBY");
+		assertTrue(send(protocol, first, firstWriter, "INIT;numPlayers;2")
+				.get(0).startsWith("INIT;currentPlayer;0"));
+
+		// Every tile left is set aside; there is nothing to place, so the
+		// game is over.
+		List<String> replies = send(protocol, first, firstWriter,
+				"DRAWTILE;currentPlayer;0");
+
+		assertFalse(replies.contains(SocketClientProtocol.NAK));
+		assertTrue(hasMessage(replies, "SCORE"));
+		assertTrue(hasMessage(replies, "INFO;game;"));
+		assertFalse(hasMessage(replies, "DRAWTILE"));
+		assertTrue(getMessage(replies, "INFO;game;").contains(
+				";drawPileEmpty;1"));
+
+		// The other player is told too.
+		assertTrue(getMessage(secondWriter.messages, "INFO;game;").contains(
+				";drawPileEmpty;1"));
+
+		// No more tiles are drawn, and the game has ended.
+		assertTrue(send(protocol, first, firstWriter,
+				"DRAWTILE;currentPlayer;0").contains(SocketClientProtocol.NAK));
+		assertTrue(send(protocol, first, firstWriter,
+				"ENDTURN;currentPlayer;0").contains(SocketClientProtocol.EXIT));
+	}
+
+	@Test
+	public void replyOrderTest() {
+
+		ServerProtocol protocol = new ServerProtocol();
+		Socket first = new Socket();
+		Socket second = new Socket();
+		RecordingWriter firstWriter = new RecordingWriter();
+		RecordingWriter secondWriter = new RecordingWriter();
+
+		protocol.addSender(first, firstWriter);
+		protocol.addSender(second, secondWriter);
+
+		// The replies go to the client's writer, in order with the broadcasts
+		// of the messages processed before, rather than back to the caller.
+		assertTrue(protocol.processInput(first, "JOINLOBBY").isEmpty());
+		protocol.processInput(second, "JOINLOBBY");
+		assertTrue(protocol.processInput(first, "INIT;numPlayers;2").isEmpty());
+
+		List<String> messages = firstWriter.messages;
+
+		assertEquals(4, messages.size());
+		assertTrue(messages.get(0).startsWith("ASSIGNPLAYER;player;0"));
+		assertTrue(messages.get(1).startsWith("UPDATELOBBY"));
+		assertTrue(messages.get(2).endsWith("name;Player 1;color;000000255"));
+		assertTrue(messages.get(3).startsWith("INIT"));
+
+		// A client without a writer still gets them back.
+		assertTrue(protocol.processInput(null, "JOINLOBBY").contains(
+				SocketClientProtocol.NAK));
+	}
+
+	// Send a message, and get the replies written to the client.
+	private static List<String> send(ServerProtocol protocol, Socket sender,
+			RecordingWriter writer, String input) {
+
+		int written = writer.messages.size();
+
+		assertTrue(protocol.processInput(sender, input).isEmpty());
+
+		return new ArrayList<String>(writer.messages.subList(written,
+				writer.messages.size()));
+	}
+
+	/**
+	 * Get whether there is a message which starts with a prefix.
+	 */
+	public static boolean hasMessage(List<String> messages, String prefix) {
+		return getMessage(messages, prefix) != null;
+	}
+
+	/**
+	 * Get the last message which starts with a prefix, or null.
+	 */
+	public static String getMessage(List<String> messages, String prefix) {
+
+		String found = null;
+
+		for (String message : messages) {
+			if (message.startsWith(prefix)) {
+				found = message;
+			}
+		}
+
+		return found;
+	}
+}
@@ -0,0 +1,103 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import model.Board;
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+import model.TileType;
+
+/*
+ * A simple greedy player.
+ *
+ * Tiles are placed where they touch the most placed tiles (including the
+ * diagonals), which tends to complete features, and cloisters in particular.
+ * A meeple is placed whenever possible, preferring cloisters, then cities, then
+ * roads; fields are never claimed. Ties are broken at random.
+ */
+public class GreedyPolicy implements MovePolicy {
+
+	// The tile types a meeple is placed on, most preferred first.
+	private static final TileType[] meeplePreference = { TileType.CLOISTER,
+			TileType.CITY, TileType.ROAD };
+
+	@Override
+	public TilePlacement chooseTilePlacement(Game game, Player player,
+			ArrayList<TilePlacement> placements, Random random) {
+
+		Board board = game.getBoard();
+		TilePlacement best = null;
+		int bestNeighbors = -1;
+		int numBest = 0;
+
+		for (TilePlacement placement : placements) {
+
+			int neighbors = countNeighbors(board, placement.xBoard,
+					placement.yBoard);
+
+			if (neighbors > bestNeighbors) {
+				best = placement;
+				bestNeighbors = neighbors;
+				numBest = 1;
+
+			} else if (neighbors == bestNeighbors
+					&& random.nextInt(++numBest) == 0) {
+				// Reservoir sampling; each of the best is equally likely.
+				best = placement;
+			}
+		}
+
+		return best;
+	}
+
+	@Override
+	public BoardPosition chooseMeeplePlacement(Game game, Player player,
+			int xBoard, int yBoard, Random random) {
+
+		Board board = game.getBoard();
+		Tile tile = board.getTile(xBoard, yBoard);
+
+		for (TileType tileType : meeplePreference) {
+
+			// Start from the center of the tile, and work outwards.
+			for (int distance = 0; distance <= Tile.tileSize / 2; distance++) {
+				for (int yTile = 0; yTile < Tile.tileSize; yTile++) {
+					for (int xTile = 0; xTile < Tile.tileSize; xTile++) {
+
+						int center = Tile.tileSize / 2;
+						int d = Math.max(Math.abs(xTile - center),
+								Math.abs(yTile - center));
+
+						if (d == distance
+								&& tile.getTileType(xTile, yTile) == tileType
+								&& board.getMeeple(xBoard, yBoard, xTile, yTile) == null) {
+							return new BoardPosition(xBoard, yBoard, xTile,
+									yTile);
+						}
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static int countNeighbors(Board board, int xBoard, int yBoard) {
+
+		int neighbors = 0;
+
+		for (int y = yBoard - 1; y <= yBoard + 1; y++) {
+			for (int x = xBoard - 1; x <= xBoard + 1; x++) {
+				if (board.getTile(x, y) != null) {
+					neighbors++;
+				}
+			}
+		}
+
+		return neighbors;
+	}
+}
@@ -0,0 +1,57 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.TilePlacement;
+
+/*
+ * Decides the moves of a player in a simulated game.
+ *
+ * A policy may be shared by many games running at once, so it must not keep
+ * any per-game state; any randomness should come from the random number
+ * generator which is passed in, which belongs to the game being played.
+ */
+public interface MovePolicy {
+
+	/**
+	 * Choose where to place the player's current tile.
+	 * 
+	 * @param game
+	 *            The game being played.
+	 * @param player
+	 *            The player whose turn it is.
+	 * @param placements
+	 *            The legal placements of the player's current tile (never
+	 *            empty).
+	 * @param random
+	 *            The random number generator of the game.
+	 * 
+	 * @return One of the legal placements.
+	 */
+	public TilePlacement chooseTilePlacement(Game game, Player player,
+			ArrayList<TilePlacement> placements, Random random);
+
+	/**
+	 * Choose where to place a meeple, on the tile the player has just placed.
+	 * This is only asked when the player has a meeple which is not in play.
+	 * 
+	 * @param game
+	 *            The game being played.
+	 * @param player
+	 *            The player whose turn it is.
+	 * @param xBoard
+	 *            The x position on the board of the placed tile.
+	 * @param yBoard
+	 *            The y position on the board of the placed tile.
+	 * @param random
+	 *            The random number generator of the game.
+	 * 
+	 * @return The position to place the meeple, or null to not place one.
+	 */
+	public BoardPosition chooseMeeplePlacement(Game game, Player player,
+			int xBoard, int yBoard, Random random);
+}
@@ -0,0 +1,55 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+
+/*
+ * Plays a random legal tile placement, and places a meeple on a random
+ * position of the placed tile some of the time.
+ */
+public class RandomPolicy implements MovePolicy {
+
+	private final double meepleChance;
+
+	public RandomPolicy() {
+		this(1.0 / 3);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param meepleChance
+	 *            The chance (0 to 1) of trying to place a meeple each turn.
+	 */
+	public RandomPolicy(double meepleChance) {
+		this.meepleChance = meepleChance;
+	}
+
+	@Override
+	public TilePlacement chooseTilePlacement(Game game, Player player,
+			ArrayList<TilePlacement> placements, Random random) {
+		return placements.get(random.nextInt(placements.size()));
+	}
+
+	@Override
+	public BoardPosition chooseMeeplePlacement(Game game, Player player,
+			int xBoard, int yBoard, Random random) {
+
+		if (random.nextDouble() >= meepleChance) {
+			return null;
+		}
+
+		// Stay away from the edges of the tile, where positions are often on
+		// the same feature as their neighbors.
+		int xTile = 1 + random.nextInt(Tile.tileSize - 2);
+		int yTile = 1 + random.nextInt(Tile.tileSize - 2);
+
+		return new BoardPosition(xBoard, yBoard, xTile, yTile);
+	}
+}
@@ -0,0 +1,85 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.TilePlacement;
+
+/*
+ * Plays moves from a script, such as the moves of a recorded game.
+ *
+ * The script is indexed by the number of tiles on the board, so that the same
+ * script can be shared by games running at once. When the scripted move for a
+ * turn is missing or not legal (the tiles may have been drawn in a different
+ * order) the move is left to a fallback policy.
+ */
+public class ScriptedPolicy implements MovePolicy {
+
+	private final ArrayList<TilePlacement> tilePlacements;
+	private final ArrayList<BoardPosition> meeplePlacements;
+	private final MovePolicy fallback;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param tilePlacements
+	 *            The tile placement of each turn, indexed by the number of
+	 *            tiles on the board before the tile is placed. An entry may be
+	 *            null.
+	 * @param meeplePlacements
+	 *            The meeple placement of each turn, indexed the same way. An
+	 *            entry may be null, for no meeple to be placed.
+	 * @param fallback
+	 *            The policy to use when the script has no legal move.
+	 */
+	public ScriptedPolicy(ArrayList<TilePlacement> tilePlacements,
+			ArrayList<BoardPosition> meeplePlacements, MovePolicy fallback) {
+		this.tilePlacements = tilePlacements;
+		this.meeplePlacements = meeplePlacements;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public TilePlacement chooseTilePlacement(Game game, Player player,
+			ArrayList<TilePlacement> placements, Random random) {
+
+		TilePlacement placement = getEntry(tilePlacements, game.getBoard()
+				.getNumTiles());
+
+		if (placement != null && placements.contains(placement)) {
+			return placement;
+		}
+
+		return fallback.chooseTilePlacement(game, player, placements, random);
+	}
+
+	@Override
+	public BoardPosition chooseMeeplePlacement(Game game, Player player,
+			int xBoard, int yBoard, Random random) {
+
+		// The tile of this turn has already been placed.
+		int turn = game.getBoard().getNumTiles() - 1;
+
+		if (turn >= meeplePlacements.size()) {
+			return fallback.chooseMeeplePlacement(game, player, xBoard, yBoard,
+					random);
+		}
+
+		BoardPosition position = meeplePlacements.get(turn);
+
+		// Only follow the script if it is for the tile which was placed.
+		if (position != null
+				&& (position.xBoard != xBoard || position.yBoard != yBoard)) {
+			return null;
+		}
+
+		return position;
+	}
+
+	private static <T> T getEntry(ArrayList<T> list, int index) {
+		return (index < list.size()) ? list.get(index) : null;
+	}
+}
@@ -0,0 +1,202 @@
+package sim;
+
+import java.util.Arrays;
+
+/*
+ * The results of a batch of simulated games.
+ *
+ * Each worker fills in its own stats, which are then merged, so there is no
+ * locking while games are being played.
+ */
+public class SimulationStats {
+
+	// The width of each bucket of the score histogram.
+	public static final int bucketSize = 10;
+
+	private int games = 0;
+	private long turns = 0;
+	private long meeplesPlaced = 0;
+	private long elapsedNanos = 0;
+
+	// Final scores, over every player of every game.
+	private long scores = 0;
+	private long scoreTotal = 0;
+	private int minScore = Integer.MAX_VALUE;
+	private int maxScore = Integer.MIN_VALUE;
+	private long[] histogram = new long[0];
+
+	// The number of games won (or tied for first) by each seat.
+	private long[] wins;
+
+	public SimulationStats(int numPlayers) {
+		wins = new long[numPlayers];
+	}
+
+	/**
+	 * Record a finished game.
+	 * 
+	 * @param finalScores
+	 *            The final score of each player, in seat order.
+	 * @param numTurns
+	 *            The number of turns played.
+	 * @param numMeeples
+	 *            The number of meeples placed during the game.
+	 */
+	public void addGame(int[] finalScores, int numTurns, int numMeeples) {
+
+		int best = Integer.MIN_VALUE;
+
+		for (int score : finalScores) {
+
+			addScore(score);
+			best = Math.max(best, score);
+		}
+
+		for (int seat = 0; seat < finalScores.length; seat++) {
+			if (finalScores[seat] == best) {
+				wins[seat]++;
+			}
+		}
+
+		games++;
+		turns += numTurns;
+		meeplesPlaced += numMeeples;
+	}
+
+	private void addScore(int score) {
+
+		int bucket = Math.max(score, 0) / bucketSize;
+
+		if (bucket >= histogram.length) {
+			histogram = Arrays.copyOf(histogram, bucket + 1);
+		}
+
+		histogram[bucket]++;
+		scores++;
+		scoreTotal += score;
+		minScore = Math.min(minScore, score);
+		maxScore = Math.max(maxScore, score);
+	}
+
+	/**
+	 * Add the results of another batch of games to these.
+	 */
+	public void merge(SimulationStats other) {
+
+		games += other.games;
+		turns += other.turns;
+		meeplesPlaced += other.meeplesPlaced;
+		scores += other.scores;
+		scoreTotal += other.scoreTotal;
+		minScore = Math.min(minScore, other.minScore);
+		maxScore = Math.max(maxScore, other.maxScore);
+
+		if (other.histogram.length > histogram.length) {
+			histogram = Arrays.copyOf(histogram, other.histogram.length);
+		}
+
+		for (int i = 0; i < other.histogram.length; i++) {
+			histogram[i] += other.histogram[i];
+		}
+
+		for (int i = 0; i < wins.length && i < other.wins.length; i++) {
+			wins[i] += other.wins[i];
+		}
+	}
+
+	public void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public int getGames() {
+		return games;
+	}
+
+	public long getTurns() {
+		return turns;
+	}
+
+	public long getMeeplesPlaced() {
+		return meeplesPlaced;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public int getMinScore() {
+		return minScore;
+	}
+
+	public int getMaxScore() {
+		return maxScore;
+	}
+
+	public double getMeanScore() {
+		return (scores == 0) ? 0 : (double) scoreTotal / scores;
+	}
+
+	public double getGamesPerSecond() {
+		return games / (elapsedNanos / 1e9);
+	}
+
+	public double getTurnsPerSecond() {
+		return turns / (elapsedNanos / 1e9);
+	}
+
+	/**
+	 * Get the number of final scores in each bucket of bucketSize points; the
+	 * first bucket also holds any negative scores.
+	 */
+	public long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	public long[] getWins() {
+		return wins.clone();
+	}
+
+	/**
+	 * Describe the results, for printing.
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+
+		report.append(String.format("games: %d, turns: %d, meeples: %d%n",
+				games, turns, meeplesPlaced));
+		report.append(String.format("elapsed: %.3f s%n", elapsedNanos / 1e9));
+		report.append(String.format("games/sec: %.1f, turns/sec: %.1f%n",
+				getGamesPerSecond(), getTurnsPerSecond()));
+
+		if (scores == 0) {
+			return report.toString();
+		}
+
+		report.append(String.format("score min: %d, max: %d, mean: %.2f%n",
+				minScore, maxScore, getMeanScore()));
+
+		for (int seat = 0; seat < wins.length; seat++) {
+			report.append(String.format("seat %d wins: %d (%.1f%%)%n", seat,
+					wins[seat], 100.0 * wins[seat] / games));
+		}
+
+		long most = 0;
+
+		for (long count : histogram) {
+			most = Math.max(most, count);
+		}
+
+		for (int i = 0; i < histogram.length; i++) {
+
+			int bar = (int) (50 * histogram[i] / most);
+			char[] bars = new char[bar];
+			Arrays.fill(bars, '#');
+
+			report.append(String.format("%4d-%-4d %8d %s%n", i * bucketSize,
+					(i + 1) * bucketSize - 1, histogram[i], new String(bars)));
+		}
+
+		return report.toString();
+	}
+}
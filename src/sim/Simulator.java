@@ -0,0 +1,243 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import model.BoardPosition;
+import model.Game;
+import model.Player;
+import model.Tile;
+import model.TilePlacement;
+
+/*
+ * Plays complete games headlessly, with no UI or sockets, many at once.
+ *
+ * The games are split between the workers of a fork-join pool (by default one
+ * per core); each game is played start to finish on one thread, and each
+ * worker collects its own SimulationStats, which are merged at the end. Every
+ * seat of a game is played by a MovePolicy, and game i is given a random
+ * number generator seeded with seed + i, which decides the order of its draw
+ * pile, and which its policies use; so every game can be played again, move
+ * for move, from its seed.
+ *
+ * Usage: Simulator [games] [players] [policy...]
+ *
+ * where each policy is one of random or greedy, and is given to the seats in
+ * turn (the default is random for every seat).
+ */
+public class Simulator {
+
+	// Where the first tile is placed; the center of the board the UI expects.
+	public static final int xCenter = 72;
+	public static final int yCenter = 72;
+
+	// Games are split until each task has no more than this many.
+	private static final int gamesPerTask = 16;
+
+	private final ForkJoinPool pool;
+	private final MovePolicy[] policies;
+	private final long seed;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param pool
+	 *            The pool to play the games on.
+	 * @param policies
+	 *            The policy of each seat; the number of policies is the number
+	 *            of players in each game.
+	 * @param seed
+	 *            The seed of the first game's random number generator.
+	 */
+	public Simulator(ForkJoinPool pool, MovePolicy[] policies, long seed) {
+		this.pool = pool;
+		this.policies = policies.clone();
+		this.seed = seed;
+	}
+
+	/**
+	 * Play a number of games, and wait for them all to finish.
+	 * 
+	 * @param numGames
+	 *            The number of games to play.
+	 * 
+	 * @return The results of the games.
+	 */
+	public SimulationStats run(int numGames) {
+
+		long start = System.nanoTime();
+		SimulationStats stats = pool.invoke(new GamesTask(0, numGames));
+		stats.setElapsedNanos(System.nanoTime() - start);
+
+		return stats;
+	}
+
+	/**
+	 * Play one complete game.
+	 * 
+	 * @param index
+	 *            The index of the game, which decides its random seed.
+	 * @param stats
+	 *            The stats to record the game in.
+	 */
+	public void playGame(int index, SimulationStats stats) {
+
+		Random random = new Random(seed + index);
+		Game game = new Game(policies.length, random.nextLong());
+		ArrayList<Player> players = game.getPlayers();
+		int turns = 0;
+		int meeples = 0;
+
+		while (true) {
+
+			int seat = turns % players.size();
+			Player player = players.get(seat);
+			MovePolicy policy = policies[seat];
+
+			if (game.drawTile(player) != 0) {
+				break;
+			}
+
+			TilePlacement placement;
+
+			if (game.getBoard().isEmpty()) {
+				placement = new TilePlacement(xCenter, yCenter, player
+						.getCurrentTile().getOrientation());
+			} else {
+				placement = policy.chooseTilePlacement(game, player,
+						game.getLegalPlacements(player), random);
+			}
+
+			Tile tile = player.getCurrentTile();
+
+			while (tile.getOrientation() != placement.orientation) {
+				tile.rotateClockwise();
+			}
+
+			if (game.placeTile(player, placement.xBoard, placement.yBoard) != 0) {
+				throw new IllegalStateException("Policy " + policy
+						+ " chose an illegal placement.");
+			}
+
+			if (game.getNumMeeplesPlaced(player) < Player.NUM_MEEPLES) {
+
+				BoardPosition position = policy.chooseMeeplePlacement(game,
+						player, placement.xBoard, placement.yBoard, random);
+
+				if (position != null
+						&& game.placeMeeple(player, position.xBoard,
+								position.yBoard, position.xTile,
+								position.yTile) == 0) {
+					meeples++;
+				}
+			}
+
+			game.score(false);
+			turns++;
+		}
+
+		game.score(true);
+
+		int[] scores = new int[players.size()];
+
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = players.get(i).getScore();
+		}
+
+		stats.addGame(scores, turns, meeples);
+	}
+
+	/*
+	 * Plays a range of games, splitting it in half until it is small enough.
+	 */
+	private class GamesTask extends RecursiveTask<SimulationStats> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int first;
+		private final int last;
+
+		GamesTask(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected SimulationStats compute() {
+
+			if (last - first <= gamesPerTask) {
+
+				SimulationStats stats = new SimulationStats(policies.length);
+
+				for (int i = first; i < last; i++) {
+					playGame(i, stats);
+				}
+
+				return stats;
+			}
+
+			int middle = (first + last) >>> 1;
+			GamesTask left = new GamesTask(first, middle);
+			GamesTask right = new GamesTask(middle, last);
+
+			left.fork();
+			SimulationStats stats = right.compute();
+			stats.merge(left.join());
+
+			return stats;
+		}
+	}
+
+	/**
+	 * Get a policy by name.
+	 * 
+	 * @param name
+	 *            One of random or greedy.
+	 * 
+	 * @return The policy.
+	 */
+	public static MovePolicy getPolicy(String name) {
+
+		if (name.equals("random")) {
+			return new RandomPolicy();
+		} else if (name.equals("greedy")) {
+			return new GreedyPolicy();
+		}
+
+		throw new IllegalArgumentException("Unknown policy: " + name);
+	}
+
+	public static void main(String[] args) {
+
+		int numGames = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int numPlayers = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+
+		if (numPlayers < 1 || numPlayers > Game.getMaxPlayers()) {
+			System.err.println("Players must be from 1 to "
+					+ Game.getMaxPlayers() + ".");
+			System.exit(1);
+		}
+
+		MovePolicy[] policies = new MovePolicy[numPlayers];
+
+		for (int i = 0; i < numPlayers; i++) {
+			String name = (args.length > 2) ? args[2 + i % (args.length - 2)]
+					: "random";
+			policies[i] = getPolicy(name);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool();
+		Simulator simulator = new Simulator(pool, policies, 0);
+
+		System.out.printf("%d games of %d players on %d threads%n", numGames,
+				numPlayers, pool.getParallelism());
+
+		// Let the JIT compile the model before measuring.
+		simulator.run(Math.min(numGames, 200));
+
+		System.out.print(simulator.run(numGames).getReport());
+		pool.shutdown();
+	}
+}
@@ -45,13 +45,14 @@ import model.GameState;
 import model.MeepleStruct;
 import model.PlayerStruct;
 import net.client.ClientProtocol;
+import net.client.GameListener;
 import net.client.SocketClient;
 import net.client.SocketClientProtocol;
+import net.server.NioSocketServer;
 import net.server.ServerProtocol;
-import net.server.SocketServer;
 
 public class GameUi extends JFrame implements ActionListener, MouseListener,
-        DocumentListener, MessageSender {
+        DocumentListener, MessageSender, GameListener {
 
 	private static final long serialVersionUID = 1L;
 
@@ -757,7 +758,7 @@ public class GameUi extends JFrame implements ActionListener, MouseListener,
 				// Start up Server.
 				// TODO perhaps server should stop when hosting player
 				// leaves the game lobby? failover?
-				new SocketServer(port, ServerProtocol.class).start();
+				new NioSocketServer(port, ServerProtocol.class).start();
 
 				// Reset the server hostname in case it was changed.
 				server = "localhost";
@@ -1329,8 +1330,12 @@ public class GameUi extends JFrame implements ActionListener, MouseListener,
 	 * 
 	 * @param drawPileEmpty
 	 *            Whether the draw pile is empty.
+	 * 
+	 * @param unplaceableTiles
+	 *            The number of tiles left to draw which can't be placed.
 	 */
-	public void gameInfo(int currentPlayer, boolean drawPileEmpty) {
+	public void gameInfo(int currentPlayer, boolean drawPileEmpty,
+			int unplaceableTiles) {
 
 		if (drawPileEmpty) {
 			gameState = GameState.END_GAME;